@@ -127,6 +127,7 @@ public class MetadataExport
         {
             // Process each item
             DSpaceCSV csv = new DSpaceCSV(exportAll);
+            toExport.setPrefetch(ItemPrefetcher.getDefaultPageSize());
             while (toExport.hasNext())
             {
                 csv.addItem(toExport.next());
@@ -9,6 +9,7 @@ package org.dspace.app.checker;
 
 import java.io.FileNotFoundException;
 import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
@@ -22,17 +23,20 @@ import org.apache.commons.cli.OptionBuilder;
 import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
 import org.apache.commons.cli.PosixParser;
+import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
 import org.dspace.checker.BitstreamDispatcher;
 import org.dspace.checker.BitstreamInfoDAO;
 import org.dspace.checker.CheckerCommand;
 import org.dspace.checker.HandleDispatcher;
+import org.dspace.checker.IOBudget;
 import org.dspace.checker.LimitedCountDispatcher;
 import org.dspace.checker.LimitedDurationDispatcher;
 import org.dspace.checker.ListDispatcher;
 import org.dspace.checker.ResultsLogger;
 import org.dspace.checker.ResultsPruner;
 import org.dspace.checker.SimpleDispatcher;
+import org.dspace.core.ConfigurationManager;
 import org.dspace.core.Context;
 import org.dspace.core.Utils;
 
@@ -78,6 +82,10 @@ public final class ChecksumChecker
      *            <dd>Report only errors in the logs</dd>
      *            <dt>-p</dt>
      *            <dd>Don't prune results before running checker</dd>
+     *            <dt>-t [threads]</dt>
+     *            <dd>number of bitstreams checked in parallel</dd>
+     *            <dt>-r [bytes]</dt>
+     *            <dd>bytes read per second, e.g. 50M</dd>
      *            </dl>
      */
     public static void main(String[] args) throws SQLException {
@@ -96,6 +104,8 @@ public final class ChecksumChecker
         options.addOption("c", "count", true, "Check count");
         options.addOption("a", "handle", true, "Specify a handle to check");
         options.addOption("v", "verbose", false, "Report all processing");
+        options.addOption("t", "threads", true, "Number of bitstreams checked in parallel");
+        options.addOption("r", "rate", true, "Bytes read per second by all the threads, e.g. 50M");
 
         OptionBuilder.withArgName("bitstream-ids").hasArgs().withDescription(
                 "Space separated list of bitstream ids");
@@ -228,6 +238,29 @@ public final class ChecksumChecker
             checker.setReportVerbose(true);
         }
 
+        try
+        {
+            checker.setThreads(line.hasOption('t') ? Integer.parseInt(line.getOptionValue('t'))
+                    : ConfigurationManager.getIntProperty("checker.threads", 1));
+            String rate = line.hasOption('r') ? line.getOptionValue('r')
+                    : ConfigurationManager.getProperty("checker.io-budget");
+            if (StringUtils.isNotBlank(rate))
+            {
+                checker.setIOBudget(new IOBudget(IOBudget.parseSize(rate)));
+            }
+        }
+        catch (NumberFormatException e)
+        {
+            LOG.fatal("Couldn't parse the number of threads or the rate", e);
+            System.exit(1);
+        }
+
+        // estimate the time left of a single loop
+        if (line.hasOption('l'))
+        {
+            checker.setExpectedBytes(new BitstreamInfoDAO().getPendingSize(new Timestamp(processStart.getTime())));
+        }
+
         checker.setProcessStartDate(processStart);
         checker.setDispatcher(dispatcher);
         checker.setCollector(logger);
@@ -238,6 +271,7 @@ public final class ChecksumChecker
             context.commit();
             context.complete();
         }
+        System.out.println(checker.getProgress());
         System.exit(0);
     }
 
@@ -265,6 +299,7 @@ public final class ChecksumChecker
         System.out
                 .println("\nCheck a defined number of bitstreams: ChecksumChecker -c 10");
         System.out.println("\nReport all processing (verbose)(default reports only errors): ChecksumChecker -v");
+        System.out.println("\nCheck with 4 threads reading at most 50 MB/s: ChecksumChecker -l -t 4 -r 50M");
         System.out.println("\nDefault (no arguments) is equivalent to '-c 1'");
         System.exit(0);
     }
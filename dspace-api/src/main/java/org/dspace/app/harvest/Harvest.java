@@ -377,6 +377,7 @@ public class Harvest
 	    		hc.setHarvestResult(null,"");
 	    		hc.setHarvestStatus(HarvestedCollection.STATUS_READY);
 	    		hc.setHarvestStartTime(null);
+	    		hc.setResumption(null, null);
 	    		hc.update();
     		}
     		context.restoreAuthSystemState();    		
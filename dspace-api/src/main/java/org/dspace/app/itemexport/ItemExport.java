@@ -49,6 +49,7 @@ import org.dspace.content.Metadatum;
 import org.dspace.content.DSpaceObject;
 import org.dspace.content.Item;
 import org.dspace.content.ItemIterator;
+import org.dspace.content.ItemPrefetcher;
 import org.dspace.content.MetadataSchema;
 import org.dspace.core.ConfigurationManager;
 import org.dspace.core.Constants;
@@ -329,6 +330,7 @@ public class ItemExport
 
         System.out.println("Beginning export");
 
+        i.setPrefetch(ItemPrefetcher.getDefaultPageSize());
         while (i.hasNext())
         {
             if (SUBDIR_LIMIT > 0 && ++counter == SUBDIR_LIMIT)
@@ -0,0 +1,278 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.app.mediafilter;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.TreeSet;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Progress of a multi-threaded run of the {@link MediaFilterManager},
+ * persisted in a small properties file so that an interrupted run can resume
+ * where it stopped.
+ * <p/>
+ * Items are handed to the workers in increasing id order but can complete in
+ * any order: the checkpoint is the highest id below which every item has been
+ * processed, i.e. just before the oldest item still in progress. The items
+ * that failed are listed apart, to be retried by the next run. The file also
+ * records the options of the run (filters, force...) and is ignored by a run
+ * with different options. It is removed when a run completes without
+ * failures.
+ */
+public class MediaFilterCheckpoint
+{
+    private static final Logger log = Logger.getLogger(MediaFilterCheckpoint.class);
+
+    private static final String LAST_ITEM = "last.item";
+
+    private static final String FAILED_ITEMS = "failed.items";
+
+    private static final String SIGNATURE = "signature";
+
+    private final File file;
+
+    private final String signature;
+
+    /** Number of completed items between two writes of the file */
+    private final int interval;
+
+    private final TreeSet<Integer> inProgress = new TreeSet<Integer>();
+
+    /** items that failed, in this run or a previous one and not since retried */
+    private final TreeSet<Integer> failed = new TreeSet<Integer>();
+
+    /** true if the failed items changed since the last write */
+    private boolean failedChanged;
+
+    private int lastStarted;
+
+    private int lastSaved;
+
+    private int completedSinceSave = 0;
+
+    /**
+     * @param file
+     *            the checkpoint file
+     * @param signature
+     *            description of the options of the run
+     * @param interval
+     *            number of completed items between two writes of the file
+     */
+    public MediaFilterCheckpoint(File file, String signature, int interval)
+    {
+        this.file = file;
+        this.signature = signature;
+        this.interval = Math.max(1, interval);
+    }
+
+    /**
+     * Read the checkpoint of a previous run with the same options.
+     *
+     * @return the id of the last item processed, 0 to start from the
+     *         beginning
+     */
+    public synchronized int load()
+    {
+        lastStarted = 0;
+        failed.clear();
+        if (file.exists())
+        {
+            Properties properties = new Properties();
+            InputStream in = null;
+            try
+            {
+                in = new FileInputStream(file);
+                properties.load(in);
+                if (signature.equals(properties.getProperty(SIGNATURE)))
+                {
+                    lastStarted = Integer.parseInt(properties.getProperty(LAST_ITEM, "0"));
+                    for (String id : properties.getProperty(FAILED_ITEMS, "").split(","))
+                    {
+                        if (id.trim().length() > 0)
+                        {
+                            failed.add(Integer.valueOf(id.trim()));
+                        }
+                    }
+                }
+                else
+                {
+                    log.warn("Ignoring the checkpoint " + file + " of a run with different options");
+                }
+            }
+            catch (IOException e)
+            {
+                log.warn("Unable to read the checkpoint " + file + ": " + e.getMessage());
+            }
+            catch (NumberFormatException e)
+            {
+                log.warn("Invalid checkpoint " + file + ": " + e.getMessage());
+            }
+            finally
+            {
+                if (in != null)
+                {
+                    try
+                    {
+                        in.close();
+                    }
+                    catch (IOException e)
+                    {
+                        log.warn("Unable to close " + file, e);
+                    }
+                }
+            }
+        }
+        lastSaved = lastStarted;
+        failedChanged = false;
+        return lastStarted;
+    }
+
+    /**
+     * @return the items that failed in the previous runs and the current one,
+     *         in increasing id order
+     */
+    public synchronized List<Integer> getFailed()
+    {
+        return new ArrayList<Integer>(failed);
+    }
+
+    /**
+     * Record that an item was handed to a worker. Ids must be increasing,
+     * except for the retries of the failed items, handed before the others.
+     */
+    public synchronized void started(int itemID)
+    {
+        // a retried item stays failed until it succeeds
+        if (itemID > lastStarted)
+        {
+            inProgress.add(itemID);
+            lastStarted = itemID;
+        }
+    }
+
+    /**
+     * Record that an item was processed, and write the file every
+     * <code>interval</code> items.
+     *
+     * @param success
+     *            false if the item failed, so that the next run retries it
+     */
+    public synchronized void finished(int itemID, boolean success)
+    {
+        inProgress.remove(itemID);
+        if (success ? failed.remove(itemID) : failed.add(itemID))
+        {
+            failedChanged = true;
+        }
+        if (++completedSinceSave >= interval)
+        {
+            save();
+        }
+    }
+
+    /**
+     * @return the id below which all the items have been processed
+     */
+    public synchronized int getLastCompleted()
+    {
+        return inProgress.isEmpty() ? lastStarted : inProgress.first() - 1;
+    }
+
+    /**
+     * Write the file if the checkpoint moved since the last write.
+     */
+    public synchronized void save()
+    {
+        completedSinceSave = 0;
+        int last = getLastCompleted();
+        if (last == lastSaved && !failedChanged)
+        {
+            return;
+        }
+
+        Properties properties = new Properties();
+        properties.setProperty(SIGNATURE, signature);
+        properties.setProperty(LAST_ITEM, String.valueOf(last));
+        StringBuilder failedItems = new StringBuilder();
+        for (Integer id : failed)
+        {
+            if (failedItems.length() > 0)
+            {
+                failedItems.append(',');
+            }
+            failedItems.append(id);
+        }
+        properties.setProperty(FAILED_ITEMS, failedItems.toString());
+        File tmp = new File(file.getPath() + ".tmp");
+        OutputStream out = null;
+        try
+        {
+            if (file.getParentFile() != null)
+            {
+                file.getParentFile().mkdirs();
+            }
+            out = new FileOutputStream(tmp);
+            properties.store(out, "MediaFilterManager checkpoint");
+            out.close();
+            out = null;
+            // replace the previous checkpoint as a whole
+            if (!tmp.renameTo(file) && (!file.delete() || !tmp.renameTo(file)))
+            {
+                throw new IOException("unable to rename " + tmp);
+            }
+            lastSaved = last;
+            failedChanged = false;
+        }
+        catch (IOException e)
+        {
+            log.error("Unable to write the checkpoint " + file + ": " + e.getMessage(), e);
+        }
+        finally
+        {
+            if (out != null)
+            {
+                try
+                {
+                    out.close();
+                }
+                catch (IOException e)
+                {
+                    log.warn("Unable to close " + tmp, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Forget the checkpoint at the end of a complete run.
+     */
+    public synchronized void clear()
+    {
+        if (file.exists() && !file.delete())
+        {
+            log.warn("Unable to delete the checkpoint " + file);
+        }
+        lastSaved = 0;
+        failed.clear();
+        failedChanged = false;
+    }
+
+    public File getFile()
+    {
+        return file;
+    }
+}
@@ -0,0 +1,116 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.app.mediafilter;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+import org.dspace.content.Bitstream;
+import org.dspace.content.Bundle;
+import org.dspace.content.Item;
+import org.dspace.core.Constants;
+import org.dspace.core.Context;
+import org.dspace.event.Consumer;
+import org.dspace.event.Event;
+
+/**
+ * Event consumer recording the bitstreams added to an ORIGINAL bundle in the
+ * {@link MediaFilterQueue}, so that <code>filter-media --queue</code> only
+ * looks at the new files instead of sweeping the whole repository.
+ * <p/>
+ * The entries are written with a context of their own once the transaction
+ * adding the bitstreams has been committed. Configure it in dspace.cfg with
+ * the filter <code>Bundle+Add</code>.
+ */
+public class MediaFilterConsumer implements Consumer
+{
+    private static final Logger log = Logger.getLogger(MediaFilterConsumer.class);
+
+    /** ids of the bitstreams added to a bundle in the current event stream */
+    private Set<Integer> added = null;
+
+    @Override
+    public void initialize() throws Exception
+    {
+    }
+
+    @Override
+    public void consume(Context ctx, Event event) throws Exception
+    {
+        if (event.getSubjectType() == Constants.BUNDLE
+                && event.getEventType() == Event.ADD
+                && event.getObjectType() == Constants.BITSTREAM)
+        {
+            if (added == null)
+            {
+                added = new HashSet<Integer>();
+            }
+            added.add(event.getObjectID());
+        }
+    }
+
+    @Override
+    public void end(Context ctx) throws Exception
+    {
+        if (added == null)
+        {
+            return;
+        }
+
+        Context context = null;
+        try
+        {
+            context = new Context();
+            context.turnOffAuthorisationSystem();
+            int queued = 0;
+            for (Integer bitstreamID : added)
+            {
+                Bitstream bitstream = Bitstream.find(context, bitstreamID);
+                if (bitstream == null)
+                {
+                    // removed in the same transaction
+                    continue;
+                }
+                for (Bundle bundle : bitstream.getBundles())
+                {
+                    if (!Constants.CONTENT_BUNDLE_NAME.equals(bundle.getName()))
+                    {
+                        continue;
+                    }
+                    for (Item item : bundle.getItems())
+                    {
+                        if (MediaFilterQueue.enqueue(context, bitstreamID, item.getID()))
+                        {
+                            queued++;
+                        }
+                    }
+                }
+            }
+            context.complete();
+            context = null;
+            if (queued > 0)
+            {
+                log.debug("Queued " + queued + " bitstreams for the media filters");
+            }
+        }
+        finally
+        {
+            if (context != null)
+            {
+                context.abort();
+            }
+            added = null;
+        }
+    }
+
+    @Override
+    public void finish(Context ctx) throws Exception
+    {
+    }
+}
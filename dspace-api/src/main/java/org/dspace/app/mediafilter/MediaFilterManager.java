@@ -7,13 +7,24 @@
  */
 package org.dspace.app.mediafilter;
 
+import java.io.File;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -44,6 +55,7 @@ import org.dspace.core.SelfNamedPlugin;
 import org.dspace.eperson.Group;
 import org.dspace.handle.HandleManager;
 import org.dspace.search.DSIndexer;
+import org.dspace.storage.rdbms.TableRow;
 
 /**
  * MediaFilterManager is the class that invokes the media/format filters over the
@@ -51,8 +63,17 @@ import org.dspace.search.DSIndexer;
  * MFM: -v verbose outputs all extracted text to STDOUT; -f force forces all
  * bitstreams to be processed, even if they have been before; -n noindex does not
  * recreate index after processing bitstreams; -i [identifier] limits processing 
- * scope to a community, collection or item; and -m [max] limits processing to a
- * maximum number of items.
+ * scope to a community, collection or item; -m [max] limits processing to a
+ * maximum number of items; -Q queue only processes the bitstreams recorded by
+ * the {@link MediaFilterConsumer}; and -t [threads] processes several items
+ * at once.
+ * <p>
+ * A multi-threaded run gives each worker its own Context, limits the number of
+ * threads running each filter with
+ * <code>filter.&lt;class-name&gt;[.&lt;plugin-name&gt;].maxThreads</code>
+ * and, when it covers the whole repository, records its progress in a
+ * checkpoint file (<code>filter.checkpoint</code>) from which an interrupted
+ * run resumes. The time spent in each filter is reported at the end.
  */
 public class MediaFilterManager
 {
@@ -67,6 +88,9 @@ public class MediaFilterManager
     //suffix (in dspace.cfg) for input formats supported by each filter
     public static final String INPUT_FORMATS_SUFFIX = "inputFormats";
 
+    //suffix (in dspace.cfg) for the maximum number of threads running each filter
+    public static final String MAX_THREADS_SUFFIX = "maxThreads";
+
     static boolean isVerbose = false; // default to not verbose
 
     static boolean isQuiet = false; // default is noisy
@@ -77,14 +101,22 @@ public class MediaFilterManager
     
     static int max2Process = Integer.MAX_VALUE;  // maximum number items to process
     
-    static int processed = 0;   // number items processed
+    static final AtomicInteger processed = new AtomicInteger();   // number items processed
+    
+    static int numThreads = 1;   // number of items processed at the same time
     
-    private static Item currentItem = null;   // current item being processed
+    // current item being processed by each thread
+    private static final ThreadLocal<Item> currentItem = new ThreadLocal<Item>();
     
     private static FormatFilter[] filterClasses = null;
     
     private static final Map<String, List<String>> filterFormats = new HashMap<>();
 
+    // maximum number of threads running each filter, by filterFormats key
+    private static final Map<String, Semaphore> filterLimits = new HashMap<>();
+
+    private static final MediaFilterStatistics statistics = new MediaFilterStatistics();
+
     private static List<String> skipList = null; //list of identifiers to skip during processing
 
     private static final List<String> publicFiltersClasses = new ArrayList<>();
@@ -165,6 +197,19 @@ public class MediaFilterManager
         	            (pluginName!=null ? FILTER_PLUGIN_SEPARATOR + pluginName : ""),
         	            Arrays.asList(formats.split(",[\\s]*")));
                 }
+
+                //optional limit of the threads running this filter at once,
+                //e.g. to bound the number of external ImageMagick processes
+                int maxThreads = ConfigurationManager.getIntProperty(
+                    FILTER_PREFIX + "." + filterClassName +
+                    (pluginName!=null ? "." + pluginName : "") +
+                    "." + MAX_THREADS_SUFFIX, 0);
+                if (maxThreads > 0)
+                {
+                    filterLimits.put(filterClassName +
+                        (pluginName!=null ? FILTER_PLUGIN_SEPARATOR + pluginName : ""),
+                        new Semaphore(maxThreads, true));
+                }
             }//end if filter!=null
         }//end for
         
@@ -194,6 +239,10 @@ public class MediaFilterManager
         		"ONLY process bitstreams belonging to identifier");
         options.addOption("m", "maximum", true,
 				"process no more than maximum items");
+        options.addOption("Q", "queue", false,
+                "ONLY process the bitstreams queued by the mediafilter event consumer");
+        options.addOption("t", "threads", true,
+                "number of items processed at the same time (default: filter.threads in dspace.cfg, or 1)");
         options.addOption("h", "help", false, "help");
 
         //create a "plugin" option (to specify specific MediaFilter plugins to run)
@@ -268,6 +317,25 @@ public class MediaFilterManager
         	}
         }
 
+        numThreads = ConfigurationManager.getIntProperty("filter.threads", 1);
+        if (line.hasOption('t'))
+        {
+            try
+            {
+                numThreads = Integer.parseInt(line.getOptionValue('t'));
+            }
+            catch (NumberFormatException e)
+            {
+                numThreads = 0;
+            }
+            if (numThreads < 1)
+            {
+                System.out.println("Invalid number of threads '" +
+                                   line.getOptionValue('t') + "' - ignoring");
+                numThreads = 1;
+            }
+        }
+
         String[] filterNames = null;
         if(line.hasOption('p'))
         {
@@ -338,7 +406,11 @@ public class MediaFilterManager
             c.turnOffAuthorisationSystem();
 
             // now apply the filters
-            if (identifier == null)
+            if (line.hasOption('Q'))
+            {
+                applyFiltersQueue(c);
+            }
+            else if (identifier == null)
             {
             	applyFiltersAllItems(c);
             }
@@ -370,6 +442,7 @@ public class MediaFilterManager
         }
         catch (Exception e)
         {
+            log.error("Error applying the media filters: " + e.getMessage(), e);
             status = 1;
         }
         finally
@@ -379,12 +452,26 @@ public class MediaFilterManager
                 c.abort();
             }
         }
+
+        if (!statistics.getTimings().isEmpty())
+        {
+            String report = statistics.report();
+            log.info("Media filter statistics:\n" + report);
+            if (!isQuiet)
+            {
+                System.out.println("\nMedia filter statistics:\n" + report);
+            }
+        }
         System.exit(status);
     }
 
     public static void applyFiltersAllItems(Context c) throws Exception
     {
-        if(skipList!=null)
+        if (numThreads > 1 && skipList == null)
+        {
+            applyFiltersParallel(c, numThreads);
+        }
+        else if(skipList!=null)
         {    
             //if a skip-list exists, we need to filter community-by-community
             //so we can respect what is in the skip-list
@@ -401,7 +488,7 @@ public class MediaFilterManager
             ItemIterator i = Item.findAll(c);
             try
             {
-                while (i.hasNext() && processed < max2Process)
+                while (i.hasNext() && processed.get() < max2Process)
                 {
                     applyFiltersItem(c, i.next());
                 }
@@ -444,7 +531,7 @@ public class MediaFilterManager
             ItemIterator i = collection.getItems();
             try
             {
-                while (i.hasNext() && processed < max2Process)
+                while (i.hasNext() && processed.get() < max2Process)
                 {
                     applyFiltersItem(c, i.next());
                 }
@@ -459,6 +546,280 @@ public class MediaFilterManager
         }
     }
        
+    /**
+     * Apply the filters to all the items of the archive with several threads.
+     * The items are handed in id order to the workers; the progress is
+     * recorded in the checkpoint file, from which a later run with the same
+     * options resumes, retrying first the items that failed.
+     * 
+     * @param c
+     *            context used to read the ids of the items
+     * @param threads
+     *            number of workers
+     */
+    public static void applyFiltersParallel(Context c, int threads) throws Exception
+    {
+        String checkpointPath = ConfigurationManager.getProperty("filter.checkpoint");
+        if (checkpointPath == null)
+        {
+            checkpointPath = ConfigurationManager.getProperty("dspace.dir")
+                    + File.separator + "temp" + File.separator + "filter-media.checkpoint";
+        }
+        final MediaFilterCheckpoint checkpoint = new MediaFilterCheckpoint(
+                new File(checkpointPath), getRunSignature(),
+                ConfigurationManager.getIntProperty("filter.checkpoint.interval", 100));
+        int lastItem = checkpoint.load();
+        List<Integer> itemIDs = checkpoint.getFailed();
+        if (lastItem > 0 && !isQuiet)
+        {
+            System.out.println("Resuming from the checkpoint " + checkpoint.getFile()
+                    + " after item " + lastItem + ", retrying " + itemIDs.size() + " failed items");
+        }
+        // the failed items all come before the checkpoint
+        itemIDs.addAll(Item.findAllItemIDsAfter(c, lastItem));
+
+        // keep the progress of an interrupted run
+        Thread hook = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                checkpoint.save();
+            }
+        };
+        Runtime.getRuntime().addShutdownHook(hook);
+
+        boolean complete = false;
+        try
+        {
+            complete = runWorkers(itemIDs, threads, checkpoint, false);
+        }
+        finally
+        {
+            checkpoint.save();
+            Runtime.getRuntime().removeShutdownHook(hook);
+        }
+        if (complete && checkpoint.getFailed().isEmpty())
+        {
+            checkpoint.clear();
+        }
+        else if (complete)
+        {
+            System.out.println(checkpoint.getFailed().size() + " items failed, the next run retries them from the checkpoint "
+                    + checkpoint.getFile());
+        }
+        else
+        {
+            System.out.println("Stopped after item " + checkpoint.getLastCompleted()
+                    + ", the next run resumes from the checkpoint " + checkpoint.getFile());
+        }
+    }
+
+    /**
+     * Apply the filters to the bitstreams recorded in the
+     * {@link MediaFilterQueue} by the {@link MediaFilterConsumer}, instead of
+     * sweeping the whole repository. The entries of items still in the
+     * submission or workflow process are kept for a later run.
+     * 
+     * @param c
+     *            context
+     */
+    public static void applyFiltersQueue(Context c) throws Exception
+    {
+        List<Integer> itemIDs = MediaFilterQueue.findItemIDs(c);
+        if (!isQuiet)
+        {
+            System.out.println(MediaFilterQueue.size(c) + " queued bitstreams in "
+                    + itemIDs.size() + " items");
+        }
+        if (numThreads > 1)
+        {
+            runWorkers(itemIDs, numThreads, null, true);
+        }
+        else
+        {
+            for (Integer itemID : itemIDs)
+            {
+                if (processed.get() >= max2Process)
+                {
+                    break;
+                }
+                applyFiltersQueuedItem(c, itemID);
+            }
+        }
+    }
+
+    /**
+     * Filter the queued bitstreams of an item and remove them from the queue,
+     * in a single transaction.
+     * 
+     * @param c
+     *            context
+     * @param itemID
+     *            the item
+     */
+    public static void applyFiltersQueuedItem(Context c, int itemID) throws Exception
+    {
+        List<TableRow> entries = MediaFilterQueue.findByItem(c, itemID);
+        Item item = Item.find(c, itemID);
+        if (item != null && !item.isArchived() && !item.isWithdrawn())
+        {
+            // not installed yet, wait for a later run
+            return;
+        }
+
+        if (item != null && item.isArchived() && !inSkipList(item.getHandle()))
+        {
+            Set<Integer> queued = new HashSet<Integer>();
+            for (TableRow entry : entries)
+            {
+                queued.add(entry.getIntColumn("bitstream_id"));
+            }
+
+            currentItem.set(item);
+            try
+            {
+                // bitstreams removed since they were queued are not found
+                boolean done = false;
+                for (Bundle bundle : item.getBundles(Constants.CONTENT_BUNDLE_NAME))
+                {
+                    for (Bitstream bitstream : bundle.getBitstreams())
+                    {
+                        if (queued.contains(bitstream.getID()))
+                        {
+                            done |= filterBitstream(c, item, bitstream);
+                        }
+                    }
+                }
+                if (done)
+                {
+                    processed.incrementAndGet();
+                }
+            }
+            finally
+            {
+                currentItem.remove();
+            }
+        }
+
+        MediaFilterQueue.remove(c, entries);
+        c.commit();
+        if (item != null)
+        {
+            item.decache();
+        }
+    }
+
+    /**
+     * Process the items with a pool of workers, each one with its own
+     * Context.
+     * 
+     * @param itemIDs
+     *            the items, in increasing id order when a checkpoint is used
+     * @param threads
+     *            number of workers
+     * @param checkpoint
+     *            progress tracker, or null
+     * @param fromQueue
+     *            true to filter only the queued bitstreams of the items
+     * @return true if all the items were processed, false if the run stopped
+     *         at the maximum number of items or because the workers died
+     */
+    private static boolean runWorkers(List<Integer> itemIDs, int threads,
+            MediaFilterCheckpoint checkpoint, boolean fromQueue) throws Exception
+    {
+        BlockingQueue<Integer> idQueue = new ArrayBlockingQueue<Integer>(threads * 2);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> workers = new ArrayList<Future<?>>();
+        for (int i = 0; i < threads; i++)
+        {
+            workers.add(executor.submit(new FilterWorker(idQueue, checkpoint, fromQueue)));
+        }
+        executor.shutdown();
+
+        long start = System.currentTimeMillis();
+        boolean complete = true;
+        try
+        {
+            for (Integer id : itemIDs)
+            {
+                if (processed.get() >= max2Process)
+                {
+                    complete = false;
+                    break;
+                }
+                if (checkpoint != null)
+                {
+                    checkpoint.started(id);
+                }
+                if (!enqueue(idQueue, id, workers))
+                {
+                    complete = false;
+                    break;
+                }
+            }
+            for (int i = 0; i < threads; i++)
+            {
+                enqueue(idQueue, FilterWorker.END_OF_QUEUE, workers);
+            }
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        long elapsed = Math.max(1, System.currentTimeMillis() - start);
+        String report = "Media filters applied with " + threads + " threads to "
+                + processed.get() + " items in " + (elapsed / 1000) + "s";
+        log.info(report);
+        if (!isQuiet)
+        {
+            System.out.println(report);
+        }
+        return complete;
+    }
+
+    /**
+     * Put the id in the work queue, waiting for a free slot as long as at
+     * least one worker is still alive.
+     * 
+     * @return false if all the workers have terminated
+     */
+    private static boolean enqueue(BlockingQueue<Integer> idQueue, Integer id,
+            List<Future<?>> workers) throws InterruptedException
+    {
+        while (!idQueue.offer(id, 1, TimeUnit.SECONDS))
+        {
+            boolean alive = false;
+            for (Future<?> worker : workers)
+            {
+                alive = alive || !worker.isDone();
+            }
+            if (!alive)
+            {
+                log.error("All the media filter workers have terminated, stop feeding the queue");
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return a description of the options affecting which bitstreams are
+     *         filtered, to recognize the checkpoint of an equivalent run
+     */
+    private static String getRunSignature()
+    {
+        StringBuilder signature = new StringBuilder();
+        for (FormatFilter filter : filterClasses)
+        {
+            signature.append(getFilterKey(filter).replace(FILTER_PLUGIN_SEPARATOR, "/")).append(',');
+        }
+        signature.append("force=").append(isForce);
+        return signature.toString();
+    }
+
     public static void applyFiltersItem(Context c, Item item) throws Exception
     {
         //only apply filters if item not in skip-list
@@ -466,18 +827,24 @@ public class MediaFilterManager
         {
     	  //cache this item in MediaFilterManager
     	  //so it can be accessed by MediaFilters as necessary
-    	  currentItem = item;
+    	  currentItem.set(item);
     	
-          if (filterItem(c, item))
+          try
           {
-        	  // commit changes after each filtered item
-        	  c.commit();
-              // increment processed count
-              ++processed;
+              if (filterItem(c, item))
+              {
+            	  // commit changes after each filtered item
+            	  c.commit();
+                  // increment processed count
+                  processed.incrementAndGet();
+              }
+          }
+          finally
+          {
+              // clear item objects from context cache and internal cache
+              item.decache();
+              currentItem.remove();
           }
-          // clear item objects from context cache and internal cache
-          item.decache();
-          currentItem = null;
         }  
     }
 
@@ -542,15 +909,16 @@ public class MediaFilterManager
     	    //  <class-name><separator><plugin-name>
     	    //For other MediaFilters, map key is just:
     	    //  <class-name>
-    	    List<String> fmts = filterFormats.get(filterClasses[i].getClass().getName() +
-    	                       (pluginName!=null ? FILTER_PLUGIN_SEPARATOR + pluginName : ""));
+    	    String filterKey = filterClasses[i].getClass().getName() +
+    	                       (pluginName!=null ? FILTER_PLUGIN_SEPARATOR + pluginName : "");
+    	    List<String> fmts = filterFormats.get(filterKey);
     	   
     	    if (fmts.contains(myBitstream.getFormat().getShortDescription()))
     		{
             	try
             	{
 		            // only update item if bitstream not skipped
-		            if (processBitstream(c, myItem, myBitstream, filterClasses[i]))
+		            if (applyFilter(c, myItem, myBitstream, filterClasses[i], filterKey))
             	    {
 		           		myItem.update(); // Make sure new bitstream has a sequence
 		                                 	// number
@@ -638,7 +1006,7 @@ public class MediaFilterManager
                     try
                     {
                         // only update item if bitstream not skipped
-                        if (processBitstream(c, myItem, myBitstream, filterClasses[i]))
+                        if (applyFilter(c, myItem, myBitstream, filterClasses[i], filterKey))
                         {
                                myItem.update(); // Make sure new bitstream has a sequence
                                                  // number
@@ -657,6 +1025,58 @@ public class MediaFilterManager
         return filtered;
     }
     
+    /**
+     * Run {@link #processBitstream} within the concurrency limit of the
+     * filter, and record its timing.
+     */
+    private static boolean applyFilter(Context c, Item item, Bitstream source,
+            FormatFilter formatFilter, String filterKey) throws Exception
+    {
+        Semaphore limit = filterLimits.get(filterKey);
+        long start = System.currentTimeMillis();
+        if (limit != null)
+        {
+            limit.acquire();
+        }
+        long wait = System.currentTimeMillis() - start;
+        Boolean result = null;
+        try
+        {
+            result = processBitstream(c, item, source, formatFilter);
+            return result;
+        }
+        finally
+        {
+            if (limit != null)
+            {
+                limit.release();
+            }
+            statistics.record(filterKey, System.currentTimeMillis() - start - wait,
+                    wait, source.getSize(), result);
+        }
+    }
+
+    /**
+     * @return the key of the filter in the filterFormats map
+     */
+    private static String getFilterKey(FormatFilter filter)
+    {
+        if (filter instanceof SelfNamedPlugin)
+        {
+            return filter.getClass().getName() + FILTER_PLUGIN_SEPARATOR
+                    + ((SelfNamedPlugin) filter).getPluginInstanceName();
+        }
+        return filter.getClass().getName();
+    }
+
+    /**
+     * @return the timings of the filters run since the JVM started
+     */
+    public static MediaFilterStatistics getStatistics()
+    {
+        return statistics;
+    }
+
     /**
      * A utility class that calls the virtual methods
      * from the current MediaFilter class.
@@ -818,11 +1238,12 @@ public class MediaFilterManager
      * in case they need access to item-level information for their format
      * transformations/conversions.
      * 
-     * @return current Item being processed by MediaFilterManager
+     * @return current Item being processed by MediaFilterManager in the
+     *         calling thread
      */
     public static Item getCurrentItem()
     {
-        return currentItem;
+        return currentItem.get();
     }
     
     /**
@@ -849,5 +1270,92 @@ public class MediaFilterManager
             return false;
         }
     }
-    
+
+    /**
+     * Worker of a multi-threaded run: takes the ids of the items to filter
+     * from the work queue and processes them with its own Context.
+     */
+    private static class FilterWorker implements Runnable
+    {
+        static final int END_OF_QUEUE = -1;
+
+        private final BlockingQueue<Integer> idQueue;
+
+        private final MediaFilterCheckpoint checkpoint;
+
+        private final boolean fromQueue;
+
+        FilterWorker(BlockingQueue<Integer> idQueue, MediaFilterCheckpoint checkpoint,
+                boolean fromQueue)
+        {
+            this.idQueue = idQueue;
+            this.checkpoint = checkpoint;
+            this.fromQueue = fromQueue;
+        }
+
+        @Override
+        public void run()
+        {
+            Context context = null;
+            try
+            {
+                while (true)
+                {
+                    int id = idQueue.take();
+                    if (id == END_OF_QUEUE)
+                    {
+                        break;
+                    }
+                    boolean success = false;
+                    try
+                    {
+                        if (context == null)
+                        {
+                            context = new Context();
+                            context.turnOffAuthorisationSystem();
+                        }
+                        if (fromQueue)
+                        {
+                            applyFiltersQueuedItem(context, id);
+                        }
+                        else
+                        {
+                            Item item = Item.find(context, id);
+                            if (item != null)
+                            {
+                                applyFiltersItem(context, item);
+                            }
+                        }
+                        success = true;
+                    }
+                    catch (Exception e)
+                    {
+                        log.error("Error filtering item " + id + ": " + e.getMessage(), e);
+                        System.out.println("ERROR filtering item " + id + ": " + e);
+                        // discard the changes of the failed item
+                        if (context != null)
+                        {
+                            context.abort();
+                            context = null;
+                        }
+                    }
+                    if (checkpoint != null)
+                    {
+                        checkpoint.finished(id, success);
+                    }
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            finally
+            {
+                if (context != null)
+                {
+                    context.abort();
+                }
+            }
+        }
+    }
 }
@@ -0,0 +1,130 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.app.mediafilter;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.dspace.core.Context;
+import org.dspace.storage.rdbms.DatabaseManager;
+import org.dspace.storage.rdbms.TableRow;
+import org.dspace.storage.rdbms.TableRowIterator;
+
+/**
+ * Durable queue of the bitstreams waiting for the media filters, stored in
+ * the <code>mediafilter_queue</code> table. It is fed by the
+ * {@link MediaFilterConsumer} and drained by
+ * <code>filter-media --queue</code>, which removes the entries of an item in
+ * the same transaction as its new renditions.
+ */
+public class MediaFilterQueue
+{
+    static final String TABLE = "mediafilter_queue";
+
+    private MediaFilterQueue()
+    {
+    }
+
+    /**
+     * Add a bitstream to the queue, unless it is already waiting.
+     *
+     * @param context
+     *            context, the entry is part of its transaction
+     * @param bitstreamID
+     *            the new bitstream
+     * @param itemID
+     *            the item owning the bitstream
+     * @return true if the bitstream was added
+     */
+    public static boolean enqueue(Context context, int bitstreamID, int itemID)
+            throws SQLException
+    {
+        TableRow existing = DatabaseManager.querySingleTable(context, TABLE,
+                "SELECT * FROM mediafilter_queue WHERE bitstream_id= ? AND item_id= ? ",
+                bitstreamID, itemID);
+        if (existing != null)
+        {
+            return false;
+        }
+        TableRow row = DatabaseManager.row(TABLE);
+        row.setColumn("bitstream_id", bitstreamID);
+        row.setColumn("item_id", itemID);
+        row.setColumn("queued", new Date());
+        DatabaseManager.insert(context, row);
+        return true;
+    }
+
+    /**
+     * @return the ids of the items with queued bitstreams, oldest first
+     */
+    public static List<Integer> findItemIDs(Context context) throws SQLException
+    {
+        List<Integer> itemIDs = new ArrayList<Integer>();
+        TableRowIterator tri = DatabaseManager.query(context,
+                "SELECT item_id, MIN(mediafilter_queue_id) AS first_id FROM mediafilter_queue "
+                + "GROUP BY item_id ORDER BY first_id");
+        try
+        {
+            while (tri.hasNext())
+            {
+                itemIDs.add(tri.next().getIntColumn("item_id"));
+            }
+        }
+        finally
+        {
+            tri.close();
+        }
+        return itemIDs;
+    }
+
+    /**
+     * @return the queue entries of an item
+     */
+    public static List<TableRow> findByItem(Context context, int itemID) throws SQLException
+    {
+        TableRowIterator tri = DatabaseManager.queryTable(context, TABLE,
+                "SELECT * FROM mediafilter_queue WHERE item_id= ? ORDER BY mediafilter_queue_id",
+                itemID);
+        try
+        {
+            return tri.toList();
+        }
+        finally
+        {
+            tri.close();
+        }
+    }
+
+    /**
+     * Remove processed entries. Entries added to the queue in the meantime
+     * for the same item are kept.
+     */
+    public static void remove(Context context, List<TableRow> entries) throws SQLException
+    {
+        for (TableRow entry : entries)
+        {
+            DatabaseManager.delete(context, entry);
+        }
+    }
+
+    /**
+     * @return the number of queued bitstreams
+     */
+    public static long size(Context context) throws SQLException
+    {
+        TableRow row = DatabaseManager.querySingle(context,
+                "SELECT COUNT(*) AS queued FROM mediafilter_queue");
+        if (DatabaseManager.isOracle())
+        {
+            return row.getIntColumn("queued");
+        }
+        return row.getLongColumn("queued");
+    }
+}
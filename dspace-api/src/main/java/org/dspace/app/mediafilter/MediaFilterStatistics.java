@@ -0,0 +1,181 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.app.mediafilter;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Timing statistics of the filters run by the {@link MediaFilterManager},
+ * collected for each filter (or named plugin) and safe to update from
+ * several threads.
+ */
+public class MediaFilterStatistics
+{
+    /** Counters of a single filter */
+    public static class FilterTiming
+    {
+        private final AtomicLong filtered = new AtomicLong();
+
+        private final AtomicLong skipped = new AtomicLong();
+
+        private final AtomicLong errors = new AtomicLong();
+
+        private final AtomicLong totalTime = new AtomicLong();
+
+        private final AtomicLong maxTime = new AtomicLong();
+
+        private final AtomicLong waitTime = new AtomicLong();
+
+        private final AtomicLong bytes = new AtomicLong();
+
+        void record(long elapsed, long wait, long size, Boolean result)
+        {
+            if (result == null)
+            {
+                errors.incrementAndGet();
+            }
+            else if (result.booleanValue())
+            {
+                filtered.incrementAndGet();
+            }
+            else
+            {
+                skipped.incrementAndGet();
+            }
+            totalTime.addAndGet(elapsed);
+            waitTime.addAndGet(wait);
+            bytes.addAndGet(size);
+            long max = maxTime.get();
+            while (elapsed > max && !maxTime.compareAndSet(max, elapsed))
+            {
+                max = maxTime.get();
+            }
+        }
+
+        /** @return number of renditions created */
+        public long getFiltered()
+        {
+            return filtered.get();
+        }
+
+        /** @return number of bitstreams the filter declined or already done */
+        public long getSkipped()
+        {
+            return skipped.get();
+        }
+
+        public long getErrors()
+        {
+            return errors.get();
+        }
+
+        /** @return number of bitstreams given to the filter */
+        public long getCount()
+        {
+            return filtered.get() + skipped.get() + errors.get();
+        }
+
+        /** @return milliseconds spent in the filter */
+        public long getTotalTime()
+        {
+            return totalTime.get();
+        }
+
+        /** @return the longest run of the filter, in milliseconds */
+        public long getMaxTime()
+        {
+            return maxTime.get();
+        }
+
+        /** @return milliseconds spent waiting for a free slot of the filter */
+        public long getWaitTime()
+        {
+            return waitTime.get();
+        }
+
+        /** @return total size of the source bitstreams */
+        public long getBytes()
+        {
+            return bytes.get();
+        }
+
+        @Override
+        public String toString()
+        {
+            long count = getCount();
+            return String.format(Locale.ENGLISH,
+                    "%d bitstreams (%d filtered, %d skipped, %d errors), %d MB, total %.1fs, avg %d ms, max %d ms, waited %.1fs",
+                    count, getFiltered(), getSkipped(), getErrors(),
+                    getBytes() / (1024 * 1024), getTotalTime() / 1000.0,
+                    count == 0 ? 0 : getTotalTime() / count, getMaxTime(),
+                    getWaitTime() / 1000.0);
+        }
+    }
+
+    private final ConcurrentMap<String, FilterTiming> timings = new ConcurrentHashMap<String, FilterTiming>();
+
+    /**
+     * Record a run of a filter.
+     *
+     * @param filterName
+     *            name of the filter
+     * @param elapsed
+     *            milliseconds spent in the filter
+     * @param wait
+     *            milliseconds spent waiting for the filter concurrency limit
+     * @param size
+     *            size of the source bitstream
+     * @param result
+     *            true if a rendition was created, false if the bitstream was
+     *            skipped, null on error
+     */
+    public void record(String filterName, long elapsed, long wait, long size, Boolean result)
+    {
+        FilterTiming timing = timings.get(filterName);
+        if (timing == null)
+        {
+            FilterTiming existing = timings.putIfAbsent(filterName, timing = new FilterTiming());
+            if (existing != null)
+            {
+                timing = existing;
+            }
+        }
+        timing.record(elapsed, wait, size, result);
+    }
+
+    /**
+     * @return the timings by filter name
+     */
+    public Map<String, FilterTiming> getTimings()
+    {
+        return timings;
+    }
+
+    public void clear()
+    {
+        timings.clear();
+    }
+
+    /**
+     * @return a report with a line per filter
+     */
+    public String report()
+    {
+        StringBuilder report = new StringBuilder();
+        for (Map.Entry<String, FilterTiming> entry : timings.entrySet())
+        {
+            report.append(entry.getKey().replace(MediaFilterManager.FILTER_PLUGIN_SEPARATOR, " / "))
+                    .append(": ").append(entry.getValue()).append('\n');
+        }
+        return report.toString();
+    }
+}
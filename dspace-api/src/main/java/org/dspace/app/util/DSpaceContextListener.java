@@ -8,6 +8,7 @@
 package org.dspace.app.util;
 
 import org.dspace.core.ConfigurationManager;
+import org.dspace.event.OutboxWorker;
 import org.dspace.storage.rdbms.DatabaseManager;
 import org.apache.log4j.Logger;
 
@@ -147,6 +148,9 @@ public class DSpaceContextListener implements ServletContextListener
 
         try
         {
+            // Stop the event outbox workers, which use the database pool
+            OutboxWorker.shutdown();
+
             // Remove the database pool
             DatabaseManager.shutdown();
 
@@ -0,0 +1,212 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.authorize;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.dspace.content.DSpaceObject;
+import org.dspace.eperson.EPerson;
+
+/**
+ * Per-Context cache of the decisions taken by the {@link AuthorizeManager}.
+ * <p/>
+ * A decision is keyed by the object type and id, the action, the inheritance
+ * flag, the current eperson and the special groups of the context, so a
+ * change of user inside the same context never reuses a decision taken for
+ * somebody else. The whole cache is invalidated when a policy is changed
+ * through the AuthorizeManager or a {@link ResourcePolicy}, and when a content
+ * event (group membership, item installation, move...) is added to the
+ * context. Changes made in other contexts are not seen: as the context
+ * object cache, this cache lives only as long as a request or a script
+ * transaction.
+ * <p/>
+ * The cache size is bounded by <code>core.authorization.cache.size</code> in
+ * dspace.cfg (default 1000 decisions, 0 disables the cache), the least
+ * recently used decisions are evicted first. A Context is not thread-safe,
+ * neither is this class; the global counters are.
+ */
+public class AuthorizationCache
+{
+    /** Counters for all the contexts of this JVM */
+    private static final AtomicLong totalHits = new AtomicLong();
+
+    private static final AtomicLong totalMisses = new AtomicLong();
+
+    private final int maxSize;
+
+    private final Map<String, Boolean> decisions;
+
+    private long hits = 0;
+
+    private long misses = 0;
+
+    private long invalidations = 0;
+
+    /**
+     * @param maxSize
+     *            the maximum number of decisions kept, 0 or less disables
+     *            the cache
+     */
+    public AuthorizationCache(final int maxSize)
+    {
+        this.maxSize = maxSize;
+        this.decisions = new LinkedHashMap<String, Boolean>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest)
+            {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * @return true if decisions are cached
+     */
+    public boolean isEnabled()
+    {
+        return maxSize > 0;
+    }
+
+    /**
+     * Look up a decision.
+     *
+     * @return the cached decision or <code>null</code> if it is unknown
+     */
+    public Boolean get(DSpaceObject o, int action, EPerson e,
+            boolean useInheritance, List<Integer> specialGroups)
+    {
+        if (!isEnabled())
+        {
+            return null;
+        }
+        Boolean decision = decisions.get(key(o, action, e, useInheritance, specialGroups));
+        if (decision != null)
+        {
+            hits++;
+            totalHits.incrementAndGet();
+        }
+        else
+        {
+            misses++;
+            totalMisses.incrementAndGet();
+        }
+        return decision;
+    }
+
+    /**
+     * Remember a decision.
+     */
+    public void put(DSpaceObject o, int action, EPerson e,
+            boolean useInheritance, List<Integer> specialGroups, boolean decision)
+    {
+        if (isEnabled())
+        {
+            decisions.put(key(o, action, e, useInheritance, specialGroups),
+                    Boolean.valueOf(decision));
+        }
+    }
+
+    /**
+     * Forget all the decisions, to be called when policies, group
+     * memberships or the content structure change.
+     */
+    public void invalidate()
+    {
+        if (!decisions.isEmpty())
+        {
+            decisions.clear();
+            invalidations++;
+        }
+    }
+
+    private static String key(DSpaceObject o, int action, EPerson e,
+            boolean useInheritance, List<Integer> specialGroups)
+    {
+        StringBuilder key = new StringBuilder(32);
+        key.append(o.getType()).append(':').append(o.getID()).append(':')
+                .append(action).append(useInheritance ? ":i:" : ":n:")
+                .append(e == null ? 0 : e.getID());
+        if (specialGroups != null && !specialGroups.isEmpty())
+        {
+            key.append(':').append(specialGroups);
+        }
+        return key.toString();
+    }
+
+    /**
+     * @return the number of cached decisions
+     */
+    public int size()
+    {
+        return decisions.size();
+    }
+
+    public long getHits()
+    {
+        return hits;
+    }
+
+    public long getMisses()
+    {
+        return misses;
+    }
+
+    /**
+     * @return the number of times the decisions were discarded
+     */
+    public long getInvalidations()
+    {
+        return invalidations;
+    }
+
+    /**
+     * @return the share of the lookups answered by this cache, between 0 and
+     *         1
+     */
+    public double getHitRatio()
+    {
+        return ratio(hits, misses);
+    }
+
+    /**
+     * @return the share of the lookups answered by the caches of all the
+     *         contexts since the JVM started, between 0 and 1
+     */
+    public static double getTotalHitRatio()
+    {
+        return ratio(totalHits.get(), totalMisses.get());
+    }
+
+    public static long getTotalHits()
+    {
+        return totalHits.get();
+    }
+
+    public static long getTotalMisses()
+    {
+        return totalMisses.get();
+    }
+
+    private static double ratio(long hits, long misses)
+    {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "size=" + size() + ", hits=" + hits + ", misses=" + misses
+                + ", invalidations=" + invalidations + ", hitRatio="
+                + String.format("%.2f", getHitRatio());
+    }
+}
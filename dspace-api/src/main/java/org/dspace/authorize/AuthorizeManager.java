@@ -9,8 +9,13 @@ package org.dspace.authorize;
 
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.dspace.content.*;
 import org.dspace.core.Constants;
@@ -39,6 +44,9 @@ import org.dspace.workflow.WorkflowItem;
  */
 public class AuthorizeManager
 {
+    /** Maximum number of ids in the IN clause of the bulk queries */
+    private static final int BULK_QUERY_SIZE = 500;
+
     /**
      * Utility method, checks that the current user of the given context can
      * perform all of the specified actions on the given object. An
@@ -225,28 +233,148 @@ public class AuthorizeManager
     public static boolean authorizeActionBoolean(Context c, DSpaceObject o,
                                                  int a, boolean useInheritance) throws SQLException
     {
-        boolean isAuthorized = true;
+        // no exception is built for the denials, this is the fast path
+        return authorize(c, o, a, c.getCurrentUser(), useInheritance);
+    }
 
-        if (o == null)
+    /**
+     * Bulk version of {@link #authorizeActionBoolean(Context, DSpaceObject, int)}
+     * for listings: the policies of all the objects are loaded with one query
+     * per object type (per 500 objects) and the group memberships of the
+     * current user are resolved once. The decisions are also stored in the
+     * {@link AuthorizationCache} of the context, so that later single checks
+     * on the same objects are free.
+     * <p/>
+     * The objects granted by a policy, and all the objects for an anonymous
+     * user, are decided without further queries; the others (a logged-in user
+     * may still be the administrator of a parent object) and those only
+     * granted by a custom policy of an item that may be in the workflow fall
+     * back to the single object check.
+     *
+     * @param c
+     *         DSpace context, containing current user
+     * @param objects
+     *         the objects to check, <code>null</code> elements are never
+     *         authorized
+     * @param action
+     *         action being attempted, from
+     *         <code>org.dspace.core.Constants</code>
+     * @return a bitmap in which the bit <code>i</code> is set if the current
+     *         user is authorized to perform the action on the i-th object
+     * @throws SQLException
+     *         if there's a database problem
+     */
+    public static BitSet authorizeActionBitmap(Context c,
+            List<? extends DSpaceObject> objects, int action) throws SQLException
+    {
+        BitSet authorized = new BitSet(objects.size());
+        if (objects.isEmpty())
         {
-            return false;
+            return authorized;
+        }
+        if (c.ignoreAuthorization())
+        {
+            for (int i = 0; i < objects.size(); i++)
+            {
+                authorized.set(i, objects.get(i) != null);
+            }
+            return authorized;
         }
 
-        try
+        EPerson e = c.getCurrentUser();
+        if (e != null && isAdmin(c))
+        {
+            for (int i = 0; i < objects.size(); i++)
+            {
+                authorized.set(i, objects.get(i) != null);
+            }
+            return authorized;
+        }
+
+        AuthorizationCache cache = c.getAuthorizationCache();
+        List<Integer> specialGroups = c.getSpecialGroupIDs();
+        List<DSpaceObject> unknown = new ArrayList<DSpaceObject>();
+        List<Integer> positions = new ArrayList<Integer>();
+        for (int i = 0; i < objects.size(); i++)
         {
-            authorizeAction(c, o, a, useInheritance);
-        } catch (AuthorizeException e)
+            DSpaceObject o = objects.get(i);
+            if (o == null)
+            {
+                continue;
+            }
+            Boolean cached = cache.get(o, action, e, true, specialGroups);
+            if (cached != null)
+            {
+                authorized.set(i, cached.booleanValue());
+            }
+            else
+            {
+                unknown.add(o);
+                positions.add(Integer.valueOf(i));
+            }
+        }
+        if (unknown.isEmpty())
         {
-            isAuthorized = false;
+            return authorized;
         }
 
-        return isAuthorized;
+        List<List<ResourcePolicy>> policies = getPoliciesActionFilter(c, unknown, action);
+        Set<Integer> groupIDs = Group.allMemberGroupIDs(c, e);
+        int userid = e == null ? 0 : e.getID();
+        for (int i = 0; i < unknown.size(); i++)
+        {
+            DSpaceObject o = unknown.get(i);
+            boolean granted = false;
+            boolean grantedByCustom = false;
+            for (ResourcePolicy rp : policies.get(i))
+            {
+                if (!rp.isDateValid())
+                {
+                    continue;
+                }
+                if ((rp.getEPersonID() != -1 && rp.getEPersonID() == userid)
+                        || (rp.getGroupID() != -1 && groupIDs.contains(Integer.valueOf(rp.getGroupID()))))
+                {
+                    if (ResourcePolicy.TYPE_CUSTOM.equals(rp.getRpType()))
+                    {
+                        grantedByCustom = true;
+                    }
+                    else
+                    {
+                        granted = true;
+                        break;
+                    }
+                }
+            }
+
+            // custom policies are ignored for the objects not yet
+            // installed, see authorize()
+            if (!granted && grantedByCustom && o instanceof Item
+                    && (((Item) o).isArchived() || ((Item) o).isWithdrawn()))
+            {
+                granted = true;
+            }
+
+            boolean decision;
+            if (granted || (e == null && !grantedByCustom))
+            {
+                decision = granted;
+                cache.put(o, action, e, true, specialGroups, decision);
+            }
+            else
+            {
+                decision = authorize(c, o, action, e, true);
+            }
+            authorized.set(positions.get(i).intValue(), decision);
+        }
+        return authorized;
     }
 
     /**
      * Check to see if the given user can perform the given action on the given
      * object. Always returns true if the ignore authorization flat is set in
-     * the current context.
+     * the current context. The decisions are remembered in the
+     * {@link AuthorizationCache} of the context.
      *
      * @param c
      *         current context. User is irrelevant; "ignore authorization"
@@ -280,6 +408,22 @@ public class AuthorizeManager
             return true;
         }
 
+        AuthorizationCache cache = c.getAuthorizationCache();
+        List<Integer> specialGroups = c.getSpecialGroupIDs();
+        Boolean cached = cache.get(o, action, e, useInheritance, specialGroups);
+        if (cached != null)
+        {
+            return cached.booleanValue();
+        }
+
+        boolean authorized = authorizeUncached(c, o, action, e, useInheritance);
+        cache.put(o, action, e, useInheritance, specialGroups, authorized);
+        return authorized;
+    }
+
+    private static boolean authorizeUncached(Context c, DSpaceObject o,
+            int action, EPerson e, boolean useInheritance) throws SQLException
+    {
         // is eperson set? if not, userid = 0 (anonymous)
         int userid = 0;
         if (e != null)
@@ -534,6 +678,7 @@ public class AuthorizeManager
         rp.setRpType(type);
 
         rp.update();
+        c.getAuthorizationCache().invalidate();
 
         c.turnOffAuthorisationSystem();
         o.updateLastModified();
@@ -591,7 +736,8 @@ public class AuthorizeManager
         rp.setRpType(type);
 
         rp.update();
-        
+        c.getAuthorizationCache().invalidate();
+
         c.turnOffAuthorisationSystem();
         o.updateLastModified();
         c.restoreAuthSystemState();
@@ -790,6 +936,95 @@ public class AuthorizeManager
         return policies;
     }
 
+    /**
+     * Return the policies of several objects that match a given action, with
+     * one query per object type for each block of 500 objects.
+     *
+     * @param c
+     *         context
+     * @param objects
+     *         DSpaceObjects policies relate to
+     * @param actionID
+     *         action (defined in class Constants)
+     * @return for each object, in the same order, the list of its policies
+     * @throws SQLException
+     *         if there's a database problem
+     */
+    public static List<List<ResourcePolicy>> getPoliciesActionFilter(Context c,
+            List<? extends DSpaceObject> objects, int actionID) throws SQLException
+    {
+        // positions of each object in the list, by type and id
+        Map<Integer, Map<Integer, List<Integer>>> byType = new HashMap<Integer, Map<Integer, List<Integer>>>();
+        List<List<ResourcePolicy>> policies = new ArrayList<List<ResourcePolicy>>(objects.size());
+        for (int i = 0; i < objects.size(); i++)
+        {
+            DSpaceObject o = objects.get(i);
+            policies.add(new ArrayList<ResourcePolicy>());
+            Map<Integer, List<Integer>> ids = byType.get(o.getType());
+            if (ids == null)
+            {
+                ids = new LinkedHashMap<Integer, List<Integer>>();
+                byType.put(o.getType(), ids);
+            }
+            List<Integer> positions = ids.get(o.getID());
+            if (positions == null)
+            {
+                positions = new ArrayList<Integer>(1);
+                ids.put(o.getID(), positions);
+            }
+            positions.add(Integer.valueOf(i));
+        }
+
+        for (Map.Entry<Integer, Map<Integer, List<Integer>>> type : byType.entrySet())
+        {
+            List<Integer> ids = new ArrayList<Integer>(type.getValue().keySet());
+            for (int start = 0; start < ids.size(); start += BULK_QUERY_SIZE)
+            {
+                List<Integer> block = ids.subList(start, Math.min(ids.size(), start + BULK_QUERY_SIZE));
+                StringBuilder query = new StringBuilder("SELECT * FROM resourcepolicy WHERE action_id= ? "
+                        + "AND resource_type_id= ? AND resource_id IN (");
+                Object[] parameters = new Object[block.size() + 2];
+                parameters[0] = actionID;
+                parameters[1] = type.getKey();
+                for (int i = 0; i < block.size(); i++)
+                {
+                    query.append(i == 0 ? "?" : ", ?");
+                    parameters[i + 2] = block.get(i);
+                }
+                query.append(")");
+
+                TableRowIterator tri = DatabaseManager.queryTable(c, "resourcepolicy",
+                        query.toString(), parameters);
+                try
+                {
+                    while (tri.hasNext())
+                    {
+                        TableRow row = tri.next();
+
+                        ResourcePolicy policy = (ResourcePolicy) c.fromCache(
+                                ResourcePolicy.class, row.getIntColumn("policy_id"));
+                        if (policy == null)
+                        {
+                            policy = new ResourcePolicy(c, row);
+                        }
+                        for (Integer position : type.getValue().get(row.getIntColumn("resource_id")))
+                        {
+                            policies.get(position.intValue()).add(policy);
+                        }
+                    }
+                }
+                finally
+                {
+                    if (tri != null)
+                    {
+                        tri.close();
+                    }
+                }
+            }
+        }
+        return policies;
+    }
+
     /**
      * Add policies to an object to match those from a previous object
      *
@@ -857,6 +1092,7 @@ public class AuthorizeManager
             // and write out new policy
             drp.update();
         }
+        c.getAuthorizationCache().invalidate();
 
         c.turnOffAuthorisationSystem();
         dest.updateLastModified();
@@ -880,7 +1116,8 @@ public class AuthorizeManager
         DatabaseManager.updateQuery(c, "DELETE FROM resourcepolicy WHERE "
                 + "resource_type_id= ? AND resource_id= ? ",
                 o.getType(), o.getID());
-        
+        c.getAuthorizationCache().invalidate();
+
         c.turnOffAuthorisationSystem();
         o.updateLastModified();
         c.restoreAuthSystemState();
@@ -902,6 +1139,7 @@ public class AuthorizeManager
         DatabaseManager.updateQuery(c, "DELETE FROM resourcepolicy WHERE "
                 + "resource_type_id= ? AND resource_id= ? AND (rptype <> ? OR rptype IS NULL)",
                 o.getType(), o.getID(), type);
+        c.getAuthorizationCache().invalidate();
     }
 
 
@@ -923,6 +1161,7 @@ public class AuthorizeManager
         DatabaseManager.updateQuery(c, "DELETE FROM resourcepolicy WHERE "
                 + "resource_type_id= ? AND resource_id= ? AND rptype=? ",
                 o.getType(), o.getID(), type);
+        c.getAuthorizationCache().invalidate();
     }
     
 	/**
@@ -975,6 +1214,7 @@ public class AuthorizeManager
                     "DELETE FROM resourcepolicy WHERE resource_type_id= ? AND " +
                             "resource_id= ? AND action_id= ? ",
                     dso.getType(), dso.getID(), actionID);
+            context.getAuthorizationCache().invalidate();
         }
         
         context.turnOffAuthorisationSystem();
@@ -998,6 +1238,7 @@ public class AuthorizeManager
     {
         DatabaseManager.updateQuery(c, "DELETE FROM resourcepolicy WHERE "
                 + "epersongroup_id= ? ", groupID);
+        c.getAuthorizationCache().invalidate();
     }
 
     /**
@@ -1019,7 +1260,8 @@ public class AuthorizeManager
         DatabaseManager.updateQuery(c, "DELETE FROM resourcepolicy WHERE "
                 + "resource_type_id= ? AND resource_id= ? AND epersongroup_id= ? ",
                 o.getType(), o.getID(), g.getID());
-        
+        c.getAuthorizationCache().invalidate();
+
         c.turnOffAuthorisationSystem();
         o.updateLastModified();
         c.restoreAuthSystemState();
@@ -1044,7 +1286,8 @@ public class AuthorizeManager
         DatabaseManager.updateQuery(c, "DELETE FROM resourcepolicy WHERE "
                 + "resource_type_id= ? AND resource_id= ? AND eperson_id= ? ",
                 o.getType(), o.getID(), e.getID());
-        
+        c.getAuthorizationCache().invalidate();
+
         c.turnOffAuthorisationSystem();
         o.updateLastModified();
         c.restoreAuthSystemState();
@@ -7,7 +7,9 @@
  */
 package org.dspace.checker;
 
+import java.util.Collections;
 import java.util.Date;
+import java.util.Map;
 
 /**
  * <p>
@@ -41,6 +43,9 @@ public final class BitstreamInfo
     /** the check sum value calculated by the algorithm. */
     private String calculatedChecksum;
 
+    /** checksums calculated by the additional algorithms, by algorithm. */
+    private Map<String, String> additionalChecksums = Collections.emptyMap();
+
     /** should be processed or not? */
     private boolean toBeProcessed;
 
@@ -371,6 +376,28 @@ public final class BitstreamInfo
         this.calculatedChecksum = calculatedChecksum;
     }
 
+    /**
+     * additionalChecksums accessor.
+     * 
+     * @return the checksums calculated by the additional algorithms
+     *         (checker.additional-algorithms), by algorithm.
+     */
+    public Map<String, String> getAdditionalChecksums()
+    {
+        return additionalChecksums;
+    }
+
+    /**
+     * additionalChecksums accessor.
+     * 
+     * @param additionalChecksums
+     *            the checksums to set, by algorithm.
+     */
+    public void setAdditionalChecksums(Map<String, String> additionalChecksums)
+    {
+        this.additionalChecksums = additionalChecksums;
+    }
+
     /**
      * infoFound accessor.
      * 
@@ -14,7 +14,9 @@ import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.log4j.Logger;
 import org.dspace.content.Bitstream;
@@ -193,18 +195,7 @@ public final class BitstreamInfoDAO extends DAOSupport
         {
             conn = DatabaseManager.getConnection();
             stmt = conn.prepareStatement(UPDATE_CHECKSUM);
-            stmt.setString(1, (info.getCalculatedChecksum() != null) ? info
-                    .getCalculatedChecksum() : "");
-            stmt.setString(2, info.getStoredChecksum());
-            stmt.setBoolean(3, ChecksumCheckResults.CHECKSUM_MATCH.equals(info
-                    .getChecksumCheckResult()));
-            stmt.setBoolean(4, info.getToBeProcessed());
-            stmt.setTimestamp(5, new Timestamp(info.getProcessStartDate()
-                    .getTime()));
-            stmt.setTimestamp(6, new Timestamp(info.getProcessEndDate()
-                    .getTime()));
-            stmt.setString(7, info.getChecksumCheckResult());
-            stmt.setInt(8, info.getBitstreamId());
+            setUpdateParameters(stmt, info);
             stmt.executeUpdate();
             conn.commit();
         }
@@ -219,6 +210,62 @@ public final class BitstreamInfoDAO extends DAOSupport
         }
     }
 
+    /**
+     * Updates most_recent_checksum with the results of several bitstreams, in
+     * a single batch and transaction.
+     * 
+     * @param infos
+     *            The BitstreamInfos to update.
+     */
+    public void update(List<BitstreamInfo> infos)
+    {
+        if (infos.isEmpty())
+        {
+            return;
+        }
+
+        Connection conn = null;
+        PreparedStatement stmt = null;
+
+        try
+        {
+            conn = DatabaseManager.getConnection();
+            stmt = conn.prepareStatement(UPDATE_CHECKSUM);
+            for (BitstreamInfo info : infos)
+            {
+                setUpdateParameters(stmt, info);
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+            conn.commit();
+        }
+        catch (SQLException e)
+        {
+            LOG.error("Problem updating checksum rows. " + e.getMessage(), e);
+            throw new IllegalStateException("Problem updating checksum rows. " + e.getMessage(), e);
+        }
+        finally
+        {
+            cleanup(stmt, conn);
+        }
+    }
+
+    private void setUpdateParameters(PreparedStatement stmt, BitstreamInfo info) throws SQLException
+    {
+        stmt.setString(1, (info.getCalculatedChecksum() != null) ? info
+                .getCalculatedChecksum() : "");
+        stmt.setString(2, info.getStoredChecksum());
+        stmt.setBoolean(3, ChecksumCheckResults.CHECKSUM_MATCH.equals(info
+                .getChecksumCheckResult()));
+        stmt.setBoolean(4, info.getToBeProcessed());
+        stmt.setTimestamp(5, new Timestamp(info.getProcessStartDate()
+                .getTime()));
+        stmt.setTimestamp(6, new Timestamp(info.getProcessEndDate()
+                .getTime()));
+        stmt.setString(7, info.getChecksumCheckResult());
+        stmt.setInt(8, info.getBitstreamId());
+    }
+
     /**
      * Find a bitstream by its id.
      * 
@@ -480,6 +527,120 @@ public final class BitstreamInfoDAO extends DAOSupport
         }
     }
 
+    /**
+     * Get a page of the bitstreams to process, in order of last processing
+     * end date. The page starts after the last bitstream of the previous
+     * page, so that the bitstreams being checked are not returned again
+     * before their results are written.
+     * 
+     * @param lessThanDate
+     *            only bitstreams last processed before this date, or null
+     * @param afterDate
+     *            last processing end date of the last bitstream of the
+     *            previous page, or null for the first page
+     * @param afterId
+     *            id of the last bitstream of the previous page
+     * @param limit
+     *            size of the page
+     * @return the bitstream ids and their last processing end dates
+     */
+    public Map<Integer, Timestamp> getOldestBitstreams(Timestamp lessThanDate, Timestamp afterDate,
+            int afterId, int limit)
+    {
+        Connection conn = null;
+        PreparedStatement prepStmt = null;
+        ResultSet rs = null;
+
+        String query = "select bitstream_id, last_process_end_date from most_recent_checksum "
+                + "where to_be_processed = " + (DatabaseManager.isOracle() ? "1" : "true")
+                + (lessThanDate != null ? " and last_process_start_date < ?" : "")
+                + (afterDate != null ? " and (last_process_end_date > ? "
+                        + "or (last_process_end_date = ? and bitstream_id > ?))" : "")
+                + " order by last_process_end_date, bitstream_id";
+        if (DatabaseManager.isOracle())
+        {
+            query = "SELECT * FROM (" + query + ") WHERE rownum <= ?";
+        }
+        else
+        {
+            query += " LIMIT ?";
+        }
+
+        try
+        {
+            conn = DatabaseManager.getConnection();
+            prepStmt = conn.prepareStatement(query);
+            int index = 1;
+            if (lessThanDate != null)
+            {
+                prepStmt.setTimestamp(index++, lessThanDate);
+            }
+            if (afterDate != null)
+            {
+                prepStmt.setTimestamp(index++, afterDate);
+                prepStmt.setTimestamp(index++, afterDate);
+                prepStmt.setInt(index++, afterId);
+            }
+            prepStmt.setInt(index, limit);
+            rs = prepStmt.executeQuery();
+
+            Map<Integer, Timestamp> ids = new LinkedHashMap<Integer, Timestamp>();
+            while (rs.next())
+            {
+                ids.put(Integer.valueOf(rs.getInt(1)), rs.getTimestamp(2));
+            }
+            return ids;
+        }
+        catch (SQLException e)
+        {
+            LOG.error("Problem with get oldest bitstreams " + e.getMessage(), e);
+            throw new IllegalStateException("Oldest bitstreams error. " + e.getMessage(), e);
+        }
+        finally
+        {
+            cleanup(prepStmt, conn, rs);
+        }
+    }
+
+    /**
+     * Get the total size of the bitstreams left to process.
+     * 
+     * @param lessThanDate
+     *            only bitstreams last processed before this date, or null
+     * @return the number of bytes
+     */
+    public long getPendingSize(Timestamp lessThanDate)
+    {
+        Connection conn = null;
+        PreparedStatement prepStmt = null;
+        ResultSet rs = null;
+
+        try
+        {
+            conn = DatabaseManager.getConnection();
+            prepStmt = conn.prepareStatement("select sum(bitstream.size_bytes) "
+                    + "from most_recent_checksum, bitstream "
+                    + "where most_recent_checksum.bitstream_id = bitstream.bitstream_id "
+                    + "and to_be_processed = " + (DatabaseManager.isOracle() ? "1" : "true")
+                    + (lessThanDate != null ? " and last_process_start_date < ?" : ""));
+            if (lessThanDate != null)
+            {
+                prepStmt.setTimestamp(1, lessThanDate);
+            }
+            rs = prepStmt.executeQuery();
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+        catch (SQLException e)
+        {
+            LOG.error("Problem with get pending size " + e.getMessage(), e);
+            throw new IllegalStateException("Pending size error. " + e.getMessage(), e);
+        }
+        finally
+        {
+            cleanup(prepStmt, conn, rs);
+        }
+    }
+
     /**
      * Get the bitstream ids for a given Item
      * 
@@ -9,13 +9,26 @@ package org.dspace.checker;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.security.DigestInputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
-
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
+import org.dspace.core.ConfigurationManager;
 import org.dspace.core.Context;
 import org.dspace.core.Utils;
 
@@ -26,6 +39,14 @@ import org.dspace.core.Utils;
  * against the last calculated checksum for that bitstream.
  * </p>
  * 
+ * <p>
+ * With several threads, each worker takes bitstream ids from the (threadsafe)
+ * dispatcher and writes its results in batches. The bytes read by all the
+ * workers can be limited by an {@link IOBudget}. The checksums of the
+ * additional algorithms (<code>checker.additional-algorithms</code>) are
+ * calculated in the same pass over the file.
+ * </p>
+ * 
  * @author Jim Downing
  * @author Grace Carpenter
  * @author Nathan Sarr
@@ -42,8 +63,8 @@ public final class CheckerCommand
     /** Default digest algorithm (MD5). */
     private static final String DEFAULT_DIGEST_ALGORITHM = "MD5";
 
-    /** 4 Meg byte array for reading file. */
-    private int BYTE_ARRAY_SIZE = 4 * 1024;
+    /** 64 KB byte array for reading file. */
+    private int BYTE_ARRAY_SIZE = 64 * 1024;
 
     /** BitstreamInfoDAO dependency. */
     private BitstreamInfoDAO bitstreamInfoDAO = null;
@@ -72,6 +93,36 @@ public final class CheckerCommand
     /** Report all processing */
     private boolean reportVerbose = false;
 
+    /** Number of workers checking bitstreams. */
+    private int threads = 1;
+
+    /** Limit of the bytes read per second, null for no limit. */
+    private IOBudget ioBudget = null;
+
+    /** Algorithms calculated in addition to the one of each bitstream. */
+    private List<String> additionalAlgorithms = new ArrayList<String>();
+
+    /** Number of results written at once by each worker. */
+    private int batchSize = ConfigurationManager.getIntProperty("checker.batch-size", 100);
+
+    /** Milliseconds between two progress reports. */
+    private long progressInterval = ConfigurationManager.getLongProperty("checker.progress-interval", 60) * 1000;
+
+    /** Bytes left to check when the run started, -1 if unknown. */
+    private long expectedBytes = -1;
+
+    /** Time the current run started. */
+    private long started;
+
+    /** Time of the next progress report. */
+    private final AtomicLong nextReport = new AtomicLong();
+
+    /** Number of bitstreams checked by the current run. */
+    private final AtomicLong checkedCount = new AtomicLong();
+
+    /** Number of bytes read by the current run. */
+    private final AtomicLong checkedBytes = new AtomicLong();
+
     /**
      * Default constructor uses DSpace plugin manager to construct dependencies.
      */
@@ -80,6 +131,23 @@ public final class CheckerCommand
         bitstreamInfoDAO = new BitstreamInfoDAO();
         bitstreamDAO = new BitstreamDAO();
         checksumHistoryDAO = new ChecksumHistoryDAO();
+
+        String algorithms = ConfigurationManager.getProperty("checker.additional-algorithms");
+        if (StringUtils.isNotBlank(algorithms))
+        {
+            for (String algorithm : algorithms.trim().split("\\s*,\\s*"))
+            {
+                try
+                {
+                    MessageDigest.getInstance(algorithm);
+                    additionalAlgorithms.add(algorithm);
+                }
+                catch (NoSuchAlgorithmException e)
+                {
+                    LOG.error("Ignoring the invalid digest algorithm " + algorithm, e);
+                }
+            }
+        }
     }
 
     /**
@@ -112,32 +180,198 @@ public final class CheckerCommand
         // bitstream table - this always done.
         bitstreamInfoDAO.updateMissingBitstreams();
 
-        int id = dispatcher.next();
+        started = System.currentTimeMillis();
+        nextReport.set(started + progressInterval);
+        checkedCount.set(0);
+        checkedBytes.set(0);
 
-        while (id != BitstreamDispatcher.SENTINEL)
+        if (threads > 1)
+        {
+            processParallel();
+        }
+        else
         {
-            LOG.debug("Processing bitstream id = " + id);
-            BitstreamInfo info = checkBitstream(context, id);
+            int id = dispatcher.next();
 
-            if (reportVerbose
-                    || !ChecksumCheckResults.CHECKSUM_MATCH.equals(info.getChecksumCheckResult()))
+            while (id != BitstreamDispatcher.SENTINEL)
             {
-                collector.collect(info);
+                LOG.debug("Processing bitstream id = " + id);
+                BitstreamInfo info = checkBitstream(context, id, null);
+
+                if (reportVerbose
+                        || !ChecksumCheckResults.CHECKSUM_MATCH.equals(info.getChecksumCheckResult()))
+                {
+                    collector.collect(info);
+                }
+
+                reportProgress(false);
+                id = dispatcher.next();
             }
+        }
 
-            id = dispatcher.next();
+        reportProgress(true);
+    }
+
+    /**
+     * Check the bitstreams with several workers, each with its own context.
+     */
+    private void processParallel()
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try
+        {
+            List<Future<Void>> workers = new ArrayList<Future<Void>>(threads);
+            for (int i = 0; i < threads; i++)
+            {
+                workers.add(executor.submit(new Callable<Void>()
+                {
+                    public Void call() throws Exception
+                    {
+                        work();
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> worker : workers)
+            {
+                worker.get();
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Checker interrupted", e);
+        }
+        catch (ExecutionException e)
+        {
+            LOG.error("Checker worker failed. " + e.getCause().getMessage(), e.getCause());
+            throw new IllegalStateException("Checker worker failed. " + e.getCause().getMessage(), e.getCause());
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Check bitstreams until the dispatcher has no more, writing the results
+     * in batches.
+     */
+    private void work() throws SQLException
+    {
+        Context context = new Context();
+        List<BitstreamInfo> results = new ArrayList<BitstreamInfo>(batchSize);
+        try
+        {
+            int id = dispatcher.next();
+
+            while (id != BitstreamDispatcher.SENTINEL)
+            {
+                LOG.debug("Processing bitstream id = " + id);
+                BitstreamInfo info = checkBitstream(context, id, results);
+
+                if (reportVerbose
+                        || !ChecksumCheckResults.CHECKSUM_MATCH.equals(info.getChecksumCheckResult()))
+                {
+                    synchronized (collector)
+                    {
+                        collector.collect(info);
+                    }
+                }
+
+                if (results.size() >= batchSize)
+                {
+                    write(results);
+                    context.clearCache();
+                }
+                reportProgress(false);
+                id = dispatcher.next();
+            }
+        }
+        finally
+        {
+            write(results);
+            context.abort();
         }
     }
 
+    /**
+     * Record new checksums and comparison results in db.
+     */
+    private void write(List<BitstreamInfo> results)
+    {
+        bitstreamInfoDAO.update(results);
+        checksumHistoryDAO.insertHistory(results);
+        results.clear();
+    }
+
+    /**
+     * Log the number of bitstreams and bytes checked, the throughput and the
+     * estimated time left, if the progress interval has elapsed.
+     * 
+     * @param last
+     *            true to log the final report
+     */
+    private void reportProgress(boolean last)
+    {
+        long now = System.currentTimeMillis();
+        long next = nextReport.get();
+        if (!last && (now < next || !nextReport.compareAndSet(next, now + progressInterval)))
+        {
+            return;
+        }
+        LOG.info(getProgress());
+    }
+
+    /**
+     * Get the progress of the current run.
+     * 
+     * @return the number of bitstreams and megabytes checked, the throughput
+     *         in MB/s and the estimated time left when it is known.
+     */
+    public String getProgress()
+    {
+        long elapsed = Math.max(1, System.currentTimeMillis() - started);
+        long bytes = checkedBytes.get();
+        double rate = bytes / 1048576.0 * 1000 / elapsed;
+
+        // time left at the current throughput, bounded by the end of a
+        // limited duration run
+        long eta = -1;
+        if (expectedBytes >= 0 && bytes > 0)
+        {
+            eta = (long) (Math.max(0, expectedBytes - bytes) * (double) elapsed / bytes);
+        }
+        if (dispatcher instanceof LimitedDurationDispatcher)
+        {
+            long left = Math.max(0, ((LimitedDurationDispatcher) dispatcher).getEndTime().getTime()
+                    - System.currentTimeMillis());
+            eta = eta < 0 ? left : Math.min(eta, left);
+        }
+
+        String progress = String.format(Locale.ENGLISH, "Checked %d bitstreams, %.1f MB in %ds (%.2f MB/s)",
+                checkedCount.get(), bytes / 1048576.0, elapsed / 1000, rate);
+        if (eta >= 0)
+        {
+            long seconds = eta / 1000;
+            progress += String.format(Locale.ENGLISH, ", ETA %dh%02dm%02ds", seconds / 3600,
+                    (seconds / 60) % 60, seconds % 60);
+        }
+        return progress;
+    }
+
     /**
      * Check a specified bitstream.
      * 
      * @param id
      *            the bitstream id
+     * @param results
+     *            the results to write in the next batch, or null to write
+     *            them now
      * 
      * @return the information about the bitstream and its checksum data
      */
-    private BitstreamInfo checkBitstream(Context context, final int id)
+    private BitstreamInfo checkBitstream(Context context, final int id, List<BitstreamInfo> results)
     {
         // get bitstream info from bitstream table
         BitstreamInfo info = bitstreamInfoDAO.findByBitstreamId(context, id);
@@ -164,25 +398,24 @@ public final class CheckerCommand
         else if (info.getDeleted())
         {
             // bitstream id is marked 'deleted' in bitstream table.
-            processDeletedBitstream(info);
+            processDeletedBitstream(info, results);
         }
         else
         {
-            processBitstream(info);
+            processBitstream(info, results);
         }
 
         return info;
     }
 
     /**
-     * Digest the stream and get the checksum value.
+     * Digest the stream and get the checksum values of the bitstream
+     * algorithm and of the additional algorithms, in one pass.
      * 
      * @param stream
-     *            InputStream to digest.
-     * @param algorithm
-     *            the algorithm to use when digesting.
-     * @todo Document the algorithm parameter
-     * @return digest
+     *            InputStream to digest, closed afterwards.
+     * @param info
+     *            the bitstream, receiving the calculated checksums.
      * 
      * @throws java.security.NoSuchAlgorithmException
      *             if the requested algorithm is not provided by the system
@@ -190,22 +423,54 @@ public final class CheckerCommand
      * @throws java.io.IOException
      *             If an exception arises whilst reading the stream
      */
-    private String digestStream(InputStream stream, String algorithm)
+    private void digestStream(InputStream stream, BitstreamInfo info)
             throws java.security.NoSuchAlgorithmException, java.io.IOException
     {
-        // create the digest stream
-        DigestInputStream dStream = new DigestInputStream(stream, MessageDigest
-                .getInstance(algorithm));
+        try
+        {
+            MessageDigest digest = MessageDigest.getInstance(info.getChecksumAlgorithm());
+            Map<String, MessageDigest> additional = new LinkedHashMap<String, MessageDigest>();
+            for (String algorithm : additionalAlgorithms)
+            {
+                if (!algorithm.equalsIgnoreCase(info.getChecksumAlgorithm()))
+                {
+                    additional.put(algorithm, MessageDigest.getInstance(algorithm));
+                }
+            }
 
-        byte[] bytes = new byte[BYTE_ARRAY_SIZE];
+            byte[] bytes = new byte[BYTE_ARRAY_SIZE];
 
-        // make sure all the data is read by the digester
-        int bytesRead = -1;
-        do {
-            bytesRead = dStream.read(bytes, 0, BYTE_ARRAY_SIZE);
-        } while (bytesRead != -1);
+            // make sure all the data is read by the digesters
+            int bytesRead = -1;
+            while ((bytesRead = stream.read(bytes, 0, BYTE_ARRAY_SIZE)) != -1)
+            {
+                digest.update(bytes, 0, bytesRead);
+                for (MessageDigest other : additional.values())
+                {
+                    other.update(bytes, 0, bytesRead);
+                }
+                checkedBytes.addAndGet(bytesRead);
+                if (ioBudget != null)
+                {
+                    ioBudget.acquire(bytesRead);
+                }
+            }
 
-        return Utils.toHex(dStream.getMessageDigest().digest());
+            info.setCalculatedChecksum(Utils.toHex(digest.digest()));
+            if (!additional.isEmpty())
+            {
+                Map<String, String> checksums = new LinkedHashMap<String, String>();
+                for (Map.Entry<String, MessageDigest> other : additional.entrySet())
+                {
+                    checksums.put(other.getKey(), Utils.toHex(other.getValue().digest()));
+                }
+                info.setAdditionalChecksums(Collections.unmodifiableMap(checksums));
+            }
+        }
+        finally
+        {
+            stream.close();
+        }
     }
 
     /**
@@ -242,8 +507,10 @@ public final class CheckerCommand
      * 
      * @param info
      *            a deleted bitstream.
+     * @param results
+     *            the results to write in the next batch, or null
      */
-    private void processDeletedBitstream(BitstreamInfo info)
+    private void processDeletedBitstream(BitstreamInfo info, List<BitstreamInfo> results)
     {
         info.setProcessStartDate(new Date());
         info
@@ -251,8 +518,25 @@ public final class CheckerCommand
         info.setProcessStartDate(new Date());
         info.setProcessEndDate(new Date());
         info.setToBeProcessed(false);
-        bitstreamInfoDAO.update(info);
-        checksumHistoryDAO.insertHistory(info);
+        record(info, results);
+    }
+
+    /**
+     * Record new checksum and comparison result in db, now or with the next
+     * batch.
+     */
+    private void record(BitstreamInfo info, List<BitstreamInfo> results)
+    {
+        checkedCount.incrementAndGet();
+        if (results == null)
+        {
+            bitstreamInfoDAO.update(info);
+            checksumHistoryDAO.insertHistory(info);
+        }
+        else
+        {
+            results.add(info);
+        }
     }
 
     /**
@@ -288,8 +572,10 @@ public final class CheckerCommand
      * 
      * @param info
      *            BitstreamInfo to handle
+     * @param results
+     *            the results to write in the next batch, or null
      */
-    private void processBitstream(BitstreamInfo info)
+    private void processBitstream(BitstreamInfo info, List<BitstreamInfo> results)
     {
         info.setProcessStartDate(new Date());
 
@@ -305,10 +591,7 @@ public final class CheckerCommand
 
             info.setBitstreamFound(true);
 
-            String checksum = digestStream(bitstream, info
-                    .getChecksumAlgorithm());
-
-            info.setCalculatedChecksum(checksum);
+            digestStream(bitstream, info);
 
             // compare new checksum to previous checksum
             info.setChecksumCheckResult(compareChecksums(info
@@ -346,8 +629,7 @@ public final class CheckerCommand
             info.setProcessEndDate(new Date());
 
             // record new checksum and comparison result in db
-            bitstreamInfoDAO.update(info);
-            checksumHistoryDAO.insertHistory(info);
+            record(info, results);
         }
     }
 
@@ -414,6 +696,39 @@ public final class CheckerCommand
         processStartDate = startDate == null ? null : new Date(startDate.getTime());
     }
 
+    /**
+     * Set the number of workers checking bitstreams.
+     * 
+     * @param threads
+     *            number of workers, 1 to check in the calling thread
+     */
+    public void setThreads(int threads)
+    {
+        this.threads = threads;
+    }
+
+    /**
+     * Set the limit of the bytes read per second by all the workers.
+     * 
+     * @param ioBudget
+     *            the budget, or null for no limit
+     */
+    public void setIOBudget(IOBudget ioBudget)
+    {
+        this.ioBudget = ioBudget;
+    }
+
+    /**
+     * Set the number of bytes to check, to estimate the time left.
+     * 
+     * @param expectedBytes
+     *            bytes to check, -1 if unknown
+     */
+    public void setExpectedBytes(long expectedBytes)
+    {
+        this.expectedBytes = expectedBytes;
+    }
+
     /**
      * Determine if any errors are reported
      * 
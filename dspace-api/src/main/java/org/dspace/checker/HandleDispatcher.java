@@ -36,7 +36,7 @@ public class HandleDispatcher implements BitstreamDispatcher
     private String handle = null;
 
     /** Has the type of object the handle refers to been determined. */
-    private boolean init = false;
+    private volatile boolean init = false;
 
     /** the delegate to dispatch to. */
     private ListDispatcher delegate = null;
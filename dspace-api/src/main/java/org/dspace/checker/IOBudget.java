@@ -0,0 +1,129 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.checker;
+
+import java.io.InterruptedIOException;
+
+/**
+ * <p>
+ * Number of bytes per second the checker may read from the assetstore,
+ * shared by all its workers. A reader asks for the bytes it has just read and
+ * is put to sleep when it goes over the budget, so that the checker can run
+ * during business hours without starving the other users of the storage.
+ * </p>
+ *
+ * <p>
+ * Implementations must be threadsafe, like the dispatchers.
+ * </p>
+ */
+public class IOBudget
+{
+    /** bytes per second, 0 or less for no limit */
+    private final long bytesPerSecond;
+
+    /** bytes which may be read without waiting, negative when in debt */
+    private double available;
+
+    /** last time available was updated, in nanoseconds */
+    private long last;
+
+    /**
+     * @param bytesPerSecond
+     *            the budget, 0 or less for no limit
+     */
+    public IOBudget(long bytesPerSecond)
+    {
+        this.bytesPerSecond = bytesPerSecond;
+        this.available = bytesPerSecond;
+        this.last = System.nanoTime();
+    }
+
+    /**
+     * Parse a number of bytes with an optional K, M or G suffix, e.g. "50M".
+     *
+     * @param size
+     *            the size to parse
+     * @return the number of bytes
+     * @throws NumberFormatException
+     *             if the size is not valid
+     */
+    public static long parseSize(String size)
+    {
+        String value = size.trim().toUpperCase();
+        long multiplier = 1;
+        if (value.endsWith("B"))
+        {
+            value = value.substring(0, value.length() - 1);
+        }
+        if (value.endsWith("K"))
+        {
+            multiplier = 1024L;
+        }
+        else if (value.endsWith("M"))
+        {
+            multiplier = 1024L * 1024L;
+        }
+        else if (value.endsWith("G"))
+        {
+            multiplier = 1024L * 1024L * 1024L;
+        }
+        if (multiplier > 1)
+        {
+            value = value.substring(0, value.length() - 1);
+        }
+        return Long.parseLong(value.trim()) * multiplier;
+    }
+
+    /**
+     * @return the budget in bytes per second, 0 or less for no limit
+     */
+    public long getBytesPerSecond()
+    {
+        return bytesPerSecond;
+    }
+
+    /**
+     * Account for bytes read, waiting until the budget allows them.
+     *
+     * @param bytes
+     *            number of bytes read
+     * @throws InterruptedIOException
+     *             if the thread is interrupted while waiting
+     */
+    public void acquire(int bytes) throws InterruptedIOException
+    {
+        if (bytesPerSecond <= 0 || bytes <= 0)
+        {
+            return;
+        }
+
+        long wait;
+        synchronized (this)
+        {
+            long now = System.nanoTime();
+            // the unused budget is kept for one second at most
+            available = Math.min(bytesPerSecond, available + (now - last) * bytesPerSecond / 1e9);
+            last = now;
+            available -= bytes;
+            wait = available < 0 ? (long) (-available * 1000 / bytesPerSecond) : 0;
+        }
+
+        if (wait > 0)
+        {
+            try
+            {
+                Thread.sleep(wait);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while throttling the checker");
+            }
+        }
+    }
+}
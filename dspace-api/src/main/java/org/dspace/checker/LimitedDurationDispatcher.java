@@ -63,6 +63,14 @@ public class LimitedDurationDispatcher implements BitstreamDispatcher
         end = endTime.getTime();
     }
 
+    /**
+     * @return when this dispatcher stops returning bitstream ids.
+     */
+    public Date getEndTime()
+    {
+        return new Date(end);
+    }
+
     /**
      * @see org.dspace.checker.BitstreamDispatcher#next()
      */
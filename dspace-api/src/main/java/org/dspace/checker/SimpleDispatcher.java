@@ -7,11 +7,20 @@
  */
 package org.dspace.checker;
 
+import java.sql.Timestamp;
 import java.util.Date;
+import java.util.Iterator;
+import java.util.Map;
 
 /**
  * An implementation of the selection strategy that selects bitstreams in the
  * order that they were last checked, looping endlessly.
+ * <p>
+ * The bitstreams are read by pages, each page starting after the last
+ * bitstream of the previous one: a bitstream handed out to a worker is not
+ * handed out again while it is being checked, even if its result is written
+ * later in a batch.
+ * </p>
  * 
  * @author Jim Downing
  * @author Grace Carpenter
@@ -20,6 +29,8 @@ import java.util.Date;
  */
 public class SimpleDispatcher implements BitstreamDispatcher
 {
+    /** Number of bitstreams read at once. */
+    private static final int PAGE_SIZE = 100;
 
     /**
      * Should this dispatcher keep on dispatching around the collection?
@@ -36,6 +47,15 @@ public class SimpleDispatcher implements BitstreamDispatcher
      */
     private BitstreamInfoDAO bitstreamInfoDAO;
 
+    /** Bitstreams of the current page not handed out yet. */
+    private Iterator<Map.Entry<Integer, Timestamp>> page = null;
+
+    /** Last processing end date of the last bitstream handed out. */
+    private Timestamp lastDate = null;
+
+    /** Id of the last bitstream handed out. */
+    private int lastId = SENTINEL;
+
     /**
      * Creates a new SimpleDispatcher.
      * 
@@ -65,18 +85,37 @@ public class SimpleDispatcher implements BitstreamDispatcher
      * @see org.dspace.checker.BitstreamDispatcher#next()
      */
     public synchronized int next()
+    {
+        if (page == null || !page.hasNext())
+        {
+            page = nextPage().entrySet().iterator();
+            if (!page.hasNext() && loopContinuously && lastDate != null)
+            {
+                // start a new loop through the bitstreams
+                lastDate = null;
+                page = nextPage().entrySet().iterator();
+            }
+            if (!page.hasNext())
+            {
+                return SENTINEL;
+            }
+        }
+
+        Map.Entry<Integer, Timestamp> next = page.next();
+        lastId = next.getKey().intValue();
+        lastDate = next.getValue();
+        return lastId;
+    }
+
+    private Map<Integer, Timestamp> nextPage()
     {
         // should process loop infinitely through the
         // bitstreams in most_recent_checksum table?
+        Timestamp lessThan = null;
         if (!loopContinuously && (processStartTime != null))
         {
-            return bitstreamInfoDAO.getOldestBitstream(new java.sql.Timestamp(
-                    processStartTime.getTime()));
+            lessThan = new Timestamp(processStartTime.getTime());
         }
-        else
-        {
-            return bitstreamInfoDAO.getOldestBitstream();
-        }
-
+        return bitstreamInfoDAO.getOldestBitstreams(lessThan, lastDate, lastId, PAGE_SIZE);
     }
 }
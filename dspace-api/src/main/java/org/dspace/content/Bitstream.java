@@ -589,6 +589,29 @@ public class Bitstream extends DSpaceObject
                 .getIntColumn("bitstream_id"));
     }
 
+    /**
+     * Retrieve a range of the contents of the bitstream, e.g. to answer an
+     * HTTP Range request.
+     *
+     * @param offset
+     *            position of the first byte to return
+     * @param length
+     *            number of bytes to return, or -1 for all the bytes up to the
+     *            end of the bitstream
+     * @return a stream from which the bits can be read.
+     * @throws IOException
+     * @throws SQLException
+     * @throws AuthorizeException
+     */
+    public InputStream retrieve(long offset, long length) throws IOException,
+            SQLException, AuthorizeException
+    {
+        AuthorizeManager.authorizeAction(ourContext, this, Constants.READ);
+
+        return BitstreamStorageManager.retrieve(ourContext, bRow
+                .getIntColumn("bitstream_id"), offset, length);
+    }
+
     /**
      * Get the bundles this bitstream appears in
      * 
@@ -16,6 +16,7 @@ import org.dspace.authorize.AuthorizeException;
 import org.dspace.authorize.AuthorizeManager;
 import org.dspace.core.Context;
 import org.dspace.core.LogManager;
+import org.dspace.core.SharedCache;
 import org.dspace.storage.rdbms.DatabaseManager;
 import org.dspace.storage.rdbms.TableRow;
 import org.dspace.storage.rdbms.TableRowIterator;
@@ -84,23 +85,49 @@ public class BitstreamFormat
         bfRow = row;
         extensions = new ArrayList<String>();
 
-        TableRowIterator tri = DatabaseManager.query(context,
-                "SELECT * FROM fileextension WHERE bitstream_format_id= ? ",
-                 getID());
-
-        try
+        SharedCache<Integer, List<String>> shared = null;
+        long stamp = 0;
+        boolean loaded = false;
+        if (SharedCache.isEnabled(context))
         {
-            while (tri.hasNext())
+            shared = SharedCache.getRegion("fileextension");
+            List<String> cached = shared.get(getID());
+            if (cached != null)
             {
-                extensions.add(tri.next().getStringColumn("extension"));
+                extensions.addAll(cached);
+                loaded = true;
+            }
+            else
+            {
+                stamp = shared.stamp();
             }
         }
-        finally
+
+        if (!loaded)
         {
-            // close the TableRowIterator to free up resources
-            if (tri != null)
+            TableRowIterator tri = DatabaseManager.query(context,
+                    "SELECT * FROM fileextension WHERE bitstream_format_id= ? ",
+                     getID());
+
+            try
             {
-                tri.close();
+                while (tri.hasNext())
+                {
+                    extensions.add(tri.next().getStringColumn("extension"));
+                }
+            }
+            finally
+            {
+                // close the TableRowIterator to free up resources
+                if (tri != null)
+                {
+                    tri.close();
+                }
+            }
+
+            if (shared != null)
+            {
+                shared.put(getID(), new ArrayList<String>(extensions), stamp);
             }
         }
 
@@ -131,7 +158,7 @@ public class BitstreamFormat
             return fromCache;
         }
 
-        TableRow row = DatabaseManager.find(context, "bitstreamformatregistry",
+        TableRow row = SharedCache.findRow(context, "bitstreamformatregistry",
                 id);
 
         if (row == null)
@@ -599,6 +626,21 @@ public class BitstreamFormat
         }
 
         DatabaseManager.update(bfContext, bfRow);
+        invalidateShared();
+    }
+
+    /**
+     * Remove this format from the shared cache. Formats don't send events,
+     * so other contexts may still read the previous row until this context
+     * commits.
+     */
+    private void invalidateShared()
+    {
+        if (SharedCache.isEnabled())
+        {
+            SharedCache.<Integer, TableRow>getRegion("bitstreamformatregistry").remove(getID());
+            SharedCache.<Integer, List<String>>getRegion("fileextension").remove(getID());
+        }
     }
 
     /**
@@ -641,6 +683,7 @@ public class BitstreamFormat
 
         // Delete this format from database
         DatabaseManager.delete(bfContext, bfRow);
+        invalidateShared();
 
         log.info(LogManager.getHeader(bfContext, "delete_bitstream_format",
                 "bitstream_format_id=" + getID() + ",bitstreams_changed="
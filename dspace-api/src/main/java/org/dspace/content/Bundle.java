@@ -60,6 +60,23 @@ public class Bundle extends DSpaceObject
      *            the corresponding row in the table
      */
     Bundle(Context context, TableRow row) throws SQLException
+    {
+        this(context, row, null);
+    }
+
+    /**
+     * Construct a bundle object with the given table row and the rows of its
+     * bitstreams, already read by the caller
+     *
+     * @param context
+     *            the context this object exists in
+     * @param row
+     *            the corresponding row in the table
+     * @param bitstreamRows
+     *            the rows of the bitstreams in the order given by
+     *            {@link #getBitstreamOrdering()}, or null to read them
+     */
+    Bundle(Context context, TableRow row, List<TableRow> bitstreamRows) throws SQLException
     {
         super(context);
 
@@ -69,63 +86,52 @@ public class Bundle extends DSpaceObject
 
         bundleRow = row;
         bitstreams = new ArrayList<Bitstream>();
-        String bitstreamOrderingField  = ConfigurationManager.getProperty("webui.bitstream.order.field");
-        String bitstreamOrderingDirection   = ConfigurationManager.getProperty("webui.bitstream.order.direction");
-
-        if (bitstreamOrderingField == null)
-        {
-            bitstreamOrderingField = "sequence_id";
-        }
 
-        if (bitstreamOrderingDirection == null)
+        if (bitstreamRows == null)
         {
-            bitstreamOrderingDirection = "ASC";
-        }
-
-        StringBuilder query = new StringBuilder();
-        query.append("SELECT bitstream.*,bundle2bitstream.bitstream_order FROM bitstream, bundle2bitstream WHERE");
-        query.append(" bundle2bitstream.bitstream_id=bitstream.bitstream_id AND");
-        query.append(" bundle2bitstream.bundle_id= ?");
-        query.append(" ORDER BY ");
-        query.append(bitstreamOrderingField);
-        query.append(" ");
-        query.append(bitstreamOrderingDirection);
-
-        // Get bitstreams
-        TableRowIterator tri = DatabaseManager.query(
-                ourContext,
-                query.toString(),
-                bundleRow.getIntColumn("bundle_id"));
-
-        try
-        {
-            while (tri.hasNext())
+            StringBuilder query = new StringBuilder();
+            query.append("SELECT bitstream.*,bundle2bitstream.bitstream_order FROM bitstream, bundle2bitstream WHERE");
+            query.append(" bundle2bitstream.bitstream_id=bitstream.bitstream_id AND");
+            query.append(" bundle2bitstream.bundle_id= ?");
+            query.append(" ORDER BY ");
+            query.append(getBitstreamOrdering());
+
+            // Get bitstreams
+            TableRowIterator tri = DatabaseManager.query(
+                    ourContext,
+                    query.toString(),
+                    bundleRow.getIntColumn("bundle_id"));
+
+            try
             {
-                TableRow r = tri.next();
-
-                // First check the cache
-                Bitstream fromCache = (Bitstream) context.fromCache(
-                        Bitstream.class, r.getIntColumn("bitstream_id"));
-
-                if (fromCache != null)
-                {
-                    bitstreams.add(fromCache);
-                }
-                else
+                bitstreamRows = tri.toList();
+            }
+            finally
+            {
+                // close the TableRowIterator to free up resources
+                if (tri != null)
                 {
-                    //Since bitstreams can be ordered by a column in bundle2bitstream
-                    //We cannot use queryTable & so we need to add our table later on
-                    r.setTable("bitstream");
-                    bitstreams.add(new Bitstream(ourContext, r));
+                    tri.close();
                 }
             }
         }
-        finally
+
+        for (TableRow r : bitstreamRows)
         {
-            // close the TableRowIterator to free up resources
-            if (tri != null)
+            // First check the cache
+            Bitstream fromCache = (Bitstream) context.fromCache(
+                    Bitstream.class, r.getIntColumn("bitstream_id"));
+
+            if (fromCache != null)
             {
-                tri.close();
+                bitstreams.add(fromCache);
+            }
+            else
+            {
+                //Since bitstreams can be ordered by a column in bundle2bitstream
+                //We cannot use queryTable & so we need to add our table later on
+                r.setTable("bitstream");
+                bitstreams.add(new Bitstream(ourContext, r));
             }
         }
 
@@ -135,6 +141,28 @@ public class Bundle extends DSpaceObject
         modified = false;
     }
 
+    /**
+     * @return the ORDER BY clause of the bitstreams of a bundle, from
+     *         <code>webui.bitstream.order.field</code> and
+     *         <code>webui.bitstream.order.direction</code>
+     */
+    static String getBitstreamOrdering()
+    {
+        String bitstreamOrderingField  = ConfigurationManager.getProperty("webui.bitstream.order.field");
+        String bitstreamOrderingDirection   = ConfigurationManager.getProperty("webui.bitstream.order.direction");
+
+        if (bitstreamOrderingField == null)
+        {
+            bitstreamOrderingField = "sequence_id";
+        }
+
+        if (bitstreamOrderingDirection == null)
+        {
+            bitstreamOrderingDirection = "ASC";
+        }
+        return bitstreamOrderingField + " " + bitstreamOrderingDirection;
+    }
+
     /**
      * Get a bundle from the database. The bundle and bitstream metadata are all
      * loaded into memory.
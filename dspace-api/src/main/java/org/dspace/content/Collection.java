@@ -174,7 +174,7 @@ public class Collection extends DSpaceObject implements IGlobalSearchResult
             return fromCache;
         }
 
-        TableRow row = DatabaseManager.find(context, "collection", id);
+        TableRow row = SharedCache.findRow(context, "collection", id);
 
         if (row == null)
         {
@@ -514,6 +514,50 @@ public class Collection extends DSpaceObject implements IGlobalSearchResult
         return new ItemIterator(ourContext, rows);
     }
 
+    /**
+     * Get a page of the ids of the in_archive items in this collection, in id
+     * order. The page starts after an id, so that deep pages are read from
+     * the index (keyset paging), and/or after an offset.
+     * @param afterID The last id of the previous page, or -1
+     * @param offset Number of ids to skip after afterID
+     * @param limit Max number of results in set
+     * @return the ids of the items of the page
+     * @throws SQLException
+     */
+    public List<Integer> getItemIDs(int afterID, int offset, int limit) throws SQLException
+    {
+        List<Serializable> params = new ArrayList<Serializable>();
+        StringBuffer myQuery = new StringBuffer(
+            "SELECT item.item_id " +
+            "FROM item, collection2item " +
+            "WHERE item.item_id = collection2item.item_id " +
+              "AND collection2item.collection_id = ? " +
+              "AND item.in_archive = '1' " +
+              "AND item.item_id > ? " +
+            "ORDER BY item.item_id"
+        );
+
+        params.add(getID());
+        params.add(afterID);
+        DatabaseManager.applyOffsetAndLimit(myQuery, params, offset, limit);
+
+        TableRowIterator rows = DatabaseManager.query(ourContext,
+                myQuery.toString(), params.toArray());
+        List<Integer> ids = new ArrayList<Integer>();
+        try
+        {
+            while (rows.hasNext())
+            {
+                ids.add(rows.next().getIntColumn("item_id"));
+            }
+        }
+        finally
+        {
+            rows.close();
+        }
+        return ids;
+    }
+
     /**
      * Get all the items in this collection. The order is indeterminate.
      *
@@ -1140,6 +1184,7 @@ public class Collection extends DSpaceObject implements IGlobalSearchResult
         row.setColumn("item_id", item.getID());
 
         DatabaseManager.insert(ourContext, row);
+        item.clearCollections();
 
         ourContext.addEvent(new Event(Event.ADD, Constants.COLLECTION, getID(), 
                 Constants.ITEM, item.getID(), item.getHandle(), 
@@ -1175,6 +1220,7 @@ public class Collection extends DSpaceObject implements IGlobalSearchResult
                 "DELETE FROM collection2item WHERE collection_id= ? "+
                 "AND item_id= ? ",
                 getID(), item.getID());
+        item.clearCollections();
 
         // Then, if it is an orphaned Item, delete it
         if (orphan)
@@ -28,6 +28,7 @@ import org.dspace.storage.rdbms.TableRowIterator;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.Serializable;
 import java.sql.SQLException;
 import java.util.*;
 import java.util.StringTokenizer;
@@ -131,7 +132,7 @@ public class Community extends DSpaceObject implements IGlobalSearchResult
             return fromCache;
         }
 
-        TableRow row = DatabaseManager.find(context, "community", id);
+        TableRow row = SharedCache.findRow(context, "community", id);
 
         if (row == null)
         {
@@ -314,6 +315,45 @@ public class Community extends DSpaceObject implements IGlobalSearchResult
         return communityArray;
     }
 
+    /**
+     * Get a page of the ids of the communities in the system, in id order.
+     * The page starts after an id (keyset paging), and/or after an offset.
+     *
+     * @param context
+     *            DSpace context object
+     * @param afterID
+     *            the last id of the previous page, or -1
+     * @param offset
+     *            number of ids to skip after <code>afterID</code>
+     * @param limit
+     *            maximum number of ids
+     * @return the ids of the communities of the page
+     */
+    public static List<Integer> findAllIDs(Context context, int afterID, int offset, int limit)
+            throws SQLException
+    {
+        List<Serializable> params = new ArrayList<Serializable>();
+        StringBuffer query = new StringBuffer(
+                "SELECT community_id FROM community WHERE community_id > ? ORDER BY community_id");
+        params.add(afterID);
+        DatabaseManager.applyOffsetAndLimit(query, params, offset, limit);
+
+        TableRowIterator tri = DatabaseManager.query(context, query.toString(), params.toArray());
+        List<Integer> ids = new ArrayList<Integer>();
+        try
+        {
+            while (tri.hasNext())
+            {
+                ids.add(tri.next().getIntColumn("community_id"));
+            }
+        }
+        finally
+        {
+            tri.close();
+        }
+        return ids;
+    }
+
     /**
      * Get a list of all top-level communities in the system. These are
      * alphabetically sorted by community name. A top-level community is one
@@ -25,6 +25,7 @@ import org.dspace.content.authority.Choices;
 import org.dspace.content.authority.MetadataAuthorityManager;
 import org.dspace.core.Constants;
 import org.dspace.core.Context;
+import org.dspace.core.SharedCache;
 import org.dspace.discovery.IGlobalSearchResult;
 import org.dspace.eperson.EPerson;
 import org.dspace.eperson.Group;
@@ -1202,6 +1203,46 @@ public abstract class DSpaceObject implements IGlobalSearchResult
         modifiedMetadata = true;
     }
 
+    /**
+     * Build a metadata value from a row of the metadatavalue table.
+     *
+     * @return the value, or null if its field or schema can't be found
+     */
+    static Metadatum toMetadatum(Context c, TableRow resultRow, Logger log) throws SQLException
+    {
+        // Get the associated metadata field and schema information
+        int fieldID = resultRow.getIntColumn("metadata_field_id");
+        MetadataField field = MetadataField.find(c, fieldID);
+
+        if (field == null)
+        {
+            log.error("Loading item - cannot find metadata field " + fieldID + " for resourceType="
+                    + resultRow.getIntColumn("resource_type_id") + " and resourceId="
+                    + resultRow.getIntColumn("resource_id"));
+            return null;
+        }
+
+        MetadataSchema schema = MetadataSchema.find(c, field.getSchemaID());
+        if (schema == null)
+        {
+            log.error("Loading item - cannot find metadata schema " + field.getSchemaID() + ", field " + fieldID);
+            return null;
+        }
+
+        // Make a Metadatum object
+        Metadatum dcv = new Metadatum();
+        dcv.element = field.getElement();
+        dcv.qualifier = field.getQualifier();
+        dcv.value = resultRow.getStringColumn("text_value");
+        dcv.language = resultRow.getStringColumn("text_lang");
+        //dcv.namespace = schema.getNamespace();
+        dcv.schema = schema.getName();
+        dcv.authority = resultRow.getStringColumn("authority");
+        dcv.confidence = resultRow.getIntColumn("confidence");
+        dcv.setPlace(resultRow.getIntColumn("place"));
+        return dcv;
+    }
+
     class MetadataCache
     {
         List<Metadatum> metadata = null;
@@ -1210,6 +1251,24 @@ public abstract class DSpaceObject implements IGlobalSearchResult
         {
             if (metadata == null)
             {
+                // the metadata of communities and collections is shared
+                // between the contexts
+                SharedCache<String, List<Metadatum>> shared = null;
+                String key = resourceTypeId + "/" + resourceId;
+                long stamp = 0;
+                if ((resourceTypeId == Constants.COMMUNITY || resourceTypeId == Constants.COLLECTION)
+                        && SharedCache.isEnabled(c))
+                {
+                    shared = SharedCache.getRegion("metadata");
+                    List<Metadatum> cached = shared.get(key);
+                    if (cached != null)
+                    {
+                        metadata = copy(cached);
+                        return metadata;
+                    }
+                    stamp = shared.stamp();
+                }
+
                 metadata = new ArrayList<Metadatum>();
 
                 // Get Dublin Core metadata
@@ -1221,39 +1280,10 @@ public abstract class DSpaceObject implements IGlobalSearchResult
                     {
                         while (tri.hasNext())
                         {
-                            TableRow resultRow = tri.next();
-
-                            // Get the associated metadata field and schema information
-                            int fieldID = resultRow.getIntColumn("metadata_field_id");
-                            MetadataField field = MetadataField.find(c, fieldID);
-
-                            if (field == null)
-                            {
-                                log.error("Loading item - cannot find metadata field " + fieldID + " for resourceType=" + resourceTypeId + " and resourceId=" + resourceId);
-                            }
-                            else
+                            Metadatum dcv = toMetadatum(c, tri.next(), log);
+                            if (dcv != null)
                             {
-                                MetadataSchema schema = MetadataSchema.find(c, field.getSchemaID());
-                                if (schema == null)
-                                {
-                                    log.error("Loading item - cannot find metadata schema " + field.getSchemaID() + ", field " + fieldID);
-                                }
-                                else
-                                {
-                                    // Make a Metadatum object
-                                    Metadatum dcv = new Metadatum();
-                                    dcv.element = field.getElement();
-                                    dcv.qualifier = field.getQualifier();
-                                    dcv.value = resultRow.getStringColumn("text_value");
-                                    dcv.language = resultRow.getStringColumn("text_lang");
-                                    //dcv.namespace = schema.getNamespace();
-                                    dcv.schema = schema.getName();
-                                    dcv.authority = resultRow.getStringColumn("authority");
-                                    dcv.confidence = resultRow.getIntColumn("confidence");
-                                    dcv.setPlace(resultRow.getIntColumn("place"));
-                                    // Add it to the list
-                                    metadata.add(dcv);
-                                }
+                                metadata.add(dcv);
                             }
                         }
                     }
@@ -1266,11 +1296,26 @@ public abstract class DSpaceObject implements IGlobalSearchResult
                         }
                     }
                 }
+
+                if (shared != null)
+                {
+                    shared.put(key, copy(metadata), stamp);
+                }
             }
 
             return metadata;
         }
 
+        private List<Metadatum> copy(List<Metadatum> values)
+        {
+            List<Metadatum> copy = new ArrayList<Metadatum>(values.size());
+            for (Metadatum value : values)
+            {
+                copy.add(value.copy());
+            }
+            return copy;
+        }
+
         void set(List<Metadatum> m)
         {
             metadata = m;
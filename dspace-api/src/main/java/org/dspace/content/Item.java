@@ -9,6 +9,7 @@ package org.dspace.content;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.Serializable;
 import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.util.ArrayList;
@@ -81,6 +82,8 @@ public class Item extends DSpaceObject implements BrowsableDSpaceObject
     /** The bundles in this item - kept in sync with DB */
     private List<Bundle> bundles;
 
+    /** The collections of this item, when read by an {@link ItemPrefetcher} */
+    private List<Collection> collections;
 
     /** Handle, if any */
     private String handle;
@@ -127,6 +130,36 @@ public class Item extends DSpaceObject implements BrowsableDSpaceObject
         context.cache(this, row.getIntColumn("item_id"));
     }
 
+    /**
+     * Construct an item with the given table row and its Handle, already
+     * read by the caller
+     *
+     * @param context
+     *            the context this object exists in
+     * @param row
+     *            the corresponding row in the table
+     * @param handle
+     *            the Handle of the item, or null if it has none
+     * @throws SQLException
+     */
+    Item(Context context, TableRow row, String handle) throws SQLException
+    {
+        super(context);
+
+        // Ensure that my TableRow is typed.
+        if (null == row.getTable())
+            row.setTable("item");
+
+        itemRow = row;
+        modified = false;
+        clearDetails();
+
+        this.handle = handle;
+
+        // Cache ourselves
+        context.cache(this, row.getIntColumn("item_id"));
+    }
+
 
     /**
      * Get an item from the database. The item, its Dublin Core metadata, and
@@ -183,6 +216,32 @@ public class Item extends DSpaceObject implements BrowsableDSpaceObject
         return item.getWrapper();
     }
 
+    /**
+     * Get a page of items from the database, with their metadata, bundles,
+     * bitstreams and collections read by a few set-based queries instead of
+     * several queries per item.
+     *
+     * @param context
+     *            DSpace context object
+     * @param ids
+     *            internal IDs of the items
+     * @return the items found, in the order of the IDs
+     * @throws SQLException
+     * @see ItemPrefetcher
+     */
+    public static List<Item> find(Context context, List<Integer> ids) throws SQLException
+    {
+        List<Item> items = new ItemPrefetcher(context).load(ids);
+        if (context.isRequiredItemWrapper())
+        {
+            for (int i = 0; i < items.size(); i++)
+            {
+                items.set(i, items.get(i).getWrapper());
+            }
+        }
+        return items;
+    }
+
     /**
      * Create a new item, with a new internal ID. This method is not public,
      * since items need to be created as workspace items. Authorisation is the
@@ -277,7 +336,104 @@ public class Item extends DSpaceObject implements BrowsableDSpaceObject
         }
         return result;
     }
-    
+
+    /**
+     * Get a page of the ids of the "final" items in the archive, both archived
+     * and withdrawn, in id order. The page starts after an id, so that deep
+     * pages are read from the primary key index (keyset paging), and/or
+     * after an offset.
+     *
+     * @param context
+     *            DSpace context object
+     * @param afterID
+     *            the last id of the previous page, or -1
+     * @param offset
+     *            number of ids to skip after <code>afterID</code>
+     * @param limit
+     *            maximum number of ids
+     * @return the ids of the items of the page
+     */
+    public static List<Integer> findItemIDsUnfiltered(Context context, int afterID, int offset, int limit)
+            throws SQLException
+    {
+        List<Serializable> params = new ArrayList<Serializable>();
+        StringBuffer myQuery = new StringBuffer(
+                "SELECT item_id FROM item WHERE (in_archive='1' or withdrawn='1') AND item_id > ? ORDER BY item_id");
+        params.add(afterID);
+        DatabaseManager.applyOffsetAndLimit(myQuery, params, offset, limit);
+
+        TableRowIterator rows = DatabaseManager.query(context, myQuery.toString(), params.toArray());
+        List<Integer> result = new ArrayList<Integer>();
+        try
+        {
+            while (rows.hasNext())
+            {
+                result.add(rows.next().getIntColumn("item_id"));
+            }
+        }
+        finally
+        {
+            rows.close();
+        }
+        return result;
+    }
+
+    /**
+     * Get the ids of all the "final" items in the archive, both archived and
+     * withdrawn, without loading them all in memory: the ids are read from
+     * the database as they are consumed through {@link ItemIterator#nextID()}.
+     * The caller is responsible for closing the iterator.
+     *
+     * @param context
+     *            DSpace context object
+     * @return an iterator over the ids of the items in the archive.
+     * @throws SQLException
+     */
+    public static ItemIterator findAllItemIDsUnfilteredIterator(Context context)
+            throws SQLException
+    {
+        String myQuery = "SELECT item_id FROM item WHERE in_archive='1' or withdrawn='1'";
+
+        TableRowIterator rows = DatabaseManager.query(context, myQuery);
+
+        return new ItemIterator(context, rows);
+    }
+
+    /**
+     * Find the ids of the items in the archive after the given id, in
+     * increasing id order, e.g. to resume a long batch process.
+     *
+     * @param context
+     *            DSpace context object
+     * @param after
+     *            only ids greater than this one are returned
+     * @return the ids of the items in the archive.
+     * @throws SQLException
+     */
+    public static List<Integer> findAllItemIDsAfter(Context context, int after)
+            throws SQLException
+    {
+        String myQuery = "SELECT item_id FROM item WHERE in_archive='1' AND item_id > ? ORDER BY item_id";
+        TableRowIterator rows = null;
+        List<Integer> result = new ArrayList<Integer>();
+        try
+        {
+            rows = DatabaseManager.query(context, myQuery, after);
+            while (rows.hasNext())
+            {
+                result.add(rows.next().getIntColumn("item_id"));
+            }
+        }
+        finally
+        {
+            if (rows != null)
+            {
+                rows.close();
+            }
+        }
+        return result;
+    }
+
     public static List<Integer> findAllItemIDs(Context context)
             throws SQLException
     {
@@ -614,6 +770,11 @@ public class Item extends DSpaceObject implements BrowsableDSpaceObject
      */
     public Collection[] getCollections() throws SQLException
     {
+        if (this.collections != null)
+        {
+            return this.collections.toArray(new Collection[this.collections.size()]);
+        }
+
         List<Collection> collections = new ArrayList<Collection>();
 
         // Get collection table rows
@@ -714,6 +875,25 @@ public class Item extends DSpaceObject implements BrowsableDSpaceObject
         return communityArray;
     }
 
+    /**
+     * Set the bundles and collections of this item, read by an
+     * {@link ItemPrefetcher}.
+     */
+    void setPrefetched(List<Bundle> bundles, List<Collection> collections)
+    {
+        this.bundles = bundles;
+        this.collections = collections;
+    }
+
+    /**
+     * Forget the prefetched collections of this item once it is mapped to,
+     * or unmapped from, a collection.
+     */
+    void clearCollections()
+    {
+        this.collections = null;
+    }
+
     /**
      * Get the bundles in this item.
      *
@@ -9,7 +9,9 @@ package org.dspace.content;
 
 import java.sql.SQLException;
 
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 
 import org.dspace.core.Context;
@@ -43,6 +45,14 @@ public class ItemIterator
 
     /** a real iterator which works over the item ids when present */
     private Iterator<Integer> iditr;
+
+    /** number of items loaded at once, 0 to load them one by one */
+    private int prefetch = 0;
+
+    /** the items of the current page, when prefetching */
+    private LinkedList<Item> page = new LinkedList<Item>();
+
+    private ItemPrefetcher prefetcher;
     
     /**
      * Construct an item iterator using a set of TableRow objects from
@@ -73,6 +83,32 @@ public class ItemIterator
     	iditr = iids.iterator();
     }
     
+    /**
+     * Load the items by pages, each with a few set-based queries reading
+     * their metadata, bundles, bitstreams and collections.
+     *
+     * @param pageSize
+     *            number of items per page, 0 or less to load them one by one
+     * @see ItemPrefetcher
+     */
+    public void setPrefetch(int pageSize)
+    {
+        prefetch = pageSize;
+        if (prefetch > 0 && prefetcher == null)
+        {
+            prefetcher = new ItemPrefetcher(ourContext);
+        }
+    }
+
+    /**
+     * @return the prefetcher loading the pages, null if the items are loaded
+     *         one by one
+     */
+    public ItemPrefetcher getPrefetcher()
+    {
+        return prefetcher;
+    }
+
     /**
      * Find out if there are any more items to iterate over
      * 
@@ -81,6 +117,10 @@ public class ItemIterator
      */
     public boolean hasNext() throws SQLException
     {
+        if (!page.isEmpty())
+        {
+            return true;
+        }
     	if (iditr != null)
     	{
     		return iditr.hasNext();
@@ -101,6 +141,16 @@ public class ItemIterator
      */
     public Item next() throws SQLException
     {
+        if (prefetch > 0)
+        {
+            // items of a page may have been deleted meanwhile
+            while (page.isEmpty()
+                    && ((iditr != null && iditr.hasNext()) || (itemRows != null && itemRows.hasNext())))
+            {
+                nextPage();
+            }
+            return page.poll();
+        }
     	if (iditr != null)
     	{
     		return nextByID();
@@ -112,6 +162,38 @@ public class ItemIterator
     	return null;
     }
     
+    /**
+     * Load the next page of items with the prefetcher
+     *
+     * @throws SQLException
+     */
+    private void nextPage()
+        throws SQLException
+    {
+        if (iditr != null)
+        {
+            List<Integer> ids = new ArrayList<Integer>(prefetch);
+            while (ids.size() < prefetch && iditr.hasNext())
+            {
+                ids.add(iditr.next());
+            }
+            // wrapped as by Item.find, like the items loaded one by one
+            for (Item item : prefetcher.load(ids))
+            {
+                page.add(ourContext.isRequiredItemWrapper() ? item.getWrapper() : item);
+            }
+        }
+        else if (itemRows != null)
+        {
+            List<TableRow> rows = new ArrayList<TableRow>(prefetch);
+            while (rows.size() < prefetch && itemRows.hasNext())
+            {
+                rows.add(itemRows.next());
+            }
+            page.addAll(prefetcher.loadRows(rows));
+        }
+    }
+
     /**
      * This private method knows how to get the next result out of the 
      * item id iterator
@@ -153,6 +235,10 @@ public class ItemIterator
     public int nextID()
     	throws SQLException
     {
+        if (!page.isEmpty())
+        {
+            return page.poll().getID();
+        }
     	if (iditr != null)
     	{
     		return nextByIDID();
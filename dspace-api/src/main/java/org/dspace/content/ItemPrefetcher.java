@@ -0,0 +1,414 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.content;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.dspace.core.ConfigurationManager;
+import org.dspace.core.Constants;
+import org.dspace.core.Context;
+import org.dspace.handle.HandleManager;
+import org.dspace.storage.rdbms.DatabaseManager;
+import org.dspace.storage.rdbms.TableRow;
+import org.dspace.storage.rdbms.TableRowIterator;
+
+/**
+ * Loads a page of items with a handful of set-based queries: the item rows,
+ * their handles, metadata, bundles, bitstreams and collections are each read
+ * for the whole page, and the caches of the items are filled so that
+ * displaying or exporting them doesn't query the database again.
+ * <p/>
+ * Loading an item one by one costs at least five queries (row, handle,
+ * metadata, bundles, collections) plus one per bundle; the prefetcher counts
+ * the queries it runs and how many of these round trips it saved, for the
+ * instance and for the whole JVM.
+ * <p/>
+ * Items already in the context cache are returned as they are.
+ */
+public class ItemPrefetcher
+{
+    private static final Logger log = Logger.getLogger(ItemPrefetcher.class);
+
+    /** Maximum number of ids in the IN clause of the queries */
+    private static final int BULK_QUERY_SIZE = 500;
+
+    private static final AtomicLong totalQueries = new AtomicLong();
+
+    private static final AtomicLong totalSaved = new AtomicLong();
+
+    private final Context context;
+
+    /** queries run */
+    private long queries = 0;
+
+    /** queries loading the same items one by one would have run */
+    private long naive = 0;
+
+    /** queries and naive count already added to the totals */
+    private long reportedQueries = 0;
+
+    private long reportedNaive = 0;
+
+    public ItemPrefetcher(Context context)
+    {
+        this.context = context;
+    }
+
+    /**
+     * @return the number of items loaded at once by the batch tools, from
+     *         <code>item.prefetch.size</code>; 0 to load them one by one
+     */
+    public static int getDefaultPageSize()
+    {
+        return ConfigurationManager.getIntProperty("item.prefetch.size", 100);
+    }
+
+    /**
+     * Load the items with the given ids.
+     *
+     * @param ids
+     *            internal IDs of the items
+     * @return the items found, in the order of the ids
+     * @throws SQLException
+     */
+    public List<Item> load(List<Integer> ids) throws SQLException
+    {
+        Map<Integer, Item> items = new HashMap<Integer, Item>();
+        Set<Integer> notCached = new LinkedHashSet<Integer>();
+        for (Integer id : ids)
+        {
+            Item fromCache = (Item) context.fromCache(Item.class, id);
+            if (fromCache != null)
+            {
+                items.put(id, fromCache);
+            }
+            else
+            {
+                notCached.add(id);
+            }
+        }
+        List<Integer> missing = new ArrayList<Integer>(notCached);
+
+        for (int start = 0; start < missing.size(); start += BULK_QUERY_SIZE)
+        {
+            List<Integer> block = missing.subList(start, Math.min(missing.size(), start + BULK_QUERY_SIZE));
+            List<TableRow> rows = toList(DatabaseManager.queryTable(context, "item",
+                    "SELECT * FROM item WHERE item_id IN (" + placeholders(block.size()) + ")",
+                    block.toArray()));
+            queries++;
+            naive += block.size();
+            for (Item item : build(rows))
+            {
+                items.put(item.getID(), item);
+            }
+        }
+
+        List<Item> result = new ArrayList<Item>(ids.size());
+        for (Integer id : ids)
+        {
+            Item item = items.get(id);
+            if (item != null)
+            {
+                result.add(item);
+            }
+        }
+        report(result.size());
+        return result;
+    }
+
+    /**
+     * Build the items of rows already read from the item table.
+     *
+     * @param rows
+     *            rows of the item table
+     * @return the items, in the order of the rows
+     * @throws SQLException
+     */
+    public List<Item> loadRows(List<TableRow> rows) throws SQLException
+    {
+        Map<Integer, Item> items = new HashMap<Integer, Item>();
+        List<TableRow> missing = new ArrayList<TableRow>();
+        for (TableRow row : rows)
+        {
+            int id = row.getIntColumn("item_id");
+            Item fromCache = (Item) context.fromCache(Item.class, id);
+            if (fromCache != null)
+            {
+                items.put(id, fromCache);
+            }
+            else
+            {
+                missing.add(row);
+            }
+        }
+
+        for (int start = 0; start < missing.size(); start += BULK_QUERY_SIZE)
+        {
+            for (Item item : build(missing.subList(start, Math.min(missing.size(), start + BULK_QUERY_SIZE))))
+            {
+                items.put(item.getID(), item);
+            }
+        }
+
+        List<Item> result = new ArrayList<Item>(rows.size());
+        for (TableRow row : rows)
+        {
+            Item item = items.get(row.getIntColumn("item_id"));
+            if (item != null)
+            {
+                result.add(item);
+            }
+        }
+        report(result.size());
+        return result;
+    }
+
+    /**
+     * Build and fill the items of a block of rows which are not in the
+     * context cache.
+     */
+    private List<Item> build(List<TableRow> rows) throws SQLException
+    {
+        List<Item> items = new ArrayList<Item>(rows.size());
+        if (rows.isEmpty())
+        {
+            return items;
+        }
+
+        List<Integer> ids = new ArrayList<Integer>(rows.size());
+        for (TableRow row : rows)
+        {
+            ids.add(row.getIntColumn("item_id"));
+        }
+        String in = placeholders(ids.size());
+
+        // Handles
+        Map<Integer, String> handles = HandleManager.findHandles(context, Constants.ITEM, ids);
+        queries++;
+
+        // Metadata, in the order used by DSpaceObject
+        Map<Integer, List<Metadatum>> metadata = new HashMap<Integer, List<Metadatum>>();
+        Object[] parameters = new Object[ids.size() + 1];
+        parameters[0] = Constants.ITEM;
+        for (int i = 0; i < ids.size(); i++)
+        {
+            parameters[i + 1] = ids.get(i);
+            metadata.put(ids.get(i), new ArrayList<Metadatum>());
+        }
+        TableRowIterator tri = DatabaseManager.queryTable(context, "MetadataValue",
+                "SELECT * FROM MetadataValue WHERE resource_type_id = ? AND resource_id IN (" + in + ") "
+                + "ORDER BY resource_id, metadata_field_id, place", parameters);
+        queries++;
+        try
+        {
+            while (tri.hasNext())
+            {
+                TableRow row = tri.next();
+                Metadatum dcv = DSpaceObject.toMetadatum(context, row, log);
+                if (dcv != null)
+                {
+                    metadata.get(row.getIntColumn("resource_id")).add(dcv);
+                }
+            }
+        }
+        finally
+        {
+            tri.close();
+        }
+
+        // Bundles, then their bitstreams
+        Map<Integer, List<TableRow>> bundleRows = new HashMap<Integer, List<TableRow>>();
+        List<Integer> bundleIDs = new ArrayList<Integer>();
+        for (TableRow row : toList(DatabaseManager.query(context,
+                "SELECT bundle.*, item2bundle.item_id FROM bundle, item2bundle WHERE "
+                + "item2bundle.bundle_id=bundle.bundle_id AND item2bundle.item_id IN (" + in + ")",
+                ids.toArray())))
+        {
+            int itemID = row.getIntColumn("item_id");
+            //Since the item id comes from item2bundle we cannot use queryTable
+            row.setTable("bundle");
+            List<TableRow> list = bundleRows.get(itemID);
+            if (list == null)
+            {
+                list = new ArrayList<TableRow>();
+                bundleRows.put(itemID, list);
+            }
+            list.add(row);
+            bundleIDs.add(row.getIntColumn("bundle_id"));
+        }
+        queries++;
+        naive += bundleIDs.size();
+        Map<Integer, List<TableRow>> bitstreamRows = findBitstreamRows(bundleIDs);
+
+        // Collections
+        Map<Integer, List<Collection>> collections = new HashMap<Integer, List<Collection>>();
+        for (TableRow row : toList(DatabaseManager.query(context,
+                "SELECT collection.*, collection2item.item_id FROM collection, collection2item WHERE "
+                + "collection2item.collection_id=collection.collection_id AND collection2item.item_id IN ("
+                + in + ")", ids.toArray())))
+        {
+            int itemID = row.getIntColumn("item_id");
+            row.setTable("collection");
+            Collection collection = (Collection) context.fromCache(Collection.class,
+                    row.getIntColumn("collection_id"));
+            if (collection == null)
+            {
+                collection = new Collection(context, row);
+            }
+            List<Collection> list = collections.get(itemID);
+            if (list == null)
+            {
+                list = new ArrayList<Collection>();
+                collections.put(itemID, list);
+            }
+            list.add(collection);
+        }
+        queries++;
+
+        // one query per item for its handle, metadata, bundles and collections
+        naive += 4 * ids.size();
+
+        for (TableRow row : rows)
+        {
+            int id = row.getIntColumn("item_id");
+            Item item = new Item(context, row, handles.get(id));
+            item.metadataCache.set(metadata.get(id));
+
+            List<Bundle> bundles = new ArrayList<Bundle>();
+            List<TableRow> itemBundles = bundleRows.get(id);
+            if (itemBundles != null)
+            {
+                for (TableRow bundleRow : itemBundles)
+                {
+                    Bundle bundle = (Bundle) context.fromCache(Bundle.class, bundleRow.getIntColumn("bundle_id"));
+                    if (bundle == null)
+                    {
+                        List<TableRow> bitstreams = bitstreamRows.get(bundleRow.getIntColumn("bundle_id"));
+                        bundle = new Bundle(context, bundleRow,
+                                bitstreams != null ? bitstreams : new ArrayList<TableRow>());
+                    }
+                    bundles.add(bundle);
+                }
+            }
+            List<Collection> itemCollections = collections.get(id);
+            item.setPrefetched(bundles, itemCollections != null ? itemCollections : new ArrayList<Collection>());
+            items.add(item);
+        }
+        return items;
+    }
+
+    /**
+     * @return the rows of the bitstreams of the bundles, by bundle id, in the
+     *         order used by {@link Bundle}
+     */
+    private Map<Integer, List<TableRow>> findBitstreamRows(List<Integer> bundleIDs) throws SQLException
+    {
+        Map<Integer, List<TableRow>> bitstreams = new HashMap<Integer, List<TableRow>>();
+        for (int start = 0; start < bundleIDs.size(); start += BULK_QUERY_SIZE)
+        {
+            List<Integer> block = bundleIDs.subList(start, Math.min(bundleIDs.size(), start + BULK_QUERY_SIZE));
+            for (TableRow row : toList(DatabaseManager.query(context,
+                    "SELECT bitstream.*, bundle2bitstream.bitstream_order, bundle2bitstream.bundle_id "
+                    + "FROM bitstream, bundle2bitstream WHERE "
+                    + "bundle2bitstream.bitstream_id=bitstream.bitstream_id AND "
+                    + "bundle2bitstream.bundle_id IN (" + placeholders(block.size()) + ") "
+                    + "ORDER BY bundle2bitstream.bundle_id, " + Bundle.getBitstreamOrdering(),
+                    block.toArray())))
+            {
+                int bundleID = row.getIntColumn("bundle_id");
+                List<TableRow> list = bitstreams.get(bundleID);
+                if (list == null)
+                {
+                    list = new ArrayList<TableRow>();
+                    bitstreams.put(bundleID, list);
+                }
+                list.add(row);
+            }
+            queries++;
+        }
+        return bitstreams;
+    }
+
+    private void report(int count)
+    {
+        long newQueries = queries - reportedQueries;
+        long newNaive = naive - reportedNaive;
+        reportedQueries = queries;
+        reportedNaive = naive;
+        totalQueries.addAndGet(newQueries);
+        totalSaved.addAndGet(newNaive - newQueries);
+        if (log.isDebugEnabled())
+        {
+            log.debug("Prefetched " + count + " items with " + newQueries + " queries, "
+                    + (newNaive - newQueries) + " round trips saved (" + totalSaved.get() + " in total)");
+        }
+    }
+
+    private static String placeholders(int count)
+    {
+        StringBuilder in = new StringBuilder();
+        for (int i = 0; i < count; i++)
+        {
+            in.append(i == 0 ? "?" : ", ?");
+        }
+        return in.toString();
+    }
+
+    private static List<TableRow> toList(TableRowIterator tri) throws SQLException
+    {
+        try
+        {
+            return tri.toList();
+        }
+        finally
+        {
+            tri.close();
+        }
+    }
+
+    /**
+     * @return the number of queries run by this prefetcher
+     */
+    public long getQueries()
+    {
+        return queries;
+    }
+
+    /**
+     * @return the number of round trips saved by this prefetcher, compared
+     *         to loading the items one by one
+     */
+    public long getSaved()
+    {
+        return naive - queries;
+    }
+
+    /**
+     * @return the number of queries run by all the prefetchers
+     */
+    public static long getTotalQueries()
+    {
+        return totalQueries.get();
+    }
+
+    /**
+     * @return the number of round trips saved by all the prefetchers
+     */
+    public static long getTotalSaved()
+    {
+        return totalSaved.get();
+    }
+}
@@ -10,6 +10,7 @@ package org.dspace.core;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.EmptyStackException;
 import java.util.HashMap;
@@ -24,6 +25,7 @@ import javax.sql.DataSource;
 
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.log4j.Logger;
+import org.dspace.authorize.AuthorizationCache;
 import org.dspace.content.EPersonCRISIntegration;
 import org.dspace.content.Item;
 import org.dspace.eperson.EPerson;
@@ -90,6 +92,9 @@ public class Context
     /** Group IDs of special groups user is a member of */
     private List<Integer> specialGroups;
 
+    /** Authorization decisions taken in this context */
+    private AuthorizationCache authorizationCache;
+
     /** Content events */
     private LinkedList<Event> events = null;
 
@@ -174,6 +179,8 @@ public class Context
 
         objectCache = new HashMap<String, Object>();
         specialGroups = new ArrayList<Integer>();
+        authorizationCache = new AuthorizationCache(ConfigurationManager
+                .getIntProperty("core.authorization.cache.size", 1000));
 
         authStateChangeHistory = new Stack<Boolean>();
         authStateClassCallHistory = new Stack<String>();
@@ -411,6 +418,10 @@ public class Context
             // If connection is closed or null, this is a no-op
             DatabaseManager.freeConnection(connection);
             connection = null;
+            if (log.isDebugEnabled())
+            {
+                log.debug("Authorization cache: " + authorizationCache);
+            }
             clearCache();
         }
     }
@@ -452,6 +463,7 @@ public class Context
 				}
 
 				dispatcher = EventManager.getDispatcher(dispName);
+				dispatcher.prepare(this);
 				if (!isAutoCommit) {
 					connection.commit();
 				}
@@ -508,6 +520,9 @@ public class Context
             events = new LinkedList<Event>();
         }
 
+        // the change may affect the authorization decisions
+        authorizationCache.invalidate();
+
         events.add(event);
     }
 
@@ -671,6 +686,7 @@ public class Context
     public void clearCache()
     {
         objectCache.clear();
+        authorizationCache.invalidate();
     }
 
     /**
@@ -720,6 +736,25 @@ public class Context
         return false;
     }
 
+    /**
+     * Get the IDs of the special groups that current user is a member of,
+     * without loading them.
+     */
+    public List<Integer> getSpecialGroupIDs()
+    {
+        return Collections.unmodifiableList(specialGroups);
+    }
+
+    /**
+     * Get the cache of the authorization decisions taken in this context.
+     *
+     * @return the cache, never <code>null</code>
+     */
+    public AuthorizationCache getAuthorizationCache()
+    {
+        return authorizationCache;
+    }
+
     /**
      * Get an array of all of the special groups that current user is a member
      * of.
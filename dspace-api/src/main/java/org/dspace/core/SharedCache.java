@@ -0,0 +1,352 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.core;
+
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.dspace.storage.rdbms.DatabaseManager;
+import org.dspace.storage.rdbms.TableRow;
+
+/**
+ * Process-wide cache shared by all the contexts, on top of the cache of each
+ * {@link Context}. It is divided into named regions, each bounded in size
+ * (least recently used entries are evicted first) and in time (entries
+ * expire after a delay, to see the changes made by other DSpace processes).
+ * <p/>
+ * DSpace objects belong to a context, so the regions hold detached copies of
+ * their state (table rows, metadata values, handles, group ids) from which
+ * each context builds its own objects. Regions are cleared by the
+ * {@link SharedCacheConsumer} when the changes are committed. Contexts with
+ * pending events bypass the cache, so uncommitted data is never shared.
+ * <p/>
+ * The cache is disabled unless <code>cache.shared.enabled</code> is true.
+ * The size and time to live of a region are set by
+ * <code>cache.shared.&lt;region&gt;.size</code> and
+ * <code>cache.shared.&lt;region&gt;.ttl</code> (seconds).
+ *
+ * @param <K>
+ *            type of the keys
+ * @param <V>
+ *            type of the values
+ */
+public class SharedCache<K, V>
+{
+    private static final int DEFAULT_SIZE = 1000;
+
+    private static final int DEFAULT_TTL = 300;
+
+    private static final ConcurrentMap<String, SharedCache<?, ?>> regions = new ConcurrentHashMap<String, SharedCache<?, ?>>();
+
+    /** A value and its expiry date */
+    private static class Entry<V>
+    {
+        private final V value;
+
+        private final long expires;
+
+        Entry(V value, long expires)
+        {
+            this.value = value;
+            this.expires = expires;
+        }
+    }
+
+    private final String name;
+
+    private final int maxSize;
+
+    private final long ttl;
+
+    private final LinkedHashMap<K, Entry<V>> entries;
+
+    /** incremented by every invalidation, see {@link #stamp()} */
+    private long version = 0;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    private final AtomicLong expirations = new AtomicLong();
+
+    private final AtomicLong invalidations = new AtomicLong();
+
+    SharedCache(String name, int maxSize, long ttl)
+    {
+        this.name = name;
+        this.maxSize = maxSize;
+        this.ttl = ttl;
+        this.entries = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true);
+    }
+
+    /**
+     * @return true if the shared cache is enabled
+     */
+    public static boolean isEnabled()
+    {
+        return ConfigurationManager.getBooleanProperty("cache.shared.enabled", false);
+    }
+
+    /**
+     * @return true if the shared cache can be used by the context, i.e. it
+     *         is enabled and the context has no uncommitted changes
+     */
+    public static boolean isEnabled(Context context)
+    {
+        return isEnabled() && !context.hasEvents();
+    }
+
+    /**
+     * Get a region of the cache, created on first use.
+     *
+     * @param name
+     *            name of the region
+     * @return the region
+     */
+    @SuppressWarnings("unchecked")
+    public static <K, V> SharedCache<K, V> getRegion(String name)
+    {
+        SharedCache<?, ?> region = regions.get(name);
+        if (region == null)
+        {
+            int size = ConfigurationManager.getIntProperty("cache.shared." + name + ".size", DEFAULT_SIZE);
+            long ttl = ConfigurationManager.getLongProperty("cache.shared." + name + ".ttl", DEFAULT_TTL) * 1000;
+            SharedCache<?, ?> existing = regions.putIfAbsent(name, region = new SharedCache<K, V>(name, size, ttl));
+            if (existing != null)
+            {
+                region = existing;
+            }
+        }
+        return (SharedCache<K, V>) region;
+    }
+
+    /**
+     * @return the regions created so far, by name
+     */
+    public static Map<String, SharedCache<?, ?>> getRegions()
+    {
+        return new TreeMap<String, SharedCache<?, ?>>(regions);
+    }
+
+    /**
+     * Empty all the regions.
+     */
+    public static void clearAll()
+    {
+        for (SharedCache<?, ?> region : regions.values())
+        {
+            region.clear();
+        }
+    }
+
+    /**
+     * @return the statistics of all the regions, a line per region
+     */
+    public static String report()
+    {
+        StringBuilder report = new StringBuilder();
+        for (SharedCache<?, ?> region : getRegions().values())
+        {
+            report.append(region).append('\n');
+        }
+        return report.toString();
+    }
+
+    /**
+     * Read a row by primary key through the region named after its table.
+     * The caller gets its own copy of the row.
+     *
+     * @param context
+     *            current context
+     * @param table
+     *            the table, also the name of the region
+     * @param id
+     *            the primary key
+     * @return the row, or null if it doesn't exist
+     * @throws SQLException
+     */
+    public static TableRow findRow(Context context, String table, int id) throws SQLException
+    {
+        if (!isEnabled(context))
+        {
+            return DatabaseManager.find(context, table, id);
+        }
+
+        SharedCache<Integer, TableRow> region = getRegion(table);
+        Integer key = Integer.valueOf(id);
+        TableRow row = region.get(key);
+        if (row != null)
+        {
+            return row.copy();
+        }
+
+        long stamp = region.stamp();
+        row = DatabaseManager.find(context, table, id);
+        if (row != null)
+        {
+            region.put(key, row.copy(), stamp);
+        }
+        return row;
+    }
+
+    /**
+     * Look up a value.
+     *
+     * @return the value, or null if it isn't in the region or has expired
+     */
+    public V get(K key)
+    {
+        if (maxSize <= 0)
+        {
+            return null;
+        }
+        synchronized (this)
+        {
+            Entry<V> entry = entries.get(key);
+            if (entry != null)
+            {
+                if (entry.expires > System.currentTimeMillis())
+                {
+                    hits.incrementAndGet();
+                    return entry.value;
+                }
+                entries.remove(key);
+                expirations.incrementAndGet();
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * @return a stamp to give to {@link #put(Object, Object, long)}, taken
+     *         before reading the value from the database
+     */
+    public synchronized long stamp()
+    {
+        return version;
+    }
+
+    /**
+     * Store a value read from the database, unless the region has been
+     * invalidated since it was read: the value may then be stale.
+     *
+     * @param key
+     *            the key
+     * @param value
+     *            the value, which must not be modified afterwards
+     * @param stamp
+     *            the result of {@link #stamp()} before reading the value
+     */
+    public void put(K key, V value, long stamp)
+    {
+        if (maxSize <= 0)
+        {
+            return;
+        }
+        synchronized (this)
+        {
+            if (stamp != version)
+            {
+                return;
+            }
+            entries.put(key, new Entry<V>(value, System.currentTimeMillis() + ttl));
+            if (entries.size() > maxSize)
+            {
+                Iterator<K> eldest = entries.keySet().iterator();
+                eldest.next();
+                eldest.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Invalidate a value.
+     */
+    public void remove(K key)
+    {
+        synchronized (this)
+        {
+            version++;
+            entries.remove(key);
+        }
+        invalidations.incrementAndGet();
+    }
+
+    /**
+     * Invalidate all the values of the region.
+     */
+    public void clear()
+    {
+        synchronized (this)
+        {
+            version++;
+            entries.clear();
+        }
+        invalidations.incrementAndGet();
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public synchronized int size()
+    {
+        return entries.size();
+    }
+
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    public long getMisses()
+    {
+        return misses.get();
+    }
+
+    /** @return number of values removed to respect the size of the region */
+    public long getEvictions()
+    {
+        return evictions.get();
+    }
+
+    /** @return number of values found after their time to live */
+    public long getExpirations()
+    {
+        return expirations.get();
+    }
+
+    /** @return number of invalidations by key or of the whole region */
+    public long getInvalidations()
+    {
+        return invalidations.get();
+    }
+
+    @Override
+    public String toString()
+    {
+        long lookups = getHits() + getMisses();
+        return String.format(Locale.ENGLISH,
+                "%s: %d/%d entries, %d hits, %d misses (%.1f%% hit ratio), %d evictions, %d expirations, %d invalidations",
+                name, size(), maxSize, getHits(), getMisses(),
+                lookups == 0 ? 0.0 : 100.0 * getHits() / lookups,
+                getEvictions(), getExpirations(), getInvalidations());
+    }
+}
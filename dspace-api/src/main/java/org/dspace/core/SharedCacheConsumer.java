@@ -0,0 +1,99 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.core;
+
+import java.util.List;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+import org.dspace.content.Metadatum;
+import org.dspace.event.Consumer;
+import org.dspace.event.Event;
+import org.dspace.storage.rdbms.TableRow;
+
+/**
+ * Event consumer invalidating the {@link SharedCache} once the changes to
+ * communities, collections and group memberships have been committed.
+ * Configure it in dspace.cfg with the filter
+ * <code>Community|Collection|Group|EPerson+All</code>; it does nothing while
+ * the shared cache is disabled.
+ */
+public class SharedCacheConsumer implements Consumer
+{
+    private static final Logger log = Logger.getLogger(SharedCacheConsumer.class);
+
+    @Override
+    public void initialize() throws Exception
+    {
+    }
+
+    @Override
+    public void consume(Context ctx, Event event) throws Exception
+    {
+        if (!SharedCache.isEnabled())
+        {
+            return;
+        }
+
+        int type = event.getSubjectType();
+        int id = event.getSubjectID();
+        switch (type)
+        {
+        case Constants.COMMUNITY:
+        case Constants.COLLECTION:
+            String key = type + "/" + id;
+            SharedCache.<Integer, TableRow>getRegion(type == Constants.COMMUNITY ? "community" : "collection")
+                    .remove(id);
+            SharedCache.<String, List<Metadatum>>getRegion("metadata").remove(key);
+            SharedCache.<String, String>getRegion("handle.resource").remove(key);
+            if (event.getEventType() == Event.DELETE && event.getDetail() != null)
+            {
+                // the detail of a deletion is the handle of the object
+                SharedCache.<String, TableRow>getRegion("handle").remove(event.getDetail());
+            }
+            break;
+
+        case Constants.GROUP:
+            SharedCache<Integer, Set<Integer>> membership = SharedCache.getRegion("group.membership");
+            if (event.getEventType() == Event.DELETE)
+            {
+                membership.clear();
+            }
+            else if (event.getObjectType() == Constants.EPERSON)
+            {
+                membership.remove(event.getObjectID());
+            }
+            break;
+
+        case Constants.EPERSON:
+            if (event.getEventType() == Event.DELETE)
+            {
+                SharedCache.<Integer, Set<Integer>>getRegion("group.membership").remove(id);
+            }
+            break;
+
+        default:
+            break;
+        }
+
+        if (log.isDebugEnabled())
+        {
+            log.debug("Shared cache invalidated by " + event.toString());
+        }
+    }
+
+    @Override
+    public void end(Context ctx) throws Exception
+    {
+    }
+
+    @Override
+    public void finish(Context ctx) throws Exception
+    {
+    }
+}
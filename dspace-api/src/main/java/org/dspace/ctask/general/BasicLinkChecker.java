@@ -12,6 +12,7 @@ import org.dspace.content.Metadatum;
 import org.dspace.content.DSpaceObject;
 import org.dspace.content.Item;
 import org.dspace.curate.AbstractCurationTask;
+import org.dspace.curate.Concurrent;
 import org.dspace.curate.Curator;
 
 import java.io.IOException;
@@ -30,13 +31,10 @@ import java.util.List;
  *
  * @author Stuart Lewis
  */
-
+@Concurrent
 public class BasicLinkChecker extends AbstractCurationTask
 {
 
-    // The status of the link checking of this item
-    private int status = Curator.CURATE_UNSET;
-
     // The results of link checking this item
     private List<String> results = null;
 
@@ -58,7 +56,7 @@ public class BasicLinkChecker extends AbstractCurationTask
         StringBuilder results = new StringBuilder();
 
         // Unless this is  an item, we'll skip this item
-        status = Curator.CURATE_SKIP;
+        int status = Curator.CURATE_SKIP;
         if (dso instanceof Item)
         {
             Item item = (Item)dso;
@@ -0,0 +1,25 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.curate;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
+/**
+ * Annotation type for CurationTasks. A task is concurrent if the same
+ * instance may perform upon several items at once, each in its own thread
+ * and context (see {@link Curator#setThreads(int)}). Such a task must not
+ * keep per-object state in its fields, and must use
+ * {@link Curator#curationContext()} for the context of the object.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Concurrent
+{
+}
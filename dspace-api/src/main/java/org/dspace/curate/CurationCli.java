@@ -11,8 +11,10 @@ import java.io.BufferedReader;
 import java.io.FileReader;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -59,6 +61,8 @@ public class CurationCli
                 "maximum number of objects allowed in context cache. If absent, no limit");
         options.addOption("s", "scope", true,
                 "transaction scope to impose: use 'object', 'curation', or 'open'. If absent, 'open' applies");
+        options.addOption("w", "workers", true,
+                "number of threads performing a concurrent task upon the items of a collection. If absent, 1");
         options.addOption("v", "verbose", false,
                 "report activity to stdout");
         options.addOption("h", "help", false, "help");
@@ -73,6 +77,7 @@ public class CurationCli
         String reporterName = null;
         String limit = null;
         String scope = null;
+        String workers = null;
         boolean verbose = false;
 
         if (line.hasOption('h'))
@@ -85,6 +90,8 @@ public class CurationCli
                     .println("single item: CurationCli -t generate -i itemId");
             System.out
                     .println("task queue: CurationCli -q monthly");
+            System.out
+                    .println("concurrent task, 8 threads: CurationCli -t vscan -i 123456789/2 -w 8 -s object");
             System.exit(0);
         }
 
@@ -128,6 +135,11 @@ public class CurationCli
             scope = line.getOptionValue('s');
         }
 
+        if (line.hasOption('w'))
+        { // worker threads
+            workers = line.getOptionValue('w');
+        }
+
         if (line.hasOption('v'))
         { // verbose
             verbose = true;
@@ -152,6 +164,12 @@ public class CurationCli
         	System.exit(1);
         }
         
+        if (workers != null && Integer.parseInt(workers) <= 0 )
+        {
+        	System.out.println("Number of workers '" + workers + "' must be a positive integer");
+        	System.exit(1);
+        }
+        
         if (scope != null && Curator.TxScope.valueOf(scope.toUpperCase()) == null)
     	{
         	System.out.println("Bad transaction scope '" + scope + "': only 'object', 'curation' or 'open' recognized");
@@ -183,6 +201,10 @@ public class CurationCli
         {
         	curator.setCacheLimit(Integer.parseInt(limit));
         }
+        if (workers != null)
+        {
+        	curator.setThreads(Integer.parseInt(workers));
+        }
         if (scope != null)
         {
         	Curator.TxScope txScope = Curator.TxScope.valueOf(scope.toUpperCase());
@@ -261,38 +283,73 @@ public class CurationCli
                 System.out.println("No implementation configured for queue");
                 throw new UnsupportedOperationException("No queue service available");
             }
-            // use current time as our reader 'ticket'
-            long ticket = System.currentTimeMillis();
-            Iterator<TaskQueueEntry> entryIter = queue.dequeue(taskQueueName, ticket).iterator();
-            while (entryIter.hasNext())
+            // read the queue until it is empty: other processes may be
+            // reading it in parallel with a shared queue implementation
+            Set<String> lastBatch = new HashSet<String>();
+            while (true)
             {
-                TaskQueueEntry entry = entryIter.next();
-                if (verbose)
+                // use current time as our reader 'ticket'
+                long ticket = System.currentTimeMillis();
+                Set<TaskQueueEntry> entries = queue.dequeue(taskQueueName, ticket);
+                if (entries.isEmpty())
                 {
-                    System.out.println("Curating id: " + entry.getObjectId());
+                    queue.release(taskQueueName, ticket, false);
+                    break;
                 }
-                curator.clear();
-                // does entry relate to a DSO or workflow object?
-                if (entry.getObjectId().indexOf("/") > 0)
+                // a batch that could not be removed comes back unchanged:
+                // stop rather than curate it over and over
+                Set<String> batch = new HashSet<String>();
+                for (TaskQueueEntry entry : entries)
                 {
-                    for (String task : entry.getTaskNames())
-                    {
-                        curator.addTask(task);
-                    }
-                    curator.curate(c, entry.getObjectId());
+                    batch.add(entry.toString());
                 }
-                else
+                if (batch.equals(lastBatch))
                 {
-                    // make eperson who queued task the effective user
-                    EPerson agent = EPerson.findByEmail(c, entry.getEpersonId());
-                    if (agent != null)
+                    queue.release(taskQueueName, ticket, false);
+                    System.out.println("Unable to remove processed entries from queue: " + taskQueueName);
+                    break;
+                }
+                lastBatch = batch;
+                boolean done = false;
+                try
+                {
+                    Iterator<TaskQueueEntry> entryIter = entries.iterator();
+                    while (entryIter.hasNext())
                     {
-                        c.setCurrentUser(agent);
+                        TaskQueueEntry entry = entryIter.next();
+                        if (verbose)
+                        {
+                            System.out.println("Curating id: " + entry.getObjectId());
+                        }
+                        curator.clear();
+                        // does entry relate to a DSO or workflow object?
+                        if (entry.getObjectId().indexOf("/") > 0)
+                        {
+                            for (String task : entry.getTaskNames())
+                            {
+                                curator.addTask(task);
+                            }
+                            curator.curate(c, entry.getObjectId());
+                        }
+                        else
+                        {
+                            // make eperson who queued task the effective user
+                            EPerson agent = EPerson.findByEmail(c, entry.getEpersonId());
+                            if (agent != null)
+                            {
+                                c.setCurrentUser(agent);
+                            }
+                            WorkflowCurator.curate(curator, c, entry.getObjectId());
+                        }
                     }
-                    WorkflowCurator.curate(curator, c, entry.getObjectId());
+                    done = true;
+                }
+                finally
+                {
+                    // entries of a failed batch stay queued, to be retried
+                    queue.release(taskQueueName, ticket, done);
                 }
             }
-            queue.release(taskQueueName, ticket, true);
         }
         c.complete();
         if (verbose)
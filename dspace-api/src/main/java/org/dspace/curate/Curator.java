@@ -13,17 +13,26 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.log4j.Logger;
 
 import org.dspace.content.Collection;
 import org.dspace.content.Community;
 import org.dspace.content.DSpaceObject;
+import org.dspace.content.Item;
 import org.dspace.content.ItemIterator;
 import org.dspace.content.Site;
 import org.dspace.core.Constants;
 import org.dspace.core.Context;
 import org.dspace.core.PluginManager;
+import org.dspace.eperson.EPerson;
 import org.dspace.handle.HandleManager;
 
 /**
@@ -66,6 +75,7 @@ public class Curator
     private TaskResolver resolver = new TaskResolver();
     private int cacheLimit = Integer.MAX_VALUE;
     private TxScope txScope = TxScope.OPEN;
+    private int threads = 1;
 
     /**
      * No-arg constructor
@@ -181,6 +191,21 @@ public class Curator
     	return this;
     }
 
+    /**
+     * Sets the number of threads performing a concurrent task upon the items
+     * of a collection. Each thread has its own context, with the same user,
+     * committed after each item with the 'object' transaction scope and
+     * when the thread ends otherwise. The status of the task is then the
+     * most severe of its statuses on the items, reported in aggregate.
+     * Tasks which are not annotated as Concurrent always run in the
+     * curation thread. The default is 1.
+     */
+    public Curator setThreads(int threads)
+    {
+        this.threads = threads;
+        return this;
+    }
+
     /**
      * Performs all configured tasks upon object identified by id. If
      * the object can be resolved as a handle, the DSO will be the
@@ -499,6 +524,22 @@ public class Curator
                 return false;
             }
             ItemIterator iter = coll.getItems();
+            if (threads > 1 && tr.task.isConcurrent())
+            {
+                List<Integer> itemIDs = new ArrayList<Integer>();
+                try
+                {
+                    while (iter.hasNext())
+                    {
+                        itemIDs.add(iter.nextID());
+                    }
+                }
+                finally
+                {
+                    iter.close();
+                }
+                return doItems(tr, coll, itemIDs);
+            }
             while (iter.hasNext())
             {
                 if (! tr.run(iter.next()))
@@ -513,6 +554,126 @@ public class Curator
         }
         return true;
     }
+
+    /**
+     * Run a concurrent task for the items of a collection in several
+     * threads, each with its own context. The threads stop taking items as
+     * soon as the task suspends.
+     * @param tr TaskRunner
+     * @param coll the Collection of the items
+     * @param itemIDs ids of the items
+     * @return true if successful, false if the task suspended
+     * @throws IOException
+     */
+    private boolean doItems(final TaskRunner tr, Collection coll, final List<Integer> itemIDs)
+            throws IOException, SQLException
+    {
+        final Context parent = curationContext();
+        final AtomicInteger next = new AtomicInteger();
+        final AtomicBoolean suspended = new AtomicBoolean();
+        final Map<Integer, AtomicInteger> counts = new HashMap<Integer, AtomicInteger>();
+        for (int code : new int[] { CURATE_ERROR, CURATE_SUCCESS, CURATE_FAIL, CURATE_SKIP })
+        {
+            counts.put(code, new AtomicInteger());
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, Math.max(1, itemIDs.size())));
+        try
+        {
+            List<Future<Void>> workers = new ArrayList<Future<Void>>();
+            for (int i = 0; i < threads && i < itemIDs.size(); i++)
+            {
+                workers.add(executor.submit(new Callable<Void>()
+                {
+                    public Void call() throws Exception
+                    {
+                        Context ctx = new Context();
+                        try
+                        {
+                            if (parent.getCurrentUser() != null)
+                            {
+                                ctx.setCurrentUser(EPerson.find(ctx, parent.getCurrentUser().getID()));
+                            }
+                            if (parent.ignoreAuthorization())
+                            {
+                                ctx.turnOffAuthorisationSystem();
+                            }
+                            curationCtx.set(ctx);
+                            int index;
+                            while (!suspended.get() && (index = next.getAndIncrement()) < itemIDs.size())
+                            {
+                                Item item = Item.find(ctx, itemIDs.get(index));
+                                if (item == null)
+                                {
+                                    // deleted in the meantime
+                                    continue;
+                                }
+                                int code = tr.runConcurrent(item);
+                                AtomicInteger count = counts.get(code);
+                                if (count != null)
+                                {
+                                    count.incrementAndGet();
+                                }
+                                if (tr.suspend(code))
+                                {
+                                    suspended.set(true);
+                                }
+                            }
+                            ctx.complete();
+                        }
+                        finally
+                        {
+                            curationCtx.remove();
+                            if (ctx.isValid())
+                            {
+                                ctx.abort();
+                            }
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> worker : workers)
+            {
+                worker.get();
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException("Curation interrupted", e);
+        }
+        catch (ExecutionException e)
+        {
+            suspended.set(true);
+            Throwable cause = e.getCause();
+            throw (cause instanceof IOException) ? (IOException) cause
+                    : new IOException(cause.getMessage(), cause);
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        // the most severe status of the task on the items
+        int status = CURATE_SKIP;
+        for (int code : new int[] { CURATE_SUCCESS, CURATE_FAIL, CURATE_ERROR })
+        {
+            if (counts.get(code).get() > 0)
+            {
+                status = code;
+            }
+        }
+        tr.statusCode = status;
+        String summary = "Curation task: " + tr.task.getName() + " performed on " + itemIDs.size()
+                + " items of " + coll.getHandle() + " with " + threads + " threads: "
+                + counts.get(CURATE_SUCCESS) + " success, " + counts.get(CURATE_FAIL) + " fail, "
+                + counts.get(CURATE_SKIP) + " skip, " + counts.get(CURATE_ERROR) + " error"
+                + (suspended.get() ? ", suspended" : "");
+        log.info(summary);
+        report(summary);
+        return ! suspended.get();
+    }
     
     /**
      * Record a 'visit' to a DSpace object and enforce any policies set
@@ -544,8 +705,10 @@ public class Curator
     private class TaskRunner
     {
         ResolvedTask task = null;
-        int statusCode = CURATE_UNSET;
-        String result = null;
+        volatile int statusCode = CURATE_UNSET;
+        volatile String result = null;
+        // result of the object performed by the current thread, when concurrent
+        final ThreadLocal<String> threadResult = new ThreadLocal<String>();
 
         public TaskRunner(ResolvedTask task)
         {
@@ -595,9 +758,33 @@ public class Curator
             }
         }
 
+        /**
+         * Perform the task upon an item in a thread of its own, with the
+         * curation context of the thread.
+         * @return the status code
+         */
+        public int runConcurrent(DSpaceObject dso) throws IOException
+        {
+            try
+            {
+                threadResult.remove();
+                int code = task.perform(dso);
+                log.info(logMessage(dso.getHandle(), code, threadResult.get()));
+                visit(dso);
+                return code;
+            }
+            catch(IOException ioe)
+            {
+                //log error & pass exception upwards
+                log.error("Error executing curation task '" + task.getName() + "'", ioe);
+                throw ioe;
+            }
+        }
+
         public void setResult(String result)
         {
             this.result = result;
+            threadResult.set(result);
         }
         
         private boolean suspend(int code)
@@ -622,14 +809,19 @@ public class Curator
          * @return log message text
          */
         private String logMessage(String id) 
+        {
+            return logMessage(id, statusCode, result);
+        }
+
+        private String logMessage(String id, int code, String message)
         {
             StringBuilder mb = new StringBuilder();
             mb.append("Curation task: ").append(task.getName()).
                append(" performed on: ").append(id).
-               append(" with status: ").append(statusCode);
-            if (result != null)
+               append(" with status: ").append(code);
+            if (message != null)
             {
-                mb.append(". Result: '").append(result).append("'");
+                mb.append(". Result: '").append(message).append("'");
             }
             return mb.toString();
         }
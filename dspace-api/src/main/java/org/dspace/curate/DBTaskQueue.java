@@ -0,0 +1,264 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.curate;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+
+import org.dspace.core.ConfigurationManager;
+import org.dspace.core.Context;
+import org.dspace.storage.rdbms.DatabaseManager;
+import org.dspace.storage.rdbms.TableRow;
+import org.dspace.storage.rdbms.TableRowIterator;
+
+/**
+ * DBTaskQueue provides a TaskQueue implementation based on the
+ * <code>curation_task_queue</code> table, so that several curation processes,
+ * on the same or on different nodes, can read the same queue in parallel.
+ * <p>
+ * <code>dequeue</code> claims a batch of entries (<code>taskqueue.db.batch-size</code>)
+ * row by row: an entry is claimed by a conditional update, which fails if
+ * another reader claimed it first, so no lock is held on the queue. The
+ * claimed entries are deleted by <code>release</code>, or returned to the
+ * queue if they are not to be removed. Entries claimed by a reader which
+ * crashed become visible again after <code>taskqueue.db.visibility-timeout</code>
+ * seconds. An entry is given out <code>taskqueue.db.max-attempts</code> times
+ * at most; the entries which keep failing stay in the table for inspection.
+ */
+public class DBTaskQueue implements TaskQueue
+{
+    private static Logger log = Logger.getLogger(TaskQueue.class);
+
+    private static final String TABLE = "curation_task_queue";
+
+    // entries claimed by one dequeue
+    private int batchSize = ConfigurationManager.getIntProperty("curate", "taskqueue.db.batch-size", 10);
+    // seconds after which the entries claimed by a reader are visible again
+    private long visibilityTimeout = ConfigurationManager.getLongProperty("curate", "taskqueue.db.visibility-timeout", 3600);
+    // number of times an entry may be dequeued
+    private int maxAttempts = ConfigurationManager.getIntProperty("curate", "taskqueue.db.max-attempts", 3);
+
+    // identifies this process in the claimed entries
+    private final String readerId = ManagementFactory.getRuntimeMXBean().getName();
+
+    public DBTaskQueue()
+    {
+    }
+
+    @Override
+    public String[] queueNames()
+    {
+        Context context = null;
+        try
+        {
+            context = new Context();
+            List<String> names = new ArrayList<String>();
+            TableRowIterator tri = DatabaseManager.query(context,
+                    "SELECT DISTINCT queue_name FROM curation_task_queue ORDER BY queue_name");
+            try
+            {
+                while (tri.hasNext())
+                {
+                    names.add(tri.next().getStringColumn("queue_name"));
+                }
+            }
+            finally
+            {
+                tri.close();
+            }
+            return names.toArray(new String[names.size()]);
+        }
+        catch (SQLException e)
+        {
+            log.error("Unable to list the task queues", e);
+            throw new IllegalStateException("Unable to list the task queues", e);
+        }
+        finally
+        {
+            abort(context);
+        }
+    }
+
+    @Override
+    public void enqueue(String queueName, TaskQueueEntry entry)
+           throws IOException
+    {
+        Set<TaskQueueEntry> entrySet = new LinkedHashSet<TaskQueueEntry>();
+        entrySet.add(entry);
+        enqueue(queueName, entrySet);
+    }
+
+    @Override
+    public void enqueue(String queueName, Set<TaskQueueEntry> entrySet)
+           throws IOException
+    {
+        Context context = null;
+        try
+        {
+            context = new Context();
+            for (TaskQueueEntry entry : entrySet)
+            {
+                TableRow row = DatabaseManager.row(TABLE);
+                row.setColumn("queue_name", queueName);
+                row.setColumn("eperson_id", entry.getEpersonId());
+                row.setColumn("submit_time", entry.getSubmitTime());
+                row.setColumn("tasks", join(entry.getTaskNames()));
+                row.setColumn("object_id", entry.getObjectId());
+                row.setColumn("attempts", 0);
+                DatabaseManager.insert(context, row);
+            }
+            context.complete();
+            context = null;
+        }
+        catch (SQLException e)
+        {
+            throw new IOException("Unable to enqueue tasks to " + queueName, e);
+        }
+        finally
+        {
+            abort(context);
+        }
+    }
+
+    @Override
+    public Set<TaskQueueEntry> dequeue(String queueName, long ticket)
+           throws IOException
+    {
+        Set<TaskQueueEntry> entrySet = new LinkedHashSet<TaskQueueEntry>();
+        Context context = null;
+        try
+        {
+            context = new Context();
+            long now = System.currentTimeMillis();
+            Timestamp expired = new Timestamp(now - visibilityTimeout * 1000);
+            String query = "SELECT * FROM curation_task_queue WHERE queue_name = ? AND attempts < ? "
+                    + "AND (claimed IS NULL OR claimed < ?) ORDER BY task_queue_id";
+            if (DatabaseManager.isOracle())
+            {
+                query = "SELECT * FROM (" + query + ") WHERE rownum <= ?";
+            }
+            else
+            {
+                query += " LIMIT ?";
+            }
+
+            List<TableRow> candidates;
+            TableRowIterator tri = DatabaseManager.queryTable(context, TABLE, query,
+                    queueName, maxAttempts, expired, batchSize);
+            try
+            {
+                candidates = tri.toList();
+            }
+            finally
+            {
+                tri.close();
+            }
+
+            Timestamp claim = new Timestamp(now);
+            for (TableRow row : candidates)
+            {
+                // another reader may have claimed it in the meantime
+                int updated = DatabaseManager.updateQuery(context,
+                        "UPDATE curation_task_queue SET claimed = ?, claimed_by = ?, ticket = ?, "
+                        + "attempts = attempts + 1 WHERE task_queue_id = ? "
+                        + "AND (claimed IS NULL OR claimed < ?)",
+                        claim, readerId, ticket, row.getIntColumn("task_queue_id"), expired);
+                if (updated == 1)
+                {
+                    entrySet.add(new TaskQueueEntry(row.getStringColumn("eperson_id"),
+                            row.getLongColumn("submit_time"), split(row.getStringColumn("tasks")),
+                            row.getStringColumn("object_id")));
+                }
+            }
+            context.complete();
+            context = null;
+        }
+        catch (SQLException e)
+        {
+            throw new IOException("Unable to dequeue tasks from " + queueName, e);
+        }
+        finally
+        {
+            abort(context);
+        }
+        return entrySet;
+    }
+
+    @Override
+    public void release(String queueName, long ticket, boolean remove)
+    {
+        Context context = null;
+        try
+        {
+            context = new Context();
+            if (remove)
+            {
+                DatabaseManager.updateQuery(context,
+                        "DELETE FROM curation_task_queue WHERE queue_name = ? AND ticket = ? AND claimed_by = ?",
+                        queueName, ticket, readerId);
+            }
+            else
+            {
+                DatabaseManager.updateQuery(context,
+                        "UPDATE curation_task_queue SET claimed = NULL, claimed_by = NULL, ticket = NULL "
+                        + "WHERE queue_name = ? AND ticket = ? AND claimed_by = ?",
+                        queueName, ticket, readerId);
+            }
+            context.complete();
+            context = null;
+        }
+        catch (SQLException e)
+        {
+            log.error("Unable to release the task queue " + queueName, e);
+        }
+        finally
+        {
+            abort(context);
+        }
+    }
+
+    private static String join(List<String> taskNames)
+    {
+        StringBuilder sb = new StringBuilder();
+        for (String tName : taskNames)
+        {
+            if (sb.length() > 0)
+            {
+                sb.append(",");
+            }
+            sb.append(tName);
+        }
+        return sb.toString();
+    }
+
+    private static List<String> split(String tasks)
+    {
+        List<String> taskNames = new ArrayList<String>();
+        for (String tName : tasks.split(","))
+        {
+            taskNames.add(tName);
+        }
+        return taskNames;
+    }
+
+    private static void abort(Context context)
+    {
+        if (context != null && context.isValid())
+        {
+            context.abort();
+        }
+    }
+}
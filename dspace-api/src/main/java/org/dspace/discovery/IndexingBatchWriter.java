@@ -0,0 +1,260 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.discovery;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.common.SolrInputDocument;
+
+/**
+ * Collects the documents built by the indexer workers in a bounded queue and
+ * sends them to Solr in batches from a single background thread, using one
+ * <code>add(Collection)</code> call per batch instead of one request per
+ * document.
+ * <p/>
+ * A batch is sent as soon as <code>batchSize</code> documents are available
+ * or <code>flushInterval</code> milliseconds after its first document was
+ * taken from the queue, so that a slow flow of documents isn't held back
+ * until the batch is full. When <code>commitWithin</code> is greater than zero it is
+ * passed to Solr with every batch, otherwise the caller is responsible for
+ * the final commit.
+ */
+public class IndexingBatchWriter implements Runnable
+{
+    private static final Logger log = Logger.getLogger(IndexingBatchWriter.class);
+
+    private final SolrServer solr;
+
+    private final int batchSize;
+
+    private final int commitWithin;
+
+    private final long flushInterval;
+
+    private final BlockingQueue<SolrInputDocument> queue;
+
+    private final AtomicLong added = new AtomicLong();
+
+    private final AtomicLong failed = new AtomicLong();
+
+    private final AtomicLong batches = new AtomicLong();
+
+    private volatile int maxQueueDepth = 0;
+
+    private volatile boolean closed = false;
+
+    private Thread thread;
+
+    public IndexingBatchWriter(SolrServer solr, int batchSize,
+            int commitWithin, int queueSize, long flushInterval)
+    {
+        this.solr = solr;
+        this.batchSize = Math.max(1, batchSize);
+        this.commitWithin = commitWithin;
+        this.flushInterval = flushInterval;
+        this.queue = new ArrayBlockingQueue<SolrInputDocument>(
+                Math.max(this.batchSize, queueSize));
+    }
+
+    /**
+     * Start the background thread that sends the batches to Solr
+     */
+    public synchronized void start()
+    {
+        if (thread == null)
+        {
+            thread = new Thread(this, "discovery-batch-writer");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Queue a document for the next batch, blocking while the queue is full
+     * so that fast document builders can't exhaust the heap.
+     *
+     * @param doc
+     *            the document to send to Solr
+     */
+    public void add(SolrInputDocument doc) throws InterruptedException
+    {
+        if (closed)
+        {
+            throw new IllegalStateException("The batch writer is closed");
+        }
+        queue.put(doc);
+        int depth = queue.size();
+        if (depth > maxQueueDepth)
+        {
+            maxQueueDepth = depth;
+        }
+    }
+
+    /**
+     * Stop accepting documents, wait for the queued ones to be sent and stop
+     * the background thread.
+     */
+    public void close() throws InterruptedException
+    {
+        closed = true;
+        if (thread != null)
+        {
+            thread.join();
+        }
+        else
+        {
+            // never started, send what has been queued from the caller
+            // thread
+            drain();
+        }
+    }
+
+    @Override
+    public void run()
+    {
+        try
+        {
+            drain();
+        }
+        catch (InterruptedException e)
+        {
+            log.warn("Discovery batch writer interrupted, "
+                    + queue.size() + " documents not sent");
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void drain() throws InterruptedException
+    {
+        List<SolrInputDocument> batch = new ArrayList<SolrInputDocument>(
+                batchSize);
+        // time at which the current batch is sent even if not full
+        long deadline = 0;
+        while (!closed || !queue.isEmpty())
+        {
+            long remaining = batch.isEmpty() ? flushInterval
+                    : deadline - System.currentTimeMillis();
+            SolrInputDocument doc = remaining > 0 ? queue.poll(remaining,
+                    TimeUnit.MILLISECONDS) : queue.poll();
+            if (doc != null)
+            {
+                if (batch.isEmpty())
+                {
+                    deadline = System.currentTimeMillis() + flushInterval;
+                }
+                batch.add(doc);
+                queue.drainTo(batch, batchSize - batch.size());
+            }
+            if (batch.size() >= batchSize || (!batch.isEmpty()
+                    && System.currentTimeMillis() >= deadline))
+            {
+                send(batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty())
+        {
+            send(batch);
+        }
+    }
+
+    private void send(List<SolrInputDocument> batch)
+    {
+        try
+        {
+            if (commitWithin > 0)
+            {
+                solr.add(batch, commitWithin);
+            }
+            else
+            {
+                solr.add(batch);
+            }
+            added.addAndGet(batch.size());
+            batches.incrementAndGet();
+        }
+        catch (Exception e)
+        {
+            log.warn("Unable to send a batch of " + batch.size()
+                    + " documents, retrying them one by one: "
+                    + e.getMessage());
+            // isolate the offending documents so that a single bad record
+            // doesn't discard the whole batch
+            for (SolrInputDocument doc : batch)
+            {
+                try
+                {
+                    if (commitWithin > 0)
+                    {
+                        solr.add(doc, commitWithin);
+                    }
+                    else
+                    {
+                        solr.add(doc);
+                    }
+                    added.incrementAndGet();
+                }
+                catch (Exception ex)
+                {
+                    failed.incrementAndGet();
+                    log.error("Unable to index document "
+                            + doc.getFieldValue("search.uniqueid") + ": "
+                            + ex.getMessage(), ex);
+                }
+            }
+            batches.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return the number of documents actually accepted by Solr
+     */
+    public long getAdded()
+    {
+        return added.get();
+    }
+
+    /**
+     * @return the number of documents rejected by Solr
+     */
+    public long getFailed()
+    {
+        return failed.get();
+    }
+
+    /**
+     * @return the number of update requests sent to Solr
+     */
+    public long getBatches()
+    {
+        return batches.get();
+    }
+
+    /**
+     * @return the number of documents currently waiting to be sent
+     */
+    public int getQueueDepth()
+    {
+        return queue.size();
+    }
+
+    /**
+     * @return the highest number of documents observed waiting in the queue
+     */
+    public int getMaxQueueDepth()
+    {
+        return maxQueueDepth;
+    }
+}
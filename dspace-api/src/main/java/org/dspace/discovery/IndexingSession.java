@@ -0,0 +1,132 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.discovery;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.request.ContentStreamUpdateRequest;
+import org.apache.solr.common.SolrInputDocument;
+
+/**
+ * The updates sent to Solr by a reindex, and their commit policy.
+ * <p/>
+ * Plain documents are queued in an {@link IndexingBatchWriter}; the documents
+ * extracted by Solr from their bitstreams (<code>/update/extract</code>) are
+ * sent by the calling worker, without any commit. When
+ * <code>commitWithin</code> is greater than zero every update carries it and
+ * Solr commits on its own, otherwise a single commit is issued when the
+ * session is closed.
+ */
+public class IndexingSession
+{
+    private static final Logger log = Logger.getLogger(IndexingSession.class);
+
+    private final SolrServer solr;
+
+    private final int commitWithin;
+
+    private final IndexingBatchWriter writer;
+
+    private final AtomicLong extracted = new AtomicLong();
+
+    private final AtomicLong extractFailed = new AtomicLong();
+
+    public IndexingSession(SolrServer solr, int batchSize, int commitWithin,
+            int queueSize, long flushInterval)
+    {
+        this.solr = solr;
+        this.commitWithin = commitWithin;
+        this.writer = new IndexingBatchWriter(solr, batchSize, commitWithin,
+                queueSize, flushInterval);
+    }
+
+    /**
+     * Start sending the queued documents
+     */
+    public void start()
+    {
+        writer.start();
+    }
+
+    /**
+     * Queue a document for the next batch.
+     */
+    public void add(SolrInputDocument doc) throws InterruptedException
+    {
+        writer.add(doc);
+    }
+
+    /**
+     * Send a document whose content must be extracted by Solr.
+     */
+    public void extract(ContentStreamUpdateRequest req) throws IOException
+    {
+        if (commitWithin > 0)
+        {
+            req.setCommitWithin(commitWithin);
+        }
+        try
+        {
+            req.process(solr);
+            extracted.incrementAndGet();
+        }
+        catch (SolrServerException e)
+        {
+            extractFailed.incrementAndGet();
+            log.error("Unable to extract document " + req.getParams().get("literal.search.uniqueid")
+                    + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Wait for the queued documents to be sent, then commit unless Solr has
+     * been asked to commit within a delay.
+     */
+    public void close() throws InterruptedException
+    {
+        writer.close();
+        if (commitWithin <= 0)
+        {
+            long start = System.currentTimeMillis();
+            try
+            {
+                solr.commit();
+                log.info("Discovery index committed in " + (System.currentTimeMillis() - start) + " ms");
+            }
+            catch (Exception e)
+            {
+                log.error("Unable to commit the discovery index: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    public IndexingBatchWriter getWriter()
+    {
+        return writer;
+    }
+
+    /**
+     * @return the number of documents sent through the extracting handler
+     */
+    public long getExtracted()
+    {
+        return extracted.get();
+    }
+
+    /**
+     * @return the number of documents rejected by the extracting handler
+     */
+    public long getExtractFailed()
+    {
+        return extractFailed.get();
+    }
+}
@@ -9,10 +9,13 @@ package org.dspace.discovery;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.PrintWriter;
+import java.io.Reader;
 import java.io.StringWriter;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
 import java.sql.SQLException;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
@@ -30,10 +33,18 @@ import java.util.Map;
 import java.util.Set;
 import java.util.TimeZone;
 import java.util.Vector;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.collections.MapUtils;
 import org.apache.commons.collections.Transformer;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.ArrayUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.time.DateFormatUtils;
@@ -48,7 +59,6 @@ import org.apache.log4j.Logger;
 import org.apache.solr.client.solrj.SolrQuery;
 import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.client.solrj.impl.HttpSolrServer;
-import org.apache.solr.client.solrj.request.AbstractUpdateRequest;
 import org.apache.solr.client.solrj.request.ContentStreamUpdateRequest;
 import org.apache.solr.client.solrj.response.FacetField;
 import org.apache.solr.client.solrj.response.Group;
@@ -67,7 +77,6 @@ import org.apache.solr.common.params.MoreLikeThisParams;
 import org.apache.solr.common.params.SpellingParams;
 import org.apache.solr.common.util.NamedList;
 import org.apache.solr.handler.extraction.ExtractingParams;
-import org.dspace.app.util.Util;
 import org.dspace.content.Bitstream;
 import org.dspace.content.Bundle;
 import org.dspace.content.Collection;
@@ -149,6 +158,12 @@ public class SolrServiceImpl implements SearchService, IndexingService {
      */
     private HttpSolrServer solr = null;
 
+    /**
+     * The indexing session of the indexer worker running in the current
+     * thread, if any
+     */
+    private final ThreadLocal<IndexingSession> currentSession = new ThreadLocal<IndexingSession>();
+
 
     protected HttpSolrServer getSolr()
     {
@@ -240,7 +255,13 @@ public class SolrServiceImpl implements SearchService, IndexingService {
                             || requiresIndexing(handle,
                                     ((Item) dso).getLastModified()))
                         {
-                            unIndexContent(context, handle);
+                            // in batch mode the new document replaces the
+                            // old one by its unique id, skip the per-item
+                            // delete by query
+                            if (currentSession.get() == null)
+                            {
+                                unIndexContent(context, handle);
+                            }
                             buildDocument(context, (Item) dso);
                         }
                     } else {
@@ -438,9 +459,9 @@ public class SolrServiceImpl implements SearchService, IndexingService {
             switch (type)
             {
             case Constants.ITEM:
-                List<Integer> ids = Item.findAllItemIDsUnfiltered(context);
-                startMultiThreadIndex(force, ids);
-                break;
+                // committed by the indexing session
+                startMultiThreadIndex(force, null);
+                return;
             case Constants.COLLECTION:
             Collection[] collections = Collection.findAll(context);
             for (Collection collection : collections)
@@ -474,26 +495,169 @@ public class SolrServiceImpl implements SearchService, IndexingService {
         }
     }
 
+    /**
+     * Reindex the given items (or all the archived and withdrawn items when
+     * <code>ids</code> is null) using a producer/consumer pipeline: the ids
+     * are streamed in a bounded queue from which a pool of workers, each one
+     * with its own Context, takes the next item to build as soon as it is
+     * free; the built documents are sent to Solr in batches by an
+     * {@link IndexingSession}, which also commits them once at the end
+     * (or lets Solr commit them within <code>indexer.batch.commitWithin</code>).
+     *
+     * @param force
+     *            whether or not to force the reindexing
+     * @param ids
+     *            the ids of the items to index, null to stream all of them
+     *            from the database
+     */
     private void startMultiThreadIndex(boolean force, List<Integer> ids)
     {
         int numThreads = ConfigurationManager.getIntProperty("discovery", "indexer.items.threads", 5);
+        int batchSize = ConfigurationManager.getIntProperty("discovery", "indexer.batch.size", 100);
+        int commitWithin = ConfigurationManager.getIntProperty("discovery", "indexer.batch.commitWithin", -1);
+        int queueSize = ConfigurationManager.getIntProperty("discovery", "indexer.queue.size", numThreads * batchSize);
+        long flushInterval = ConfigurationManager.getLongProperty("discovery", "indexer.batch.flush-interval", 1000);
 
-        List<Integer>[] arrayIDList = Util.splitList(ids, numThreads);
-        List<IndexerThread> threads = new ArrayList<IndexerThread>();
-        for (List<Integer> hl : arrayIDList) {
-        	IndexerThread thread = new IndexerThread(hl, force);
-        	thread.start();
-        	threads.add(thread);
-        }
-        boolean finished = false;
-        while (!finished) {
-        	finished = true;
-        	for (IndexerThread thread : threads) {
-        		finished = finished && !thread.isAlive();
-        	}
+        if (getSolr() == null)
+        {
+            return;
+        }
+
+        IndexingSession session = new IndexingSession(getSolr(), batchSize, commitWithin, queueSize, flushInterval);
+        IndexingBatchWriter writer = session.getWriter();
+        BlockingQueue<Integer> idQueue = new ArrayBlockingQueue<Integer>(Math.max(numThreads, queueSize));
+        IndexerProgress progress = new IndexerProgress();
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        List<Future<?>> workers = new ArrayList<Future<?>>();
+
+        session.start();
+        for (int i = 0; i < numThreads; i++)
+        {
+            workers.add(executor.submit(new IndexerWorker(idQueue, force, session, progress)));
+        }
+        executor.shutdown();
+
+        Context context = null;
+        ItemIterator iterator = null;
+        try
+        {
+            if (ids != null)
+            {
+                for (Integer id : ids)
+                {
+                    if (!enqueue(idQueue, id, workers, progress))
+                    {
+                        break;
+                    }
+                }
+            }
+            else
+            {
+                context = new Context();
+                iterator = Item.findAllItemIDsUnfilteredIterator(context);
+                while (iterator.hasNext())
+                {
+                    if (!enqueue(idQueue, iterator.nextID(), workers, progress))
+                    {
+                        break;
+                    }
+                }
+            }
+        }
+        catch (Exception e)
+        {
+            log.error("Error while reading the items to index: " + e.getMessage(), e);
+        }
+        finally
+        {
+            if (iterator != null)
+            {
+                iterator.close();
+            }
+            if (context != null)
+            {
+                context.abort();
+            }
         }
+
+        boolean interrupted = false;
+        try
+        {
+            for (int i = 0; i < numThreads; i++)
+            {
+                enqueue(idQueue, IndexerWorker.END_OF_QUEUE, workers, progress);
+            }
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException e)
+        {
+            executor.shutdownNow();
+            interrupted = true;
+            log.error("Interrupted while waiting for the indexer workers", e);
+        }
+        finally
+        {
+            // send and commit the documents already built, before the
+            // interrupt status is restored
+            try
+            {
+                session.close();
+            }
+            catch (InterruptedException e)
+            {
+                interrupted = true;
+                log.error("Interrupted while sending the last documents to the discovery index", e);
+            }
+            if (interrupted)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        long elapsed = Math.max(1, System.currentTimeMillis() - progress.start);
+        String report = "Discovery indexing of " + progress.processed.get()
+                + " items completed in " + (elapsed / 1000) + "s: "
+                + progress.errors.get() + " errors, " + writer.getAdded()
+                + " documents sent in " + writer.getBatches() + " batches ("
+                + writer.getFailed() + " rejected), " + session.getExtracted()
+                + " documents extracted (" + session.getExtractFailed() + " rejected), "
+                + String.format(Locale.ENGLISH, "%.1f", progress.processed.get() * 1000.0 / elapsed)
+                + " items/sec, max id queue depth " + progress.maxQueueDepth
+                + ", max document queue depth " + writer.getMaxQueueDepth();
+        log.info(report);
+        System.out.println(report);
     }
-    
+
+    /**
+     * Put the id in the work queue, waiting for a free slot as long as at
+     * least one worker is still alive.
+     *
+     * @return false if all the workers have terminated
+     */
+    private boolean enqueue(BlockingQueue<Integer> idQueue, Integer id,
+            List<Future<?>> workers, IndexerProgress progress) throws InterruptedException
+    {
+        while (!idQueue.offer(id, 1, TimeUnit.SECONDS))
+        {
+            boolean alive = false;
+            for (Future<?> worker : workers)
+            {
+                alive = alive || !worker.isDone();
+            }
+            if (!alive)
+            {
+                log.error("All the indexer workers have terminated, stop feeding the queue");
+                return false;
+            }
+        }
+        int depth = idQueue.size();
+        if (depth > progress.maxQueueDepth)
+        {
+            progress.maxQueueDepth = depth;
+        }
+        return true;
+    }
+
     /**
      * Iterates over all documents in the Lucene index and verifies they are in
      * database, if not, they are removed.
@@ -801,6 +965,12 @@ public class SolrServiceImpl implements SearchService, IndexingService {
     
     /**
      * Write the document to the index under the appropriate handle.
+     * <p/>
+     * The full text of the bitstreams (from the TEXT bundle) is added to the
+     * document as it is, unless <code>indexer.fulltext.extract</code> is set
+     * in discovery.cfg: then the bitstreams are sent through the Solr
+     * extracting handler. In both cases nothing is committed here, the
+     * commit is left to the indexing session or to the caller.
      *
      * @param doc the solr document to be written to the server
      * @param streams
@@ -811,7 +981,8 @@ public class SolrServiceImpl implements SearchService, IndexingService {
         try {
             if(getSolr() != null)
             {
-                if(CollectionUtils.isNotEmpty(streams))
+                if(CollectionUtils.isNotEmpty(streams)
+                        && ConfigurationManager.getBooleanProperty("discovery", "indexer.fulltext.extract", false))
                 {
                     ContentStreamUpdateRequest req = new ContentStreamUpdateRequest("/update/extract");
 
@@ -835,8 +1006,24 @@ public class SolrServiceImpl implements SearchService, IndexingService {
                     req.setParam(ExtractingParams.UNKNOWN_FIELD_PREFIX, "attr_");
                     req.setParam(ExtractingParams.MAP_PREFIX + "content", "fulltext");
                     req.setParam(ExtractingParams.EXTRACT_FORMAT, "text");
-                    req.setAction(AbstractUpdateRequest.ACTION.COMMIT, true, true);
-                    req.process(getSolr());
+                    if (currentSession.get() != null)
+                    {
+                        currentSession.get().extract(req);
+                    }
+                    else
+                    {
+                        req.process(getSolr());
+                    }
+                    return;
+                }
+
+                if (CollectionUtils.isNotEmpty(streams))
+                {
+                    addFulltext(doc, streams);
+                }
+                if (currentSession.get() != null)
+                {
+                    currentSession.get().add(doc);
                 }
                 else
                 {
@@ -846,6 +1033,50 @@ public class SolrServiceImpl implements SearchService, IndexingService {
         } catch (SolrServerException e)
         {
             log.error(e.getMessage(), e);
+        } catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while queueing the document", e);
+        }
+    }
+
+    /**
+     * Add the text of the bitstreams, already extracted by the media
+     * filters, to the fulltext field of the document. At most
+     * <code>indexer.fulltext.max-chars</code> characters are read from each
+     * bitstream (default -1: no limit).
+     */
+    protected void addFulltext(SolrInputDocument doc, List<BitstreamContentStream> streams)
+    {
+        int maxChars = ConfigurationManager.getIntProperty("discovery", "indexer.fulltext.max-chars", -1);
+        for (BitstreamContentStream stream : streams)
+        {
+            Reader reader = null;
+            try
+            {
+                reader = new InputStreamReader(stream.getStream(), StandardCharsets.UTF_8);
+                StringBuilder text = new StringBuilder();
+                char[] buffer = new char[8192];
+                int read;
+                while ((read = reader.read(buffer)) != -1)
+                {
+                    if (maxChars > 0 && text.length() + read >= maxChars)
+                    {
+                        text.append(buffer, 0, maxChars - text.length());
+                        break;
+                    }
+                    text.append(buffer, 0, read);
+                }
+                doc.addField("fulltext", text.toString());
+            }
+            catch (IOException e)
+            {
+                log.error("Unable to read the text of " + stream.getName() + ": " + e.getMessage(), e);
+            }
+            finally
+            {
+                IOUtils.closeQuietly(reader);
+            }
         }
     }
 
@@ -2607,43 +2838,105 @@ public class SolrServiceImpl implements SearchService, IndexingService {
         }
     }
 
-	class IndexerThread extends Thread {
-		private boolean force;
-		private List<Integer> itemids;
+    /**
+     * Counters shared by the indexer workers of a single run
+     */
+    static class IndexerProgress
+    {
+        final long start = System.currentTimeMillis();
 
-		public IndexerThread(List<Integer> itemids, boolean force) {
-			this.force = force;
-			this.itemids = itemids;
-		}
+        final AtomicLong processed = new AtomicLong();
+
+        final AtomicLong errors = new AtomicLong();
+
+        volatile int maxQueueDepth = 0;
+    }
+
+    /**
+     * Takes the item ids from the shared queue until the end marker is
+     * found, so that a free worker always picks the next item instead of
+     * waiting on a statically assigned slice.
+     */
+    class IndexerWorker implements Runnable
+    {
+        static final int END_OF_QUEUE = -1;
+
+        private final BlockingQueue<Integer> idQueue;
+
+        private final boolean force;
+
+        private final IndexingSession session;
+
+        private final IndexerProgress progress;
+
+        IndexerWorker(BlockingQueue<Integer> idQueue, boolean force,
+                IndexingSession session, IndexerProgress progress)
+        {
+            this.idQueue = idQueue;
+            this.force = force;
+            this.session = session;
+            this.progress = progress;
+        }
+
+        @Override
+        public void run()
+        {
+            int progressInterval = ConfigurationManager.getIntProperty("discovery", "indexer.progress.interval", 1000);
+            Context context = null;
+            currentSession.set(session);
+            try
+            {
+                context = new Context();
+                context.turnOffAuthorisationSystem();
+                while (true)
+                {
+                    int id = idQueue.take();
+                    if (id == END_OF_QUEUE)
+                    {
+                        break;
+                    }
+                    try
+                    {
+                        Item item = Item.find(context, id);
+                        if (item != null)
+                        {
+                            indexContent(context, item, force);
+                            item.decache();
+                        }
+                    }
+                    catch (Exception ex)
+                    {
+                        progress.errors.incrementAndGet();
+                        log.error("Error indexing item " + id + ": " + ex.getMessage(), ex);
+                    }
+                    long done = progress.processed.incrementAndGet();
+                    if (progressInterval > 0 && done % progressInterval == 0)
+                    {
+                        long elapsed = Math.max(1, System.currentTimeMillis() - progress.start);
+                        log.info("Indexed " + done + " items, "
+                                + String.format(Locale.ENGLISH, "%.1f", done * 1000.0 / elapsed)
+                                + " items/sec, id queue depth " + idQueue.size()
+                                + ", document queue depth " + session.getWriter().getQueueDepth());
+                    }
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            catch (Exception e)
+            {
+                log.error("Indexer worker terminated: " + e.getMessage(), e);
+            }
+            finally
+            {
+                currentSession.remove();
+                if (context != null)
+                {
+                    context.abort();
+                }
+            }
+        }
+    }
 
-		@Override
-		public void run() {
-			Context context = null;
-			try {
-				context = new Context();
-				context.turnOffAuthorisationSystem();
-				int idx = 1;
-				final String head = this.getName() + "#" + this.getId();
-				final int size = itemids.size();
-				for (Integer id : itemids) {
-				    try {				        
-				        Item item = Item.find(context, id);
-				        indexContent(context, item, force);				        
-				        item.decache();
-				    }
-				    catch(Exception ex) {
-				        System.out.println("ERROR: identifier item:" + id + " identifier thread:"+ head);
-				    }
-				    System.out.println(head + ":" + (idx++) + " / " + size);				    
-				}
-			} catch (Exception e) {
-				e.printStackTrace();
-			} finally {
-				if (context != null) {
-					context.abort();
-				}
-			}
-		}
-	}
-	
 }
@@ -9,11 +9,10 @@ package org.dspace.eperson;
 
 import java.sql.SQLException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 
 import org.apache.log4j.Logger;
@@ -25,6 +24,7 @@ import org.dspace.core.ConfigurationManager;
 import org.dspace.core.Constants;
 import org.dspace.core.Context;
 import org.dspace.core.LogManager;
+import org.dspace.core.SharedCache;
 import org.dspace.event.Event;
 import org.dspace.storage.rdbms.DatabaseManager;
 import org.dspace.storage.rdbms.TableRow;
@@ -433,6 +433,62 @@ public class Group extends DSpaceObject
         return groupList.toArray(new Group[groupList.size()]);
     }
 
+    /**
+     * Get the groups an eperson is directly a member of, through the shared
+     * cache when it is enabled.
+     */
+    private static Set<Integer> directMemberGroupIDs(Context c, EPerson e)
+            throws SQLException
+    {
+        SharedCache<Integer, Set<Integer>> shared = null;
+        long stamp = 0;
+        if (SharedCache.isEnabled(c))
+        {
+            shared = SharedCache.getRegion("group.membership");
+            Set<Integer> cached = shared.get(e.getID());
+            if (cached != null)
+            {
+                return cached;
+            }
+            stamp = shared.stamp();
+        }
+
+        // two queries - first to get groups eperson is a member of
+        // second query gets parent groups for groups eperson is a member of
+        Set<Integer> groupIDs = new HashSet<Integer>();
+        TableRowIterator tri = DatabaseManager.queryTable(c,
+                "epersongroup2eperson",
+                "SELECT * FROM epersongroup2eperson WHERE eperson_id= ?", e
+                        .getID());
+
+        try
+        {
+            while (tri.hasNext())
+            {
+                TableRow row = tri.next();
+
+                int childID = row.getIntColumn("eperson_group_id");
+
+                groupIDs.add(Integer.valueOf(childID));
+            }
+        }
+        finally
+        {
+            // close the TableRowIterator to free up resources
+            if (tri != null)
+            {
+                tri.close();
+            }
+        }
+
+        if (shared != null)
+        {
+            groupIDs = Collections.unmodifiableSet(groupIDs);
+            shared.put(e.getID(), groupIDs, stamp);
+        }
+        return groupIDs;
+    }
+
     /**
      * get Set of Integers all of the group memberships for an eperson
      * 
@@ -448,33 +504,7 @@ public class Group extends DSpaceObject
         
         if (e != null)
         {
-            // two queries - first to get groups eperson is a member of
-            // second query gets parent groups for groups eperson is a member of
-
-            TableRowIterator tri = DatabaseManager.queryTable(c,
-                    "epersongroup2eperson",
-                    "SELECT * FROM epersongroup2eperson WHERE eperson_id= ?", e
-                            .getID());
-
-            try
-            {
-                while (tri.hasNext())
-                {
-                    TableRow row = tri.next();
-
-                    int childID = row.getIntColumn("eperson_group_id");
-
-                    groupIDs.add(Integer.valueOf(childID));
-                }
-            }
-            finally
-            {
-                // close the TableRowIterator to free up resources
-                if (tri != null)
-                {
-                    tri.close();
-                }
-            }
+            groupIDs.addAll(directMemberGroupIDs(c, e));
         }
         // Also need to get all "Special Groups" user is a member of!
         // Otherwise, you're ignoring the user's membership to these groups!
@@ -492,6 +522,14 @@ public class Group extends DSpaceObject
 
         // all the users are members of the anonymous group 
         groupIDs.add(Integer.valueOf(0));
+
+        // the in-memory closure index, when enabled, spares the query
+        Set<Integer> ancestors = GroupClosure.getAncestors(c, groupIDs);
+        if (ancestors != null)
+        {
+            groupIDs.addAll(ancestors);
+            return groupIDs;
+        }
         
         // now we have all owning groups, also grab all parents of owning groups
         // yes, I know this could have been done as one big query and a union,
@@ -1080,6 +1118,22 @@ public class Group extends DSpaceObject
                 "DELETE FROM EPersonGroup2EPerson WHERE eperson_group_id= ? ",
                 getID());
 
+        // the groups containing this one lose its subgroups
+        Set<Integer> parents = new HashSet<Integer>();
+        TableRowIterator tri = DatabaseManager.query(ourContext,
+                "SELECT parent_id FROM group2group WHERE child_id= ? ", getID());
+        try
+        {
+            while (tri.hasNext())
+            {
+                parents.add(Integer.valueOf(tri.next().getIntColumn("parent_id")));
+            }
+        }
+        finally
+        {
+            tri.close();
+        }
+
         // remove any group2groupcache entries
         DatabaseManager.updateQuery(ourContext,
                 "DELETE FROM group2groupcache WHERE parent_id= ? OR child_id= ? ",
@@ -1090,6 +1144,8 @@ public class Group extends DSpaceObject
                 "DELETE FROM group2group WHERE parent_id= ? OR child_id= ? ",
                 getID(),getID());
 
+        GroupClosure.update(ourContext, parents);
+
         // Delete the Dublin Core
         removeMetadataFromDatabase();
 
@@ -1212,26 +1268,45 @@ public class Group extends DSpaceObject
         // Redo Group mappings if they've changed
         if (groupsChanged)
         {
-            // Remove any existing mappings
-            DatabaseManager.updateQuery(ourContext,
-                    "delete from group2group where parent_id= ? ",
+            // Only write the differences with the existing mappings
+            Set<Integer> existing = new HashSet<Integer>();
+            TableRowIterator tri = DatabaseManager.query(ourContext,
+                    "SELECT child_id FROM group2group WHERE parent_id= ? ",
                     getID());
-
-            // Add new mappings
-            Iterator<Group> i = groups.iterator();
-
-            while (i.hasNext())
+            try
+            {
+                while (tri.hasNext())
+                {
+                    existing.add(Integer.valueOf(tri.next().getIntColumn("child_id")));
+                }
+            }
+            finally
             {
-                Group g = i.next();
+                tri.close();
+            }
 
-                TableRow mappingRow = DatabaseManager.row("group2group");
-                mappingRow.setColumn("parent_id", getID());
-                mappingRow.setColumn("child_id", g.getID());
-                DatabaseManager.insert(ourContext, mappingRow);
+            Set<Integer> wanted = new HashSet<Integer>();
+            List<int[]> added = new ArrayList<int[]>();
+            for (Group g : groups)
+            {
+                if (wanted.add(Integer.valueOf(g.getID())) && !existing.contains(g.getID()))
+                {
+                    added.add(new int[] { getID(), g.getID() });
+                }
             }
+            List<int[]> removed = new ArrayList<int[]>();
+            for (Integer childID : existing)
+            {
+                if (!wanted.contains(childID))
+                {
+                    removed.add(new int[] { getID(), childID });
+                }
+            }
+            GroupClosure.deletePairs(ourContext, "group2group", removed);
+            GroupClosure.insertPairs(ourContext, "group2group", added);
 
             // groups changed, now change group cache
-            rethinkGroupCache();
+            GroupClosure.update(ourContext, Collections.singleton(Integer.valueOf(getID())));
 
             groupsChanged = false;
         }
@@ -1289,127 +1364,6 @@ public class Group extends DSpaceObject
         return null;
     }
 
-    /**
-     * Regenerate the group cache AKA the group2groupcache table in the database -
-     * meant to be called when a group is added or removed from another group
-     * 
-     */
-    private void rethinkGroupCache() throws SQLException
-    {
-        // read in the group2group table
-        TableRowIterator tri = DatabaseManager.queryTable(ourContext, "group2group",
-                "SELECT * FROM group2group");
-
-        Map<Integer,Set<Integer>> parents = new HashMap<Integer,Set<Integer>>();
-
-        try
-        {
-            while (tri.hasNext())
-            {
-                TableRow row = (TableRow) tri.next();
-
-                Integer parentID = Integer.valueOf(row.getIntColumn("parent_id"));
-                Integer childID = Integer.valueOf(row.getIntColumn("child_id"));
-
-                // if parent doesn't have an entry, create one
-                if (!parents.containsKey(parentID))
-                {
-                    Set<Integer> children = new HashSet<Integer>();
-
-                    // add child id to the list
-                    children.add(childID);
-                    parents.put(parentID, children);
-                }
-                else
-                {
-                    // parent has an entry, now add the child to the parent's record
-                    // of children
-                    Set<Integer> children =  parents.get(parentID);
-                    children.add(childID);
-                }
-            }
-        }
-        finally
-        {
-            // close the TableRowIterator to free up resources
-            if (tri != null)
-            {
-                tri.close();
-            }
-        }
-
-        // now parents is a hash of all of the IDs of groups that are parents
-        // and each hash entry is a hash of all of the IDs of children of those
-        // parent groups
-        // so now to establish all parent,child relationships we can iterate
-        // through the parents hash
-        for (Map.Entry<Integer, Set<Integer>> parent : parents.entrySet())
-        {
-            Set<Integer> myChildren = getChildren(parents, parent.getKey());
-            parent.getValue().addAll(myChildren);
-        }
-
-        // empty out group2groupcache table
-        DatabaseManager.updateQuery(ourContext,
-                "DELETE FROM group2groupcache WHERE id >= 0");
-
-        // write out new one
-        for (Map.Entry<Integer, Set<Integer>> parent : parents.entrySet())
-        {
-            int parentID = parent.getKey().intValue();
-
-            for (Integer child : parent.getValue())
-            {
-                TableRow row = DatabaseManager.row("group2groupcache");
-
-                row.setColumn("parent_id", parentID);
-                row.setColumn("child_id", child);
-
-                DatabaseManager.insert(ourContext, row);
-            }
-        }
-    }
-
-    /**
-     * Used recursively to generate a map of ALL of the children of the given
-     * parent
-     * 
-     * @param parents
-     *            Map of parent,child relationships
-     * @param parent
-     *            the parent you're interested in
-     * @return Map whose keys are all of the children of a parent
-     */
-    private Set<Integer> getChildren(Map<Integer,Set<Integer>> parents, Integer parent)
-    {
-        Set<Integer> myChildren = new HashSet<Integer>();
-
-        // degenerate case, this parent has no children
-        if (!parents.containsKey(parent))
-        {
-            return myChildren;
-        }
-
-        // got this far, so we must have children
-        Set<Integer> children =  parents.get(parent);
-
-        // now iterate over all of the children
-        Iterator<Integer> i = children.iterator();
-
-        while (i.hasNext())
-        {
-            Integer childID = i.next();
-
-            // add this child's ID to our return set
-            myChildren.add(childID);
-
-            // and now its children
-            myChildren.addAll(getChildren(parents, childID));
-        }
-
-        return myChildren;
-    }
-    
     public DSpaceObject getParentObject() throws SQLException
     {
         // could a collection/community administrator manage related groups?
@@ -0,0 +1,461 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.eperson;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.dspace.core.ConfigurationManager;
+import org.dspace.core.Constants;
+import org.dspace.core.Context;
+import org.dspace.event.Event;
+import org.dspace.storage.rdbms.DatabaseManager;
+import org.dspace.storage.rdbms.TableRow;
+import org.dspace.storage.rdbms.TableRowIterator;
+
+/**
+ * Maintenance of the transitive closure of the group hierarchy, AKA the
+ * group2groupcache table.
+ * <p/>
+ * When the subgroups of some groups change, only the closure rows of those
+ * groups and of their ancestors are recomputed, from the part of the
+ * group2group graph reachable from them, and the differences are written with
+ * batched statements.
+ * <p/>
+ * Optionally (<code>eperson.group.closure-index.enabled</code> in dspace.cfg)
+ * the whole closure is also kept in memory to answer the ancestor lookups of
+ * {@link Group#allMemberGroupIDs} without a query. The index is reloaded from
+ * the committed data after <code>eperson.group.closure-index.ttl</code>
+ * seconds (default 300) or when a change of the group hierarchy is committed
+ * in this JVM, as notified by {@link GroupClosureConsumer}; changes made by
+ * other processes are therefore seen with at most that delay.
+ */
+class GroupClosure
+{
+    private static final Logger log = Logger.getLogger(GroupClosure.class);
+
+    /** Maximum number of ids in an IN clause */
+    private static final int QUERY_SIZE = 500;
+
+    /** Number of statements sent in one JDBC batch */
+    private static final int BATCH_SIZE = 1000;
+
+    /** Snapshot of the committed closure: ancestors by group */
+    private static class Index
+    {
+        final long loaded = System.currentTimeMillis();
+
+        final Map<Integer, int[]> ancestors;
+
+        Index(Map<Integer, int[]> ancestors)
+        {
+            this.ancestors = ancestors;
+        }
+    }
+
+    private static volatile Index index = null;
+
+    /**
+     * Incremented by each invalidation: an index read while it changed may
+     * miss the committed change and is not kept
+     */
+    private static final AtomicLong generation = new AtomicLong();
+
+    private static final Object indexLock = new Object();
+
+    private GroupClosure()
+    {
+    }
+
+    /**
+     * Update group2groupcache after a change of the direct subgroups of the
+     * given groups, already written to group2group.
+     *
+     * @param c
+     *            context, the changes are part of its transaction
+     * @param changed
+     *            ids of the groups whose subgroups changed
+     */
+    static void update(Context c, Collection<Integer> changed) throws SQLException
+    {
+        if (changed.isEmpty())
+        {
+            return;
+        }
+        long start = System.currentTimeMillis();
+
+        // the closure of a group changes only if it reaches a changed group
+        Set<Integer> affected = new HashSet<Integer>(changed);
+        Set<Integer> frontier = new HashSet<Integer>(changed);
+        while (!frontier.isEmpty())
+        {
+            Set<Integer> next = new HashSet<Integer>();
+            for (int[] edge : queryPairs(c, "SELECT parent_id, child_id FROM group2group WHERE child_id IN ", frontier))
+            {
+                if (affected.add(edge[0]))
+                {
+                    next.add(edge[0]);
+                }
+            }
+            frontier = next;
+        }
+
+        // load the part of the hierarchy below the affected groups
+        Map<Integer, Set<Integer>> children = new HashMap<Integer, Set<Integer>>();
+        frontier = new HashSet<Integer>(affected);
+        Set<Integer> loaded = new HashSet<Integer>();
+        while (!frontier.isEmpty())
+        {
+            loaded.addAll(frontier);
+            Set<Integer> next = new HashSet<Integer>();
+            for (int[] edge : queryPairs(c, "SELECT parent_id, child_id FROM group2group WHERE parent_id IN ", frontier))
+            {
+                Set<Integer> set = children.get(edge[0]);
+                if (set == null)
+                {
+                    set = new HashSet<Integer>();
+                    children.put(edge[0], set);
+                }
+                set.add(edge[1]);
+                if (!loaded.contains(edge[1]))
+                {
+                    next.add(edge[1]);
+                }
+            }
+            frontier = next;
+        }
+
+        Map<Integer, Set<Integer>> current = new HashMap<Integer, Set<Integer>>();
+        for (int[] row : queryPairs(c, "SELECT parent_id, child_id FROM group2groupcache WHERE parent_id IN ", affected))
+        {
+            Set<Integer> set = current.get(row[0]);
+            if (set == null)
+            {
+                set = new HashSet<Integer>();
+                current.put(row[0], set);
+            }
+            set.add(row[1]);
+        }
+
+        List<int[]> toDelete = new ArrayList<int[]>();
+        List<int[]> toInsert = new ArrayList<int[]>();
+        for (Integer parent : affected)
+        {
+            Set<Integer> closure = descendants(children, parent);
+            Set<Integer> old = current.get(parent);
+            if (old == null)
+            {
+                old = new HashSet<Integer>();
+            }
+            for (Integer child : old)
+            {
+                if (!closure.contains(child))
+                {
+                    toDelete.add(new int[] { parent, child });
+                }
+            }
+            for (Integer child : closure)
+            {
+                if (!old.contains(child))
+                {
+                    toInsert.add(new int[] { parent, child });
+                }
+            }
+        }
+        deletePairs(c, "group2groupcache", toDelete);
+        insertPairs(c, "group2groupcache", toInsert);
+
+        log.info("group2groupcache updated for " + affected.size() + " groups: "
+                + toInsert.size() + " rows added, " + toDelete.size()
+                + " rows removed in " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    /**
+     * @return all the groups reachable from the parent, without the parent
+     */
+    private static Set<Integer> descendants(Map<Integer, Set<Integer>> children, Integer parent)
+    {
+        Set<Integer> result = new HashSet<Integer>();
+        LinkedList<Integer> stack = new LinkedList<Integer>();
+        stack.add(parent);
+        while (!stack.isEmpty())
+        {
+            Set<Integer> set = children.get(stack.removeLast());
+            if (set == null)
+            {
+                continue;
+            }
+            for (Integer child : set)
+            {
+                if (result.add(child))
+                {
+                    stack.add(child);
+                }
+            }
+        }
+        // a cycle would make the group its own member
+        result.remove(parent);
+        return result;
+    }
+
+    /**
+     * Run a query returning two integer columns for the given ids, in blocks
+     * of {@link #QUERY_SIZE}.
+     */
+    private static List<int[]> queryPairs(Context c, String query, Collection<Integer> ids)
+            throws SQLException
+    {
+        List<int[]> result = new ArrayList<int[]>();
+        List<Integer> list = new ArrayList<Integer>(ids);
+        for (int start = 0; start < list.size(); start += QUERY_SIZE)
+        {
+            List<Integer> block = list.subList(start, Math.min(list.size(), start + QUERY_SIZE));
+            StringBuilder sql = new StringBuilder(query).append('(');
+            for (int i = 0; i < block.size(); i++)
+            {
+                sql.append(i == 0 ? "?" : ", ?");
+            }
+            sql.append(')');
+
+            TableRowIterator tri = DatabaseManager.query(c, sql.toString(), block.toArray());
+            try
+            {
+                while (tri.hasNext())
+                {
+                    TableRow row = tri.next();
+                    result.add(new int[] { row.getIntColumn("parent_id"), row.getIntColumn("child_id") });
+                }
+            }
+            finally
+            {
+                tri.close();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Insert (parent_id, child_id) rows in group2group or group2groupcache
+     * with batched statements.
+     */
+    static void insertPairs(Context c, String table, List<int[]> pairs) throws SQLException
+    {
+        if (pairs.isEmpty())
+        {
+            return;
+        }
+        String id = DatabaseManager.isOracle() ? table + "_seq.nextval" : "getnextid('" + table + "')";
+        executeBatch(c, "INSERT INTO " + table + " (id, parent_id, child_id) VALUES (" + id + ", ?, ?)", pairs);
+    }
+
+    /**
+     * Delete (parent_id, child_id) rows from group2group or group2groupcache
+     * with batched statements.
+     */
+    static void deletePairs(Context c, String table, List<int[]> pairs) throws SQLException
+    {
+        if (pairs.isEmpty())
+        {
+            return;
+        }
+        executeBatch(c, "DELETE FROM " + table + " WHERE parent_id= ? AND child_id= ? ", pairs);
+    }
+
+    private static void executeBatch(Context c, String sql, List<int[]> pairs) throws SQLException
+    {
+        PreparedStatement statement = null;
+        try
+        {
+            statement = c.getDBConnection().prepareStatement(sql);
+            int pending = 0;
+            for (int[] pair : pairs)
+            {
+                statement.setInt(1, pair[0]);
+                statement.setInt(2, pair[1]);
+                statement.addBatch();
+                if (++pending == BATCH_SIZE)
+                {
+                    statement.executeBatch();
+                    pending = 0;
+                }
+            }
+            if (pending > 0)
+            {
+                statement.executeBatch();
+            }
+        }
+        finally
+        {
+            if (statement != null)
+            {
+                try
+                {
+                    statement.close();
+                }
+                catch (SQLException e)
+                {
+                    log.error("SQL executeBatch close Error - ", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Discard the in-memory index, to be called once a change of the
+     * hierarchy has been committed: before the commit the index would be
+     * reloaded with the old closure.
+     */
+    static void invalidate()
+    {
+        generation.incrementAndGet();
+        index = null;
+    }
+
+    /**
+     * Look up the ancestors of some groups in the in-memory index.
+     *
+     * @param c
+     *            current context
+     * @param groupIDs
+     *            the groups
+     * @return the ids of all the groups containing at least one of the
+     *         groups, or <code>null</code> if the index is disabled or can't
+     *         be used by this context because it changed groups in its
+     *         current transaction
+     */
+    static Set<Integer> getAncestors(Context c, Collection<Integer> groupIDs) throws SQLException
+    {
+        if (!ConfigurationManager.getBooleanProperty("eperson.group.closure-index.enabled", false)
+                || hasGroupChanges(c))
+        {
+            return null;
+        }
+        return lookup(groupIDs,
+                ConfigurationManager.getLongProperty("eperson.group.closure-index.ttl", 300) * 1000);
+    }
+
+    /**
+     * Look up the ancestors of some groups in the in-memory index, loading it
+     * if missing or older than the ttl.
+     */
+    static Set<Integer> lookup(Collection<Integer> groupIDs, long ttl) throws SQLException
+    {
+        Index current = index;
+        if (current == null || System.currentTimeMillis() - current.loaded > ttl)
+        {
+            synchronized (indexLock)
+            {
+                current = index;
+                if (current == null || System.currentTimeMillis() - current.loaded > ttl)
+                {
+                    long loading = generation.get();
+                    current = load();
+                    if (generation.get() == loading)
+                    {
+                        index = current;
+                    }
+                }
+            }
+        }
+
+        Set<Integer> result = new HashSet<Integer>();
+        for (Integer groupID : groupIDs)
+        {
+            int[] ancestors = current.ancestors.get(groupID);
+            if (ancestors != null)
+            {
+                for (int ancestor : ancestors)
+                {
+                    result.add(Integer.valueOf(ancestor));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return true if the context changed groups in its current transaction
+     */
+    private static boolean hasGroupChanges(Context c)
+    {
+        if (!c.hasEvents())
+        {
+            return false;
+        }
+        for (Event event : c.getEvents())
+        {
+            if (event.getSubjectType() == Constants.GROUP)
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Read the committed closure with a context of its own.
+     */
+    private static Index load() throws SQLException
+    {
+        long start = System.currentTimeMillis();
+        Map<Integer, List<Integer>> ancestors = new HashMap<Integer, List<Integer>>();
+        Context context = new Context();
+        try
+        {
+            TableRowIterator tri = DatabaseManager.query(context,
+                    "SELECT parent_id, child_id FROM group2groupcache");
+            try
+            {
+                while (tri.hasNext())
+                {
+                    TableRow row = tri.next();
+                    Integer child = Integer.valueOf(row.getIntColumn("child_id"));
+                    List<Integer> list = ancestors.get(child);
+                    if (list == null)
+                    {
+                        list = new ArrayList<Integer>(2);
+                        ancestors.put(child, list);
+                    }
+                    list.add(Integer.valueOf(row.getIntColumn("parent_id")));
+                }
+            }
+            finally
+            {
+                tri.close();
+            }
+        }
+        finally
+        {
+            context.abort();
+        }
+
+        Map<Integer, int[]> frozen = new HashMap<Integer, int[]>(ancestors.size() * 4 / 3 + 1);
+        for (Map.Entry<Integer, List<Integer>> entry : ancestors.entrySet())
+        {
+            int[] values = new int[entry.getValue().size()];
+            for (int i = 0; i < values.length; i++)
+            {
+                values[i] = entry.getValue().get(i);
+            }
+            frozen.put(entry.getKey(), values);
+        }
+        log.info("Group closure index loaded: " + frozen.size() + " groups in "
+                + (System.currentTimeMillis() - start) + " ms");
+        return new Index(frozen);
+    }
+}
@@ -0,0 +1,60 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.eperson;
+
+import org.apache.log4j.Logger;
+import org.dspace.core.Constants;
+import org.dspace.core.Context;
+import org.dspace.event.Consumer;
+import org.dspace.event.Event;
+
+/**
+ * Event consumer discarding the in-memory group closure index of
+ * {@link GroupClosure} once a change of the group hierarchy has been
+ * committed. Configure it in dspace.cfg with the filter
+ * <code>Group+Add|Remove|Delete</code>; it is required when
+ * <code>eperson.group.closure-index.enabled</code> is true.
+ */
+public class GroupClosureConsumer implements Consumer
+{
+    private static final Logger log = Logger.getLogger(GroupClosureConsumer.class);
+
+    @Override
+    public void initialize() throws Exception
+    {
+    }
+
+    @Override
+    public void consume(Context ctx, Event event) throws Exception
+    {
+        if (event.getSubjectType() != Constants.GROUP)
+        {
+            return;
+        }
+        // the epersons are not in the closure, only the subgroups are
+        if (event.getEventType() == Event.DELETE
+                || event.getObjectType() == Constants.GROUP)
+        {
+            GroupClosure.invalidate();
+            if (log.isDebugEnabled())
+            {
+                log.debug("Group closure index invalidated by " + event.toString());
+            }
+        }
+    }
+
+    @Override
+    public void end(Context ctx) throws Exception
+    {
+    }
+
+    @Override
+    public void finish(Context ctx) throws Exception
+    {
+    }
+}
@@ -85,13 +85,17 @@ public class BasicDispatcher extends Dispatcher
             // transaction identifier applies to all events created in
             // this context for the current transaction. Prefix it with
             // some letters so RDF readers don't mistake it for an integer.
+            // The transaction identifier may have been set by prepare().
             String tid = "TX" + Utils.generateKey();
 
             while (ctx.hasEvents())
             {
                 Event event = ctx.pollEvent();
                 event.setDispatcher(getIdentifier());
-                event.setTransactionID(tid);
+                if (event.getTransactionID() == null)
+                {
+                    event.setTransactionID(tid);
+                }
 
                 if (log.isDebugEnabled())
                 {
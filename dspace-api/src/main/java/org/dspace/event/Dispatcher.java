@@ -7,6 +7,7 @@
  */
 package org.dspace.event;
 
+import java.sql.SQLException;
 import java.util.Collection;
 import java.util.LinkedHashMap;
 import java.util.Map;
@@ -62,6 +63,21 @@ public abstract class Dispatcher
     public abstract void addConsumerProfile(ConsumerProfile cp)
             throws IllegalArgumentException;
 
+    /**
+     * Called with the events of the context before its transaction is
+     * committed, e.g. to store them in the same transaction. Does nothing by
+     * default.
+     * 
+     * @param ctx
+     *            the execution context object
+     * @throws SQLException
+     *             if the events can't be stored, the transaction is not
+     *             committed
+     */
+    public void prepare(Context ctx) throws SQLException
+    {
+    }
+
     /**
      * Dispatch all events added to this Context according to configured
      * consumers.
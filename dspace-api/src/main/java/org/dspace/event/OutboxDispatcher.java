@@ -0,0 +1,162 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.event;
+
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
+import org.dspace.core.ConfigurationManager;
+import org.dspace.core.Context;
+import org.dspace.core.Utils;
+import org.dspace.storage.rdbms.DatabaseManager;
+import org.dspace.storage.rdbms.TableRow;
+
+/**
+ * Dispatcher running some of its consumers asynchronously. The events for
+ * these consumers are stored in the <code>event_outbox</code> table in the
+ * same transaction as the changes that caused them, and delivered after the
+ * commit by an {@link OutboxWorker} per consumer, so that the user doesn't
+ * wait for them. An event is delivered at least once: the events of a
+ * transaction that failed are never delivered, the events not yet delivered
+ * when DSpace stopped are delivered after the restart.
+ * <p/>
+ * The other consumers are run synchronously, as with the
+ * {@link BasicDispatcher}. Configuration:
+ *
+ * <pre>
+ * event.dispatcher.default.class = org.dspace.event.OutboxDispatcher
+ * event.dispatcher.default.consumers = versioning, discovery, eperson, ...
+ * # the consumers delivered through the outbox
+ * event.dispatcher.default.async = discovery, rdf
+ * </pre>
+ *
+ * The consumers run asynchronously see a context without current user.
+ */
+public class OutboxDispatcher extends BasicDispatcher
+{
+    private static final Logger log = Logger.getLogger(OutboxDispatcher.class);
+
+    static final String TABLE = "event_outbox";
+
+    /** Separator of the identifiers of an event in the outbox */
+    static final String IDENTIFIER_SEPARATOR = "\n";
+
+    /** names of the consumers run asynchronously */
+    private final Set<String> async = new HashSet<String>();
+
+    /** profiles of the asynchronous consumers, used for their filters */
+    private final Map<String, ConsumerProfile> asyncConsumers = new LinkedHashMap<String, ConsumerProfile>();
+
+    public OutboxDispatcher(String name)
+    {
+        super(name);
+        String list = ConfigurationManager.getProperty("event.dispatcher." + name + ".async");
+        if (StringUtils.isNotBlank(list))
+        {
+            async.addAll(Arrays.asList(list.trim().split("\\s*,\\s*")));
+        }
+    }
+
+    @Override
+    public void addConsumerProfile(ConsumerProfile cp)
+            throws IllegalArgumentException
+    {
+        if (!async.contains(cp.getName()))
+        {
+            super.addConsumerProfile(cp);
+            return;
+        }
+
+        if (asyncConsumers.containsKey(cp.getName()))
+        {
+            throw new IllegalArgumentException(
+                    "This dispatcher already has a consumer named \""
+                            + cp.getName() + "\"");
+        }
+        asyncConsumers.put(cp.getName(), cp);
+        if (OutboxWorker.isEnabled())
+        {
+            OutboxWorker.start(cp.getName());
+        }
+    }
+
+    /**
+     * Store the events for the asynchronous consumers.
+     */
+    @Override
+    public void prepare(Context ctx) throws SQLException
+    {
+        if (asyncConsumers.isEmpty() || !ctx.hasEvents())
+        {
+            return;
+        }
+
+        String tid = "TX" + Utils.generateKey();
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        int stored = 0;
+        for (Event event : ctx.getEvents())
+        {
+            event.setDispatcher(getIdentifier());
+            event.setTransactionID(tid);
+            for (ConsumerProfile cp : asyncConsumers.values())
+            {
+                if (event.pass(cp.getFilters()))
+                {
+                    TableRow row = DatabaseManager.row(TABLE);
+                    row.setColumn("consumer", cp.getName());
+                    row.setColumn("event_type", event.getEventType());
+                    row.setColumn("subject_type", event.getSubjectType());
+                    row.setColumn("subject_id", event.getSubjectID());
+                    row.setColumn("object_type", event.getObjectType());
+                    row.setColumn("object_id", event.getObjectID());
+                    if (event.getDetail() != null)
+                    {
+                        row.setColumn("detail", event.getDetail());
+                    }
+                    String[] identifiers = event.getIdentifiers();
+                    if (identifiers != null && identifiers.length > 0)
+                    {
+                        row.setColumn("identifiers", StringUtils.join(identifiers, IDENTIFIER_SEPARATOR));
+                    }
+                    row.setColumn("eperson_id", ctx.getCurrentUser() == null ? -1
+                            : ctx.getCurrentUser().getID());
+                    row.setColumn("transaction_id", tid);
+                    row.setColumn("created", now);
+                    row.setColumn("attempts", 0);
+                    DatabaseManager.insert(ctx, row);
+                    stored++;
+                }
+            }
+        }
+        if (log.isDebugEnabled())
+        {
+            log.debug("Stored " + stored + " events in the outbox for transaction " + tid);
+        }
+    }
+
+    /**
+     * Run the synchronous consumers, then wake up the workers of the
+     * asynchronous ones.
+     */
+    @Override
+    public void dispatch(Context ctx)
+    {
+        super.dispatch(ctx);
+        for (String name : asyncConsumers.keySet())
+        {
+            OutboxWorker.wakeUp(name);
+        }
+    }
+}
@@ -0,0 +1,630 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.event;
+
+import java.lang.management.ManagementFactory;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.PosixParser;
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
+import org.dspace.core.ConfigurationManager;
+import org.dspace.core.Context;
+import org.dspace.storage.rdbms.DatabaseManager;
+import org.dspace.storage.rdbms.TableRow;
+import org.dspace.storage.rdbms.TableRowIterator;
+
+/**
+ * Background delivery of the events stored by the {@link OutboxDispatcher}
+ * to one consumer. Each JVM runs a worker thread per asynchronous consumer,
+ * with its own instance of the consumer and its own context.
+ * <p/>
+ * A worker claims a batch of events for a while
+ * (<code>event.outbox.visibility-timeout</code>), so that the workers of
+ * other DSpace processes skip them, and delivers them in order. Identical
+ * events of the batch, e.g. the modifications of the same item, are
+ * delivered once. The events are removed from the outbox once the consumer
+ * has processed them and its work has been committed; the events the
+ * consumer failed are retried later, up to
+ * <code>event.outbox.max-attempts</code> times, after a delay doubling at
+ * each attempt (<code>event.outbox.retry-delay</code>), so that a consumer
+ * whose service is down for a while doesn't use up its attempts. Events
+ * claimed by a worker which died are delivered again when their claim
+ * expires.
+ * <p/>
+ * Run from the command line, it prints the pending events of each consumer
+ * and can deliver them (e.g. when no DSpace webapp is running).
+ */
+public class OutboxWorker implements Runnable
+{
+    private static final Logger log = Logger.getLogger(OutboxWorker.class);
+
+    /** Counters of the events delivered to a consumer by this JVM */
+    public static class Statistics
+    {
+        private final AtomicLong delivered = new AtomicLong();
+
+        private final AtomicLong coalesced = new AtomicLong();
+
+        private final AtomicLong failed = new AtomicLong();
+
+        private final AtomicLong batches = new AtomicLong();
+
+        private final AtomicLong time = new AtomicLong();
+
+        private final long started = System.currentTimeMillis();
+
+        /** @return number of outbox entries processed successfully */
+        public long getDelivered()
+        {
+            return delivered.get();
+        }
+
+        /** @return number of entries merged with an identical event */
+        public long getCoalesced()
+        {
+            return coalesced.get();
+        }
+
+        /** @return number of deliveries which failed, to be retried */
+        public long getFailed()
+        {
+            return failed.get();
+        }
+
+        public long getBatches()
+        {
+            return batches.get();
+        }
+
+        /** @return milliseconds spent delivering the events */
+        public long getTime()
+        {
+            return time.get();
+        }
+
+        /** @return entries delivered per second since the worker started */
+        public double getThroughput()
+        {
+            long elapsed = System.currentTimeMillis() - started;
+            return elapsed <= 0 ? 0 : 1000.0 * getDelivered() / elapsed;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format(Locale.ENGLISH,
+                    "%d delivered (%d coalesced), %d failed, %d batches, %.1fs, %.2f events/s",
+                    getDelivered(), getCoalesced(), getFailed(), getBatches(),
+                    getTime() / 1000.0, getThroughput());
+        }
+    }
+
+    private static final Map<String, OutboxWorker> workers = new HashMap<String, OutboxWorker>();
+
+    private static final ConcurrentMap<String, Statistics> statistics = new ConcurrentHashMap<String, Statistics>();
+
+    private final String consumerName;
+
+    private final String workerID;
+
+    private volatile boolean running = true;
+
+    private Thread thread;
+
+    /** set when new events were stored, guarded by this */
+    private boolean signalled = false;
+
+    private OutboxWorker(String consumerName)
+    {
+        this.consumerName = consumerName;
+        this.workerID = ManagementFactory.getRuntimeMXBean().getName() + "/" + consumerName;
+    }
+
+    /**
+     * @return true if the workers run in this JVM, from
+     *         <code>event.outbox.workers.enabled</code>
+     */
+    public static boolean isEnabled()
+    {
+        return ConfigurationManager.getBooleanProperty("event.outbox.workers.enabled", true);
+    }
+
+    /**
+     * Start the worker of a consumer, unless it is already running.
+     */
+    static synchronized void start(String consumerName)
+    {
+        if (workers.containsKey(consumerName))
+        {
+            return;
+        }
+        OutboxWorker worker = new OutboxWorker(consumerName);
+        Thread thread = new Thread(worker, "event-outbox-" + consumerName);
+        thread.setDaemon(true);
+        worker.thread = thread;
+        thread.start();
+        workers.put(consumerName, worker);
+        log.info("Started the event outbox worker of " + consumerName);
+    }
+
+    /**
+     * Tell the worker of a consumer that new events are waiting.
+     */
+    static void wakeUp(String consumerName)
+    {
+        OutboxWorker worker;
+        synchronized (OutboxWorker.class)
+        {
+            worker = workers.get(consumerName);
+        }
+        if (worker != null)
+        {
+            synchronized (worker)
+            {
+                worker.signalled = true;
+                worker.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Stop all the workers of this JVM, waiting for the batches being
+     * delivered, e.g. when the webapp is stopped. The events they didn't
+     * deliver stay in the outbox.
+     */
+    public static synchronized void shutdown()
+    {
+        for (OutboxWorker worker : workers.values())
+        {
+            synchronized (worker)
+            {
+                worker.running = false;
+                worker.notifyAll();
+            }
+        }
+        for (OutboxWorker worker : workers.values())
+        {
+            try
+            {
+                worker.thread.join(10000);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            if (worker.thread.isAlive())
+            {
+                log.warn("The event outbox worker of " + worker.consumerName + " is still delivering");
+            }
+        }
+        workers.clear();
+        log.info("Stopped the event outbox workers");
+    }
+
+    /**
+     * @return the delivery counters of this JVM, by consumer
+     */
+    public static Map<String, Statistics> getStatistics()
+    {
+        return new TreeMap<String, Statistics>(statistics);
+    }
+
+    private static Statistics getStatistics(String consumerName)
+    {
+        Statistics stats = statistics.get(consumerName);
+        if (stats == null)
+        {
+            Statistics existing = statistics.putIfAbsent(consumerName, stats = new Statistics());
+            if (existing != null)
+            {
+                stats = existing;
+            }
+        }
+        return stats;
+    }
+
+    @Override
+    public void run()
+    {
+        ConsumerProfile profile;
+        try
+        {
+            profile = ConsumerProfile.makeConsumerProfile(consumerName);
+            profile.getConsumer().initialize();
+        }
+        catch (Exception e)
+        {
+            log.error("Unable to create the consumer " + consumerName + ", its events stay in the outbox", e);
+            return;
+        }
+
+        long pollInterval = ConfigurationManager.getLongProperty("event.outbox.poll-interval", 5) * 1000;
+        while (running)
+        {
+            int delivered = 0;
+            try
+            {
+                delivered = deliver(profile, workerID);
+            }
+            catch (Exception e)
+            {
+                log.error("Unable to deliver the events of the outbox to " + consumerName, e);
+            }
+
+            // nothing to do, or the consumer fails: the failed events are
+            // retried after their delay
+            if (delivered == 0)
+            {
+                synchronized (this)
+                {
+                    try
+                    {
+                        if (running && !signalled)
+                        {
+                            wait(pollInterval);
+                        }
+                    }
+                    catch (InterruptedException e)
+                    {
+                        running = false;
+                    }
+                    signalled = false;
+                }
+            }
+        }
+    }
+
+    /**
+     * Claim a batch of events of a consumer and deliver them.
+     *
+     * @param profile
+     *            the consumer, which must not be used by other threads
+     * @param workerID
+     *            identifier of the worker, recorded in the claimed events
+     * @return the number of events delivered, 0 if there was none or if the
+     *         consumer failed all of them
+     * @throws SQLException
+     */
+    static int deliver(ConsumerProfile profile, String workerID) throws SQLException
+    {
+        String consumerName = profile.getName();
+        int batchSize = ConfigurationManager.getIntProperty("event.outbox.batch-size", 100);
+        long visibility = ConfigurationManager.getLongProperty("event.outbox.visibility-timeout", 300) * 1000;
+        int maxAttempts = ConfigurationManager.getIntProperty("event.outbox.max-attempts", 5);
+        long retryDelay = ConfigurationManager.getLongProperty("event.outbox.retry-delay", 30) * 1000;
+
+        Context context = null;
+        try
+        {
+            context = new Context();
+            context.turnOffAuthorisationSystem();
+
+            List<TableRow> claimed = claim(context, consumerName, workerID, batchSize, visibility, maxAttempts);
+            if (claimed.isEmpty())
+            {
+                context.complete();
+                context = null;
+                return 0;
+            }
+            long start = System.currentTimeMillis();
+            Statistics stats = getStatistics(consumerName);
+
+            // identical events are delivered once
+            Map<Event, List<Integer>> events = new LinkedHashMap<Event, List<Integer>>();
+            for (TableRow row : claimed)
+            {
+                Event event = toEvent(row);
+                List<Integer> ids = events.get(event);
+                if (ids == null)
+                {
+                    ids = new ArrayList<Integer>(1);
+                    events.put(event, ids);
+                }
+                else
+                {
+                    stats.coalesced.incrementAndGet();
+                }
+                ids.add(row.getIntColumn("event_outbox_id"));
+            }
+
+            List<Integer> done = new ArrayList<Integer>();
+            List<Integer> failed = new ArrayList<Integer>();
+            Consumer consumer = profile.getConsumer();
+            for (Map.Entry<Event, List<Integer>> entry : events.entrySet())
+            {
+                try
+                {
+                    consumer.consume(context, entry.getKey());
+                    done.addAll(entry.getValue());
+                }
+                catch (Exception e)
+                {
+                    log.error("Consumer(\"" + consumerName + "\").consume threw: " + e.toString(), e);
+                    failed.addAll(entry.getValue());
+                }
+            }
+            try
+            {
+                consumer.end(context);
+                context.commit();
+            }
+            catch (Exception e)
+            {
+                log.error("Error in Consumer(\"" + consumerName + "\").end: " + e.toString(), e);
+                context.abort();
+                context = new Context();
+                failed.addAll(done);
+                done.clear();
+            }
+
+            updateRows(context, "DELETE FROM event_outbox WHERE event_outbox_id IN (", done);
+            release(context, claimed, failed, retryDelay);
+            context.complete();
+            context = null;
+
+            stats.delivered.addAndGet(done.size());
+            stats.failed.addAndGet(failed.size());
+            stats.batches.incrementAndGet();
+            stats.time.addAndGet(System.currentTimeMillis() - start);
+            if (log.isDebugEnabled())
+            {
+                log.debug("Delivered " + done.size() + " events to " + consumerName + " ("
+                        + events.size() + " distinct, " + failed.size() + " failed) in "
+                        + (System.currentTimeMillis() - start) + " ms");
+            }
+            return done.size();
+        }
+        finally
+        {
+            if (context != null)
+            {
+                context.abort();
+            }
+        }
+    }
+
+    /**
+     * Claim the oldest events of a consumer which are not claimed by another
+     * worker, and commit the claims.
+     */
+    private static List<TableRow> claim(Context context, String consumerName, String workerID,
+            int batchSize, long visibility, int maxAttempts) throws SQLException
+    {
+        long now = System.currentTimeMillis();
+        Timestamp expired = new Timestamp(now - visibility);
+        String query = "SELECT * FROM event_outbox WHERE consumer = ? AND attempts < ? "
+                + "AND (claimed IS NULL OR claimed < ?) "
+                + "AND (next_attempt IS NULL OR next_attempt <= ?) ORDER BY event_outbox_id";
+        if (DatabaseManager.isOracle())
+        {
+            query = "SELECT * FROM (" + query + ") WHERE rownum <= ?";
+        }
+        else
+        {
+            query += " LIMIT ?";
+        }
+
+        List<TableRow> candidates;
+        TableRowIterator tri = DatabaseManager.queryTable(context, OutboxDispatcher.TABLE, query,
+                consumerName, maxAttempts, expired, new Timestamp(now), batchSize);
+        try
+        {
+            candidates = tri.toList();
+        }
+        finally
+        {
+            tri.close();
+        }
+
+        List<TableRow> claimed = new ArrayList<TableRow>(candidates.size());
+        Timestamp claim = new Timestamp(now);
+        for (TableRow row : candidates)
+        {
+            // another worker may have claimed it in the meantime
+            int updated = DatabaseManager.updateQuery(context,
+                    "UPDATE event_outbox SET claimed = ?, claimed_by = ? WHERE event_outbox_id = ? "
+                    + "AND (claimed IS NULL OR claimed < ?)",
+                    claim, workerID, row.getIntColumn("event_outbox_id"), expired);
+            if (updated == 1)
+            {
+                claimed.add(row);
+            }
+        }
+        context.commit();
+        return claimed;
+    }
+
+    /**
+     * Release the failed events, to be retried after
+     * <code>retryDelay * 2^attempts</code> (at most a day).
+     */
+    private static void release(Context context, List<TableRow> claimed, List<Integer> failed,
+            long retryDelay) throws SQLException
+    {
+        if (failed.isEmpty())
+        {
+            return;
+        }
+        Map<Integer, Integer> attempts = new HashMap<Integer, Integer>();
+        for (TableRow row : claimed)
+        {
+            attempts.put(row.getIntColumn("event_outbox_id"), row.getIntColumn("attempts"));
+        }
+        Map<Integer, List<Integer>> byAttempts = new TreeMap<Integer, List<Integer>>();
+        for (Integer id : failed)
+        {
+            Integer attempt = attempts.get(id);
+            List<Integer> ids = byAttempts.get(attempt);
+            if (ids == null)
+            {
+                ids = new ArrayList<Integer>();
+                byAttempts.put(attempt, ids);
+            }
+            ids.add(id);
+        }
+        long now = System.currentTimeMillis();
+        for (Map.Entry<Integer, List<Integer>> entry : byAttempts.entrySet())
+        {
+            long delay = Math.min(retryDelay << Math.min(Math.max(entry.getKey(), 0), 20), 86400000L);
+            updateRows(context, "UPDATE event_outbox SET attempts = attempts + 1, claimed = NULL, "
+                    + "claimed_by = NULL, next_attempt = ? WHERE event_outbox_id IN (", entry.getValue(),
+                    new Timestamp(now + delay));
+        }
+    }
+
+    private static void updateRows(Context context, String query, List<Integer> ids, Object... parameters)
+            throws SQLException
+    {
+        for (int start = 0; start < ids.size(); start += 500)
+        {
+            List<Integer> block = ids.subList(start, Math.min(ids.size(), start + 500));
+            StringBuilder sql = new StringBuilder(query);
+            for (int i = 0; i < block.size(); i++)
+            {
+                sql.append(i == 0 ? "?" : ", ?");
+            }
+            sql.append(")");
+            List<Object> values = new ArrayList<Object>(Arrays.asList(parameters));
+            values.addAll(block);
+            DatabaseManager.updateQuery(context, sql.toString(), values.toArray());
+        }
+    }
+
+    /**
+     * Rebuild an event from the outbox.
+     */
+    static Event toEvent(TableRow row)
+    {
+        String detail = row.isColumnNull("detail") ? null : row.getStringColumn("detail");
+        String[] identifiers = row.isColumnNull("identifiers") ? new String[0]
+                : row.getStringColumn("identifiers").split(OutboxDispatcher.IDENTIFIER_SEPARATOR);
+        Event event;
+        if (row.getIntColumn("object_type") < 0)
+        {
+            event = new Event(row.getIntColumn("event_type"), row.getIntColumn("subject_type"),
+                    row.getIntColumn("subject_id"), detail, identifiers);
+        }
+        else
+        {
+            event = new Event(row.getIntColumn("event_type"), row.getIntColumn("subject_type"),
+                    row.getIntColumn("subject_id"), row.getIntColumn("object_type"),
+                    row.getIntColumn("object_id"), detail, identifiers);
+        }
+        event.setTransactionID(row.getStringColumn("transaction_id"));
+        if (row.getIntColumn("eperson_id") >= 0)
+        {
+            event.setCurrentUser(row.getIntColumn("eperson_id"));
+        }
+        return event;
+    }
+
+    /**
+     * @return a line per consumer with its pending events and the age of the
+     *         oldest one
+     */
+    public static String report(Context context) throws SQLException
+    {
+        StringBuilder report = new StringBuilder();
+        TableRowIterator tri = DatabaseManager.query(context,
+                "SELECT consumer, COUNT(*) AS pending, MIN(created) AS oldest FROM event_outbox "
+                + "GROUP BY consumer ORDER BY consumer");
+        try
+        {
+            long now = System.currentTimeMillis();
+            while (tri.hasNext())
+            {
+                TableRow row = tri.next();
+                long pending = DatabaseManager.isOracle() ? row.getIntColumn("pending")
+                        : row.getLongColumn("pending");
+                long lag = row.isColumnNull("oldest") ? 0
+                        : (now - row.getDateColumn("oldest").getTime()) / 1000;
+                report.append(row.getStringColumn("consumer")).append(": ").append(pending)
+                        .append(" pending, lag ").append(lag).append("s\n");
+            }
+        }
+        finally
+        {
+            tri.close();
+        }
+        for (Map.Entry<String, Statistics> entry : getStatistics().entrySet())
+        {
+            report.append(entry.getKey()).append(": ").append(entry.getValue()).append('\n');
+        }
+        return report.toString();
+    }
+
+    /**
+     * Print the pending events, and deliver them with -d.
+     */
+    public static void main(String[] argv) throws Exception
+    {
+        CommandLineParser parser = new PosixParser();
+        Options options = new Options();
+        options.addOption("d", "deliver", false, "deliver the pending events");
+        options.addOption("c", "consumers", true,
+                "comma separated consumers to deliver (default: event.dispatcher.default.async)");
+        options.addOption("h", "help", false, "help");
+        CommandLine line = parser.parse(options, argv);
+        if (line.hasOption('h'))
+        {
+            HelpFormatter formatter = new HelpFormatter();
+            formatter.printHelp("OutboxWorker\n", options);
+            System.exit(0);
+        }
+
+        if (line.hasOption('d'))
+        {
+            String list = line.hasOption('c') ? line.getOptionValue('c')
+                    : ConfigurationManager.getProperty("event.dispatcher.default.async");
+            if (StringUtils.isBlank(list))
+            {
+                System.err.println("No asynchronous consumer configured");
+                System.exit(1);
+            }
+            String workerID = ManagementFactory.getRuntimeMXBean().getName();
+            for (String name : Arrays.asList(list.trim().split("\\s*,\\s*")))
+            {
+                ConsumerProfile profile = ConsumerProfile.makeConsumerProfile(name);
+                profile.getConsumer().initialize();
+                while (deliver(profile, workerID + "/" + name) > 0)
+                {
+                    // until the outbox of the consumer is empty, or all the
+                    // events left fail and wait for their retry
+                }
+            }
+        }
+
+        Context context = new Context();
+        try
+        {
+            System.out.print(report(context));
+        }
+        finally
+        {
+            context.abort();
+        }
+    }
+}
@@ -9,7 +9,9 @@ package org.dspace.handle;
 
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.log4j.Logger;
 import org.dspace.content.Collection;
@@ -20,6 +22,7 @@ import org.dspace.content.Site;
 import org.dspace.core.ConfigurationManager;
 import org.dspace.core.Constants;
 import org.dspace.core.Context;
+import org.dspace.core.SharedCache;
 import org.dspace.storage.rdbms.DatabaseManager;
 import org.dspace.storage.rdbms.TableRow;
 import org.dspace.storage.rdbms.TableRowIterator;
@@ -400,6 +403,34 @@ public class HandleManager
      */
     public static String findHandle(Context context, DSpaceObject dso)
             throws SQLException
+    {
+        // the handles of communities and collections are shared between the
+        // contexts; the handles of items can change with their versions
+        SharedCache<String, String> shared = null;
+        String key = dso.getType() + "/" + dso.getID();
+        long stamp = 0;
+        if ((dso.getType() == Constants.COMMUNITY || dso.getType() == Constants.COLLECTION)
+                && SharedCache.isEnabled(context))
+        {
+            shared = SharedCache.getRegion("handle.resource");
+            String cached = shared.get(key);
+            if (cached != null)
+            {
+                return cached;
+            }
+            stamp = shared.stamp();
+        }
+
+        String handle = findHandleInternal(context, dso);
+        if (shared != null && handle != null)
+        {
+            shared.put(key, handle, stamp);
+        }
+        return handle;
+    }
+
+    private static String findHandleInternal(Context context, DSpaceObject dso)
+            throws SQLException
     {
         TableRowIterator rows = getInternalHandles(context, dso.getType(), dso.getID());
         if (rows == null || !rows.hasNext())
@@ -433,6 +464,64 @@ public class HandleManager
         }
     }
 
+    /**
+     * Return the handles of several objects of the same type with a single
+     * query. As for {@link #findHandle(Context, DSpaceObject)}, a handle not
+     * looking like a version handle is preferred.
+     *
+     * @param context
+     *            DSpace context
+     * @param type
+     *            The type of the objects
+     * @param ids
+     *            The ids of the objects
+     * @return the handles by object id; objects without handle are not in
+     *         the map
+     * @exception SQLException
+     *                If a database error occurs
+     */
+    public static Map<Integer, String> findHandles(Context context, int type, List<Integer> ids)
+            throws SQLException
+    {
+        Map<Integer, String> handles = new HashMap<Integer, String>();
+        if (ids.isEmpty())
+        {
+            return handles;
+        }
+
+        StringBuilder sql = new StringBuilder("SELECT * FROM Handle WHERE resource_type_id = ? "
+                + "AND resource_id IN (");
+        Object[] parameters = new Object[ids.size() + 1];
+        parameters[0] = type;
+        for (int i = 0; i < ids.size(); i++)
+        {
+            sql.append(i == 0 ? "?" : ", ?");
+            parameters[i + 1] = ids.get(i);
+        }
+        sql.append(") ORDER BY handle_id");
+
+        TableRowIterator rows = DatabaseManager.queryTable(context, "Handle", sql.toString(), parameters);
+        try
+        {
+            while (rows.hasNext())
+            {
+                TableRow row = rows.next();
+                Integer id = row.getIntColumn("resource_id");
+                String handle = row.getStringColumn("handle");
+                //Ensure that the handle doesn't look like this 12346/213.{version}
+                if (!handles.containsKey(id) || !handle.matches(".*/.*\\.\\d+"))
+                {
+                    handles.put(id, handle);
+                }
+            }
+        }
+        finally
+        {
+            rows.close();
+        }
+        return handles;
+    }
+
     /**
      * Return all the handles which start with prefix.
      *
@@ -532,8 +621,29 @@ public class HandleManager
             throw new IllegalArgumentException("Handle is null");
         }
 
-        return DatabaseManager
-                .findByUnique(context, "Handle", "handle", handle);
+        if (!SharedCache.isEnabled(context))
+        {
+            return DatabaseManager
+                    .findByUnique(context, "Handle", "handle", handle);
+        }
+
+        // only the handles of communities and collections are kept, the
+        // handles of items can change with their versions
+        SharedCache<String, TableRow> shared = SharedCache.getRegion("handle");
+        TableRow row = shared.get(handle);
+        if (row != null)
+        {
+            return row.copy();
+        }
+        long stamp = shared.stamp();
+        row = DatabaseManager.findByUnique(context, "Handle", "handle", handle);
+        if (row != null && !row.isColumnNull("resource_type_id")
+                && (row.getIntColumn("resource_type_id") == Constants.COMMUNITY
+                    || row.getIntColumn("resource_type_id") == Constants.COLLECTION))
+        {
+            shared.put(handle, row.copy(), stamp);
+        }
+        return row;
     }
 
     /**
@@ -50,6 +50,8 @@ public class HarvestedCollection
  		metadata_config_id | text                     | 
  		harvest_status     | integer                  | 
  		harvest_start_time | timestamp with time zone | 
+ 		resumption_token   | text                     | 
+ 		resumption_date    | timestamp with time zone | 
 	 */  
 	
 	// TODO: make sure this guy knows to lock people out if the status is not zero.
@@ -291,6 +293,8 @@ public class HarvestedCollection
     	setOaiSource(oaiSource);
     	setOaiSetId(oaiSetId); 
     	setHarvestMetadataConfig(mdConfigId);
+    	// the progress of a harvest with other parameters can't be resumed
+    	setResumption(null, null);
     }     
 
     /* Setters for the appropriate harvesting-related columns */
@@ -365,6 +369,24 @@ public class HarvestedCollection
     }
     
 
+    /**
+     * Saves the progress of the harvest in progress, so that it can be resumed
+     * after an interruption.
+     *
+     * @param resumptionToken the token of the next ListRecords page, null to clear the checkpoint
+     * @param harvestDate the start of the harvest, its "until" argument
+     */
+    public void setResumption(String resumptionToken, Date harvestDate) {
+    	if (resumptionToken == null || resumptionToken.length() == 0 || harvestDate == null) {
+    		harvestRow.setColumnNull("resumption_token");
+    		harvestRow.setColumnNull("resumption_date");
+    	} else {
+    		harvestRow.setColumn("resumption_token", resumptionToken);
+    		harvestRow.setColumn("resumption_date", harvestDate);
+    	}
+    }
+    
+
     /* Getting for the appropriate harvesting-related columns */
     public int getCollectionId() {
     	return harvestRow.getIntColumn("collection_id");
@@ -401,6 +423,20 @@ public class HarvestedCollection
     public Date getHarvestStartTime() {
     	return harvestRow.getDateColumn("harvest_start_time");
     }
+
+    /**
+     * @return the resumption token of the next page of an interrupted harvest, or null
+     */
+    public String getResumptionToken() {
+    	return harvestRow.getStringColumn("resumption_token");
+    }
+
+    /**
+     * @return the start of the interrupted harvest, or null
+     */
+    public Date getResumptionDate() {
+    	return harvestRow.getDateColumn("resumption_date");
+    }
     
     
     
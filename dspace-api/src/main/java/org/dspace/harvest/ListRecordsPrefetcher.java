@@ -0,0 +1,305 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.harvest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import ORG.oclc.oai.harvester2.verb.ListRecords;
+import org.apache.log4j.Logger;
+import org.dspace.harvest.OAIHarvester.HarvestingException;
+import org.jdom.Document;
+import org.jdom.Element;
+import org.jdom.Namespace;
+import org.jdom.input.DOMBuilder;
+import org.w3c.dom.NodeList;
+
+/**
+ * Requests the pages of a ListRecords response of an OAI-PMH provider. With a
+ * positive capacity a thread of its own requests the pages ahead of the
+ * ingest of their records, so that the network wait overlaps with the ingest;
+ * at most <code>capacity</code> pages wait to be ingested. With a capacity of
+ * 0 each page is requested when it is asked for.
+ * <p>
+ * The requests stop at the last page, at the first page with errors, or when
+ * the prefetcher is closed.
+ */
+class ListRecordsPrefetcher implements Runnable
+{
+    private static final Logger log = Logger.getLogger(ListRecordsPrefetcher.class);
+
+    private static final Namespace OAI_NS = Namespace.getNamespace("http://www.openarchives.org/OAI/2.0/");
+
+    /** A page of the response and the token to request the next one */
+    static class Page
+    {
+        private final Document document;
+
+        private final Set<String> errors;
+
+        private final String resumptionToken;
+
+        Page(Document document, Set<String> errors, String resumptionToken)
+        {
+            this.document = document;
+            this.errors = errors;
+            this.resumptionToken = resumptionToken;
+        }
+
+        /**
+         * @return the error codes of the response, empty if none
+         */
+        Set<String> getErrors()
+        {
+            return errors;
+        }
+
+        /**
+         * @return the token of the next page, null for the last page
+         */
+        String getResumptionToken()
+        {
+            return resumptionToken;
+        }
+
+        @SuppressWarnings("unchecked")
+        List<Element> getRecords()
+        {
+            Element listRecords = document.getRootElement().getChild("ListRecords", OAI_NS);
+            if (listRecords == null)
+            {
+                return Collections.emptyList();
+            }
+            return new ArrayList<Element>(listRecords.getChildren("record", OAI_NS));
+        }
+    }
+
+    /** queued after the last page */
+    private static final Object END = new Object();
+
+    private final String oaiSource;
+    private final String from;
+    private final String until;
+    private final String set;
+    private final String metadataPrefix;
+
+    /** token of the next request, null before the first one */
+    private String resumptionToken;
+
+    private boolean started;
+
+    private boolean finished;
+
+    private final DOMBuilder builder = new DOMBuilder();
+
+    private final BlockingQueue<Object> pages;
+
+    private volatile boolean closed;
+
+    /** time spent waiting for the pages by the ingest, in ms */
+    private long waitMillis;
+
+    /**
+     * @param resumptionToken
+     *            token to resume an interrupted harvest from, or null to
+     *            start with the first page
+     * @param capacity
+     *            number of pages requested ahead, 0 to request them on demand
+     */
+    ListRecordsPrefetcher(String oaiSource, String from, String until, String set, String metadataPrefix,
+            String resumptionToken, int capacity)
+    {
+        this.oaiSource = oaiSource;
+        this.from = from;
+        this.until = until;
+        this.set = set;
+        this.metadataPrefix = metadataPrefix;
+        this.resumptionToken = resumptionToken;
+        this.pages = capacity > 0 ? new ArrayBlockingQueue<Object>(capacity) : null;
+    }
+
+    /**
+     * Start requesting the pages, if they are requested ahead.
+     */
+    void start()
+    {
+        if (pages != null)
+        {
+            Thread thread = new Thread(this, "ListRecords " + oaiSource);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    public void run()
+    {
+        try
+        {
+            Page page;
+            do
+            {
+                page = fetch();
+                if (page != null && !queue(page))
+                {
+                    return;
+                }
+            }
+            while (page != null);
+            queue(END);
+        }
+        catch (InterruptedException e)
+        {
+            log.warn("Prefetch of " + oaiSource + " interrupted");
+        }
+        catch (Exception e)
+        {
+            try
+            {
+                queue(e);
+            }
+            catch (InterruptedException ie)
+            {
+                log.warn("Prefetch of " + oaiSource + " interrupted");
+            }
+        }
+    }
+
+    /**
+     * Wait for room in the queue, unless the prefetcher is closed.
+     *
+     * @return false if the prefetcher was closed
+     */
+    private boolean queue(Object page) throws InterruptedException
+    {
+        while (!closed)
+        {
+            if (pages.offer(page, 1, TimeUnit.SECONDS))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Request the next page.
+     *
+     * @return the page, or null after the last one
+     */
+    private Page fetch() throws Exception
+    {
+        if (finished || closed)
+        {
+            return null;
+        }
+        ListRecords listRecords;
+        if (!started && resumptionToken == null)
+        {
+            listRecords = new ListRecords(oaiSource, from, until, set, metadataPrefix);
+            log.debug("Harvesting request parameters: listRecords " + oaiSource + " " + from + " " + until + " " + set + " " + metadataPrefix);
+        }
+        else
+        {
+            listRecords = new ListRecords(oaiSource, resumptionToken);
+        }
+        started = true;
+        log.info("HTTP Request: " + listRecords.getRequestURL());
+
+        Set<String> errors = new LinkedHashSet<String>();
+        NodeList errorNodes = listRecords.getErrors();
+        if (errorNodes != null)
+        {
+            for (int i = 0; i < errorNodes.getLength(); i++)
+            {
+                errors.add(errorNodes.item(i).getAttributes().getNamedItem("code").getTextContent());
+            }
+        }
+        String token = errors.isEmpty() ? listRecords.getResumptionToken() : null;
+        if (token == null || token.length() == 0)
+        {
+            token = null;
+            finished = true;
+        }
+        resumptionToken = token;
+        return new Page(builder.build(listRecords.getDocument()), errors, token);
+    }
+
+    /**
+     * @return the next page, waiting for it if it is not there yet, or null
+     *         after the last page
+     * @throws HarvestingException
+     *             if the page could not be requested
+     */
+    Page next() throws HarvestingException
+    {
+        if (pages == null)
+        {
+            try
+            {
+                return fetch();
+            }
+            catch (Exception e)
+            {
+                throw new HarvestingException("Unable to request a ListRecords page from " + oaiSource, e);
+            }
+        }
+
+        Object page;
+        long start = System.currentTimeMillis();
+        try
+        {
+            page = pages.take();
+        }
+        catch (InterruptedException e)
+        {
+            throw new HarvestingException("Interrupted while waiting for a ListRecords page from " + oaiSource, e);
+        }
+        finally
+        {
+            waitMillis += System.currentTimeMillis() - start;
+        }
+        if (page == END)
+        {
+            // for the callers asking again
+            pages.offer(END);
+            return null;
+        }
+        if (page instanceof Exception)
+        {
+            throw new HarvestingException("Unable to request a ListRecords page from " + oaiSource, (Exception) page);
+        }
+        return (Page) page;
+    }
+
+    /**
+     * @return the time the ingest spent waiting for pages, in ms
+     */
+    long getWaitMillis()
+    {
+        return waitMillis;
+    }
+
+    /**
+     * Stop requesting pages. A request in progress is completed and its
+     * page dropped.
+     */
+    void close()
+    {
+        closed = true;
+        if (pages != null)
+        {
+            pages.clear();
+        }
+    }
+}
@@ -22,9 +22,13 @@ import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
 import java.util.Stack;
 import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.TransformerException;
@@ -237,7 +241,18 @@ public class OAIHarvester {
             fromDate = processDate(harvestRow.getHarvestDate());
         }
 
-		Date startTime = new Date();
+		// resume an interrupted harvest, asking for the same dates
+		String resumptionToken = harvestRow.getResumptionToken();
+		Date startTime = harvestRow.getResumptionDate();
+		if (resumptionToken != null && startTime != null)
+		{
+			log.info("Resuming the harvest of " + oaiSource + " started at " + startTime);
+		}
+		else
+		{
+			resumptionToken = null;
+			startTime = new Date();
+		}
 		String toDate = processDate(startTime,0);
 
 		String dateGranularity;
@@ -275,14 +290,10 @@ public class OAIHarvester {
 				throw new HarvestingException("The OAI server does not support ORE dissemination in the configured serialization format: " + ORESerialNS.getURI());
 			}
 
-			Document oaiResponse = null;
-			Element root = null;
-			String resumptionToken;
-
 			// set the status indicating the collection is currently being processed
 			harvestRow.setHarvestStatus(HarvestedCollection.STATUS_BUSY);
 			harvestRow.setHarvestMessage("Collection is currently being harvested");
-			harvestRow.setHarvestStartTime(startTime);
+			harvestRow.setHarvestStartTime(new Date());
 			harvestRow.update();
 			ourContext.commit();
 
@@ -294,91 +305,102 @@ public class OAIHarvester {
             }
 
 			Calendar calendar = Calendar.getInstance();
-			calendar.setTime(startTime);
+			calendar.setTime(new Date());
 			calendar.add(Calendar.HOUR, expirationInterval);
             Date expirationTime = calendar.getTime();
 
+            int prefetchPages = ConfigurationManager.getIntProperty("oai", "harvester.prefetchPages", 2);
+            int commitBatchSize = Math.max(1, ConfigurationManager.getIntProperty("oai", "harvester.commitBatchSize", 1));
+            HarvestRate rate = HarvestScheduler.startRate(oaiSource);
+
 			// main loop to keep requesting more objects until we're done
 			List<Element> records;
-			Set<String> errorSet = new HashSet<String>();
+			Set<String> errorSet;
 
-			ListRecords listRecords = new ListRecords(oaiSource, fromDate, toDate, oaiSetId, descMDPrefix);
-			log.debug("Harvesting request parameters: listRecords " + oaiSource + " " + fromDate + " " + toDate + " " + oaiSetId + " " + descMDPrefix);
-			if (listRecords != null)
-            {
-                log.info("HTTP Request: " + listRecords.getRequestURL());
-            }
-			while (listRecords != null)
+			ListRecordsPrefetcher prefetcher = new ListRecordsPrefetcher(oaiSource, fromDate, toDate, oaiSetId, descMDPrefix,
+					resumptionToken, prefetchPages);
+			prefetcher.start();
+			try
 			{
-				records = new ArrayList<Element>();
-				oaiResponse = db.build(listRecords.getDocument());
-
-				if (listRecords.getErrors() != null && listRecords.getErrors().getLength() > 0)
+				int index = 0;
+				ListRecordsPrefetcher.Page page;
+				while ((page = prefetcher.next()) != null)
 				{
-					for (int i=0; i<listRecords.getErrors().getLength(); i++)
-					{
-						String errorCode = listRecords.getErrors().item(i).getAttributes().getNamedItem("code").getTextContent();
-						errorSet.add(errorCode);
-					}
-					if (errorSet.contains("noRecordsMatch"))
+					errorSet = page.getErrors();
+					if (!errorSet.isEmpty())
 					{
-						log.info("noRecordsMatch: OAI server did not contain any updates");
-						harvestRow.setHarvestResult(new Date(), "OAI server did not contain any updates");
-						harvestRow.setHarvestStatus(HarvestedCollection.STATUS_READY);
-						harvestRow.update();
-						return;
-					} else {
-						throw new HarvestingException(errorSet.toString());
+						if (resumptionToken != null && errorSet.contains("badResumptionToken"))
+						{
+							// the token expired, harvest again what the interrupted harvest asked for
+							log.info("The resumption token of the interrupted harvest expired, restarting the harvest");
+							prefetcher.close();
+							resumptionToken = null;
+							prefetcher = new ListRecordsPrefetcher(oaiSource, fromDate, toDate, oaiSetId, descMDPrefix,
+									null, prefetchPages);
+							prefetcher.start();
+							continue;
+						}
+						if (errorSet.contains("noRecordsMatch"))
+						{
+							log.info("noRecordsMatch: OAI server did not contain any updates");
+							harvestRow.setHarvestResult(new Date(), "OAI server did not contain any updates");
+							harvestRow.setHarvestStatus(HarvestedCollection.STATUS_READY);
+							harvestRow.setResumption(null, null);
+							harvestRow.update();
+							return;
+						} else {
+							throw new HarvestingException(errorSet.toString());
+						}
 					}
-				}
-				else
-				{
-					root = oaiResponse.getRootElement();
-					records.addAll(root.getChild("ListRecords", OAI_NS).getChildren("record", OAI_NS));
-				}
+					records = page.getRecords();
 
-				// Process the obtained records
-				if (records != null && records.size()>0)
-				{
-				    int index = 0;
-					log.info("Found " + records.size() + " records to process");
-					for (Element record : records) {
-						// check for STOP interrupt from the scheduler
-						if (HarvestScheduler.interrupt == HarvestScheduler.HARVESTER_INTERRUPT_STOP)
-                        {
-                            throw new HarvestingException("Harvest process for " + targetCollection.getID() + " interrupted by stopping the scheduler.");
-                        }
-						// check for timeout
-						if (expirationTime.before(new Date()))
-                        {
-                            throw new HarvestingException("runHarvest method timed out for collection " + targetCollection.getID());
-                        }
-
-						index++;
-						processRecord(record,OREPrefix);
-			            if(index%cacheLimit==0) {
-			                ourContext.clearCache();
-			            }
-						ourContext.commit();
+					// Process the obtained records
+					if (records != null && records.size()>0)
+					{
+						log.info("Found " + records.size() + " records to process");
+						for (Element record : records) {
+							// check for STOP interrupt from the scheduler
+							if (HarvestScheduler.interrupt == HarvestScheduler.HARVESTER_INTERRUPT_STOP)
+	                        {
+	                            throw new HarvestingException("Harvest process for " + targetCollection.getID() + " interrupted by stopping the scheduler.");
+	                        }
+							// check for timeout
+							if (expirationTime.before(new Date()))
+	                        {
+	                            throw new HarvestingException("runHarvest method timed out for collection " + targetCollection.getID());
+	                        }
+
+							index++;
+							processRecord(record,OREPrefix);
+				            if(index%cacheLimit==0) {
+				                ourContext.clearCache();
+				            }
+				            if(index%commitBatchSize==0) {
+				                ourContext.commit();
+				            }
+						}
+						rate.add(records.size());
 					}
-				}
 
-				// keep going if there are more records to process
-				resumptionToken = listRecords.getResumptionToken();
-				if (resumptionToken == null || resumptionToken.length() == 0) {
-					listRecords = null;
-				}
-				else {
-					listRecords = new ListRecords(oaiSource, resumptionToken);
+					// the records of the page are ingested, an interruption resumes with the next page
+					harvestRow.setResumption(page.getResumptionToken(), startTime);
+					harvestRow.update();
+	                ourContext.turnOffAuthorisationSystem();
+	                try {
+	                    targetCollection.update();
+	                } finally {
+	                    //In case of an exception, make sure to restore our authentication state to the previous state
+	                    ourContext.restoreAuthSystemState();
+	                }
+					ourContext.commit();
+					log.info("Harvested " + index + " records from " + oaiSource + " at " + rate + ", "
+							+ prefetcher.getWaitMillis() + " ms waiting for the provider");
 				}
-                ourContext.turnOffAuthorisationSystem();
-                try {
-                    targetCollection.update();
-                } finally {
-                    //In case of an exception, make sure to restore our authentication state to the previous state
-                    ourContext.restoreAuthSystemState();
-                }
-				ourContext.commit();
+			}
+			finally
+			{
+				prefetcher.close();
+				rate.finish();
 			}
 		}
 		catch (HarvestingException hex) {
@@ -413,6 +435,7 @@ public class OAIHarvester {
 		long timeTaken = finishTime.getTime() - startTime.getTime();
 		harvestRow.setHarvestResult(startTime, "Harvest from " + oaiSource + " successful");
 		harvestRow.setHarvestStatus(HarvestedCollection.STATUS_READY);
+		harvestRow.setResumption(null, null);
 		log.info("Harvest from " + oaiSource + " successful. The process took " + timeTaken + " milliseconds.");
 		harvestRow.update();
 		ourContext.commit();
@@ -1095,6 +1118,43 @@ public class OAIHarvester {
 	    }
 	}
 
+    /**
+     * Number of records ingested by a harvest per second.
+     */
+    public static class HarvestRate
+    {
+        private final long start = System.currentTimeMillis();
+
+        private volatile long end;
+
+        private final AtomicLong records = new AtomicLong();
+
+        void add(int count) {
+            records.addAndGet(count);
+        }
+
+        void finish() {
+            end = System.currentTimeMillis();
+        }
+
+        public boolean isRunning() {
+            return end == 0;
+        }
+
+        public long getRecords() {
+            return records.get();
+        }
+
+        public double getRecordsPerSecond() {
+            long millis = (end == 0 ? System.currentTimeMillis() : end) - start;
+            return millis == 0 ? 0 : records.get() * 1000.0 / millis;
+        }
+
+        public String toString() {
+            return String.format(Locale.ENGLISH, "%.1f records/s", getRecordsPerSecond());
+        }
+    }
+
     /**
      * The class responsible for scheduling harvesting cycles are regular intervals.
      * @author alexey
@@ -1143,6 +1203,25 @@ public class OAIHarvester {
 
         private static long maxHeartbeat;
 
+        /** rate of the harvest in progress, or of the last one, of each OAI source */
+        private static final Map<String, HarvestRate> rates = new ConcurrentHashMap<String, HarvestRate>();
+
+        /**
+         * Start measuring the rate of a harvest of a source.
+         */
+        public static HarvestRate startRate(String oaiSource) {
+            HarvestRate rate = new HarvestRate();
+            rates.put(oaiSource, rate);
+            return rate;
+        }
+
+        /**
+         * @return the rate of the harvest in progress, or of the last one, of each OAI source
+         */
+        public static Map<String, HarvestRate> getRates() {
+            return new TreeMap<String, HarvestRate>(rates);
+        }
+
         public static boolean hasStatus(int statusToCheck) {
             return status == statusToCheck;
         }
@@ -1319,6 +1398,10 @@ public class OAIHarvester {
 
                     tempContext.complete();
 
+                    for (Map.Entry<String, HarvestRate> rate : getRates().entrySet()) {
+                        log.info("Harvest rate of " + rate.getKey() + ": " + rate.getValue() + ", "
+                                + rate.getValue().getRecords() + " records" + (rate.getValue().isRunning() ? ", running" : ""));
+                    }
                     status = HARVESTER_STATUS_SLEEPING;
                     synchronized(lock) {
                         lock.wait(delay);
@@ -114,6 +114,10 @@ public class SolrLogger
 
     private List<String> statisticYearCores = new ArrayList<String>();
 
+    private volatile UsageEventBuffer usageEventBuffer;
+
+    private volatile boolean usageEventBufferInitialized = false;
+
     public static enum StatisticsType {
    		VIEW ("view"),
    		SEARCH ("search"),
@@ -200,6 +204,86 @@ public class SolrLogger
         return solr;
     }
 
+
+    /**
+     * Return the buffer used to send the usage events asynchronously, or
+     * null if the events are written synchronously (the default, see the
+     * <code>async.*</code> properties of the solr-statistics module).
+     */
+    public UsageEventBuffer getUsageEventBuffer()
+    {
+        // every usage event asks for it: lock only until it is initialized
+        if (usageEventBufferInitialized)
+        {
+            return usageEventBuffer;
+        }
+        synchronized (this)
+        {
+            if (!usageEventBufferInitialized && getSolr() != null)
+            {
+                if (ConfigurationManager.getBooleanProperty(CFG_STAT_MODULE, "async.enabled", false))
+                {
+                    String spillFile = ConfigurationManager.getProperty(CFG_STAT_MODULE, "async.spill.file");
+                    if (StringUtils.isBlank(spillFile))
+                    {
+                        spillFile = ConfigurationManager.getProperty("dspace.dir")
+                                + File.separator + "log" + File.separator + "statistics-spill.xml";
+                    }
+                    usageEventBuffer = new UsageEventBuffer(getSolr(),
+                            ConfigurationManager.getIntProperty(CFG_STAT_MODULE, "async.buffer.size", 10000),
+                            ConfigurationManager.getIntProperty(CFG_STAT_MODULE, "async.batch.size", 100),
+                            ConfigurationManager.getLongProperty(CFG_STAT_MODULE, "async.flush.interval", 1000),
+                            UsageEventBuffer.OverflowPolicy.fromString(
+                                    ConfigurationManager.getProperty(CFG_STAT_MODULE, "async.overflow")),
+                            new File(spillFile));
+                    usageEventBuffer.start();
+                    final UsageEventBuffer buffer = usageEventBuffer;
+                    Runtime.getRuntime().addShutdownHook(new Thread("usage-event-buffer-shutdown") {
+                        @Override
+                        public void run()
+                        {
+                            buffer.stop();
+                        }
+                    });
+                }
+                // published last, once the buffer is started
+                usageEventBufferInitialized = true;
+            }
+        }
+        return usageEventBuffer;
+    }
+
+    /**
+     * Flush the pending usage events and stop the asynchronous writer, if
+     * any.
+     */
+    public synchronized void shutdown()
+    {
+        if (usageEventBuffer != null)
+        {
+            usageEventBuffer.stop();
+        }
+    }
+
+    /**
+     * Send a usage event document to the statistics core, through the
+     * asynchronous buffer when enabled.
+     *
+     * @param doc
+     *            the usage event
+     */
+    protected void addUsageEvent(SolrInputDocument doc) throws SolrServerException, IOException
+    {
+        UsageEventBuffer buffer = getUsageEventBuffer();
+        if (buffer != null)
+        {
+            buffer.add(doc);
+        }
+        else
+        {
+            getSolr().add(doc);
+        }
+    }
     
     public SolrDocumentList getRawData(int type, String queryString) throws SolrServerException
     {
@@ -276,7 +360,7 @@ public class SolrLogger
 
             doc1.addField("statistics_type", StatisticsType.LOGIN.text());
 
-            solr.add(doc1);
+            addUsageEvent(doc1);
             //commits are executed automatically using the solr autocommit
 //            solr.commit(false, false);
 
@@ -312,7 +396,7 @@ public class SolrLogger
             if (doc1 == null) return;
 
             doc1.addField("statistics_type", StatisticsType.VIEW.text());
-            solr.add(doc1);
+            addUsageEvent(doc1);
             //commits are executed automatically using the solr autocommit
 //            solr.commit(false, false);
 
@@ -341,7 +425,7 @@ public class SolrLogger
 
 			doc1.addField("statistics_type", StatisticsType.VIEW.text());
 
-			solr.add(doc1);
+			addUsageEvent(doc1);
 			// commits are executed automatically using the solr autocommit
 			// solr.commit(false, false);
 
@@ -367,7 +451,7 @@ public class SolrLogger
 
 			doc1.addField("statistics_type", StatisticsType.VIEW.text());
 
-			solr.add(doc1);
+			addUsageEvent(doc1);
 			// commits are executed automatically using the solr autocommit
 			// solr.commit(false, false);
 
@@ -578,7 +662,7 @@ public class SolrLogger
                 solrDoc.addField("page", page);
             }
 
-            getSolr().add(solrDoc);
+            addUsageEvent(solrDoc);
         }
         catch (RuntimeException re)
         {
@@ -628,7 +712,7 @@ public class SolrLogger
                 solrDoc.addField("actor", usageWorkflowEvent.getActor().getID());
             }
 
-            getSolr().add(solrDoc);
+            addUsageEvent(solrDoc);
         }
         catch (Exception e)
         {
@@ -756,7 +840,7 @@ public class SolrLogger
                 };
 
                 /* query for ip, exclude results previously set as bots. */
-                processor.execute("ip:"+ip+ "* AND -isBot:true");
+                processor.execute(ipQuery(ip) + " AND -isBot:true");
 
                 getSolr().commit();
 
@@ -803,7 +887,7 @@ public class SolrLogger
     public void deleteIP(String ip)
     {
         try {
-        	 getSolr().deleteByQuery("ip:"+ip + "*");
+        	 getSolr().deleteByQuery(ipQuery(ip));
         } catch (Exception e) {
             log.error(e.getMessage(),e);
         }
@@ -817,6 +901,20 @@ public class SolrLogger
         }
     }
 
+    /**
+     * @return the query of the events of an address, or of a network when
+     *         it is a prefix ending with a dot as listed by
+     *         {@link SpiderDetector#getSpiderIpAddresses()}
+     */
+    private static String ipQuery(String ip)
+    {
+        if (ip.isEmpty() || ip.endsWith("."))
+        {
+            return "ip:" + ClientUtils.escapeQueryChars(ip) + "*";
+        }
+        return "ip:" + ClientUtils.escapeQueryChars(ip);
+    }
+
     /*
      * //TODO: below are not used public static void
      * update(String query, boolean addField, String fieldName, Object
@@ -1123,6 +1221,33 @@ public class SolrLogger
             return null;
         }
 
+        SolrQuery solrQuery = buildQuery(query, filterQuery, facetField, rows,
+                max, dateType, dateStart, dateEnd, gap, facetQueries, sort,
+                ascending);
+
+        QueryResponse response;
+        try
+        {
+            // solr.set
+            response = solr.query(solrQuery);
+        }
+        catch (SolrServerException e)
+        {
+            System.err.println("Error using query " + query);
+            throw e;
+        }
+        return response;
+    }
+
+    /**
+     * Build the query on the statistics, with the filters configured for the
+     * spiders, the bots and the bundles and the shards of the yearly cores.
+     */
+    protected SolrQuery buildQuery(String query, String filterQuery,
+            String facetField, int rows, int max, String dateType,
+            String dateStart, String dateEnd, int gap,
+            List<String> facetQueries, String sort, boolean ascending)
+    {
         // System.out.println("QUERY");
         SolrQuery solrQuery = new SolrQuery().setRows(rows).setQuery(query)
                 .setFacetMinCount(1);
@@ -1216,19 +1341,7 @@ public class SolrLogger
         {
             solrQuery.addFilterQuery(filterQuery);
         }
-
-        QueryResponse response;
-        try
-        {
-            // solr.set
-            response = solr.query(solrQuery);
-        }
-        catch (SolrServerException e)
-        {
-            System.err.println("Error using query " + query);
-            throw e;
-        }
-        return response;
+        return solrQuery;
     }
 
 
@@ -1242,15 +1355,9 @@ public class SolrLogger
      */
     public String getIgnoreSpiderIPs() {
         if (filterQuery == null) {
-            StringBuilder query = new StringBuilder();
-            boolean first = true;
+            StringBuilder query = new StringBuilder("*:*");
             for (String ip : SpiderDetector.getSpiderIpAddresses()) {
-                if (first) {
-                    query.append(" AND ");
-                    first = false;
-                }
-
-                query.append(" NOT(ip: ").append(ip).append(")");
+                query.append(" -").append(ipQuery(ip));
             }
             filterQuery = query.toString();
         }
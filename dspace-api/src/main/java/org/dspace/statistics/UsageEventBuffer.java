@@ -0,0 +1,526 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.statistics;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.request.DirectXmlRequest;
+import org.apache.solr.client.solrj.util.ClientUtils;
+import org.apache.solr.common.SolrInputDocument;
+
+/**
+ * Bounded in-memory buffer of usage event documents, sent to the statistics
+ * core in batches by a background thread so that the request threads never
+ * wait on Solr.
+ * <p/>
+ * A batch is sent when <code>batchSize</code> documents are available or
+ * when the oldest buffered document has waited <code>flushInterval</code>
+ * milliseconds. When the buffer is full the configured
+ * {@link OverflowPolicy} applies. With the {@link OverflowPolicy#SPILL}
+ * policy the overflowing documents, and the batches that Solr refused, are
+ * appended as Solr XML to a local file that is replayed by the flusher when
+ * the buffer is started again. Once the buffer is stopped, the new events are spilled or
+ * dropped instead of being buffered.
+ */
+public class UsageEventBuffer implements Runnable
+{
+    private static final Logger log = Logger.getLogger(UsageEventBuffer.class);
+
+    private static final String CHARSET = "UTF-8";
+
+    /**
+     * What to do with a new event when the buffer is full
+     */
+    public static enum OverflowPolicy
+    {
+        /** wait for a free slot in the caller thread */
+        BLOCK,
+        /** discard the oldest buffered event */
+        DROP_OLDEST,
+        /** append the event to the spill file */
+        SPILL;
+
+        public static OverflowPolicy fromString(String value)
+        {
+            if (StringUtils.isBlank(value))
+            {
+                return BLOCK;
+            }
+            return valueOf(value.trim().toUpperCase().replace('-', '_'));
+        }
+    }
+
+    private final SolrServer solr;
+
+    private final BlockingQueue<SolrInputDocument> queue;
+
+    private final int batchSize;
+
+    private final long flushInterval;
+
+    private final OverflowPolicy overflowPolicy;
+
+    private final File spillFile;
+
+    private final AtomicLong enqueued = new AtomicLong();
+
+    private final AtomicLong flushed = new AtomicLong();
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    private final AtomicLong spilled = new AtomicLong();
+
+    private final AtomicLong replayed = new AtomicLong();
+
+    private volatile boolean running = false;
+
+    private volatile boolean stopped = false;
+
+    private Thread flusher;
+
+    public UsageEventBuffer(SolrServer solr, int capacity, int batchSize,
+            long flushInterval, OverflowPolicy overflowPolicy, File spillFile)
+    {
+        if (overflowPolicy == OverflowPolicy.SPILL && spillFile == null)
+        {
+            throw new IllegalArgumentException(
+                    "A spill file is required by the SPILL overflow policy");
+        }
+        this.solr = solr;
+        this.batchSize = Math.max(1, batchSize);
+        this.queue = new ArrayBlockingQueue<SolrInputDocument>(Math.max(
+                this.batchSize, capacity));
+        this.flushInterval = flushInterval;
+        this.overflowPolicy = overflowPolicy;
+        this.spillFile = spillFile;
+    }
+
+    /**
+     * Start the background flusher, which first replays the events spilled
+     * by a previous run, if any.
+     */
+    public synchronized void start()
+    {
+        if (running)
+        {
+            return;
+        }
+        running = true;
+        flusher = new Thread(this, "usage-event-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Stop the background flusher after sending the buffered events.
+     */
+    public void stop()
+    {
+        Thread thread;
+        synchronized (this)
+        {
+            stopped = true;
+            if (!running)
+            {
+                return;
+            }
+            running = false;
+            thread = flusher;
+        }
+        try
+        {
+            thread.join();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        // the events added while the flusher was ending
+        List<SolrInputDocument> rest = new ArrayList<SolrInputDocument>();
+        queue.drainTo(rest);
+        send(rest);
+        log.info("Usage event buffer stopped: " + getStatus());
+    }
+
+    /**
+     * Add an event to the buffer, applying the overflow policy if it is full.
+     *
+     * @param doc
+     *            the statistics document to send
+     */
+    public void add(SolrInputDocument doc)
+    {
+        enqueued.incrementAndGet();
+        if (stopped)
+        {
+            reject(doc);
+            return;
+        }
+        switch (overflowPolicy)
+        {
+        case BLOCK:
+            try
+            {
+                // nothing frees a slot once the flusher is stopped
+                while (!queue.offer(doc, flushInterval, TimeUnit.MILLISECONDS))
+                {
+                    if (stopped)
+                    {
+                        reject(doc);
+                        break;
+                    }
+                }
+            }
+            catch (InterruptedException e)
+            {
+                dropped.incrementAndGet();
+                Thread.currentThread().interrupt();
+            }
+            break;
+        case DROP_OLDEST:
+            while (!queue.offer(doc))
+            {
+                if (queue.poll() != null)
+                {
+                    dropped.incrementAndGet();
+                }
+            }
+            break;
+        case SPILL:
+            if (!queue.offer(doc))
+            {
+                List<SolrInputDocument> docs = new ArrayList<SolrInputDocument>(1);
+                docs.add(doc);
+                spill(docs);
+            }
+            break;
+        }
+    }
+
+    /**
+     * Spill an event which can't be buffered, or drop it if there is no
+     * spill file.
+     */
+    private void reject(SolrInputDocument doc)
+    {
+        if (overflowPolicy == OverflowPolicy.SPILL)
+        {
+            List<SolrInputDocument> docs = new ArrayList<SolrInputDocument>(1);
+            docs.add(doc);
+            spill(docs);
+        }
+        else
+        {
+            dropped.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void run()
+    {
+        // in this thread, so that a slow or unreachable Solr doesn't hold the
+        // request thread starting the buffer
+        replaySpillFile();
+        List<SolrInputDocument> batch = new ArrayList<SolrInputDocument>(batchSize);
+        while (running || !queue.isEmpty())
+        {
+            try
+            {
+                SolrInputDocument first = queue.poll(flushInterval, TimeUnit.MILLISECONDS);
+                if (first == null)
+                {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.currentTimeMillis() + flushInterval;
+                while (batch.size() < batchSize)
+                {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long wait = deadline - System.currentTimeMillis();
+                    if (batch.size() >= batchSize || wait <= 0 || !running)
+                    {
+                        break;
+                    }
+                    SolrInputDocument next = queue.poll(wait, TimeUnit.MILLISECONDS);
+                    if (next == null)
+                    {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                send(batch);
+            }
+            catch (InterruptedException e)
+            {
+                log.warn("Usage event flusher interrupted");
+                running = false;
+                queue.drainTo(batch);
+                send(batch);
+            }
+            catch (RuntimeException e)
+            {
+                log.error(e.getMessage(), e);
+            }
+            finally
+            {
+                batch.clear();
+            }
+        }
+    }
+
+    private void send(List<SolrInputDocument> batch)
+    {
+        if (batch.isEmpty())
+        {
+            return;
+        }
+        try
+        {
+            solr.add(batch);
+            flushed.addAndGet(batch.size());
+        }
+        catch (Exception e)
+        {
+            log.error("Unable to send " + batch.size()
+                    + " usage events to the statistics core: "
+                    + e.getMessage(), e);
+            if (overflowPolicy == OverflowPolicy.SPILL)
+            {
+                spill(batch);
+            }
+            else
+            {
+                dropped.addAndGet(batch.size());
+            }
+        }
+    }
+
+    /**
+     * Append the documents to the spill file, one Solr XML
+     * <code>&lt;doc&gt;</code> element per line.
+     */
+    private synchronized void spill(List<SolrInputDocument> docs)
+    {
+        Writer writer = null;
+        try
+        {
+            writer = new OutputStreamWriter(new FileOutputStream(spillFile, true), CHARSET);
+            for (SolrInputDocument doc : docs)
+            {
+                writer.write(ClientUtils.toXML(doc).replace("\r", "&#13;")
+                        .replace("\n", "&#10;"));
+                writer.write('\n');
+            }
+            spilled.addAndGet(docs.size());
+        }
+        catch (IOException e)
+        {
+            log.error("Unable to spill " + docs.size() + " usage events to "
+                    + spillFile.getAbsolutePath(), e);
+            dropped.addAndGet(docs.size());
+        }
+        finally
+        {
+            if (writer != null)
+            {
+                try
+                {
+                    writer.close();
+                }
+                catch (IOException e)
+                {
+                    log.error(e.getMessage(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Send the content of the spill file left by a previous run to Solr. The
+     * file is renamed before the replay so that new spills don't mix with the
+     * replayed ones; if the replay fails the renamed file is kept for the
+     * next attempt, which resumes after the last batch accepted (recorded in
+     * a <code>.offset</code> file next to it). Only the rename holds the
+     * lock of the spills.
+     */
+    private void replaySpillFile()
+    {
+        if (spillFile == null)
+        {
+            return;
+        }
+        File replay = new File(spillFile.getPath() + ".replay");
+        File offsetFile = new File(replay.getPath() + ".offset");
+        synchronized (this)
+        {
+            if (!replay.exists())
+            {
+                // an offset left without its file doesn't belong to the new one
+                offsetFile.delete();
+                if (!spillFile.exists() || !spillFile.renameTo(replay))
+                {
+                    return;
+                }
+            }
+        }
+
+        BufferedReader reader = null;
+        try
+        {
+            long offset = readOffset(offsetFile);
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(replay), CHARSET));
+            StringBuilder xml = new StringBuilder("<add>");
+            long line = 0;
+            int pending = 0;
+            String doc;
+            while ((doc = reader.readLine()) != null)
+            {
+                if (StringUtils.isBlank(doc) || line++ < offset)
+                {
+                    continue;
+                }
+                xml.append(doc);
+                pending++;
+                if (pending == batchSize)
+                {
+                    xml.append("</add>");
+                    solr.request(new DirectXmlRequest("/update", xml.toString()));
+                    replayed.addAndGet(pending);
+                    writeOffset(offsetFile, line);
+                    xml = new StringBuilder("<add>");
+                    pending = 0;
+                }
+            }
+            if (pending > 0)
+            {
+                xml.append("</add>");
+                solr.request(new DirectXmlRequest("/update", xml.toString()));
+                replayed.addAndGet(pending);
+            }
+            reader.close();
+            reader = null;
+            if (!replay.delete())
+            {
+                log.warn("Unable to delete " + replay.getAbsolutePath());
+            }
+            offsetFile.delete();
+            log.info("Replayed " + (line - offset) + " spilled usage events");
+        }
+        catch (Exception e)
+        {
+            log.error("Unable to replay the spilled usage events from "
+                    + replay.getAbsolutePath() + ", the rest will be retried on the next start", e);
+        }
+        finally
+        {
+            if (reader != null)
+            {
+                try
+                {
+                    reader.close();
+                }
+                catch (IOException e)
+                {
+                    log.error(e.getMessage(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the number of spilled events already replayed, 0 if the offset
+     *         file doesn't exist
+     */
+    private static long readOffset(File offsetFile) throws IOException
+    {
+        if (!offsetFile.exists())
+        {
+            return 0;
+        }
+        String offset = FileUtils.readFileToString(offsetFile, CHARSET).trim();
+        return offset.isEmpty() ? 0 : Long.parseLong(offset);
+    }
+
+    private static void writeOffset(File offsetFile, long offset) throws IOException
+    {
+        FileUtils.writeStringToFile(offsetFile, String.valueOf(offset), CHARSET);
+    }
+
+    /**
+     * @return the number of events received
+     */
+    public long getEnqueued()
+    {
+        return enqueued.get();
+    }
+
+    /**
+     * @return the number of events accepted by the statistics core
+     */
+    public long getFlushed()
+    {
+        return flushed.get();
+    }
+
+    /**
+     * @return the number of events lost because of the overflow policy or
+     *         of a Solr failure
+     */
+    public long getDropped()
+    {
+        return dropped.get();
+    }
+
+    /**
+     * @return the number of events written to the spill file
+     */
+    public long getSpilled()
+    {
+        return spilled.get();
+    }
+
+    /**
+     * @return the number of events replayed from the spill file
+     */
+    public long getReplayed()
+    {
+        return replayed.get();
+    }
+
+    /**
+     * @return the number of events waiting in the buffer
+     */
+    public int getPending()
+    {
+        return queue.size();
+    }
+
+    public String getStatus()
+    {
+        return "enqueued=" + getEnqueued() + ", flushed=" + getFlushed()
+                + ", dropped=" + getDropped() + ", spilled=" + getSpilled()
+                + ", replayed=" + getReplayed() + ", pending=" + getPending();
+    }
+}
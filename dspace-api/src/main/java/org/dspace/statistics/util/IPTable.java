@@ -7,181 +7,277 @@
  */
 package org.dspace.statistics.util;
 
-import java.util.HashMap;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
 import java.util.HashSet;
-import java.util.Map;
 import java.util.Set;
 
 /**
- * A Spare v4 IPTable implementation that uses nested HashMaps
- * to optimize IP address matching over ranges of IP addresses.
+ * A table of IPv4 and IPv6 address ranges stored in a binary radix trie:
+ * every range is inserted as one or more CIDR prefixes and a lookup walks at
+ * most 32 (IPv4) or 128 (IPv6) nodes, whatever the size of the table.
+ * <p/>
+ * Supported notations are a single address, a CIDR block
+ * (<code>66.249.64.0/19</code>, <code>2001:4860::/32</code>), the first three
+ * octets of an IPv4 /24 network (<code>66.249.64</code>) and an IPv4 range
+ * (<code>66.249.64.1 - 66.249.65.254</code>).
  *
  * @author mdiggory at atmire.com
  */
 public class IPTable {
 
-    /* A lookup tree for IP addresses and SubnetRanges */
-    private Map<String, Map<String, Map<String, Set<String>>>> map =
-            new HashMap<String, Map<String, Map<String, Set<String>>>>();
+    /** Roots of the IPv4 and IPv6 tries */
+    private final Node ipv4 = new Node();
+
+    private final Node ipv6 = new Node();
+
+    /** A trie node; a terminal node matches every address below it */
+    private static class Node {
+        Node zero;
+        Node one;
+        boolean terminal;
+    }
 
     /**
-     * Can be full v4 IP, subnet or range string
+     * Can be full v4 or v6 IP, CIDR block, subnet or range string
      *
      * @param ip
      */
     public void add(String ip) throws IPFormatException {
 
-        String[] start;
-
-        String[] end;
+        ip = ip.trim();
 
         String[] range = ip.split("-");
 
         if (range.length >= 2) {
 
-            start = range[0].trim().split("/")[0].split("\\.");
-            end = range[1].trim().split("/")[0].split("\\.");
+            byte[] start = parseAddress(range[0].trim().split("/")[0]);
+            byte[] end = parseAddress(range[1].trim().split("/")[0]);
 
             if (start.length != 4 || end.length != 4)
             {
                 throw new IPFormatException(ip + " - Ranges need to be full IPv4 Addresses");
             }
 
-            if (!(start[0].equals(end[0]) && start[1].equals(end[1]) && start[2].equals(end[2]))) {
-                throw new IPFormatException(ip + " - Ranges can only be across the last subnet x.y.z.0 - x.y.z.254");
+            long s = toLong(start);
+            long e = toLong(end);
+            if (s > e) {
+                throw new IPFormatException(ip + " - The start of the range follows its end");
             }
 
-        } else {
-            //need to ignore CIDR notation for the moment.
-            //ip = ip.split("\\/")[0];
-
-            String[] subnets = ip.split("\\.");
-
-            if (subnets.length < 3) {
-                throw new IPFormatException(ip + " - require at least three subnet places (255.255.255.0");
-
+            // split the range in the largest aligned CIDR blocks
+            while (s <= e) {
+                int size = Long.numberOfTrailingZeros(s == 0 ? 1L << 32 : s);
+                while (size > 0 && s + (1L << size) - 1 > e) {
+                    size--;
+                }
+                insert(ipv4, toBytes(s), 32 - size);
+                s += 1L << size;
             }
-
-            start = subnets;
-            end = subnets;
+            return;
         }
 
-        if (start.length >= 3) {
-
-
-            Map<String, Map<String, Set<String>>> first = map.get(start[0]);
-
-            if (first == null) {
-                first = new HashMap<String, Map<String, Set<String>>>();
-                map.put(start[0], first);
-            }
-
-            Map<String, Set<String>> second = first.get(start[1]);
-
-
-            if (second == null) {
-                second = new HashMap<String, Set<String>>();
-                first.put(start[1], second);
-            }
-
-            Set<String> third = second.get(start[2]);
-
-            if (third == null) {
-                third = new HashSet<String>();
-                second.put(start[2], third);
-            }
-
-            //now populate fourth place (* or value 0-254);
+        String[] cidr = ip.split("/");
+        if (cidr.length > 2) {
+            throw new IPFormatException(ip + " - Invalid CIDR notation");
+        }
 
-            if (start.length == 3) {
-                third.add("*");
-            }
+        byte[] address;
+        int prefix;
+        if (cidr[0].indexOf(':') < 0 && cidr[0].split("\\.").length == 3) {
+            // legacy notation for a /24 network
+            address = parseAddress(cidr[0] + ".0");
+            prefix = 24;
+        } else {
+            address = parseAddress(cidr[0]);
+            prefix = address.length * 8;
+        }
 
-            if (third.contains("*")) {
-                return;
+        if (cidr.length == 2) {
+            try {
+                prefix = Integer.parseInt(cidr[1].trim());
+            } catch (NumberFormatException e) {
+                throw new IPFormatException(ip + " - Invalid CIDR prefix length");
             }
-
-            if (start.length >= 4) {
-                int s = Integer.valueOf(start[3]);
-                int e = Integer.valueOf(end[3]);
-                for (int i = s; i <= e; i++) {
-                    third.add(String.valueOf(i));
-                }
+            if (prefix < 0 || prefix > address.length * 8) {
+                throw new IPFormatException(ip + " - Invalid CIDR prefix length");
             }
         }
+
+        insert(address.length == 4 ? ipv4 : ipv6, address, prefix);
     }
 
     /** Check whether a given address is contained in this netblock.
-     * 
+     *
      * @param ip the address to be tested
      * @return true if {@code ip} is within this table's limits
      * @throws IPFormatException
      */
     public boolean contains(String ip) throws IPFormatException {
 
-        String[] subnets = ip.split("\\.");
-
-        if (subnets.length != 4)
-        {
-            throw new IPFormatException("needs to be a single IP address");
-        }
-
-        Map<String, Map<String, Set<String>>> first = map.get(subnets[0]);
-
-        if (first == null)
-        {
-            return false;
-        }
-
-        Map<String, Set<String>> second = first.get(subnets[1]);
-
-        if (second == null)
-        {
-            return false;
-        }
-
-        Set<String> third = second.get(subnets[2]);
+        byte[] address = parseAddress(ip.trim());
 
-        if (third == null)
-        {
-            return false;
+        Node node = address.length == 4 ? ipv4 : ipv6;
+        int bits = address.length * 8;
+        for (int i = 0; i < bits; i++) {
+            if (node.terminal) {
+                return true;
+            }
+            node = bit(address, i) ? node.one : node.zero;
+            if (node == null) {
+                return false;
+            }
         }
-
-        return third.contains(subnets[3]) || third.contains("*");
-
+        return node.terminal;
     }
 
     /** Convert to a Set.
+     * <p/>
+     * IPv4 blocks are listed as prefixes ending with a dot, to be used as
+     * prefix queries on the statistics core: a block is rounded to the
+     * octets covering it, so that a /8 is the single prefix
+     * <code>10.</code>, a /12 the 16 prefixes <code>172.16.</code> to
+     * <code>172.31.</code> and a /24 <code>66.249.64.</code>; a block is
+     * never listed as more than 128 entries. Blocks smaller than a /24 are
+     * listed as single addresses. IPv6 entries are listed only when they are
+     * single addresses.
+     *
      * @return this table's content as a Set
      */
     public Set<String> toSet() {
         HashSet<String> set = new HashSet<String>();
+        collect(ipv4, 0, 0, set);
+        collect(ipv6, BigInteger.ZERO, 0, set);
+        return set;
+    }
 
-        for (Map.Entry<String, Map<String, Map<String, Set<String>>>> first : map.entrySet()) {
-            String firstString = first.getKey();
-            Map<String, Map<String, Set<String>>> secondMap = first.getValue();
+    private void collect(Node node, long prefix, int depth, Set<String> set) {
+        if (node == null) {
+            return;
+        }
+        if (node.terminal) {
+            // the octets covering the block, all of them for a single address
+            int octets = depth <= 24 ? (depth + 7) / 8 : 4;
+            int expand = octets * 8 - depth;
+            long first = prefix << expand;
+            for (long net = first; net < first + (1L << expand); net++) {
+                StringBuilder sb = new StringBuilder();
+                for (int i = octets - 1; i >= 0; i--) {
+                    sb.append((net >> (8 * i)) & 0xff);
+                    if (i > 0 || octets < 4) {
+                        sb.append('.');
+                    }
+                }
+                set.add(sb.toString());
+            }
+            return;
+        }
+        collect(node.zero, prefix << 1, depth + 1, set);
+        collect(node.one, (prefix << 1) | 1, depth + 1, set);
+    }
 
-            for (Map.Entry<String, Map<String, Set<String>>> second : secondMap.entrySet()) {
-                String secondString = second.getKey();
-                Map<String, Set<String>> thirdMap = second.getValue();
+    private void collect(Node node, BigInteger prefix, int depth, Set<String> set) {
+        if (node == null) {
+            return;
+        }
+        if (node.terminal) {
+            if (depth == 128) {
+                byte[] raw = prefix.toByteArray();
+                byte[] address = new byte[16];
+                int len = Math.min(raw.length, 16);
+                System.arraycopy(raw, raw.length - len, address, 16 - len, len);
+                try {
+                    set.add(InetAddress.getByAddress(address).getHostAddress());
+                } catch (UnknownHostException e) {
+                    // can't happen with a 16 bytes array
+                }
+            }
+            return;
+        }
+        collect(node.zero, prefix.shiftLeft(1), depth + 1, set);
+        collect(node.one, prefix.shiftLeft(1).setBit(0), depth + 1, set);
+    }
 
-                for (Map.Entry<String, Set<String>> third : thirdMap.entrySet()) {
-                    String thirdString = third.getKey();
-                    Set<String> fourthSet = third.getValue();
+    private static void insert(Node root, byte[] address, int prefix) {
+        Node node = root;
+        for (int i = 0; i < prefix; i++) {
+            if (node.terminal) {
+                // already covered by a larger block
+                return;
+            }
+            if (bit(address, i)) {
+                if (node.one == null) {
+                    node.one = new Node();
+                }
+                node = node.one;
+            } else {
+                if (node.zero == null) {
+                    node.zero = new Node();
+                }
+                node = node.zero;
+            }
+        }
+        node.terminal = true;
+        // the subtree is now redundant
+        node.zero = null;
+        node.one = null;
+    }
 
-                    if (fourthSet.contains("*")) {
-                        set.add(firstString + "." + secondString + "." + thirdString);
-                    } else {
-                        for (String fourth : fourthSet) {
-                            set.add(firstString + "." + secondString + "." + thirdString + "." + fourth);
-                        }
-                    }
+    private static boolean bit(byte[] address, int index) {
+        return (address[index >> 3] & (0x80 >> (index & 7))) != 0;
+    }
 
+    private static long toLong(byte[] address) {
+        return ((address[0] & 0xffL) << 24) | ((address[1] & 0xffL) << 16)
+                | ((address[2] & 0xffL) << 8) | (address[3] & 0xffL);
+    }
+
+    private static byte[] toBytes(long address) {
+        return new byte[] { (byte) (address >> 24), (byte) (address >> 16),
+                (byte) (address >> 8), (byte) address };
+    }
+
+    /**
+     * Parse an IPv4 or IPv6 literal without ever resolving a host name.
+     * IPv4-mapped IPv6 addresses are returned as IPv4 addresses.
+     */
+    static byte[] parseAddress(String ip) throws IPFormatException {
+        if (ip.indexOf(':') >= 0) {
+            for (int i = 0; i < ip.length(); i++) {
+                char c = ip.charAt(i);
+                if (Character.digit(c, 16) < 0 && c != ':' && c != '.') {
+                    throw new IPFormatException(ip + " - Invalid IPv6 address");
                 }
             }
+            try {
+                // a validated IPv6 literal is never resolved through the DNS
+                return InetAddress.getByName(ip).getAddress();
+            } catch (UnknownHostException e) {
+                throw new IPFormatException(ip + " - Invalid IPv6 address");
+            } catch (SecurityException e) {
+                throw new IPFormatException(ip + " - Invalid IPv6 address");
+            }
         }
 
-        return set;
+        String[] octets = ip.split("\\.");
+        if (octets.length != 4) {
+            throw new IPFormatException(ip + " - needs to be a single IP address");
+        }
+        byte[] address = new byte[4];
+        for (int i = 0; i < 4; i++) {
+            int value;
+            try {
+                value = Integer.parseInt(octets[i]);
+            } catch (NumberFormatException e) {
+                throw new IPFormatException(ip + " - Invalid IPv4 address");
+            }
+            if (value < 0 || value > 255) {
+                throw new IPFormatException(ip + " - Invalid IPv4 address");
+            }
+            address[i] = (byte) value;
+        }
+        return address;
     }
 
 
@@ -0,0 +1,514 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.statistics.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Tests a string against a large set of regular expressions without running
+ * every one of them.
+ * <p/>
+ * For each expression a literal fragment that any match must contain is
+ * extracted, and all the fragments are compiled in a single Aho-Corasick
+ * automaton. A candidate string is scanned once by the automaton and only
+ * the expressions whose fragment occurs in it (plus the few expressions
+ * without a usable fragment, e.g. top-level alternations) are evaluated
+ * with {@link java.util.regex.Matcher#find()}.
+ * <p/>
+ * Instances are immutable and can be shared between threads.
+ */
+public class MultiPatternMatcher
+{
+    private static final Logger log = LoggerFactory.getLogger(MultiPatternMatcher.class);
+
+    /** Shortest fragment worth indexing, shorter ones match too often */
+    private static final int MIN_FRAGMENT_LENGTH = 2;
+
+    private final Pattern[] patterns;
+
+    /** indexes of the patterns that must always be evaluated */
+    private final int[] unfiltered;
+
+    /** Automaton state: sorted transitions, failure link and outputs */
+    private static class State
+    {
+        char[] keys = new char[0];
+        State[] next = new State[0];
+        State fail;
+        int[] outputs = new int[0];
+
+        State get(char c)
+        {
+            int i = Arrays.binarySearch(keys, c);
+            return i >= 0 ? next[i] : null;
+        }
+    }
+
+    private final State root = new State();
+
+    /**
+     * @param expressions
+     *            the regular expressions, invalid ones are logged and
+     *            skipped
+     */
+    public MultiPatternMatcher(Collection<String> expressions)
+    {
+        List<Pattern> compiled = new ArrayList<Pattern>(expressions.size());
+        List<List<String>> fragments = new ArrayList<List<String>>(expressions.size());
+        for (String expression : expressions)
+        {
+            try
+            {
+                compiled.add(Pattern.compile(expression));
+                fragments.add(requiredLiterals(expression));
+            }
+            catch (PatternSyntaxException e)
+            {
+                log.error("Invalid pattern {}:  {}", expression, e.getMessage());
+            }
+        }
+        patterns = compiled.toArray(new Pattern[compiled.size()]);
+
+        // build the trie with mutable maps, then freeze it in sorted arrays
+        Map<State, TreeMap<Character, State>> edges = new HashMap<State, TreeMap<Character, State>>();
+        Map<State, List<Integer>> outputs = new HashMap<State, List<Integer>>();
+        List<Integer> always = new ArrayList<Integer>();
+        for (int p = 0; p < patterns.length; p++)
+        {
+            List<String> alternatives = fragments.get(p);
+            if (alternatives == null)
+            {
+                always.add(p);
+                continue;
+            }
+            for (String fragment : alternatives)
+            {
+                State state = root;
+                for (int i = 0; i < fragment.length(); i++)
+                {
+                    TreeMap<Character, State> out = edges.get(state);
+                    if (out == null)
+                    {
+                        out = new TreeMap<Character, State>();
+                        edges.put(state, out);
+                    }
+                    State next = out.get(fragment.charAt(i));
+                    if (next == null)
+                    {
+                        next = new State();
+                        out.put(fragment.charAt(i), next);
+                    }
+                    state = next;
+                }
+                List<Integer> out = outputs.get(state);
+                if (out == null)
+                {
+                    out = new ArrayList<Integer>(1);
+                    outputs.put(state, out);
+                }
+                if (!out.contains(p))
+                {
+                    out.add(p);
+                }
+            }
+        }
+        unfiltered = toArray(always);
+
+        for (Map.Entry<State, TreeMap<Character, State>> entry : edges.entrySet())
+        {
+            State state = entry.getKey();
+            int n = entry.getValue().size();
+            state.keys = new char[n];
+            state.next = new State[n];
+            int i = 0;
+            for (Map.Entry<Character, State> edge : entry.getValue().entrySet())
+            {
+                state.keys[i] = edge.getKey();
+                state.next[i] = edge.getValue();
+                i++;
+            }
+        }
+
+        // breadth first computation of the failure links, merging the
+        // outputs of the failure state in each state
+        Queue<State> queue = new LinkedList<State>();
+        root.fail = root;
+        for (State child : root.next)
+        {
+            child.fail = root;
+            child.outputs = toArray(outputs.get(child));
+            queue.add(child);
+        }
+        while (!queue.isEmpty())
+        {
+            State state = queue.remove();
+            for (int i = 0; i < state.keys.length; i++)
+            {
+                char c = state.keys[i];
+                State child = state.next[i];
+                State f = state.fail;
+                while (f != root && f.get(c) == null)
+                {
+                    f = f.fail;
+                }
+                State target = f.get(c);
+                child.fail = target != null && target != child ? target : root;
+                int[] own = toArray(outputs.get(child));
+                int[] inherited = child.fail.outputs;
+                child.outputs = new int[own.length + inherited.length];
+                System.arraycopy(own, 0, child.outputs, 0, own.length);
+                System.arraycopy(inherited, 0, child.outputs, own.length, inherited.length);
+                queue.add(child);
+            }
+        }
+    }
+
+    /**
+     * @return true if at least one of the expressions is found in the value
+     */
+    public boolean matches(String value)
+    {
+        for (int p : unfiltered)
+        {
+            if (patterns[p].matcher(value).find())
+            {
+                return true;
+            }
+        }
+
+        BitSet tested = null;
+        State state = root;
+        for (int i = 0; i < value.length(); i++)
+        {
+            char c = value.charAt(i);
+            State next;
+            while ((next = state.get(c)) == null && state != root)
+            {
+                state = state.fail;
+            }
+            state = next != null ? next : root;
+            for (int p : state.outputs)
+            {
+                if (tested == null)
+                {
+                    tested = new BitSet(patterns.length);
+                }
+                if (!tested.get(p))
+                {
+                    tested.set(p);
+                    if (patterns[p].matcher(value).find())
+                    {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the number of valid expressions
+     */
+    public int size()
+    {
+        return patterns.length;
+    }
+
+    /**
+     * @return the number of expressions evaluated on every value because no
+     *         literal fragment could be extracted from them
+     */
+    public int getUnfilteredCount()
+    {
+        return unfiltered.length;
+    }
+
+    /**
+     * Extract the literal fragments one of which must be contained in any
+     * match of the expression: one fragment for each top-level alternative.
+     *
+     * @param expression
+     *            a valid regular expression
+     * @return the fragments, or null if at least one alternative has none
+     */
+    static List<String> requiredLiterals(String expression)
+    {
+        List<String> result = new ArrayList<String>();
+        for (String alternative : splitAlternatives(expression))
+        {
+            String literal = requiredLiteral(alternative);
+            if (literal == null)
+            {
+                return null;
+            }
+            result.add(literal);
+        }
+        return result;
+    }
+
+    /**
+     * Split the expression on the <code>|</code> that are not escaped, nor
+     * inside a group or a character class.
+     */
+    private static List<String> splitAlternatives(String expression)
+    {
+        List<String> alternatives = new ArrayList<String>();
+        int depth = 0;
+        int start = 0;
+        int i = 0;
+        while (i < expression.length())
+        {
+            char c = expression.charAt(i);
+            if (c == '\\')
+            {
+                i += 2;
+                continue;
+            }
+            if (c == '[')
+            {
+                i = skipClass(expression, i);
+                continue;
+            }
+            if (c == '(')
+            {
+                depth++;
+            }
+            else if (c == ')')
+            {
+                depth--;
+            }
+            else if (c == '|' && depth == 0)
+            {
+                alternatives.add(expression.substring(start, i));
+                start = i + 1;
+            }
+            i++;
+        }
+        alternatives.add(expression.substring(start));
+        return alternatives;
+    }
+
+    /**
+     * Extract the longest run of literal characters that any match of the
+     * expression must contain. The analysis is conservative: expressions
+     * with a top-level alternation, with inline flags or without a run of
+     * at least {@link #MIN_FRAGMENT_LENGTH} characters return null.
+     *
+     * @param expression
+     *            a valid regular expression
+     * @return the fragment or null
+     */
+    static String requiredLiteral(String expression)
+    {
+        if (expression.contains("(?") || expression.contains("\\Q"))
+        {
+            return null;
+        }
+        String best = null;
+        StringBuilder run = new StringBuilder();
+        int depth = 0;
+        int i = 0;
+        int n = expression.length();
+        while (i < n)
+        {
+            char c = expression.charAt(i);
+            if (c == '|' && depth == 0)
+            {
+                // top-level alternation, nothing is required
+                return null;
+            }
+            if (c == '[')
+            {
+                best = longest(best, run);
+                i = skipClass(expression, i);
+                i = skipQuantifier(expression, i);
+                continue;
+            }
+            if (c == '(')
+            {
+                best = longest(best, run);
+                depth++;
+                i++;
+                continue;
+            }
+            if (c == ')')
+            {
+                depth--;
+                i = skipQuantifier(expression, i + 1);
+                continue;
+            }
+            if (depth > 0)
+            {
+                // content of a group, may be optional or alternated
+                if (c == '\\')
+                {
+                    i++;
+                }
+                i++;
+                continue;
+            }
+
+            Character literal = null;
+            int end;
+            if (c == '\\' && i + 1 < n)
+            {
+                char e = expression.charAt(i + 1);
+                if ("xuc0pPNk".indexOf(e) >= 0)
+                {
+                    // escapes spanning several characters, give up
+                    return null;
+                }
+                if (!Character.isLetterOrDigit(e))
+                {
+                    literal = e;
+                }
+                end = i + 2;
+            }
+            else if (c == '.' || c == '^' || c == '$')
+            {
+                end = i + 1;
+            }
+            else if (c == '*' || c == '+' || c == '?' || c == '{')
+            {
+                // quantifier applied to a non literal element
+                i = skipQuantifier(expression, i);
+                continue;
+            }
+            else
+            {
+                literal = c;
+                end = i + 1;
+            }
+
+            if (literal == null)
+            {
+                best = longest(best, run);
+                i = skipQuantifier(expression, end);
+                continue;
+            }
+
+            char q = end < n ? expression.charAt(end) : 0;
+            if (q == '?' || q == '*' || q == '{')
+            {
+                // the literal is optional (or repeated a variable number
+                // of times): it ends the current run
+                best = longest(best, run);
+                i = skipQuantifier(expression, end);
+            }
+            else if (q == '+')
+            {
+                run.append(literal.charValue());
+                best = longest(best, run);
+                i = skipQuantifier(expression, end);
+            }
+            else
+            {
+                run.append(literal.charValue());
+                i = end;
+            }
+        }
+        best = longest(best, run);
+        return best != null && best.length() >= MIN_FRAGMENT_LENGTH ? best : null;
+    }
+
+    private static String longest(String best, StringBuilder run)
+    {
+        String candidate = run.toString();
+        run.setLength(0);
+        if (best == null || candidate.length() > best.length())
+        {
+            return candidate;
+        }
+        return best;
+    }
+
+    private static int skipClass(String expression, int i)
+    {
+        // i points to '['
+        i++;
+        if (i < expression.length() && expression.charAt(i) == '^')
+        {
+            i++;
+        }
+        if (i < expression.length() && expression.charAt(i) == ']')
+        {
+            i++;
+        }
+        int depth = 1;
+        while (i < expression.length() && depth > 0)
+        {
+            char c = expression.charAt(i);
+            if (c == '\\')
+            {
+                i++;
+            }
+            else if (c == '[')
+            {
+                depth++;
+            }
+            else if (c == ']')
+            {
+                depth--;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    private static int skipQuantifier(String expression, int i)
+    {
+        int n = expression.length();
+        if (i < n && expression.charAt(i) == '{')
+        {
+            int close = expression.indexOf('}', i);
+            i = close < 0 ? n : close + 1;
+        }
+        else if (i < n && "*+?".indexOf(expression.charAt(i)) >= 0)
+        {
+            i++;
+        }
+        else
+        {
+            return i;
+        }
+        // lazy or possessive modifier
+        if (i < n && (expression.charAt(i) == '?' || expression.charAt(i) == '+'))
+        {
+            i++;
+        }
+        return i;
+    }
+
+    private static int[] toArray(List<Integer> values)
+    {
+        if (values == null)
+        {
+            return new int[0];
+        }
+        int[] result = new int[values.size()];
+        for (int i = 0; i < result.length; i++)
+        {
+            result[i] = values.get(i);
+        }
+        return result;
+    }
+}
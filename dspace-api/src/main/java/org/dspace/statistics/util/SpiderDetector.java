@@ -11,17 +11,17 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.HashSet;
-import java.util.List;
+import java.util.LinkedHashSet;
 import java.util.Set;
-import java.util.Collections;
-import java.util.regex.Pattern;
 import javax.servlet.http.HttpServletRequest;
 import org.dspace.core.ConfigurationManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
 /**
  * SpiderDetector is used to find IP's that are spiders...
  * In future someone may add Host Domains
@@ -38,15 +38,23 @@ public class SpiderDetector {
     private static Boolean useProxies;
 
     /**
-     * Sparse HashTable structure to hold IP address ranges.
+     * Binary radix trie holding the spider IPv4 and IPv6 ranges.
      */
-    private static IPTable table = null;
+    private static volatile IPTable table = null;
+
+    /** Combined matcher of the regular expressions of known spiders' agents. */
+    private static volatile MultiPatternMatcher agents = null;
 
-    /** Collection of regular expressions to match known spiders' agents. */
-    private static List<Pattern> agents = Collections.synchronizedList(new ArrayList<Pattern>());
+    /** Combined matcher of the regular expressions of known spiders' domain names. */
+    private static volatile MultiPatternMatcher domains = null;
+
+    /**
+     * Most recent verdicts, keyed by the request characteristics. The cache
+     * is segmented, the request threads don't wait on a global lock.
+     */
+    private static volatile Cache<String, Boolean> verdicts = null;
 
-    /** Collection of regular expressions to match known spiders' domain names. */
-    private static List<Pattern> domains = Collections.synchronizedList(new ArrayList<Pattern>());
+    private static volatile boolean verdictsLoaded = false;
 
     /**
      * Utility method which reads lines from a file & returns them in a Set.
@@ -99,10 +107,10 @@ public class SpiderDetector {
      *  private loader to populate the table from files.
      */
 
-    private static void loadSpiderIpAddresses() {
+    private static synchronized void loadSpiderIpAddresses() {
 
         if (table == null) {
-            table = new IPTable();
+            IPTable table = new IPTable();
 
             String filePath = ConfigurationManager.getProperty("dspace.dir");
 
@@ -138,6 +146,7 @@ public class SpiderDetector {
                 log.error("Error Loading Spiders:" + e.getMessage(), e);
             }
 
+            SpiderDetector.table = table;
         }
 
     }
@@ -148,14 +157,14 @@ public class SpiderDetector {
      * @param directory simple directory name (e.g. "agents").
      *      "${dspace.dir}/config/spiders" will be prepended to yield the path to
      *      the directory of pattern files.
-     * @param patternList patterns read from the files in {@code directory} will
-     *      be added to this List.
+     * @return a matcher for the patterns read from the files in {@code directory}.
      */
-    private static void loadPatterns(String directory, List<Pattern> patternList)
+    private static MultiPatternMatcher loadPatterns(String directory)
     {
         String dspaceHome = ConfigurationManager.getProperty("dspace.dir");
         File spidersDir = new File(dspaceHome, "config/spiders");
         File patternsDir = new File(spidersDir, directory);
+        Set<String> patternList = new LinkedHashSet<String>();
         if (patternsDir.exists() && patternsDir.isDirectory())
         {
             for (File file : patternsDir.listFiles())
@@ -170,10 +179,7 @@ public class SpiderDetector {
                             file.getPath(), ex.getMessage());
                     continue;
                 }
-                for (String pattern : patterns)
-                {
-                    patternList.add(Pattern.compile(pattern));
-                }
+                patternList.addAll(patterns);
                 log.info("Loaded pattern file:  {}", file.getPath());
             }
         }
@@ -181,6 +187,66 @@ public class SpiderDetector {
         {
             log.info("No patterns loaded from {}", patternsDir.getPath());
         }
+        MultiPatternMatcher matcher = new MultiPatternMatcher(patternList);
+        log.info("Compiled {} {} patterns, {} without literal prefilter",
+                new Object[] { matcher.size(), directory, matcher.getUnfilteredCount() });
+        return matcher;
+    }
+
+    private static MultiPatternMatcher getAgents()
+    {
+        if (agents == null)
+        {
+            synchronized (SpiderDetector.class)
+            {
+                if (agents == null)
+                {
+                    agents = loadPatterns("agents");
+                }
+            }
+        }
+        return agents;
+    }
+
+    private static MultiPatternMatcher getDomains()
+    {
+        if (domains == null)
+        {
+            synchronized (SpiderDetector.class)
+            {
+                if (domains == null)
+                {
+                    domains = loadPatterns("domains");
+                }
+            }
+        }
+        return domains;
+    }
+
+    /**
+     * @return the cache of the recent verdicts, or null if disabled
+     *         ({@code usage-statistics.spiderdetector.cache.size = 0})
+     */
+    private static Cache<String, Boolean> getVerdicts()
+    {
+        if (!verdictsLoaded)
+        {
+            synchronized (SpiderDetector.class)
+            {
+                if (!verdictsLoaded)
+                {
+                    int maxSize = ConfigurationManager.getIntProperty(
+                            "usage-statistics", "spiderdetector.cache.size", 10000);
+                    if (maxSize > 0)
+                    {
+                        verdicts = CacheBuilder.newBuilder().maximumSize(maxSize)
+                                .<String, Boolean>build();
+                    }
+                    verdictsLoaded = true;
+                }
+            }
+        }
+        return verdicts;
     }
 
     /**
@@ -198,29 +264,43 @@ public class SpiderDetector {
     public static boolean isSpider(String clientIP, String proxyIPs,
             String hostname, String agent)
     {
-        // See if any agent patterns match
-        if (null != agent)
-        {   
-            synchronized(agents)
-            {
-                if (agents.isEmpty())
-                    loadPatterns("agents", agents);
-            }
-            for (Pattern candidate : agents)
+        boolean proxies = isUseProxies() && proxyIPs != null;
+        Cache<String, Boolean> cache = getVerdicts();
+        String key = null;
+        if (cache != null)
+        {
+            key = clientIP + '\n' + (proxies ? proxyIPs : "") + '\n'
+                    + hostname + '\n' + agent;
+            Boolean verdict = cache.getIfPresent(key);
+            if (verdict != null)
             {
-                // prevent matcher() invocation from a null Pattern object
-                if (null != candidate && candidate.matcher(agent).find())
-                {
-                    return true;
-                }
+                return verdict;
             }
         }
 
+        boolean spider = isSpiderUncached(clientIP, proxies ? proxyIPs : null,
+                hostname, agent);
+        if (cache != null)
+        {
+            cache.put(key, spider);
+        }
+        return spider;
+    }
+
+    private static boolean isSpiderUncached(String clientIP, String proxyIPs,
+            String hostname, String agent)
+    {
+        // See if any agent patterns match
+        if (null != agent && getAgents().matches(agent))
+        {
+            return true;
+        }
+
         // No.  See if any IP addresses match
-        if (isUseProxies() && proxyIPs != null) {
+        if (proxyIPs != null) {
             /* This header is a comma delimited list */
             for (String xfip : proxyIPs.split(",")) {
-                if (isSpider(xfip))
+                if (isSpider(xfip.trim()))
                 {
                     return true;
                 }
@@ -231,21 +311,9 @@ public class SpiderDetector {
             return true;
 
         // No.  See if any DNS names match
-        if (null != hostname)
+        if (null != hostname && getDomains().matches(hostname))
         {
-            synchronized(domains) 
-            {
-                if (domains.isEmpty())
-                    loadPatterns("domains", domains);
-            }
-            for (Pattern candidate : domains)
-            {
-                // prevent matcher() invocation from a null Pattern object
-                if (null != candidate && candidate.matcher(hostname).find())
-                {
-                    return true;
-                }
-            }
+            return true;
         }
 
         // Not a known spider.
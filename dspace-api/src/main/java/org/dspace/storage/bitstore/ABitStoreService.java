@@ -8,6 +8,12 @@
 package org.dspace.storage.bitstore;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.dspace.storage.rdbms.TableRow;
 
 /**
  * A low-level asset store abstract class
@@ -73,6 +79,26 @@ public abstract class ABitStoreService implements BitStoreService
         return sIntermediatePath + sInternalId;
     }
 
+    /**
+     * Default implementation of the ranged retrieval, skipping the bytes
+     * before the offset of the whole stream. Stores which can seek override
+     * it.
+     */
+    @Override
+    public InputStream get(TableRow bitstream, long offset, long length) throws IOException {
+        InputStream in = get(bitstream);
+        if (in == null) {
+            return null;
+        }
+        try {
+            IOUtils.skipFully(in, offset);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+        return length < 0 ? in : new BoundedInputStream(in, length);
+    }
+
     @Override
     public String intermediatePath(String internalId) {
         StringBuilder buf = new StringBuilder();
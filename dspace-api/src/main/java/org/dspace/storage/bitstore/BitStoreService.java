@@ -47,6 +47,25 @@ public interface BitStoreService
      */
     public InputStream get(TableRow bitstream) throws IOException;
 
+    /**
+     * Retrieve a range of the bits for bitstream, e.g. to answer an HTTP
+     * Range request without reading the skipped bytes.
+     *
+     * @param bitstream row
+     * @param offset
+     *         position of the first byte to return
+     * @param length
+     *         number of bytes to return, or -1 for all the bytes up to the
+     *         end of the bitstream
+     *
+     * @exception java.io.IOException
+     *         If a problem occurs while retrieving the bits, or if no
+     *         asset with ID exists in the store
+     *
+     * @return The stream of bits
+     */
+    public InputStream get(TableRow bitstream, long offset, long length) throws IOException;
+
     /**
      * Store a stream of bits.
      *
@@ -66,6 +66,11 @@ public class BitstreamStorageManager
     	return getBitstreamStorageService().retrieve(context, id);
     }
 
+    public static InputStream retrieve(Context context, int id, long offset, long length)
+            throws SQLException, IOException {
+        return getBitstreamStorageService().retrieve(context, id, offset, length);
+    }
+
     public static void delete(Context context, int id)
     		throws SQLException {
     	getBitstreamStorageService().delete(context, id);
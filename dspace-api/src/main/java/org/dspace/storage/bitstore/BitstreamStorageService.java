@@ -136,6 +136,28 @@ public interface BitstreamStorageService
     public InputStream retrieve(Context context, int id)
             throws SQLException, IOException;
 
+    /**
+     * Retrieve a range of the bits for the bitstream with ID.
+     *
+     * @param context
+     *            The current context
+     * @param id
+     *            The ID of the bitstream to retrieve
+     * @param offset
+     *            position of the first byte to return
+     * @param length
+     *            number of bytes to return, or -1 for all the bytes up to
+     *            the end of the bitstream
+     * @exception IOException
+     *                If a problem occurs while retrieving the bits
+     * @exception SQLException
+     *                If a problem occurs accessing the RDBMS
+     * 
+     * @return The stream of bits, or null
+     */
+    public InputStream retrieve(Context context, int id, long offset, long length)
+            throws SQLException, IOException;
+
     /**
      * <p>
      * Remove a bitstream from the asset store. This method does not delete any
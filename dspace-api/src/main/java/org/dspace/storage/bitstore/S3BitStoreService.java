@@ -10,15 +10,23 @@ package org.dspace.storage.bitstore;
 import com.amazonaws.auth.AWSCredentials;
 import com.amazonaws.auth.AWSStaticCredentialsProvider;
 import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.client.builder.AwsClientBuilder.EndpointConfiguration;
 import com.amazonaws.regions.Region;
 import com.amazonaws.regions.Regions;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.AmazonS3Client;
 import com.amazonaws.services.s3.AmazonS3ClientBuilder;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
 import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
 import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
 import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
 import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectInputStream;
+import com.amazonaws.services.s3.model.UploadPartRequest;
 import com.amazonaws.services.s3.transfer.Download;
 import com.amazonaws.services.s3.transfer.TransferManager;
 import com.amazonaws.services.s3.transfer.TransferManagerBuilder;
@@ -34,9 +42,15 @@ import org.dspace.core.Utils;
 import org.dspace.storage.rdbms.TableRow;
 import org.springframework.beans.factory.annotation.Required;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -55,6 +69,9 @@ public class S3BitStoreService extends ABitStoreService
     /** Checksum algorithm */
     private static final String CSA = "MD5";
 
+    /** Smallest part accepted by S3 in a multipart upload, but the last */
+    private static final int MIN_PART_SIZE = 5 * 1024 * 1024;
+
     private String awsAccessKey;
     private String awsSecretKey;
     private String awsRegionName;
@@ -71,6 +88,15 @@ public class S3BitStoreService extends ABitStoreService
     /** transfer manager */
     private TransferManager transferManager = null;
 
+    /** (Optional) S3 compatible endpoint, e.g. a local test server */
+    private String endpoint = null;
+
+    /** stream the objects instead of copying them to temporary files */
+    private boolean streaming = false;
+
+    /** size of the parts of the streamed multipart uploads, 5 MB at least */
+    private int partSize = 8 * 1024 * 1024;
+
     public S3BitStoreService()
     {
     }
@@ -99,10 +125,17 @@ public class S3BitStoreService extends ABitStoreService
 
         // init client
         AWSCredentials awsCredentials = new BasicAWSCredentials(getAwsAccessKey(), getAwsSecretKey());
-        s3Service = AmazonS3ClientBuilder.standard()
-                .withCredentials(new AWSStaticCredentialsProvider(awsCredentials))
-                .withRegion(regions)
-                .build();
+        AmazonS3ClientBuilder builder = AmazonS3ClientBuilder.standard()
+                .withCredentials(new AWSStaticCredentialsProvider(awsCredentials));
+        if (StringUtils.isNotBlank(endpoint)) {
+            // S3 compatible server, usually without virtual host buckets
+            builder.withEndpointConfiguration(new EndpointConfiguration(endpoint, regions.getName()))
+                    .withPathStyleAccessEnabled(true);
+            log.info("S3 endpoint set to: " + endpoint);
+        } else {
+            builder.withRegion(regions);
+        }
+        s3Service = builder.build();
         log.info("S3 Region set to: " + regions.getName());
 
         // bucket name
@@ -153,6 +186,11 @@ public class S3BitStoreService extends ABitStoreService
      */
     public InputStream get(TableRow bitstream) throws IOException
     {
+        if (streaming)
+        {
+            return get(bitstream, 0, -1);
+        }
+
         String key = getFullKey(bitstream.getStringColumn("internal_id"));
         try
         {
@@ -172,6 +210,51 @@ public class S3BitStoreService extends ABitStoreService
         }
     }
 
+    /**
+     * Retrieve a range of the bits with a ranged GET, the stream is read
+     * directly from the S3 connection.
+     *
+     * @param bitstream
+     *            The bitstream row
+     * @param offset
+     *            position of the first byte to return
+     * @param length
+     *            number of bytes to return, or -1 for all the bytes up to
+     *            the end of the object
+     * @exception java.io.IOException
+     *                If a problem occurs while retrieving the bits
+     *
+     * @return The stream of bits
+     */
+    @Override
+    public InputStream get(TableRow bitstream, long offset, long length) throws IOException
+    {
+        if (length == 0)
+        {
+            return new ByteArrayInputStream(new byte[0]);
+        }
+        String key = getFullKey(bitstream.getStringColumn("internal_id"));
+        try
+        {
+            GetObjectRequest getObjectRequest = new GetObjectRequest(bucketName, key);
+            if (length > 0)
+            {
+                getObjectRequest.setRange(offset, offset + length - 1);
+            }
+            else if (offset > 0)
+            {
+                getObjectRequest.setRange(offset);
+            }
+            S3Object object = s3Service.getObject(getObjectRequest);
+            return new AbortOnCloseInputStream(object.getObjectContent());
+        }
+        catch (Exception e)
+        {
+            log.error("get(" + key + ", " + offset + ", " + length + ")", e);
+            throw new IOException(e);
+        }
+    }
+
     /**
      * Store a stream of bits.
      *
@@ -189,6 +272,12 @@ public class S3BitStoreService extends ABitStoreService
      */
     public void put(TableRow bitstream, InputStream in) throws IOException
     {
+        if (streaming)
+        {
+            putStreaming(bitstream, in);
+            return;
+        }
+
         String key = getFullKey(bitstream.getStringColumn("internal_id"));
         //Copy istream to temp file, and send the file, with some metadata
         File scratchFile = File.createTempFile(bitstream.getStringColumn("internal_id"), "s3bs");
@@ -216,6 +305,141 @@ public class S3BitStoreService extends ABitStoreService
         }
     }
 
+    /**
+     * Store a stream of bits without a local copy: the stream is sent in
+     * parts of <code>partSize</code> bytes with a multipart upload, or with a
+     * single PUT when it is shorter than a part, and its MD5 checksum is
+     * computed on the fly. As the ETag of a multipart object is not the MD5
+     * of its content the computed checksum is the one recorded.
+     */
+    private void putStreaming(TableRow bitstream, InputStream in) throws IOException
+    {
+        String key = getFullKey(bitstream.getStringColumn("internal_id"));
+        String uploadId = null;
+        boolean completed = false;
+        try
+        {
+            DigestInputStream dis = new DigestInputStream(in, MessageDigest.getInstance(CSA));
+            byte[] buffer = new byte[Math.max(partSize, MIN_PART_SIZE)];
+            int read = fill(dis, buffer);
+            long size = read;
+
+            if (read < buffer.length)
+            {
+                ObjectMetadata metadata = new ObjectMetadata();
+                metadata.setContentLength(read);
+                s3Service.putObject(new PutObjectRequest(bucketName, key,
+                        new ByteArrayInputStream(buffer, 0, read), metadata));
+            }
+            else
+            {
+                uploadId = s3Service.initiateMultipartUpload(
+                        new InitiateMultipartUploadRequest(bucketName, key)).getUploadId();
+                List<PartETag> parts = new ArrayList<PartETag>();
+                int partNumber = 1;
+                while (read > 0)
+                {
+                    UploadPartRequest uploadPartRequest = new UploadPartRequest()
+                            .withBucketName(bucketName).withKey(key)
+                            .withUploadId(uploadId).withPartNumber(partNumber++)
+                            .withInputStream(new ByteArrayInputStream(buffer, 0, read))
+                            .withPartSize(read);
+                    parts.add(s3Service.uploadPart(uploadPartRequest).getPartETag());
+                    read = fill(dis, buffer);
+                    size += read;
+                }
+                s3Service.completeMultipartUpload(new CompleteMultipartUploadRequest(
+                        bucketName, key, uploadId, parts));
+            }
+            completed = true;
+
+            bitstream.setColumn("size_bytes", size);
+            bitstream.setColumn("checksum", Utils.toHex(dis.getMessageDigest().digest()));
+            bitstream.setColumn("checksum_algorithm", CSA);
+        }
+        catch (Exception e)
+        {
+            log.error("put(" + bitstream.getStringColumn("internal_id") + ", is)", e);
+            throw new IOException(e);
+        }
+        finally
+        {
+            in.close();
+            if (uploadId != null && !completed)
+            {
+                try
+                {
+                    s3Service.abortMultipartUpload(new AbortMultipartUploadRequest(
+                            bucketName, key, uploadId));
+                }
+                catch (Exception e)
+                {
+                    log.warn("Unable to abort the upload " + uploadId + " of " + key, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Read from the stream until the buffer is full or the stream ends.
+     *
+     * @return the number of bytes read
+     */
+    private static int fill(InputStream in, byte[] buffer) throws IOException
+    {
+        int total = 0;
+        while (total < buffer.length)
+        {
+            int read = in.read(buffer, total, buffer.length - total);
+            if (read < 0)
+            {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+
+    /**
+     * Closing an S3 stream drains the remaining bytes to reuse the
+     * connection; a client closing a large download early aborts it instead.
+     */
+    private static class AbortOnCloseInputStream extends FilterInputStream
+    {
+        private boolean eof = false;
+
+        AbortOnCloseInputStream(S3ObjectInputStream in)
+        {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            int b = super.read();
+            eof = b < 0;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            int read = super.read(b, off, len);
+            eof = read < 0;
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            if (!eof)
+            {
+                ((S3ObjectInputStream) in).abort();
+            }
+            super.close();
+        }
+    }
+
     /**
      * Obtain technical metadata about an asset in the asset store.
      *
@@ -346,6 +570,37 @@ public class S3BitStoreService extends ABitStoreService
         this.subfolder = subfolder;
     }
 
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public void setEndpoint(String endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+
+    public int getPartSize() {
+        return partSize;
+    }
+
+    public void setPartSize(int partSize) {
+        this.partSize = partSize;
+    }
+
+    /**
+     * Replace the S3 client, e.g. by a stand-in for tests.
+     */
+    void setS3Service(AmazonS3 s3Service) {
+        this.s3Service = s3Service;
+    }
+
     /**
      * Contains a command-line testing tool. Expects arguments:
      *  -a accessKey -s secretKey -f assetFileName
@@ -8,6 +8,7 @@
 package org.dspace.storage.rdbms;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -59,6 +60,32 @@ public class TableRow
         }
     }
 
+    /**
+     * Return a copy of this row, with the same table and values and no
+     * changed column.
+     *
+     * @return the copy
+     */
+    public TableRow copy()
+    {
+        TableRow copy = new TableRow(table, new ArrayList<String>(data.keySet()));
+        for (Map.Entry<String, Object> entry : data.entrySet())
+        {
+            Object value = entry.getValue();
+            if (value instanceof java.util.Date)
+            {
+                value = ((java.util.Date) value).clone();
+            }
+            else if (value instanceof byte[])
+            {
+                value = ((byte[]) value).clone();
+            }
+            copy.data.put(entry.getKey(), value);
+        }
+        copy.resetChanged();
+        return copy;
+    }
+
     /**
      * Return the name of the table containing this row, or null if this row is
      * not associated with a database table.
@@ -0,0 +1,25 @@
+--
+-- The contents of this file are subject to the license and copyright
+-- detailed in the LICENSE and NOTICE files at the root of the source
+-- tree and available online at
+--
+-- http://www.dspace.org/license/
+--
+
+------------------------------------------------------
+-- Queue of the bitstreams to process with the media
+-- filters, fed by org.dspace.app.mediafilter.MediaFilterConsumer
+------------------------------------------------------
+
+CREATE TABLE mediafilter_queue
+(
+  mediafilter_queue_id INTEGER PRIMARY KEY,
+  bitstream_id         INTEGER NOT NULL,
+  item_id              INTEGER NOT NULL,
+  queued               TIMESTAMP
+);
+
+CREATE SEQUENCE mediafilter_queue_seq;
+
+CREATE INDEX mediafilter_queue_item_idx ON mediafilter_queue(item_id);
+CREATE INDEX mediafilter_queue_bitstream_idx ON mediafilter_queue(bitstream_id);
@@ -0,0 +1,30 @@
+--
+-- The contents of this file are subject to the license and copyright
+-- detailed in the LICENSE and NOTICE files at the root of the source
+-- tree and available online at
+--
+-- http://www.dspace.org/license/
+--
+
+------------------------------------------------------
+-- Curation task queues of org.dspace.curate.DBTaskQueue,
+-- one row per queued entry
+------------------------------------------------------
+
+CREATE TABLE curation_task_queue
+(
+  task_queue_id    INTEGER PRIMARY KEY,
+  queue_name       VARCHAR2(64) NOT NULL,
+  eperson_id       VARCHAR2(256),
+  submit_time      NUMBER(19),
+  tasks            CLOB,
+  object_id        VARCHAR2(256),
+  attempts         INTEGER,
+  claimed          TIMESTAMP,
+  claimed_by       VARCHAR2(256),
+  ticket           NUMBER(19)
+);
+
+CREATE SEQUENCE curation_task_queue_seq;
+
+CREATE INDEX curation_task_queue_name_idx ON curation_task_queue(queue_name, task_queue_id);
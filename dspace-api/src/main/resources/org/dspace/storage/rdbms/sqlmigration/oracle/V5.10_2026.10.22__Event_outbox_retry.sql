@@ -0,0 +1,14 @@
+--
+-- The contents of this file are subject to the license and copyright
+-- detailed in the LICENSE and NOTICE files at the root of the source
+-- tree and available online at
+--
+-- http://www.dspace.org/license/
+--
+
+------------------------------------------------------
+-- Time before which a failed event of the outbox is not
+-- delivered again
+------------------------------------------------------
+
+ALTER TABLE event_outbox ADD next_attempt TIMESTAMP;
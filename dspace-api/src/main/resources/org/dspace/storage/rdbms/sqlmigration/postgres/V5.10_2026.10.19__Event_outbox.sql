@@ -0,0 +1,36 @@
+--
+-- The contents of this file are subject to the license and copyright
+-- detailed in the LICENSE and NOTICE files at the root of the source
+-- tree and available online at
+--
+-- http://www.dspace.org/license/
+--
+
+------------------------------------------------------
+-- Events waiting for the asynchronous consumers of
+-- org.dspace.event.OutboxDispatcher, one row per
+-- event and consumer
+------------------------------------------------------
+
+CREATE SEQUENCE event_outbox_seq;
+
+CREATE TABLE event_outbox
+(
+  event_outbox_id  INTEGER PRIMARY KEY,
+  consumer         VARCHAR(64) NOT NULL,
+  event_type       INTEGER,
+  subject_type     INTEGER,
+  subject_id       INTEGER,
+  object_type      INTEGER,
+  object_id        INTEGER,
+  detail           TEXT,
+  identifiers      TEXT,
+  eperson_id       INTEGER,
+  transaction_id   VARCHAR(64),
+  created          TIMESTAMP,
+  attempts         INTEGER,
+  claimed          TIMESTAMP,
+  claimed_by       VARCHAR(256)
+);
+
+CREATE INDEX event_outbox_consumer_idx ON event_outbox(consumer, event_outbox_id);
@@ -0,0 +1,15 @@
+--
+-- The contents of this file are subject to the license and copyright
+-- detailed in the LICENSE and NOTICE files at the root of the source
+-- tree and available online at
+--
+-- http://www.dspace.org/license/
+--
+
+------------------------------------------------------
+-- Checkpoint of an OAI-PMH harvest in progress: the resumption token of
+-- the next ListRecords page, and the start of the harvest it belongs to
+------------------------------------------------------
+
+ALTER TABLE harvested_collection ADD resumption_token TEXT;
+ALTER TABLE harvested_collection ADD resumption_date TIMESTAMP WITH TIME ZONE;
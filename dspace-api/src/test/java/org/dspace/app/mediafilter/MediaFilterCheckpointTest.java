@@ -0,0 +1,143 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.app.mediafilter;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Unit tests for {@link MediaFilterCheckpoint}.
+ */
+public class MediaFilterCheckpointTest
+{
+    private static final String SIGNATURE = "filters=Text Extractor;force=false";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+
+    @Before
+    public void setUp()
+    {
+        file = new File(folder.getRoot(), "filter-media.checkpoint");
+    }
+
+    private MediaFilterCheckpoint checkpoint(String signature)
+    {
+        MediaFilterCheckpoint checkpoint = new MediaFilterCheckpoint(file, signature, 1);
+        checkpoint.load();
+        return checkpoint;
+    }
+
+    /**
+     * The checkpoint stays before the oldest item in progress.
+     */
+    @Test
+    public void testItemsCompletedOutOfOrder()
+    {
+        MediaFilterCheckpoint checkpoint = checkpoint(SIGNATURE);
+        checkpoint.started(3);
+        checkpoint.started(5);
+        checkpoint.started(8);
+        checkpoint.finished(5, true);
+        assertEquals(2, checkpoint.getLastCompleted());
+        checkpoint.finished(3, true);
+        assertEquals(7, checkpoint.getLastCompleted());
+        checkpoint.finished(8, true);
+        assertEquals(8, checkpoint.getLastCompleted());
+
+        assertEquals(8, checkpoint(SIGNATURE).load());
+    }
+
+    /**
+     * The checkpoint moves past the failed items, which are kept for the
+     * next run.
+     */
+    @Test
+    public void testFailedItemsAreKept()
+    {
+        MediaFilterCheckpoint checkpoint = checkpoint(SIGNATURE);
+        for (int id = 1; id <= 4; id++)
+        {
+            checkpoint.started(id);
+            checkpoint.finished(id, id % 2 == 0);
+        }
+        assertEquals(4, checkpoint.getLastCompleted());
+        assertEquals(Arrays.asList(1, 3), checkpoint.getFailed());
+
+        MediaFilterCheckpoint resumed = checkpoint(SIGNATURE);
+        assertEquals(4, resumed.load());
+        assertEquals(Arrays.asList(1, 3), resumed.getFailed());
+    }
+
+    /**
+     * The retries don't move the checkpoint back, and a failed item is
+     * forgotten once it succeeds.
+     */
+    @Test
+    public void testFailedItemsAreRetried()
+    {
+        MediaFilterCheckpoint checkpoint = checkpoint(SIGNATURE);
+        checkpoint.started(1);
+        checkpoint.finished(1, false);
+        checkpoint.started(2);
+        checkpoint.finished(2, false);
+        checkpoint.started(3);
+        checkpoint.finished(3, true);
+
+        MediaFilterCheckpoint resumed = checkpoint(SIGNATURE);
+        resumed.started(1);
+        resumed.started(2);
+        assertEquals(3, resumed.getLastCompleted());
+        resumed.finished(1, true);
+        resumed.finished(2, false);
+        resumed.started(6);
+        resumed.finished(6, true);
+        assertEquals(6, resumed.getLastCompleted());
+        assertEquals(Collections.singletonList(2), resumed.getFailed());
+
+        MediaFilterCheckpoint again = checkpoint(SIGNATURE);
+        assertEquals(6, again.load());
+        assertEquals(Collections.singletonList(2), again.getFailed());
+    }
+
+    @Test
+    public void testOtherOptionsAreIgnored()
+    {
+        MediaFilterCheckpoint checkpoint = checkpoint(SIGNATURE);
+        checkpoint.started(1);
+        checkpoint.finished(1, false);
+
+        MediaFilterCheckpoint forced = checkpoint("filters=Text Extractor;force=true");
+        assertEquals(0, forced.load());
+        assertEquals(Collections.<Integer> emptyList(), forced.getFailed());
+    }
+
+    @Test
+    public void testClear()
+    {
+        MediaFilterCheckpoint checkpoint = checkpoint(SIGNATURE);
+        checkpoint.started(1);
+        checkpoint.finished(1, false);
+        checkpoint.clear();
+
+        assertFalse(file.exists());
+        assertEquals(Collections.<Integer> emptyList(), checkpoint.getFailed());
+        assertEquals(0, checkpoint(SIGNATURE).load());
+    }
+}
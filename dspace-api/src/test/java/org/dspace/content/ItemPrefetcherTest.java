@@ -0,0 +1,135 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.content;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+import org.dspace.AbstractUnitTest;
+import org.dspace.authorize.AuthorizeException;
+import org.dspace.core.Constants;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit Tests for class ItemPrefetcher
+ */
+public class ItemPrefetcherTest extends AbstractUnitTest
+{
+    /** log4j category */
+    private static final Logger log = Logger.getLogger(ItemPrefetcherTest.class);
+
+    private List<Integer> ids;
+
+    private int collectionID;
+
+    @Before
+    @Override
+    public void init()
+    {
+        try
+        {
+            super.init();
+
+            context.turnOffAuthorisationSystem();
+            Collection collection = Collection.create(context);
+            collectionID = collection.getID();
+            ids = new ArrayList<Integer>();
+            for (int i = 0; i < 3; i++)
+            {
+                Item item = Item.create(context);
+                item.addMetadata("dc", "title", null, null, "Item " + i);
+                item.addMetadata("dc", "subject", null, null, new String[] { "b" + i, "a" + i });
+                item.setArchived(true);
+                item.update();
+                collection.addItem(item);
+
+                Bundle bundle = item.createBundle(Constants.CONTENT_BUNDLE_NAME);
+                for (int j = 0; j <= i; j++)
+                {
+                    File f = new File(testProps.get("test.bitstream").toString());
+                    Bitstream bs = bundle.createBitstream(new FileInputStream(f));
+                    bs.setName("file" + j);
+                    bs.update();
+                }
+                ids.add(item.getID());
+            }
+            context.restoreAuthSystemState();
+            context.clearCache();
+        }
+        catch (AuthorizeException ex)
+        {
+            log.error("Authorization Error in init", ex);
+            fail("Authorization Error in init: " + ex.getMessage());
+        }
+        catch (Exception ex)
+        {
+            log.error("Error in init", ex);
+            fail("Error in init: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * The prefetched items look like the items loaded one by one.
+     */
+    @Test
+    public void testLoad() throws SQLException
+    {
+        List<Integer> request = new ArrayList<Integer>(ids);
+        // unknown ids are skipped, the order of the ids is kept
+        request.add(Integer.MAX_VALUE);
+        Collections.reverse(request);
+
+        ItemPrefetcher prefetcher = new ItemPrefetcher(context);
+        List<Item> items = prefetcher.load(request);
+        assertThat("testLoad 0", items.size(), equalTo(ids.size()));
+        assertTrue("testLoad 1", prefetcher.getSaved() > 0);
+
+        for (int i = 0; i < items.size(); i++)
+        {
+            Item item = items.get(i);
+            int n = ids.size() - 1 - i;
+            assertThat("testLoad id " + i, item.getID(), equalTo(ids.get(n)));
+            assertThat("testLoad title " + i, item.getName(), equalTo("Item " + n));
+            Metadatum[] subjects = item.getMetadata("dc", "subject", null, Item.ANY);
+            assertThat("testLoad subjects " + i, subjects.length, equalTo(2));
+            assertThat("testLoad subject order " + i, subjects[0].value, equalTo("b" + n));
+            assertThat("testLoad collections " + i, item.getCollections().length, equalTo(1));
+            assertThat("testLoad collection " + i, item.getCollections()[0].getID(), equalTo(collectionID));
+            Bundle[] bundles = item.getBundles(Constants.CONTENT_BUNDLE_NAME);
+            assertThat("testLoad bundles " + i, bundles.length, equalTo(1));
+            assertThat("testLoad bitstreams " + i, bundles[0].getBitstreams().length, equalTo(n + 1));
+        }
+    }
+
+    /**
+     * An iterator loading pages returns all the items.
+     */
+    @Test
+    public void testIteratorPrefetch() throws SQLException
+    {
+        ItemIterator iterator = new ItemIterator(context, ids);
+        iterator.setPrefetch(2);
+        List<Integer> found = new ArrayList<Integer>();
+        while (iterator.hasNext())
+        {
+            found.add(iterator.next().getID());
+        }
+        assertThat("testIteratorPrefetch 0", found, equalTo(ids));
+    }
+}
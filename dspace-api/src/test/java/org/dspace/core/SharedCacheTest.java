@@ -0,0 +1,79 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.core;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Test the regions of the SharedCache.
+ */
+public class SharedCacheTest
+{
+    @Test
+    public void testGetPut()
+    {
+        SharedCache<Integer, String> cache = new SharedCache<Integer, String>("test", 10, 60000);
+        assertNull(cache.get(1));
+        cache.put(1, "one", cache.stamp());
+        assertEquals("one", cache.get(1));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed()
+    {
+        SharedCache<Integer, String> cache = new SharedCache<Integer, String>("test", 2, 60000);
+        cache.put(1, "one", cache.stamp());
+        cache.put(2, "two", cache.stamp());
+        // 1 is now the most recently used
+        cache.get(1);
+        cache.put(3, "three", cache.stamp());
+        assertEquals(2, cache.size());
+        assertEquals("one", cache.get(1));
+        assertNull(cache.get(2));
+        assertEquals(1, cache.getEvictions());
+    }
+
+    @Test
+    public void testExpires() throws InterruptedException
+    {
+        SharedCache<Integer, String> cache = new SharedCache<Integer, String>("test", 10, 20);
+        cache.put(1, "one", cache.stamp());
+        Thread.sleep(50);
+        assertNull(cache.get(1));
+        assertEquals(1, cache.getExpirations());
+        assertEquals(0, cache.size());
+    }
+
+    /**
+     * A value read before an invalidation may be stale and is not stored.
+     */
+    @Test
+    public void testInvalidationDuringRead()
+    {
+        SharedCache<Integer, String> cache = new SharedCache<Integer, String>("test", 10, 60000);
+        cache.put(1, "old", cache.stamp());
+        long stamp = cache.stamp();
+        cache.remove(1);
+        cache.put(1, "old", stamp);
+        assertNull(cache.get(1));
+        cache.put(1, "new", cache.stamp());
+        assertEquals("new", cache.get(1));
+        assertEquals(1, cache.getInvalidations());
+    }
+
+    @Test
+    public void testDisabledRegion()
+    {
+        SharedCache<Integer, String> cache = new SharedCache<Integer, String>("test", 0, 60000);
+        cache.put(1, "one", cache.stamp());
+        assertNull(cache.get(1));
+    }
+}
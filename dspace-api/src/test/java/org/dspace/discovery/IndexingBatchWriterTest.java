@@ -0,0 +1,132 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.discovery;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.util.NamedList;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for {@link IndexingBatchWriter}, using an in-memory stand-in for
+ * the search core.
+ */
+public class IndexingBatchWriterTest
+{
+    /**
+     * Records the size of every update request, rejecting the ones with a
+     * document whose id starts with "bad"
+     */
+    private static class RecordingSolrServer extends SolrServer
+    {
+        final List<Integer> batches = new ArrayList<Integer>();
+
+        @Override
+        public synchronized NamedList<Object> request(SolrRequest request)
+                throws SolrServerException, IOException
+        {
+            if (request instanceof UpdateRequest)
+            {
+                List<SolrInputDocument> docs = ((UpdateRequest) request).getDocuments();
+                for (SolrInputDocument doc : docs)
+                {
+                    if (String.valueOf(doc.getFieldValue("search.uniqueid")).startsWith("bad"))
+                    {
+                        throw new SolrServerException("invalid document");
+                    }
+                }
+                batches.add(docs.size());
+            }
+            return new NamedList<Object>();
+        }
+
+        @Override
+        public void shutdown()
+        {
+        }
+    }
+
+    private SolrInputDocument document(String id)
+    {
+        SolrInputDocument doc = new SolrInputDocument();
+        doc.addField("search.uniqueid", id);
+        return doc;
+    }
+
+    @Test
+    public void testDocumentsAreSentInBatches() throws InterruptedException
+    {
+        RecordingSolrServer solr = new RecordingSolrServer();
+        IndexingBatchWriter writer = new IndexingBatchWriter(solr, 10, -1, 20, 1000);
+        writer.start();
+        for (int i = 0; i < 25; i++)
+        {
+            writer.add(document("2-" + i));
+        }
+        writer.close();
+
+        assertEquals(25, writer.getAdded());
+        assertEquals(0, writer.getFailed());
+        int total = 0;
+        for (Integer size : solr.batches)
+        {
+            assertTrue("batch larger than the configured size", size <= 10);
+            total += size;
+        }
+        assertEquals(25, total);
+        assertEquals(solr.batches.size(), writer.getBatches());
+    }
+
+    /**
+     * Documents arriving more often than the flush interval don't hold the
+     * batch back until it is full.
+     */
+    @Test
+    public void testPartialBatchIsSentWithinFlushInterval() throws InterruptedException
+    {
+        RecordingSolrServer solr = new RecordingSolrServer();
+        IndexingBatchWriter writer = new IndexingBatchWriter(solr, 100, -1, 100, 200);
+        writer.start();
+        for (int i = 0; i < 10; i++)
+        {
+            writer.add(document("2-" + i));
+            Thread.sleep(60);
+        }
+        writer.close();
+
+        assertEquals(10, writer.getAdded());
+        // a batch sent 200 ms after its first document, not one at close
+        assertTrue("partial batches held back: " + solr.batches, solr.batches.size() >= 2);
+    }
+
+    @Test
+    public void testRejectedDocumentIsIsolated() throws InterruptedException
+    {
+        RecordingSolrServer solr = new RecordingSolrServer();
+        IndexingBatchWriter writer = new IndexingBatchWriter(solr, 10, -1, 10, 1000);
+        // never started: the queued documents are sent by close
+        writer.add(document("2-1"));
+        writer.add(document("bad-2"));
+        writer.add(document("2-3"));
+        writer.close();
+
+        assertEquals(2, writer.getAdded());
+        assertEquals(1, writer.getFailed());
+        assertEquals(1, writer.getBatches());
+    }
+}
@@ -0,0 +1,120 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.eperson;
+
+import java.util.Collections;
+import java.util.Set;
+
+import org.dspace.AbstractUnitTest;
+import org.dspace.storage.rdbms.DatabaseManager;
+import org.dspace.storage.rdbms.TableRow;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the incremental maintenance of group2groupcache.
+ */
+public class GroupClosureTest extends AbstractUnitTest
+{
+    private int cacheRows(int parentID, int childID) throws Exception
+    {
+        TableRow row = DatabaseManager.querySingle(context,
+                "SELECT COUNT(*) AS gcount FROM group2groupcache WHERE parent_id= ? AND child_id= ? ",
+                parentID, childID);
+        if (DatabaseManager.isOracle())
+        {
+            return row.getIntColumn("gcount");
+        }
+        return (int) row.getLongColumn("gcount");
+    }
+
+    @Test
+    public void testClosureFollowsMembershipChanges() throws Exception
+    {
+        context.turnOffAuthorisationSystem();
+        Group top = Group.create(context);
+        Group middle = Group.create(context);
+        Group bottom = Group.create(context);
+
+        // top > middle > bottom, added bottom-up
+        middle.addMember(bottom);
+        middle.update();
+        top.addMember(middle);
+        top.update();
+
+        assertEquals(1, cacheRows(top.getID(), middle.getID()));
+        assertEquals(1, cacheRows(top.getID(), bottom.getID()));
+        assertEquals(1, cacheRows(middle.getID(), bottom.getID()));
+
+        bottom.addMember(eperson);
+        bottom.update();
+        Set<Integer> groups = Group.allMemberGroupIDs(context, eperson);
+        assertTrue(groups.contains(top.getID()));
+        assertTrue(groups.contains(middle.getID()));
+
+        // cutting middle > bottom must remove top > bottom too
+        middle.removeMember(bottom);
+        middle.update();
+        assertEquals(0, cacheRows(top.getID(), bottom.getID()));
+        assertEquals(0, cacheRows(middle.getID(), bottom.getID()));
+        assertEquals(1, cacheRows(top.getID(), middle.getID()));
+        groups = Group.allMemberGroupIDs(context, eperson);
+        assertFalse(groups.contains(top.getID()));
+
+        // deleting an intermediate group updates its ancestors
+        middle.addMember(bottom);
+        middle.update();
+        assertEquals(1, cacheRows(top.getID(), bottom.getID()));
+        middle.delete();
+        assertEquals(0, cacheRows(top.getID(), bottom.getID()));
+
+        bottom.removeMember(eperson);
+        bottom.update();
+        bottom.delete();
+        top.delete();
+        context.restoreAuthSystemState();
+    }
+
+    /**
+     * A closure read by another context between the change and its commit is
+     * the old one, and must not be served once the change is committed.
+     */
+    @Test
+    public void testIndexIsReloadedAfterCommit() throws Exception
+    {
+        long ttl = 3600 * 1000;
+        context.turnOffAuthorisationSystem();
+        Group top = Group.create(context);
+        Group bottom = Group.create(context);
+        top.addMember(bottom);
+        top.update();
+        context.commit();
+        Set<Integer> ids = Collections.singleton(Integer.valueOf(bottom.getID()));
+
+        // the index is loaded by its own context, from the committed data
+        assertTrue(GroupClosure.lookup(ids, ttl).contains(top.getID()));
+
+        top.removeMember(bottom);
+        top.update();
+        // read between the change and the commit: the old closure is loaded
+        GroupClosure.invalidate();
+        assertTrue(GroupClosure.lookup(ids, ttl).contains(top.getID()));
+
+        // the commit discards it through the groupclosure consumer
+        context.commit();
+        assertFalse(GroupClosure.lookup(ids, ttl).contains(top.getID()));
+
+        bottom.delete();
+        top.delete();
+        context.commit();
+        context.restoreAuthSystemState();
+    }
+}
@@ -0,0 +1,234 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.harvest;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jdom.Element;
+import org.jdom.Namespace;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Test the ListRecordsPrefetcher against a local stand-in of an OAI-PMH
+ * provider, serving pages of two records chained by resumption tokens.
+ */
+public class ListRecordsPrefetcherTest
+{
+    private static final Namespace OAI_NS = Namespace.getNamespace("http://www.openarchives.org/OAI/2.0/");
+
+    private HttpServer server;
+
+    private String oaiSource;
+
+    /** pages served by the stand-in */
+    private int pageCount = 3;
+
+    /** time a request is waited for, in s */
+    private static final long TIMEOUT = 10;
+
+    /** time without requests after which no more are expected, in ms */
+    private static final long QUIET = 300;
+
+    private final AtomicInteger requests = new AtomicInteger();
+
+    /** a permit for each request received */
+    private final Semaphore served = new Semaphore(0);
+
+    @Before
+    public void setUp() throws IOException
+    {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/oai", new HttpHandler()
+        {
+            public void handle(HttpExchange exchange) throws IOException
+            {
+                requests.incrementAndGet();
+                served.release();
+                byte[] body = respond(exchange.getRequestURI().getRawQuery()).getBytes("UTF-8");
+                exchange.getResponseHeaders().add("Content-Type", "text/xml; charset=UTF-8");
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        server.start();
+        oaiSource = "http://localhost:" + server.getAddress().getPort() + "/oai";
+    }
+
+    @After
+    public void tearDown()
+    {
+        server.stop(0);
+    }
+
+    /**
+     * The page asked for: page 1 without a token, page n with the token "pn",
+     * no page for the set "empty".
+     */
+    private String respond(String query)
+    {
+        StringBuilder sb = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                + "<OAI-PMH xmlns=\"http://www.openarchives.org/OAI/2.0/\" "
+                + "xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" "
+                + "xsi:schemaLocation=\"http://www.openarchives.org/OAI/2.0/ http://www.openarchives.org/OAI/2.0/OAI-PMH.xsd\">"
+                + "<responseDate>2026-10-21T00:00:00Z</responseDate><request verb=\"ListRecords\">" + oaiSource + "</request>");
+        if (query.contains("set=empty"))
+        {
+            sb.append("<error code=\"noRecordsMatch\">No records</error>");
+        }
+        else
+        {
+            int page = 1;
+            int token = query.indexOf("resumptionToken=p");
+            if (token >= 0)
+            {
+                page = Integer.parseInt(query.substring(token + "resumptionToken=p".length()));
+            }
+            sb.append("<ListRecords>");
+            for (int i = 1; i <= 2; i++)
+            {
+                sb.append("<record><header><identifier>oai:test:").append(page).append('-').append(i)
+                        .append("</identifier><datestamp>2026-10-21</datestamp></header><metadata/></record>");
+            }
+            if (page < pageCount)
+            {
+                sb.append("<resumptionToken>p").append(page + 1).append("</resumptionToken>");
+            }
+            sb.append("</ListRecords>");
+        }
+        return sb.append("</OAI-PMH>").toString();
+    }
+
+    private List<String> harvest(ListRecordsPrefetcher prefetcher) throws Exception
+    {
+        List<String> identifiers = new ArrayList<String>();
+        ListRecordsPrefetcher.Page page;
+        while ((page = prefetcher.next()) != null)
+        {
+            assertTrue(page.getErrors().isEmpty());
+            for (Element record : page.getRecords())
+            {
+                identifiers.add(record.getChild("header", OAI_NS).getChildText("identifier", OAI_NS));
+            }
+        }
+        return identifiers;
+    }
+
+    /**
+     * Wait for the next requests, failing after {@link #TIMEOUT}.
+     */
+    private void awaitRequests(int count) throws InterruptedException
+    {
+        assertTrue("expected " + count + " more requests", served.tryAcquire(count, TIMEOUT, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Check that no request is received for {@link #QUIET} ms.
+     */
+    private void assertNoRequest() throws InterruptedException
+    {
+        assertFalse("unexpected request", served.tryAcquire(QUIET, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testPrefetch() throws Exception
+    {
+        ListRecordsPrefetcher prefetcher = new ListRecordsPrefetcher(oaiSource, null, null, null, "oai_dc", null, 2);
+        prefetcher.start();
+        List<String> identifiers = harvest(prefetcher);
+        prefetcher.close();
+
+        assertEquals(6, identifiers.size());
+        assertEquals("oai:test:1-1", identifiers.get(0));
+        assertEquals("oai:test:3-2", identifiers.get(5));
+        assertEquals(3, requests.get());
+        assertNull(prefetcher.next());
+    }
+
+    @Test
+    public void testOnDemand() throws Exception
+    {
+        ListRecordsPrefetcher prefetcher = new ListRecordsPrefetcher(oaiSource, null, null, null, "oai_dc", null, 0);
+        prefetcher.start();
+        assertNoRequest();
+        assertEquals(0, requests.get());
+
+        ListRecordsPrefetcher.Page page = prefetcher.next();
+        assertEquals("p2", page.getResumptionToken());
+        assertEquals(1, requests.get());
+        assertEquals(4, harvest(prefetcher).size());
+    }
+
+    /**
+     * At most capacity pages wait for the ingest, and one more is held by the
+     * thread requesting them.
+     */
+    @Test
+    public void testPrefetchIsBounded() throws Exception
+    {
+        pageCount = 10;
+        ListRecordsPrefetcher prefetcher = new ListRecordsPrefetcher(oaiSource, null, null, null, "oai_dc", null, 2);
+        prefetcher.start();
+        awaitRequests(3);
+        assertNoRequest();
+        assertEquals(3, requests.get());
+
+        assertNotNull(prefetcher.next());
+        awaitRequests(1);
+        assertNoRequest();
+        assertEquals(4, requests.get());
+
+        // a request in progress is completed, no other one is sent
+        prefetcher.close();
+        served.tryAcquire(QUIET, TimeUnit.MILLISECONDS);
+        assertNoRequest();
+        assertTrue(requests.get() <= 5);
+    }
+
+    @Test
+    public void testResume() throws Exception
+    {
+        ListRecordsPrefetcher prefetcher = new ListRecordsPrefetcher(oaiSource, null, null, null, "oai_dc", "p2", 2);
+        prefetcher.start();
+        List<String> identifiers = harvest(prefetcher);
+
+        assertEquals(4, identifiers.size());
+        assertEquals("oai:test:2-1", identifiers.get(0));
+        assertEquals(2, requests.get());
+    }
+
+    @Test
+    public void testErrors() throws Exception
+    {
+        ListRecordsPrefetcher prefetcher = new ListRecordsPrefetcher(oaiSource, null, null, "empty", "oai_dc", null, 2);
+        prefetcher.start();
+        ListRecordsPrefetcher.Page page = prefetcher.next();
+
+        assertTrue(page.getErrors().contains("noRecordsMatch"));
+        assertNull(page.getResumptionToken());
+        assertTrue(page.getRecords().isEmpty());
+        assertNull(prefetcher.next());
+        assertEquals(1, requests.get());
+    }
+}
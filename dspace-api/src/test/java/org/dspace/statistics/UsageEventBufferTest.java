@@ -0,0 +1,262 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.statistics;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.request.DirectXmlRequest;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.util.NamedList;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for {@link UsageEventBuffer}, using an in-memory stand-in for
+ * the statistics core.
+ */
+public class UsageEventBufferTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Records the size of every update request, failing them on demand
+     */
+    private static class RecordingSolrServer extends SolrServer
+    {
+        final List<Integer> batches = new ArrayList<Integer>();
+
+        int xmlRequests = 0;
+
+        volatile boolean failing = false;
+
+        /** number of replay requests accepted before failing */
+        int xmlRequestsLimit = Integer.MAX_VALUE;
+
+        /** holds the replay requests until it is opened, if set */
+        volatile CountDownLatch xmlGate;
+
+        @Override
+        public synchronized NamedList<Object> request(SolrRequest request)
+                throws SolrServerException, IOException
+        {
+            if (request instanceof DirectXmlRequest && xmlGate != null)
+            {
+                try
+                {
+                    xmlGate.await();
+                }
+                catch (InterruptedException e)
+                {
+                    throw new SolrServerException(e);
+                }
+            }
+            if (failing || (request instanceof DirectXmlRequest && xmlRequests >= xmlRequestsLimit))
+            {
+                throw new SolrServerException("statistics core unavailable");
+            }
+            if (request instanceof UpdateRequest)
+            {
+                batches.add(((UpdateRequest) request).getDocuments().size());
+            }
+            else if (request instanceof DirectXmlRequest)
+            {
+                xmlRequests++;
+            }
+            return new NamedList<Object>();
+        }
+
+        @Override
+        public void shutdown()
+        {
+        }
+    }
+
+    private SolrInputDocument event(int id)
+    {
+        SolrInputDocument doc = new SolrInputDocument();
+        doc.addField("id", id);
+        doc.addField("userAgent", "multi\nline");
+        return doc;
+    }
+
+    @Test
+    public void testEventsAreSentInBatches()
+    {
+        RecordingSolrServer solr = new RecordingSolrServer();
+        UsageEventBuffer buffer = new UsageEventBuffer(solr, 100, 10, 50,
+                UsageEventBuffer.OverflowPolicy.BLOCK, null);
+        buffer.start();
+        for (int i = 0; i < 25; i++)
+        {
+            buffer.add(event(i));
+        }
+        buffer.stop();
+
+        assertEquals(25, buffer.getEnqueued());
+        assertEquals(25, buffer.getFlushed());
+        assertEquals(0, buffer.getDropped());
+        int total = 0;
+        for (Integer size : solr.batches)
+        {
+            assertTrue("batch larger than the configured size", size <= 10);
+            total += size;
+        }
+        assertEquals(25, total);
+    }
+
+    @Test
+    public void testDropOldestWhenFull()
+    {
+        RecordingSolrServer solr = new RecordingSolrServer();
+        // not started: nothing drains the buffer
+        UsageEventBuffer buffer = new UsageEventBuffer(solr, 5, 5, 50,
+                UsageEventBuffer.OverflowPolicy.DROP_OLDEST, null);
+        for (int i = 0; i < 8; i++)
+        {
+            buffer.add(event(i));
+        }
+        assertEquals(8, buffer.getEnqueued());
+        assertEquals(3, buffer.getDropped());
+        assertEquals(5, buffer.getPending());
+    }
+
+    @Test
+    public void testSpilledEventsAreReplayedOnStart() throws Exception
+    {
+        File spill = new File(folder.getRoot(), "statistics-spill.xml");
+        RecordingSolrServer solr = new RecordingSolrServer();
+        solr.failing = true;
+        UsageEventBuffer buffer = new UsageEventBuffer(solr, 10, 10, 50,
+                UsageEventBuffer.OverflowPolicy.SPILL, spill);
+        buffer.start();
+        for (int i = 0; i < 3; i++)
+        {
+            buffer.add(event(i));
+        }
+        buffer.stop();
+        assertEquals(3, buffer.getSpilled());
+        assertTrue(spill.exists());
+        String spilled = FileUtils.readFileToString(spill, "UTF-8");
+        assertEquals(3, spilled.split("\n").length);
+        assertTrue(spilled.contains("multi&#10;line"));
+
+        solr.failing = false;
+        UsageEventBuffer restarted = new UsageEventBuffer(solr, 10, 10, 50,
+                UsageEventBuffer.OverflowPolicy.SPILL, spill);
+        restarted.start();
+        restarted.stop();
+        assertEquals(3, restarted.getReplayed());
+        assertEquals(1, solr.xmlRequests);
+        assertFalse(spill.exists());
+    }
+
+    /**
+     * The replay runs in the flusher thread: a slow statistics core doesn't
+     * hold the thread starting the buffer.
+     */
+    @Test(timeout = 10000)
+    public void testReplayDoesNotHoldStart() throws Exception
+    {
+        File spill = new File(folder.getRoot(), "statistics-spill.xml");
+        RecordingSolrServer solr = new RecordingSolrServer();
+        solr.failing = true;
+        UsageEventBuffer buffer = new UsageEventBuffer(solr, 10, 10, 50,
+                UsageEventBuffer.OverflowPolicy.SPILL, spill);
+        buffer.start();
+        for (int i = 0; i < 3; i++)
+        {
+            buffer.add(event(i));
+        }
+        buffer.stop();
+
+        solr.failing = false;
+        CountDownLatch gate = new CountDownLatch(1);
+        solr.xmlGate = gate;
+        UsageEventBuffer restarted = new UsageEventBuffer(solr, 10, 10, 50,
+                UsageEventBuffer.OverflowPolicy.SPILL, spill);
+        restarted.start();
+        restarted.add(event(3));
+        assertEquals(0, restarted.getReplayed());
+
+        gate.countDown();
+        restarted.stop();
+        assertEquals(3, restarted.getReplayed());
+        assertEquals(1, restarted.getFlushed());
+        assertFalse(spill.exists());
+    }
+
+    @Test(timeout = 10000)
+    public void testAddAfterStopDoesNotBlock()
+    {
+        RecordingSolrServer solr = new RecordingSolrServer();
+        UsageEventBuffer buffer = new UsageEventBuffer(solr, 1, 1, 50,
+                UsageEventBuffer.OverflowPolicy.BLOCK, null);
+        buffer.start();
+        buffer.stop();
+        for (int i = 0; i < 5; i++)
+        {
+            buffer.add(event(i));
+        }
+        assertEquals(5, buffer.getEnqueued());
+        assertEquals(5, buffer.getDropped());
+        assertEquals(0, buffer.getPending());
+    }
+
+    @Test
+    public void testPartialReplayIsResumed() throws Exception
+    {
+        File spill = new File(folder.getRoot(), "statistics-spill.xml");
+        RecordingSolrServer solr = new RecordingSolrServer();
+        solr.failing = true;
+        UsageEventBuffer buffer = new UsageEventBuffer(solr, 100, 10, 50,
+                UsageEventBuffer.OverflowPolicy.SPILL, spill);
+        buffer.start();
+        for (int i = 0; i < 25; i++)
+        {
+            buffer.add(event(i));
+        }
+        buffer.stop();
+        assertEquals(25, buffer.getSpilled());
+
+        // the second batch fails
+        solr.failing = false;
+        solr.xmlRequestsLimit = 1;
+        UsageEventBuffer first = new UsageEventBuffer(solr, 100, 10, 50,
+                UsageEventBuffer.OverflowPolicy.SPILL, spill);
+        first.start();
+        first.stop();
+        assertEquals(10, first.getReplayed());
+        assertEquals(1, solr.xmlRequests);
+
+        // the replay resumes after the batch accepted
+        solr.xmlRequestsLimit = Integer.MAX_VALUE;
+        UsageEventBuffer second = new UsageEventBuffer(solr, 100, 10, 50,
+                UsageEventBuffer.OverflowPolicy.SPILL, spill);
+        second.start();
+        second.stop();
+        assertEquals(15, second.getReplayed());
+        assertEquals(3, solr.xmlRequests);
+        assertFalse(new File(spill.getPath() + ".replay").exists());
+        assertFalse(new File(spill.getPath() + ".replay.offset").exists());
+    }
+}
@@ -0,0 +1,118 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.statistics.util;
+
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for {@link IPTable}.
+ */
+public class IPTableTest
+{
+    private IPTable table;
+
+    @Before
+    public void setUp() throws IPTable.IPFormatException
+    {
+        table = new IPTable();
+        table.add("192.168.2.1");
+        table.add("66.249.64");
+        table.add("10.0.0.5 - 10.0.1.3");
+        table.add("172.16.0.0/12");
+        table.add("2001:db8::/32");
+        table.add("::1");
+    }
+
+    @Test
+    public void testSingleAddress() throws IPTable.IPFormatException
+    {
+        assertTrue(table.contains("192.168.2.1"));
+        assertFalse(table.contains("192.168.2.2"));
+    }
+
+    @Test
+    public void testThreeOctetsNetwork() throws IPTable.IPFormatException
+    {
+        assertTrue(table.contains("66.249.64.0"));
+        assertTrue(table.contains("66.249.64.255"));
+        assertFalse(table.contains("66.249.65.1"));
+    }
+
+    @Test
+    public void testRangeAcrossSubnets() throws IPTable.IPFormatException
+    {
+        assertFalse(table.contains("10.0.0.4"));
+        assertTrue(table.contains("10.0.0.5"));
+        assertTrue(table.contains("10.0.0.255"));
+        assertTrue(table.contains("10.0.1.3"));
+        assertFalse(table.contains("10.0.1.4"));
+    }
+
+    @Test
+    public void testCidr() throws IPTable.IPFormatException
+    {
+        assertTrue(table.contains("172.16.0.0"));
+        assertTrue(table.contains("172.31.255.255"));
+        assertFalse(table.contains("172.32.0.0"));
+    }
+
+    @Test
+    public void testIPv6() throws IPTable.IPFormatException
+    {
+        assertTrue(table.contains("2001:db8:1::5"));
+        assertFalse(table.contains("2001:db9::1"));
+        assertTrue(table.contains("::1"));
+        // IPv4-mapped addresses are looked up in the IPv4 table
+        assertTrue(table.contains("::ffff:192.168.2.1"));
+    }
+
+    @Test(expected = IPTable.IPFormatException.class)
+    public void testHostNameIsRejected() throws IPTable.IPFormatException
+    {
+        table.contains("www.dspace.org");
+    }
+
+    @Test
+    public void testToSet()
+    {
+        Set<String> set = table.toSet();
+        assertTrue(set.contains("192.168.2.1"));
+        assertTrue(set.contains("66.249.64."));
+        assertTrue(set.contains("10.0.0.5"));
+        assertTrue(set.contains("10.0.1.3"));
+        assertFalse(set.contains("10.0.1.4"));
+        // a /12 is listed as its 16 /16 networks
+        assertTrue(set.contains("172.16."));
+        assertTrue(set.contains("172.31."));
+        assertFalse(set.contains("172.32."));
+        assertEquals(1 + 1 + 251 + 4 + 16 + 1, set.size());
+    }
+
+    @Test
+    public void testToSetKeepsLargeBlocksSmall() throws IPTable.IPFormatException
+    {
+        IPTable large = new IPTable();
+        large.add("10.0.0.0/8");
+        large.add("100.64.0.0/10");
+        large.add("192.0.2.0/25");
+        Set<String> set = large.toSet();
+        assertTrue(set.contains("10."));
+        assertTrue(set.contains("100.64."));
+        assertTrue(set.contains("100.127."));
+        assertTrue(set.contains("192.0.2.127"));
+        assertFalse(set.contains("192.0.2.128"));
+        assertEquals(1 + 64 + 128, set.size());
+    }
+}
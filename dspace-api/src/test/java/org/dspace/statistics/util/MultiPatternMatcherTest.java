@@ -0,0 +1,64 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.statistics.util;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for {@link MultiPatternMatcher}.
+ */
+public class MultiPatternMatcherTest
+{
+    @Test
+    public void testRequiredLiteral()
+    {
+        assertEquals("Googlebot", MultiPatternMatcher.requiredLiteral("Googlebot"));
+        assertEquals(".yahoo.com.", MultiPatternMatcher.requiredLiteral("(.*)\\.yahoo\\.com\\."));
+        assertEquals("bot", MultiPatternMatcher.requiredLiteral("[+:,\\.\\;\\/\\\\-]bot"));
+        assertEquals("ab", MultiPatternMatcher.requiredLiteral("abc?d"));
+        assertEquals("Navigator", MultiPatternMatcher.requiredLiteral("Offline(\\s|\\+)Navigator"));
+        assertNull(MultiPatternMatcher.requiredLiteral("cfnetwork|checkbot"));
+        assertNull(MultiPatternMatcher.requiredLiteral("^$"));
+        assertNull(MultiPatternMatcher.requiredLiteral("(?i)googlebot"));
+        assertNull(MultiPatternMatcher.requiredLiteral("\\x41BC"));
+
+        assertEquals(Arrays.asList("cfnetwork", "checkbot"),
+                MultiPatternMatcher.requiredLiterals("cfnetwork|checkbot"));
+        assertNull(MultiPatternMatcher.requiredLiterals("cfnetwork|^$"));
+    }
+
+    @Test
+    public void testMatches()
+    {
+        MultiPatternMatcher matcher = new MultiPatternMatcher(Arrays.asList(
+                "Googlebot", "^voyager\\/", "cfnetwork|checkbot", "[^a]fish",
+                "Offline(\\s|\\+)Navigator", "^$", "invalid[pattern"));
+
+        assertEquals(6, matcher.size());
+        // only "^$" has no literal fragment
+        assertEquals(1, matcher.getUnfilteredCount());
+
+        assertTrue(matcher.matches("Mozilla/5.0 (compatible; Googlebot/2.1)"));
+        assertTrue(matcher.matches("voyager/1.0"));
+        assertFalse(matcher.matches("the voyager/1.0"));
+        assertTrue(matcher.matches("checkbot"));
+        assertTrue(matcher.matches("xfish"));
+        assertFalse(matcher.matches("afish"));
+        assertTrue(matcher.matches("Offline+Navigator"));
+        assertFalse(matcher.matches("Offline Explorer"));
+        assertTrue(matcher.matches(""));
+        assertFalse(matcher.matches("Mozilla/5.0 Firefox"));
+    }
+}
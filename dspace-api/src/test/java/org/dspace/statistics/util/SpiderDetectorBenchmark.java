@@ -0,0 +1,148 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.statistics.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Micro benchmark comparing the {@link MultiPatternMatcher} used by the
+ * {@link SpiderDetector} with the previous implementation, a loop evaluating
+ * every agent pattern. It is not run by the test suite; run it with
+ *
+ * <pre>
+ * java -cp ... org.dspace.statistics.util.SpiderDetectorBenchmark [pattern files...]
+ * </pre>
+ *
+ * By default the agent patterns shipped in dspace/config/spiders/agents are
+ * used, replicated until at least 2000 patterns are available.
+ */
+public class SpiderDetectorBenchmark
+{
+    private static final int AGENTS = 10000;
+
+    private static final int ROUNDS = 20;
+
+    public static void main(String[] args) throws IOException
+    {
+        List<String> expressions = new ArrayList<String>();
+        if (args.length == 0)
+        {
+            args = new String[] { "dspace/config/spiders/agents/example" };
+        }
+        for (String file : args)
+        {
+            expressions.addAll(SpiderDetector.readPatterns(new File(file)));
+        }
+        if (expressions.isEmpty())
+        {
+            System.err.println("No patterns found");
+            return;
+        }
+        // simulate a large list by adding distinct variants of the patterns
+        int original = expressions.size();
+        for (int copy = 1; expressions.size() < 2000; copy++)
+        {
+            for (int i = 0; i < original; i++)
+            {
+                expressions.add(expressions.get(i) + "_v" + copy);
+            }
+        }
+
+        List<Pattern> patterns = new ArrayList<Pattern>(expressions.size());
+        for (String expression : expressions)
+        {
+            patterns.add(Pattern.compile(expression));
+        }
+        MultiPatternMatcher matcher = new MultiPatternMatcher(expressions);
+
+        String[] agents = sampleAgents(expressions);
+
+        int expected = 0;
+        for (String agent : agents)
+        {
+            if (linear(patterns, agent) != matcher.matches(agent))
+            {
+                throw new IllegalStateException("Different verdicts for " + agent);
+            }
+            expected += matcher.matches(agent) ? 1 : 0;
+        }
+
+        System.out.println(patterns.size() + " patterns, "
+                + matcher.getUnfilteredCount() + " without prefilter, "
+                + agents.length + " user agents, " + expected + " spiders");
+
+        for (int round = 0; round < ROUNDS; round++)
+        {
+            long start = System.nanoTime();
+            int found = 0;
+            for (String agent : agents)
+            {
+                found += linear(patterns, agent) ? 1 : 0;
+            }
+            long linear = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            found = 0;
+            for (String agent : agents)
+            {
+                found += matcher.matches(agent) ? 1 : 0;
+            }
+            long combined = System.nanoTime() - start;
+
+            System.out.println(String.format(Locale.ENGLISH,
+                    "round %2d: linear %8.2f us/agent, combined %8.2f us/agent",
+                    round, linear / 1000.0 / agents.length,
+                    combined / 1000.0 / agents.length));
+        }
+    }
+
+    private static boolean linear(List<Pattern> patterns, String agent)
+    {
+        for (Pattern candidate : patterns)
+        {
+            if (candidate.matcher(agent).find())
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String[] sampleAgents(List<String> expressions)
+    {
+        String[] browsers = {
+                "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/58.0.3029.110 Safari/537.36",
+                "Mozilla/5.0 (X11; Ubuntu; Linux x86_64; rv:52.0) Gecko/20100101 Firefox/52.0",
+                "Mozilla/5.0 (iPhone; CPU iPhone OS 10_3_1 like Mac OS X) AppleWebKit/603.1.30 (KHTML, like Gecko) Version/10.0 Mobile/14E304 Safari/602.1",
+                "Mozilla/5.0 (compatible; Googlebot/2.1; +http://www.google.com/bot.html)" };
+        Random random = new Random(42);
+        String[] agents = new String[AGENTS];
+        for (int i = 0; i < AGENTS; i++)
+        {
+            if (i % 10 == 0)
+            {
+                // one spider out of ten, built from a random pattern
+                agents[i] = "Mozilla/5.0 (compatible; "
+                        + expressions.get(random.nextInt(expressions.size()))
+                                .replace("\\", "") + ")";
+            }
+            else
+            {
+                agents[i] = browsers[random.nextInt(browsers.length)];
+            }
+        }
+        return agents;
+    }
+}
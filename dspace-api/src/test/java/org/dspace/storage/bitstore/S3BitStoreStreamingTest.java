@@ -0,0 +1,261 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.storage.bitstore;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.apache.commons.io.IOUtils;
+import org.dspace.AbstractUnitTest;
+import org.dspace.core.Utils;
+import org.dspace.storage.rdbms.TableRow;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.amazonaws.services.s3.AbstractAmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadResult;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.PutObjectResult;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.services.s3.model.UploadPartResult;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the streaming mode of {@link S3BitStoreService} against an
+ * in-memory stand-in for S3.
+ */
+public class S3BitStoreStreamingTest extends AbstractUnitTest
+{
+    /**
+     * Keeps the objects in memory and records the multipart uploads
+     */
+    private static class InMemoryS3 extends AbstractAmazonS3
+    {
+        final Map<String, byte[]> objects = new HashMap<String, byte[]>();
+
+        final Map<String, TreeMap<Integer, byte[]>> uploads = new HashMap<String, TreeMap<Integer, byte[]>>();
+
+        int parts = 0;
+
+        int aborted = 0;
+
+        long[] lastRange = null;
+
+        @Override
+        public PutObjectResult putObject(PutObjectRequest request)
+        {
+            try
+            {
+                objects.put(request.getKey(), IOUtils.toByteArray(request.getInputStream()));
+            }
+            catch (IOException e)
+            {
+                throw new RuntimeException(e);
+            }
+            return new PutObjectResult();
+        }
+
+        @Override
+        public InitiateMultipartUploadResult initiateMultipartUpload(InitiateMultipartUploadRequest request)
+        {
+            String uploadId = "upload-" + uploads.size();
+            uploads.put(uploadId, new TreeMap<Integer, byte[]>());
+            InitiateMultipartUploadResult result = new InitiateMultipartUploadResult();
+            result.setUploadId(uploadId);
+            return result;
+        }
+
+        @Override
+        public UploadPartResult uploadPart(UploadPartRequest request)
+        {
+            try
+            {
+                byte[] part = IOUtils.toByteArray(request.getInputStream());
+                assertEquals(request.getPartSize(), part.length);
+                uploads.get(request.getUploadId()).put(request.getPartNumber(), part);
+            }
+            catch (IOException e)
+            {
+                throw new RuntimeException(e);
+            }
+            parts++;
+            UploadPartResult result = new UploadPartResult();
+            result.setPartNumber(request.getPartNumber());
+            result.setETag("etag-" + request.getPartNumber());
+            return result;
+        }
+
+        @Override
+        public CompleteMultipartUploadResult completeMultipartUpload(CompleteMultipartUploadRequest request)
+        {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            TreeMap<Integer, byte[]> upload = uploads.remove(request.getUploadId());
+            for (PartETag tag : request.getPartETags())
+            {
+                byte[] part = upload.get(tag.getPartNumber());
+                out.write(part, 0, part.length);
+            }
+            objects.put(request.getKey(), out.toByteArray());
+            return new CompleteMultipartUploadResult();
+        }
+
+        @Override
+        public void abortMultipartUpload(AbortMultipartUploadRequest request)
+        {
+            uploads.remove(request.getUploadId());
+            aborted++;
+        }
+
+        @Override
+        public S3Object getObject(GetObjectRequest request)
+        {
+            byte[] data = objects.get(request.getKey());
+            lastRange = request.getRange();
+            int start = 0;
+            int end = data.length - 1;
+            if (lastRange != null)
+            {
+                start = (int) lastRange[0];
+                if (lastRange.length > 1)
+                {
+                    end = (int) Math.min(end, lastRange[1]);
+                }
+            }
+            S3Object object = new S3Object();
+            object.setKey(request.getKey());
+            object.setObjectContent(new ByteArrayInputStream(
+                    Arrays.copyOfRange(data, start, end + 1)));
+            return object;
+        }
+    }
+
+    private InMemoryS3 s3;
+
+    private S3BitStoreService store;
+
+    @Before
+    @Override
+    public void init()
+    {
+        super.init();
+        s3 = new InMemoryS3();
+        store = new S3BitStoreService();
+        store.setBucketName("test");
+        store.setStreaming(true);
+        store.setPartSize(5 * 1024 * 1024);
+        store.setS3Service(s3);
+    }
+
+    private TableRow row(String internalId)
+    {
+        TableRow row = new TableRow("bitstream", Arrays.asList("internal_id",
+                "size_bytes", "checksum", "checksum_algorithm"));
+        row.setColumn("internal_id", internalId);
+        return row;
+    }
+
+    private byte[] data(int size)
+    {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+
+    @Test
+    public void testMultipartUploadFromStream() throws Exception
+    {
+        byte[] data = data(12 * 1024 * 1024 + 17);
+        TableRow row = row("12345678901234567890");
+        store.put(row, new ByteArrayInputStream(data));
+
+        assertEquals(3, s3.parts);
+        assertEquals(data.length, row.getLongColumn("size_bytes"));
+        assertEquals(Utils.toHex(MessageDigest.getInstance("MD5").digest(data)),
+                row.getStringColumn("checksum"));
+        assertArrayEquals(data, s3.objects.get(store.getFullKey("12345678901234567890")));
+        assertTrue(s3.uploads.isEmpty());
+    }
+
+    @Test
+    public void testSmallObjectUsesSinglePut() throws Exception
+    {
+        byte[] data = data(1000);
+        TableRow row = row("22345678901234567890");
+        store.put(row, new ByteArrayInputStream(data));
+
+        assertEquals(0, s3.parts);
+        assertEquals(1000, row.getLongColumn("size_bytes"));
+        assertArrayEquals(data, IOUtils.toByteArray(store.get(row)));
+        assertEquals(null, s3.lastRange);
+    }
+
+    @Test
+    public void testRangedGet() throws Exception
+    {
+        byte[] data = data(10000);
+        TableRow row = row("32345678901234567890");
+        store.put(row, new ByteArrayInputStream(data));
+
+        InputStream in = store.get(row, 100, 50);
+        assertArrayEquals(Arrays.copyOfRange(data, 100, 150), IOUtils.toByteArray(in));
+        in.close();
+        assertArrayEquals(new long[] { 100, 149 }, s3.lastRange);
+
+        in = store.get(row, 9000, -1);
+        assertArrayEquals(Arrays.copyOfRange(data, 9000, 10000), IOUtils.toByteArray(in));
+        in.close();
+    }
+
+    @Test
+    public void testFailedUploadIsAborted() throws Exception
+    {
+        final byte[] data = data(6 * 1024 * 1024);
+        InputStream failing = new InputStream()
+        {
+            int position = 0;
+
+            @Override
+            public int read() throws IOException
+            {
+                if (position == data.length)
+                {
+                    throw new IOException("connection reset");
+                }
+                return data[position++] & 0xff;
+            }
+        };
+        try
+        {
+            store.put(row("42345678901234567890"), failing);
+        }
+        catch (IOException e)
+        {
+            // expected
+        }
+        assertEquals(1, s3.aborted);
+        assertTrue(s3.objects.isEmpty());
+    }
+}
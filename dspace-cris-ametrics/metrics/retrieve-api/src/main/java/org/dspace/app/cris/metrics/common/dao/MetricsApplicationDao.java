@@ -9,8 +9,13 @@ package org.dspace.app.cris.metrics.common.dao;
 
 import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
+import org.dspace.app.cris.metrics.common.model.CrisMetrics;
 import org.dspace.core.Context;
 import org.dspace.storage.rdbms.DatabaseManager;
 import org.dspace.storage.rdbms.TableRow;
@@ -90,6 +95,76 @@ public class MetricsApplicationDao
         }
     }
 
+    /**
+     * Insert the metrics in the transaction of the context: the previous
+     * metrics of the same resources and types are no more the last ones, with
+     * an update for each type instead of one for each metric.
+     * 
+     * @param metrics
+     *            the new metrics
+     */
+    public void insertMetrics(Context context, List<CrisMetrics> metrics)
+            throws SQLException
+    {
+        Map<String, List<CrisMetrics>> byType = new LinkedHashMap<String, List<CrisMetrics>>();
+        for (CrisMetrics metric : metrics)
+        {
+            String key = metric.getMetricType() + "|"
+                    + metric.getResourceTypeId();
+            List<CrisMetrics> group = byType.get(key);
+            if (group == null)
+            {
+                group = new ArrayList<CrisMetrics>();
+                byType.put(key, group);
+            }
+            group.add(metric);
+        }
+
+        Date currentTimestamp = new Date();
+        for (List<CrisMetrics> group : byType.values())
+        {
+            StringBuilder sql = new StringBuilder(
+                    "update cris_metrics set last = false where metrictype = ? and last = true and resourcetypeid = ? and resourceid in (");
+            List<Object> parameters = new ArrayList<Object>();
+            parameters.add(group.get(0).getMetricType());
+            parameters.add(group.get(0).getResourceTypeId());
+            for (CrisMetrics metric : group)
+            {
+                sql.append(parameters.size() > 2 ? ", ?" : "?");
+                parameters.add(metric.getResourceId());
+            }
+            sql.append(")");
+            DatabaseManager.updateQuery(context, sql.toString(),
+                    parameters.toArray());
+        }
+
+        for (CrisMetrics metric : metrics)
+        {
+            TableRow row = DatabaseManager.row("cris_metrics");
+            row.setColumn("timestampcreated", currentTimestamp);
+            row.setColumn("timestampLastModified", currentTimestamp);
+            if (metric.getStartDate() != null)
+            {
+                row.setColumn("startdate",
+                        new Timestamp(metric.getStartDate().getTime()));
+            }
+            if (metric.getEndDate() != null)
+            {
+                row.setColumn("enddate",
+                        new Timestamp(metric.getEndDate().getTime()));
+            }
+            row.setColumn("metriccount", metric.getMetricCount());
+            row.setColumn("remark", metric.getRemark());
+            row.setColumn("resourceid", metric.getResourceId());
+            row.setColumn("resourcetypeid", metric.getResourceTypeId());
+            row.setColumn("uuid", metric.getUuid());
+            row.setColumn("metrictype", metric.getMetricType());
+            row.setColumn("last", true);
+
+            DatabaseManager.insert(context, row);
+        }
+    }
+
     /**
      * 
      * @param resourceTypeId
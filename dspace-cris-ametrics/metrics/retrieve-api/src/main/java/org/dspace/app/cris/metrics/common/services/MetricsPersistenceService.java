@@ -105,6 +105,27 @@ public class MetricsPersistenceService extends PersistenceService
     	super.saveOrUpdate(modelClass, transientObject);
     }
 
+    /**
+     * Save many new metrics in the transaction of the context, that the caller
+     * commits, instead of one transaction for each metric as
+     * {@link #saveOrUpdate(Class, Identifiable)}.
+     */
+    public void saveMetrics(Context context, List<CrisMetrics> metrics)
+    {
+        if (metrics.isEmpty())
+        {
+            return;
+        }
+        try
+        {
+            applicationDao.insertMetrics(context, metrics);
+        }
+        catch (SQLException e)
+        {
+            throw new RuntimeException(e.getMessage(), e);
+        }
+    }
+
 	public void buildPeriodMetrics(Context context, String frequency, String type, long rangeLimitSx,
 			long rangeLimitDx) {
 		try {
@@ -52,7 +52,7 @@ public class DedupClient
         Context context = new Context();
         context.setIgnoreAuthorization(true);
 
-        String usage = "org.dspace.app.cris.batch.DedupClient [-chfueto[r <item handle/uuid>]] or nothing to update/clean an existing index.";
+        String usage = "org.dspace.app.cris.batch.DedupClient [-chfuetbo[r <item handle/uuid>]] or nothing to update/clean an existing index.";
         Options options = new Options();
         HelpFormatter formatter = new HelpFormatter();
         CommandLine line = null;
@@ -101,6 +101,9 @@ public class DedupClient
 
         options.addOption(OptionBuilder.isRequired(false).withDescription(
                 "optimize search core").create("o"));
+
+        options.addOption(OptionBuilder.isRequired(false).withDescription(
+                "batch: rebuild the whole index (or the class of objects given with -t) computing the signatures in parallel, use with -f to clean it first").create("b"));
         
         options.addOption("e", "readfile", true, "Read the identifier from a file");
 
@@ -136,6 +139,16 @@ public class DedupClient
         } else if (line.hasOption("o")) {
             log.info("Optimizing dedup core.");
             indexer.optimize();                   
+        } else if (line.hasOption("b")) {
+            Integer type = null;
+            if (line.hasOption("t")) {
+                type = Integer.valueOf(line.getOptionValue("t"));
+                indexer.cleanIndex(line.hasOption("f"), type);
+            } else {
+                indexer.cleanIndex(line.hasOption("f"));
+            }
+            log.info("Rebuilding the index in batch mode");
+            indexer.batchIndex(context, type);
         } else if (line.hasOption("t")) {
             log.info("Updating and Cleaning a specific Index");
             String optionValue = line.getOptionValue("t");
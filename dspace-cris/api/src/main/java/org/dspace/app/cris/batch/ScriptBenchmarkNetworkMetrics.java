@@ -0,0 +1,166 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/CILEA/dspace-cris/wiki/License
+ */
+package org.dspace.app.cris.batch;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.cli.PosixParser;
+import org.dspace.app.cris.network.CollaborationGraph;
+import org.dspace.app.cris.network.NetworkMetrics;
+
+/**
+ * Benchmark of the network indicators on a synthetic coauthorship graph: the
+ * researchers belong to groups, and the authors of a document are mostly
+ * taken from the group of the first one, the most productive researchers
+ * being chosen more often. The indicators are computed by one thread and
+ * then by the pool, and their times and differences are printed.
+ */
+public class ScriptBenchmarkNetworkMetrics
+{
+    public static void main(String[] args) throws ParseException
+    {
+        CommandLineParser parser = new PosixParser();
+
+        Options options = new Options();
+        options.addOption("h", "help", false, "help");
+        options.addOption("n", "researchers", true, "Number of researchers (25000)");
+        options.addOption("d", "documents", true, "Number of documents (100000)");
+        options.addOption("g", "group", true, "Researchers of a group (50)");
+        options.addOption("k", "samples", true, "Sources of the betweenness, 0 for all (256)");
+        options.addOption("p", "parallelism", true, "Threads of the pool (available processors)");
+
+        CommandLine line = parser.parse(options, args);
+
+        if (line.hasOption('h'))
+        {
+            HelpFormatter myhelp = new HelpFormatter();
+            myhelp.printHelp("ScriptBenchmarkNetworkMetrics \n", options);
+            System.exit(0);
+        }
+
+        int researchers = Integer.parseInt(line.getOptionValue('n', "25000"));
+        int documents = Integer.parseInt(line.getOptionValue('d', "100000"));
+        int group = Integer.parseInt(line.getOptionValue('g', "50"));
+        int samples = Integer.parseInt(line.getOptionValue('k', "256"));
+        int parallelism = Integer.parseInt(line.getOptionValue('p',
+                String.valueOf(Runtime.getRuntime().availableProcessors())));
+
+        long start = System.currentTimeMillis();
+        CollaborationGraph graph = generate(researchers, documents, group, new Random(42));
+        System.out.println("Graph: " + graph.size() + " nodes, " + graph.getEdgeCount() + " edges, built in "
+                + (System.currentTimeMillis() - start) + " ms");
+
+        NetworkMetrics sequential = run(graph, 1, samples);
+        NetworkMetrics parallel = run(graph, parallelism, samples);
+
+        double difference = 0;
+        for (int i = 0; i < sequential.size(); i++)
+        {
+            difference = Math.max(difference,
+                    Math.abs(sequential.getClustering(i) - parallel.getClustering(i)));
+            difference = Math.max(difference,
+                    Math.abs(sequential.getBetweenness(i) - parallel.getBetweenness(i)));
+        }
+        System.out.println("Maximum difference between the runs: " + difference);
+        System.exit(0);
+    }
+
+    private static NetworkMetrics run(CollaborationGraph graph, int parallelism, int samples)
+    {
+        long start = System.currentTimeMillis();
+        NetworkMetrics metrics = new NetworkMetrics(graph);
+        long merged = System.currentTimeMillis();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try
+        {
+            metrics.compute(pool, samples, 42);
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+        long end = System.currentTimeMillis();
+        System.out.println(parallelism + " thread(s): merge " + (merged - start) + " ms, indicators "
+                + (end - merged) + " ms (betweenness from " + metrics.getSources() + " sources)");
+        return metrics;
+    }
+
+    private static CollaborationGraph generate(int researchers, int documents, int group, Random random)
+    {
+        // productivity of the researchers, to choose the authors
+        int[] weight = new int[researchers];
+        int total = 0;
+        for (int i = 0; i < researchers; i++)
+        {
+            weight[i] = 1 + (int) (10 / (1 + random.nextDouble() * 20));
+            total += weight[i];
+        }
+        int[] lottery = new int[total];
+        for (int i = 0, t = 0; i < researchers; i++)
+        {
+            for (int w = 0; w < weight[i]; w++)
+            {
+                lottery[t++] = i;
+            }
+        }
+
+        CollaborationGraph.Builder builder = new CollaborationGraph.Builder();
+        int[] authors = new int[8];
+        for (int d = 0; d < documents; d++)
+        {
+            int count = 1 + random.nextInt(authors.length);
+            authors[0] = lottery[random.nextInt(total)];
+            int base = authors[0] / group * group;
+            for (int a = 1; a < count; a++)
+            {
+                if (random.nextInt(10) < 8)
+                {
+                    authors[a] = Math.min(researchers - 1, base + random.nextInt(group));
+                }
+                else
+                {
+                    authors[a] = lottery[random.nextInt(total)];
+                }
+            }
+            if (count == 1)
+            {
+                builder.add(label(authors[0]), auth(authors[0]), name(authors[0]), null, null, null, null, null);
+            }
+            for (int a = 0; a < count; a++)
+            {
+                for (int b = a + 1; b < count; b++)
+                {
+                    builder.add(label(authors[a]), auth(authors[a]), name(authors[a]), null, label(authors[b]),
+                            auth(authors[b]), name(authors[b]), null);
+                }
+            }
+        }
+        return builder.build();
+    }
+
+    private static String auth(int researcher)
+    {
+        return String.format("rp%05d", researcher);
+    }
+
+    private static String name(int researcher)
+    {
+        return "Researcher " + researcher;
+    }
+
+    private static String label(int researcher)
+    {
+        return name(researcher) + "|||" + auth(researcher);
+    }
+}
@@ -11,6 +11,7 @@ package org.dspace.app.cris.batch;
 import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -22,6 +23,7 @@ import org.apache.log4j.Logger;
 import org.apache.solr.client.solrj.SolrQuery;
 import org.apache.solr.client.solrj.response.QueryResponse;
 import org.apache.solr.common.SolrDocumentList;
+import org.dspace.app.cris.network.CollaborationGraph;
 import org.dspace.app.cris.network.ConstantNetwork;
 import org.dspace.app.cris.network.DepartmentNetworkPlugin;
 import org.dspace.app.cris.network.NetworkPlugin;
@@ -62,6 +64,8 @@ public class ScriptIndexNetwork
                 "Work on single connection");
         options.addOption("d", "departments", false,
                 "At end index departmental network");
+        options.addOption("g", "graphs", false,
+                "Only build the collaboration graphs of the connections from the index");
 
         CommandLine line = parser.parse(options, args);
 
@@ -70,7 +74,7 @@ public class ScriptIndexNetwork
             HelpFormatter myhelp = new HelpFormatter();
             myhelp.printHelp("ScriptIndexNetwork \n", options);
             System.out
-                    .println("\n\nUSAGE:\n ScriptIndexNetwork -a|-s <connection_name>] \n");
+                    .println("\n\nUSAGE:\n ScriptIndexNetwork -a|-s <connection_name>] [-d] [-g]\n");
 
             System.exit(0);
         }
@@ -132,8 +136,13 @@ public class ScriptIndexNetwork
 
         }
 
+        boolean graphsOnly = line.hasOption('g');
         external: for (String connection : connections)
         {
+            if (graphsOnly)
+            {
+                break;
+            }
             // get plugin
             try
             {
@@ -157,7 +166,7 @@ public class ScriptIndexNetwork
 
         }
 
-        if (line.hasOption('d'))
+        if (!graphsOnly && line.hasOption('d'))
         {
             // load network departmental data
             try
@@ -176,6 +185,26 @@ public class ScriptIndexNetwork
                 discardedConnection.add("DEPT mode");
             }
         }
+
+        if (graphsOnly || CollaborationGraph.isEnabled())
+        {
+            for (String connection : connections)
+            {
+                if (discardedConnection.contains(connection))
+                {
+                    continue;
+                }
+                try
+                {
+                    buildGraphs(connection, service);
+                }
+                catch (Exception e)
+                {
+                    log.error("Unable to build the graphs of " + connection, e);
+                    otherError = true;
+                }
+            }
+        }
         log.info("#### ----------- STATS --------- ####");
         log.info("Imported nodes: " + importedNodes);
         if (!discardedConnection.isEmpty())
@@ -202,6 +231,26 @@ public class ScriptIndexNetwork
         System.exit(0);
     }
 
+    /**
+     * Build the collaboration graphs of a connection, one for each entity,
+     * from the documents of the index.
+     */
+    private static void buildGraphs(String connection,
+            VisualizationGraphSolrService service) throws Exception
+    {
+        VisualizationGraphSolrService.getSolr().commit();
+        Map<Integer, CollaborationGraph> graphs = CollaborationGraph.fromIndex(
+                service, connection);
+        for (Map.Entry<Integer, CollaborationGraph> entry : graphs.entrySet())
+        {
+            CollaborationGraph graph = entry.getValue();
+            graph.write(CollaborationGraph.getFile(connection, entry.getKey()));
+            log.info("Graph of " + connection + " (entity " + entry.getKey()
+                    + "): " + graph.size() + " nodes, " + graph.getEdgeCount()
+                    + " edges");
+        }
+    }
+
     private static boolean checkAvailableData(String connection,
             VisualizationGraphSolrService service)
             throws SearchServiceException
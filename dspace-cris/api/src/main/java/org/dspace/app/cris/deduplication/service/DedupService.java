@@ -42,6 +42,13 @@ public interface DedupService
 
     public void updateIndex(Context context, boolean b, Integer type);
 
+    /**
+     * Rebuild the documents of all the objects of a type (of all the types
+     * if null), computing their signatures in parallel and pairing them in
+     * memory.
+     */
+    public void batchIndex(Context context, Integer type);
+
     public void optimize();
 
     public void unIndexContent(Context context, String handleOrUuid) throws IllegalStateException, SQLException;
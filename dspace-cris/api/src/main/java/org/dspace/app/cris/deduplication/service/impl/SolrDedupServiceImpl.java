@@ -13,11 +13,19 @@ import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.validator.routines.UrlValidator;
@@ -96,6 +104,15 @@ public class SolrDedupServiceImpl implements DedupService
 
     private DSpace dspace = new DSpace();
 
+    /** the signature algorithms, read once */
+    private volatile List<Signature> signatures;
+
+    /** documents of the batch of the current thread, null if not batching */
+    private final ThreadLocal<List<SolrInputDocument>> buffer = new ThreadLocal<List<SolrInputDocument>>();
+
+    /** documents of the batches refused by Solr */
+    private final AtomicLong failedDocuments = new AtomicLong();
+
     public static final String SUBQUERY_NOT_IN_REJECTED = "-({!join from="
             + RESOURCE_ID_FIELD + " to=" + RESOURCE_ID_FIELD + "}"
             + RESOURCE_FLAG_FIELD + ":reject_admin)";
@@ -259,13 +276,21 @@ public class SolrDedupServiceImpl implements DedupService
         
     }
 
+    private List<Signature> getSignatures()
+    {
+        if (signatures == null)
+        {
+            signatures = dspace.getServiceManager()
+                    .getServicesByType(Signature.class);
+        }
+        return signatures;
+    }
+
     private void fillSignature(Context ctx, DSpaceObject iu,
             Map<String, List<String>> tmpMapFilter, List<String> tmpFilter)
     {
         // get all algorithms to build signature
-        List<Signature> signAlgo = dspace.getServiceManager()
-                .getServicesByType(Signature.class);        
-        for (Signature algo : signAlgo)
+        for (Signature algo : getSignatures())
         {
             if (iu.getType() == algo.getResourceTypeID())
             {
@@ -476,6 +501,17 @@ public class SolrDedupServiceImpl implements DedupService
 
     protected void writeDocument(SolrInputDocument doc) throws IOException
     {
+        List<SolrInputDocument> docs = buffer.get();
+        if (docs != null)
+        {
+            docs.add(doc);
+            if (docs.size() >= ConfigurationManager.getIntProperty(
+                    "deduplication", "indexer.batch.size", 100))
+            {
+                flushBuffer();
+            }
+            return;
+        }
 
         try
         {
@@ -491,6 +527,44 @@ public class SolrDedupServiceImpl implements DedupService
         }
     }
 
+    /**
+     * Send the documents of the batch of the current thread.
+     */
+    private void flushBuffer() throws IOException
+    {
+        List<SolrInputDocument> docs = buffer.get();
+        if (docs == null || docs.isEmpty())
+        {
+            return;
+        }
+        try
+        {
+            if (getSolr() != null)
+            {
+                getSolr().add(docs);
+            }
+        }
+        catch (SolrServerException e)
+        {
+            failedDocuments.addAndGet(docs.size());
+            log.error("Unable to write " + docs.size() + " documents to the deduplication index: "
+                    + e.getMessage(), e);
+        }
+        finally
+        {
+            docs.clear();
+        }
+    }
+
+    /**
+     * @return the number of documents of the batches refused by Solr since
+     *         the start
+     */
+    public long getFailedDocuments()
+    {
+        return failedDocuments.get();
+    }
+
     @Override
     public void unIndexContent(Context context, DSpaceObject dso)
     {
@@ -722,74 +796,404 @@ public class SolrDedupServiceImpl implements DedupService
     {
         try
         {
-            switch (type)
+            List<Integer> ids = findAllIDs(context, type);
+            startMultiThreadIndex(true, ids, type);
+            commit();
+            startMultiThreadIndex(false, ids, type);
+            commit();
+        }
+        catch (Exception e)
+        {
+            log.error(e.getMessage(), e);
+        }
+    }
+
+    private List<Integer> findAllIDs(Context context, Integer type)
+            throws SQLException
+    {
+        switch (type)
+        {
+        case Constants.ITEM:
+            return Item.findAllItemIDs(context);
+        case CrisConstants.RP_TYPE_ID:
+            return getApplicationService().findAllResearcherPageID();
+        case CrisConstants.PROJECT_TYPE_ID:
+            List<Project> pjObjs = getApplicationService()
+                    .getList(Project.class);
+
+            List<Integer> pjids = new ArrayList<Integer>();
+            for (Project pj : pjObjs)
             {
-            case Constants.ITEM:
-                List<Integer> ids = Item.findAllItemIDs(context);
-                startMultiThreadIndex(true, ids, type);
-                commit();
-                startMultiThreadIndex(false, ids, type);
-                commit();
-                break;
-            case CrisConstants.RP_TYPE_ID:
-                List<Integer> rpids = getApplicationService().findAllResearcherPageID();
-                startMultiThreadIndex(true, rpids, type);
-                commit();
-                startMultiThreadIndex(false, rpids, type);
-                commit();
-                break;
-            case CrisConstants.PROJECT_TYPE_ID:
-                List<Project> pjObjs = getApplicationService()
-                        .getList(Project.class);
+                pjids.add(pj.getID());
+            }
+            return pjids;
+        case CrisConstants.OU_TYPE_ID:
+            List<OrganizationUnit> ouObjs = getApplicationService()
+                    .getList(OrganizationUnit.class);
 
-                List<Integer> pjids = new ArrayList<Integer>();
-                for (Project pj : pjObjs)
-                {
-                    pjids.add(pj.getID());
-                }
+            List<Integer> ouids = new ArrayList<Integer>();
+            for (OrganizationUnit ou : ouObjs)
+            {
+                ouids.add(ou.getID());
+            }
+            return ouids;
+        default:
+            List<ResearchObject> roObjs = getApplicationService()
+                    .getList(ResearchObject.class);
 
-                startMultiThreadIndex(true, pjids, type);
-                commit();
-                startMultiThreadIndex(false, pjids, type);
-                commit();
-                break;
-            case CrisConstants.OU_TYPE_ID:
-                List<OrganizationUnit> ouObjs = getApplicationService()
-                        .getList(OrganizationUnit.class);
+            List<Integer> roids = new ArrayList<Integer>();
+            for (ResearchObject ro : roObjs)
+            {
+                roids.add(ro.getID());
+            }
+            return roids;
+        }
+    }
 
-                List<Integer> ouids = new ArrayList<Integer>();
-                for (OrganizationUnit ou : ouObjs)
+    @Override
+    public void batchIndex(Context context, Integer type)
+    {
+        if (type == null)
+        {
+            batchIndex(context, CrisConstants.CRIS_DYNAMIC_TYPE_ID_START);
+            batchIndex(context, CrisConstants.OU_TYPE_ID);
+            batchIndex(context, CrisConstants.PROJECT_TYPE_ID);
+            batchIndex(context, CrisConstants.RP_TYPE_ID);
+            batchIndex(context, Constants.ITEM);
+            return;
+        }
+        try
+        {
+            batchIndex(findAllIDs(context, type), type);
+        }
+        catch (Exception e)
+        {
+            log.error(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Rebuild the documents of the objects of a type in two passes. The
+     * threads compute the signatures of the objects, write their FAKE and
+     * reject documents by batches and collect the objects of each signature
+     * in memory; then the objects sharing a signature are paired, and their
+     * MATCH documents written, without a query for each object. The
+     * signatures shared by more than <code>indexer.batch.maxbucket</code>
+     * objects (e.g. a generic title) are not paired.
+     */
+    private void batchIndex(final List<Integer> ids, final Integer type)
+            throws SearchServiceException
+    {
+        final SearchDeduplication searchSignature = getSearchDeduplication(type);
+        final ConcurrentMap<String, List<Integer>> buckets = new ConcurrentHashMap<String, List<Integer>>();
+        long start = System.currentTimeMillis();
+        long failed = getFailedDocuments();
+
+        // the matches are rebuilt from the signatures
+        delete(RESOURCE_RESOURCETYPE_FIELD + ":" + type + " AND "
+                + RESOURCE_FLAG_FIELD + ":" + DeduplicationFlag.MATCH.description);
+
+        runBatch(ids.size(), new BatchStep()
+        {
+            public void process(Context context, int index) throws Exception
+            {
+                Integer id = ids.get(index);
+                DSpaceObject dso = find(context, id, type);
+                if (dso == null)
+                {
+                    return;
+                }
+                Map<String, List<String>> tmpMapFilter = new HashMap<String, List<String>>();
+                List<String> tmpFilter = new ArrayList<String>();
+                fillSignature(context, dso, tmpMapFilter, tmpFilter);
+                if (!tmpFilter.isEmpty())
+                {
+                    buildFromDedupReject(context, dso, tmpMapFilter, tmpFilter, searchSignature);
+                    build(context, id, id, DeduplicationFlag.FAKE, type, tmpMapFilter, searchSignature, null);
+                    for (Map.Entry<String, List<String>> entry : tmpMapFilter.entrySet())
+                    {
+                        for (String signature : entry.getValue())
+                        {
+                            String key = entry.getKey() + ":" + signature;
+                            List<Integer> bucket = buckets.get(key);
+                            if (bucket == null)
+                            {
+                                bucket = Collections.synchronizedList(new ArrayList<Integer>(2));
+                                List<Integer> previous = buckets.putIfAbsent(key, bucket);
+                                if (previous != null)
+                                {
+                                    bucket = previous;
+                                }
+                            }
+                            bucket.add(id);
+                        }
+                    }
+                }
+                if (dso instanceof Item)
                 {
-                    ouids.add(ou.getID());
+                    ((Item) dso).decache();
                 }
+            }
+        });
+        log.info("Signatures of " + ids.size() + " objects of type " + type
+                + ": " + buckets.size() + " distinct, "
+                + (System.currentTimeMillis() - start) + " ms");
+
+        // the objects of each signature, sorted
+        int maxBucket = ConfigurationManager.getIntProperty("deduplication",
+                "indexer.batch.maxbucket", 100);
+        List<String> keys = new ArrayList<String>();
+        List<int[]> sorted = new ArrayList<int[]>();
+        int skipped = 0;
+        for (Iterator<Map.Entry<String, List<Integer>>> it = buckets.entrySet().iterator(); it.hasNext();)
+        {
+            Map.Entry<String, List<Integer>> entry = it.next();
+            it.remove();
+            List<Integer> bucket = entry.getValue();
+            if (bucket.size() < 2)
+            {
+                continue;
+            }
+            if (bucket.size() > maxBucket)
+            {
+                skipped++;
+                continue;
+            }
+            int[] objects = new int[bucket.size()];
+            for (int i = 0; i < objects.length; i++)
+            {
+                objects[i] = bucket.get(i);
+            }
+            Arrays.sort(objects);
+            keys.add(entry.getKey());
+            sorted.add(objects);
+        }
+        if (skipped > 0)
+        {
+            log.warn(skipped + " signatures shared by more than " + maxBucket
+                    + " objects of type " + type + " were not paired");
+        }
 
-                startMultiThreadIndex(true, ouids, type);
-                commit();
-                startMultiThreadIndex(false, ouids, type);
-                commit();
-                break;
-            default:
-                List<ResearchObject> roObjs = getApplicationService()
-                        .getList(ResearchObject.class);
+        // the pairs are built and written by chunks of their first object,
+        // so that only the signatures shared by the pairs of a chunk are in
+        // memory at once
+        List<Integer> firsts = new ArrayList<Integer>(ids);
+        Collections.sort(firsts);
+        int chunkSize = Math.max(1, ConfigurationManager.getIntProperty("deduplication",
+                "indexer.batch.pairs.chunk", 10000));
+        int written = 0;
+        for (int c = 0; c < firsts.size(); c += chunkSize)
+        {
+            int from = firsts.get(c);
+            Integer to = c + chunkSize < firsts.size() ? firsts.get(c + chunkSize) : null;
+            Map<Long, Map<String, List<String>>> pairs = pairs(keys, sorted, from, to);
+            final List<Map.Entry<Long, Map<String, List<String>>>> matches = new ArrayList<Map.Entry<Long, Map<String, List<String>>>>(
+                    pairs.entrySet());
+            runBatch(matches.size(), new BatchStep()
+            {
+                public void process(Context context, int index)
+                {
+                    Map.Entry<Long, Map<String, List<String>>> match = matches.get(index);
+                    int first = (int) (match.getKey() >>> 32);
+                    int second = (int) (long) match.getKey();
+                    build(context, first, second, DeduplicationFlag.MATCH, type,
+                            match.getValue(), searchSignature, null);
+                }
+            });
+            written += matches.size();
+        }
+        commit();
+        log.info(written + " potential matches of type " + type + ", "
+                + (System.currentTimeMillis() - start) + " ms");
+        failed = getFailedDocuments() - failed;
+        if (failed > 0)
+        {
+            log.error(failed + " documents of type " + type
+                    + " could not be written to the deduplication index, run the batch again");
+        }
+    }
 
-                List<Integer> roids = new ArrayList<Integer>();
-                for (ResearchObject ro : roObjs)
+    /**
+     * The signatures shared by each pair of objects whose first (lowest) id
+     * is in [from, to).
+     *
+     * @param keys
+     *            the field and value of each signature
+     * @param sorted
+     *            the sorted ids of the objects of each signature
+     * @param to
+     *            null for no upper bound
+     * @return the signatures by field of each pair, keyed by the two ids
+     */
+    static Map<Long, Map<String, List<String>>> pairs(List<String> keys, List<int[]> sorted, int from,
+            Integer to)
+    {
+        Map<Long, Map<String, List<String>>> pairs = new HashMap<Long, Map<String, List<String>>>();
+        for (int b = 0; b < keys.size(); b++)
+        {
+            int[] bucket = sorted.get(b);
+            int first = lowerBound(bucket, from);
+            int last = to == null ? bucket.length : lowerBound(bucket, to);
+            if (first >= last)
+            {
+                continue;
+            }
+            String key = keys.get(b);
+            int separator = key.indexOf(':');
+            String field = key.substring(0, separator);
+            String signature = key.substring(separator + 1);
+            for (int i = first; i < last; i++)
+            {
+                for (int j = i + 1; j < bucket.length; j++)
                 {
-                    roids.add(ro.getID());
+                    if (bucket[i] == bucket[j])
+                    {
+                        continue;
+                    }
+                    Long pair = ((long) bucket[i] << 32) | bucket[j];
+                    Map<String, List<String>> shared = pairs.get(pair);
+                    if (shared == null)
+                    {
+                        shared = new HashMap<String, List<String>>();
+                        pairs.put(pair, shared);
+                    }
+                    List<String> values = shared.get(field);
+                    if (values == null)
+                    {
+                        values = new ArrayList<String>();
+                        shared.put(field, values);
+                    }
+                    if (!values.contains(signature))
+                    {
+                        values.add(signature);
+                    }
                 }
+            }
+        }
+        return pairs;
+    }
 
-                startMultiThreadIndex(true, roids, type);
-                commit();
-                startMultiThreadIndex(false, roids, type);
-                commit();
-                break;
+    /**
+     * @return the index of the first value not lower than key
+     */
+    private static int lowerBound(int[] values, int key)
+    {
+        int low = 0;
+        int high = values.length;
+        while (low < high)
+        {
+            int mid = (low + high) >>> 1;
+            if (values[mid] < key)
+            {
+                low = mid + 1;
+            }
+            else
+            {
+                high = mid;
             }
+        }
+        return low;
+    }
 
+    private DSpaceObject find(Context context, Integer id, Integer type)
+            throws SQLException
+    {
+        if (type == Constants.ITEM)
+        {
+            return Item.find(context, id);
         }
-        catch (Exception e)
+        return getApplicationService().getEntityById(id, type);
+    }
+
+    private SearchDeduplication getSearchDeduplication(Integer type)
+    {
+        return dspace.getServiceManager().getServiceByName(
+                CrisConstants.getEntityTypeText(type).toUpperCase()
+                        + "SearchDeduplication",
+                SearchDeduplication.class);
+    }
+
+    /** A step of a batch, for each index of a list */
+    private interface BatchStep
+    {
+        void process(Context context, int index) throws Exception;
+    }
+
+    /**
+     * Run a step on the indexes 0..size-1 with
+     * <code>indexer.items.threads</code> threads, each one with its own
+     * Context and writing the documents by batches. The indexes are taken in
+     * order by the threads as they are free.
+     */
+    private void runBatch(final int size, final BatchStep step)
+    {
+        final AtomicInteger next = new AtomicInteger();
+        final AtomicInteger done = new AtomicInteger();
+        int numThreads = getThreads();
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        for (int t = 0; t < numThreads; t++)
         {
-            log.error(e.getMessage(), e);
+            executor.execute(new Runnable()
+            {
+                public void run()
+                {
+                    Context context = null;
+                    buffer.set(new ArrayList<SolrInputDocument>());
+                    try
+                    {
+                        context = new Context();
+                        context.turnOffAuthorisationSystem();
+                        int index;
+                        while ((index = next.getAndIncrement()) < size)
+                        {
+                            try
+                            {
+                                step.process(context, index);
+                            }
+                            catch (Exception e)
+                            {
+                                log.error("Error on the object " + index
+                                        + " of the batch: " + e.getMessage(), e);
+                            }
+                            int count = done.incrementAndGet();
+                            if (count % 1000 == 0)
+                            {
+                                log.info(count + " / " + size);
+                            }
+                        }
+                        flushBuffer();
+                    }
+                    catch (Exception e)
+                    {
+                        log.error(e.getMessage(), e);
+                    }
+                    finally
+                    {
+                        buffer.remove();
+                        if (context != null)
+                        {
+                            context.abort();
+                        }
+                    }
+                }
+            });
         }
+        executor.shutdown();
+        try
+        {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            log.warn("Interrupted while waiting for the batch");
+        }
+    }
+
+    private int getThreads()
+    {
+        return Math.max(1, ConfigurationManager.getIntProperty("deduplication",
+                "indexer.items.threads", 5));
     }
 
     @Override
@@ -855,8 +1259,7 @@ public class SolrDedupServiceImpl implements DedupService
 
     private void startMultiThreadIndex(boolean onlyFake, List<Integer> ids, Integer type)
     {
-        int numThreads = ConfigurationManager.getIntProperty("dedup",
-                "indexer.items.threads", 5);        
+        int numThreads = getThreads();
         List<Integer>[] arrayIDList = Util.splitList(ids, numThreads);
         List<IndexerThread> threads = new ArrayList<IndexerThread>();
         for (List<Integer> hl : arrayIDList)
@@ -865,13 +1268,17 @@ public class SolrDedupServiceImpl implements DedupService
             thread.start();
             threads.add(thread);
         }
-        boolean finished = false;
-        while (!finished)
+        for (IndexerThread thread : threads)
         {
-            finished = true;
-            for (IndexerThread thread : threads)
+            try
             {
-                finished = finished && !thread.isAlive();
+                thread.join();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                log.warn("Interrupted while waiting for " + thread.getName());
+                return;
             }
         }
     }
@@ -0,0 +1,183 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/CILEA/dspace-cris/wiki/License
+ */
+package org.dspace.app.cris.deduplication.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.lang.StringUtils;
+import org.dspace.content.DSpaceObject;
+import org.dspace.core.Context;
+
+/**
+ * Signature of the near duplicates: the normalised words of each value are
+ * cut in shingles of <code>shingleSize</code> characters, summarised by
+ * <code>bands * rows</code> MinHash values, and each band of
+ * <code>rows</code> values gives a key ("b&lt;band&gt;_&lt;hash&gt;"). Two
+ * values share a key with probability <code>1 - (1 - s^rows)^bands</code>,
+ * where s is the Jaccard similarity of their shingles: with the defaults (10
+ * bands of 6 rows) values similar at 80% are found 19 times out of 20, at 50%
+ * once in 7. As the keys are stored as the other signatures, the candidates
+ * are found by the same query on the dedup core, whose cost depends on the
+ * keys of the object and not on the size of the repository.
+ */
+public class MinHashSignature extends MD5ValueSignature
+{
+    private int shingleSize = 4;
+
+    private int bands = 10;
+
+    private int rows = 6;
+
+    /** the same seed must be used by all the objects */
+    private long seed = 0x5DEECE66DL;
+
+    /**
+     * one per MinHash value, computed again by the setters; the signatures
+     * are computed by several threads at once
+     */
+    private volatile long[] salts = salts(seed, bands * rows);
+
+    @Override
+    public List<String> getSignature(DSpaceObject item, Context context)
+    {
+        List<String> result = new ArrayList<String>();
+        for (String value : getMultiValue(item, getMetadata()))
+        {
+            if (StringUtils.isNotEmpty(value))
+            {
+                result.addAll(getKeys(value));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the band keys of a value, none if it has no word
+     */
+    public List<String> getKeys(String value)
+    {
+        String text = SignatureNormalizer.words(value);
+        if (text.isEmpty())
+        {
+            return new ArrayList<String>();
+        }
+        long[] minima = minHash(text);
+        List<String> keys = new ArrayList<String>(bands);
+        for (int b = 0; b < bands; b++)
+        {
+            long hash = b;
+            for (int r = 0; r < rows; r++)
+            {
+                hash = mix(hash * 31 + minima[b * rows + r]);
+            }
+            keys.add("b" + b + "_" + Long.toHexString(hash));
+        }
+        return keys;
+    }
+
+    private long[] minHash(String text)
+    {
+        long[] salts = this.salts;
+        long[] minima = new long[salts.length];
+        Arrays.fill(minima, Long.MAX_VALUE);
+        int last = Math.max(0, text.length() - shingleSize);
+        for (int start = 0; start <= last; start++)
+        {
+            long shingle = hash(text, start, Math.min(text.length(), start + shingleSize));
+            for (int i = 0; i < salts.length; i++)
+            {
+                long h = mix(shingle ^ salts[i]);
+                if (h < minima[i])
+                {
+                    minima[i] = h;
+                }
+            }
+        }
+        return minima;
+    }
+
+    private static long[] salts(long seed, int size)
+    {
+        Random random = new Random(seed);
+        long[] salts = new long[size];
+        for (int i = 0; i < salts.length; i++)
+        {
+            salts[i] = random.nextLong();
+        }
+        return salts;
+    }
+
+    /** FNV-1a of the characters */
+    private static long hash(String text, int start, int end)
+    {
+        long h = 0xcbf29ce484222325L;
+        for (int i = start; i < end; i++)
+        {
+            h ^= text.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    /** finaliser of MurmurHash3 */
+    private static long mix(long h)
+    {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    public int getShingleSize()
+    {
+        return shingleSize;
+    }
+
+    public void setShingleSize(int shingleSize)
+    {
+        this.shingleSize = shingleSize;
+    }
+
+    public int getBands()
+    {
+        return bands;
+    }
+
+    public void setBands(int bands)
+    {
+        this.bands = bands;
+        this.salts = salts(seed, bands * rows);
+    }
+
+    public int getRows()
+    {
+        return rows;
+    }
+
+    public void setRows(int rows)
+    {
+        this.rows = rows;
+        this.salts = salts(seed, bands * rows);
+    }
+
+    public long getSeed()
+    {
+        return seed;
+    }
+
+    public void setSeed(long seed)
+    {
+        this.seed = seed;
+        this.salts = salts(seed, bands * rows);
+    }
+}
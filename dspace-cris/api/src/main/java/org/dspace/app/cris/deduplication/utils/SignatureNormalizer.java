@@ -0,0 +1,129 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/CILEA/dspace-cris/wiki/License
+ */
+package org.dspace.app.cris.deduplication.utils;
+
+import java.text.Normalizer;
+import java.util.Locale;
+
+import com.ibm.icu.text.CharsetDetector;
+import com.ibm.icu.text.CharsetMatch;
+
+/**
+ * Normalisation of the values of the signatures: decomposition of the
+ * accented characters, removal of everything but the letters (and digits),
+ * lower case. The values are scanned once, without regular expressions. The
+ * charset detection only chose the locale of the lower case, and the only
+ * letter whose lower case depends on the locale once the marks are removed
+ * is 'I' (dotless in Turkish and Azeri): the language is still detected,
+ * as before, but only for the values containing it, so that the signatures
+ * stay the same.
+ */
+public class SignatureNormalizer
+{
+    private SignatureNormalizer()
+    {
+    }
+
+    /**
+     * @param digits
+     *            keep the digits too (and '^', as the expression used before)
+     * @return the letters (and digits) of the value, lower case
+     */
+    public static String normalize(String value, boolean digits)
+    {
+        String norm = decompose(value);
+        StringBuilder sb = new StringBuilder(norm.length());
+        for (int i = 0; i < norm.length();)
+        {
+            int c = norm.codePointAt(i);
+            if (Character.isLetter(c) || (digits && (isNumber(c) || c == '^')))
+            {
+                sb.appendCodePoint(c);
+            }
+            i += Character.charCount(c);
+        }
+        String letters = sb.toString();
+        return letters.toLowerCase(locale(value, letters));
+    }
+
+    /**
+     * @return the locale of the lower case of the letters of a value: the
+     *         language detected from its bytes if the letters contain 'I',
+     *         the default locale otherwise
+     */
+    private static Locale locale(String value, String letters)
+    {
+        if (letters.indexOf('I') >= 0)
+        {
+            CharsetDetector cd = new CharsetDetector();
+            cd.setText(value.getBytes());
+            CharsetMatch detect = cd.detect();
+            if (detect != null && detect.getLanguage() != null)
+            {
+                return new Locale(detect.getLanguage());
+            }
+        }
+        return Locale.getDefault();
+    }
+
+    /**
+     * @return the words (letters and digits) of the value, lower case in the
+     *         root locale so that the keys don't depend on the server,
+     *         separated by a space
+     */
+    public static String words(String value)
+    {
+        String norm = decompose(value);
+        StringBuilder sb = new StringBuilder(norm.length());
+        boolean space = false;
+        for (int i = 0; i < norm.length();)
+        {
+            int c = norm.codePointAt(i);
+            if (Character.isLetter(c) || isNumber(c))
+            {
+                if (space && sb.length() > 0)
+                {
+                    sb.append(' ');
+                }
+                space = false;
+                sb.appendCodePoint(c);
+            }
+            else if (Character.getType(c) != Character.NON_SPACING_MARK)
+            {
+                space = true;
+            }
+            i += Character.charCount(c);
+        }
+        return sb.toString().toLowerCase(Locale.ROOT);
+    }
+
+    private static String decompose(String value)
+    {
+        for (int i = 0; i < value.length(); i++)
+        {
+            if (value.charAt(i) >= 0x80)
+            {
+                return Normalizer.normalize(value, Normalizer.Form.NFD);
+            }
+        }
+        return value;
+    }
+
+    private static boolean isNumber(int c)
+    {
+        switch (Character.getType(c))
+        {
+        case Character.DECIMAL_DIGIT_NUMBER:
+        case Character.LETTER_NUMBER:
+        case Character.OTHER_NUMBER:
+            return true;
+        default:
+            return false;
+        }
+    }
+}
@@ -7,14 +7,8 @@
  */
 package org.dspace.app.cris.deduplication.utils;
 
-import java.util.Locale;
-
 import org.dspace.content.DSpaceObject;
 
-import com.ibm.icu.text.CharsetDetector;
-import com.ibm.icu.text.CharsetMatch;
-import com.ibm.icu.text.Normalizer;
-
 public class TitleWithDigitSignature extends MD5ValueSignature
 {
 
@@ -24,19 +18,7 @@ public class TitleWithDigitSignature extends MD5ValueSignature
         if (value != null)
         {
 
-            String norm = Normalizer.normalize(value, Normalizer.NFD);
-            CharsetDetector cd = new CharsetDetector();
-            cd.setText(value.getBytes());
-            CharsetMatch detect = cd.detect();
-            if (detect != null && detect.getLanguage() != null)
-            {
-                norm = norm.replaceAll("[^\\p{L}^\\p{N}]", "")
-                        .toLowerCase(new Locale(detect.getLanguage()));
-            }
-            else
-            {
-                norm = norm.replaceAll("[^\\p{L}^\\p{N}]", "").toLowerCase();
-            }
+            String norm = SignatureNormalizer.normalize(value, true);
             return norm;
         }
         else
@@ -15,6 +15,7 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 import java.util.regex.Pattern;
 
 import org.apache.log4j.Logger;
@@ -41,6 +42,11 @@ import org.dspace.app.cris.util.ResearcherPageUtils;
 import org.dspace.core.ConfigurationManager;
 import org.dspace.discovery.SearchServiceException;
 import org.dspace.utils.DSpace;
+import org.springframework.orm.hibernate4.HibernateTransactionManager;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.interceptor.DefaultTransactionAttribute;
 
 public abstract class AVisualizationGraph implements NetworkPlugin
 {
@@ -49,8 +55,6 @@ public abstract class AVisualizationGraph implements NetworkPlugin
     
     protected Pattern p = Pattern.compile("rp(.*?)");
 
-    private static final String FACET_METRICS = "focus_auth";
-
     private static final String FACET_SEARCH = "focus";
 
     private static final String COLOR_PROPERTY = "network.connection.color";
@@ -77,6 +81,10 @@ public abstract class AVisualizationGraph implements NetworkPlugin
     private ApplicationService applicationService = dspace.getServiceManager()
             .getServiceByName("applicationService", ApplicationService.class);
 
+    private PlatformTransactionManager transactionManager = dspace
+            .getServiceManager().getServiceByName("transactionManager",
+                    HibernateTransactionManager.class);
+
     private DecimalFormat df = new DecimalFormat("#.###");
 
     abstract public String getConnectionName();
@@ -116,33 +124,47 @@ public abstract class AVisualizationGraph implements NetworkPlugin
             boolean showExternal, boolean showSameDept, String dept,
             Integer modeEntity) throws Exception
     {
-
-        SolrQuery solrQuery = new SolrQuery();
-
-        String query = buildQuery(authority, name, showSameDept, dept,
-                modeEntity, level);
-        String[] fqs = {"type:" + getConnectionName(), "entity:" + modeEntity};
-        solrQuery.setQuery(query);
-        solrQuery.addFilterQuery(fqs);
-	if (!showExternal && authority != null && !authority.isEmpty()) {
-		solrQuery.addFilterQuery(new String[] {"a_auth:rp*", "b_auth:rp*" });
-	}
-        solrQuery.setFacet(true);
-        solrQuery.addFacetField(FACET_SEARCH);
+        int limit = CollaborationGraph.DEFAULT_LIMIT;
         if (modeEntity == ConstantNetwork.ENTITY_RP)
         {
-            solrQuery.setFacetLimit(getLimitLevel(level));
+            limit = getLimitLevel(level);
         }
         else if (modeEntity == ConstantNetwork.ENTITY_DEPT)
         {
-            solrQuery.setFacetLimit(Integer.MAX_VALUE);
+            limit = Integer.MAX_VALUE;
         }
-        solrQuery.setFacetMinCount(1);
-        solrQuery.setRows(0);
 
-        QueryResponse rsp = service.search(solrQuery);
+        FacetField facets;
+        CollaborationGraph graph = CollaborationGraph.getGraph(getConnectionName(), modeEntity);
+        if (graph != null)
+        {
+            boolean researchersOnly = !showExternal && authority != null && !authority.isEmpty();
+            String sameDept = showSameDept && modeEntity == ConstantNetwork.ENTITY_RP ? dept : null;
+            facets = graph.facet(authority, name, researchersOnly, sameDept, limit);
+        }
+        else
+        {
+            SolrQuery solrQuery = new SolrQuery();
+
+            String query = buildQuery(authority, name, showSameDept, dept,
+                    modeEntity, level);
+            String[] fqs = {"type:" + getConnectionName(), "entity:" + modeEntity};
+            solrQuery.setQuery(query);
+            solrQuery.addFilterQuery(fqs);
+            if (!showExternal && authority != null && !authority.isEmpty())
+            {
+                solrQuery.addFilterQuery(new String[] {"a_auth:rp*", "b_auth:rp*" });
+            }
+            solrQuery.setFacet(true);
+            solrQuery.addFacetField(FACET_SEARCH);
+            solrQuery.setFacetLimit(limit);
+            solrQuery.setFacetMinCount(1);
+            solrQuery.setRows(0);
+
+            QueryResponse rsp = service.search(solrQuery);
 
-        FacetField facets = rsp.getFacetField(FACET_SEARCH);
+            facets = rsp.getFacetField(FACET_SEARCH);
+        }
 
         JsGraph rsGraph = null;
         String src = null;
@@ -406,150 +428,122 @@ public abstract class AVisualizationGraph implements NetworkPlugin
         return color;
     }
 
+    /**
+     * Compute the indicators of the researchers on the graph of the
+     * connection (see {@link NetworkMetrics}) and store them in their
+     * properties, saving and indexing the researchers by batches of
+     * <code>network.metrics.batchsize</code>. A researcher whose indicators
+     * didn't change is not saved again.
+     */
     public List<ResearcherPage> loadMetrics(List<String[]> discardedNode,
             Integer importedNodes, Boolean otherError)
             throws SearchServiceException
     {
-        // load all publications
-        SolrQuery solrQuery = new SolrQuery();
-        solrQuery.setQuery("type:" + getType() + " AND entity:"
-                + ConstantNetwork.ENTITY_RP);
-        solrQuery.addFacetField(FACET_METRICS);
-        solrQuery.setFacetLimit(Integer.MAX_VALUE);
-        solrQuery.setFacetMinCount(1);
-        solrQuery.setRows(0);
-        QueryResponse rsp = getService().search(solrQuery);
-        FacetField facets = rsp.getFacetField(FACET_METRICS);
-
-        // for each interests get authority's authors
+        CollaborationGraph graph = CollaborationGraph.load(getService(),
+                getConnectionName(), ConstantNetwork.ENTITY_RP);
+        NetworkMetrics metrics = new NetworkMetrics(graph);
+        int parallelism = ConfigurationManager.getIntProperty(
+                NetworkPlugin.CFG_MODULE, "network.metrics.parallelism",
+                Runtime.getRuntime().availableProcessors());
+        int samples = ConfigurationManager.getIntProperty(
+                NetworkPlugin.CFG_MODULE, "network.metrics.betweenness.samples",
+                256);
+        int batchSize = Math.max(1, ConfigurationManager.getIntProperty(
+                NetworkPlugin.CFG_MODULE, "network.metrics.batchsize", 100));
+        long start = System.currentTimeMillis();
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, parallelism));
+        try
+        {
+            // the same sources at each run, for stable estimates
+            metrics.compute(pool, samples, getConnectionName().hashCode());
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+        log.info("Metrics of " + getConnectionName() + ": " + metrics.size()
+                + " nodes, betweenness from " + metrics.getSources()
+                + " sources, " + (System.currentTimeMillis() - start) + " ms");
+
+        // the optional indicators are stored if they are defined
+        boolean weighted = isDefined(ConstantNetwork.PREFIX_METADATA_BIBLIOMETRIC_5
+                + getType());
+        boolean clustering = isDefined(ConstantNetwork.PREFIX_METADATA_BIBLIOMETRIC_6
+                + getType());
+        boolean betweenness = isDefined(ConstantNetwork.PREFIX_METADATA_BIBLIOMETRIC_7
+                + getType());
+
         List<ResearcherPage> result = new LinkedList<ResearcherPage>();
-        int counter = 0;
-        external: for (Count facetElement : facets.getValues())
+        List<ResearcherPage> batch = new ArrayList<ResearcherPage>(batchSize);
+        for (int node = 0; node < metrics.size(); node++)
         {
-            counter++;
-            log.debug("" + counter + " of " + facets.getValueCount());
+            String authority = metrics.getAuthority(node);
+            if (authority == null || !p.matcher(authority).matches())
+            {
+                continue;
+            }
             ResearcherPage researcher = null;
             try
             {
-                String facetValue = facetElement.getName();
-
                 Integer realPersistentIdentifier = ResearcherPageUtils
-                        .getRealPersistentIdentifier(facetValue, ResearcherPage.class);
+                        .getRealPersistentIdentifier(authority, ResearcherPage.class);
                 researcher = applicationService
                         .get(ResearcherPage.class, realPersistentIdentifier);
-                //researcher.getDynamicField().setAnagraficaLazy(applicationService.getAnagraficaByRP(realPersistentIdentifier));
-            
-                solrQuery = new SolrQuery();
-                solrQuery.setQuery("type:" + getType() + " AND entity:" + ConstantNetwork.ENTITY_RP + " AND " + FACET_METRICS + ":\"" + facetValue + "\"");
-                solrQuery.addFacetField(FACET_SEARCH);
-                solrQuery.setFacetMinCount(1);
-                solrQuery.setFacetLimit(Integer.MAX_VALUE);
-                solrQuery.setRows(0);
-
-                rsp = getService().search(solrQuery);
-                FacetField relations = rsp.getFacetField(FACET_SEARCH);
-                int i = 0;
-                int nConnections = 0;
-                int maxStrength = 0;
-                int sumStrength = 0;
-                List<Long> quadraticVarianceArrays = new ArrayList<Long>();
-                nConnections = Integer.valueOf(relations
-                        .getValueCount() - 1);
-                internal: for (Count relation : relations.getValues())
+                if (researcher == null)
                 {
-
-                    log.debug("" + counter + " works on " + i + " of "
-                            + relations.getValueCount());
-
-                    if (i == 0)
-                    {                     
-                        i++;
-                        continue internal;
-                    }
-                    else
-                    {
-                        if (i == 1)
-                        {
-                            // max
-                            maxStrength = Integer.valueOf((int) relation
-                                    .getCount());
-                        }
-
-                        sumStrength += Integer.valueOf((int) relation
-                                .getCount());
-
-                        quadraticVarianceArrays.add(relation
-                                .getCount());
-                    }
-
-                    i++;
-
+                    discardedNode.add(new String[] { getConnectionName(), authority });
+                    continue;
                 }
-                                               
-                                
-                
                 RPAdditionalFieldStorage anagraficaObject = researcher.getDynamicField();
-                
-                
-                setMetadata(String.valueOf(nConnections), anagraficaObject, ConstantNetwork.PREFIX_METADATA_BIBLIOMETRIC_1
-                        + getType());
-
-                setMetadata(String.valueOf(maxStrength), anagraficaObject, ConstantNetwork.PREFIX_METADATA_BIBLIOMETRIC_2
-                        + getType());
-                
-                double averageStrength = ((double)sumStrength/((double)nConnections));                
-                setMetadata(String.valueOf(df.format(averageStrength)), anagraficaObject, ConstantNetwork.PREFIX_METADATA_BIBLIOMETRIC_3
-                        + getType());
-                
-                double quadraticVariance = 0;
-                double n = quadraticVarianceArrays.size();
-                for(Long variance : quadraticVarianceArrays) {
-                    quadraticVariance += ((variance - averageStrength) * (variance - averageStrength));
+                boolean changed = false;
+                changed |= setMetadata(String.valueOf(metrics.getDegree(node)), anagraficaObject,
+                        ConstantNetwork.PREFIX_METADATA_BIBLIOMETRIC_1 + getType());
+                changed |= setMetadata(String.valueOf(metrics.getMaxWeight(node)), anagraficaObject,
+                        ConstantNetwork.PREFIX_METADATA_BIBLIOMETRIC_2 + getType());
+                changed |= setMetadata(df.format(metrics.getAverageWeight(node)), anagraficaObject,
+                        ConstantNetwork.PREFIX_METADATA_BIBLIOMETRIC_3 + getType());
+                changed |= setMetadata(df.format(metrics.getDeviation(node)), anagraficaObject,
+                        ConstantNetwork.PREFIX_METADATA_BIBLIOMETRIC_4 + getType());
+                if (weighted)
+                {
+                    changed |= setMetadata(String.valueOf(metrics.getWeightedDegree(node)), anagraficaObject,
+                            ConstantNetwork.PREFIX_METADATA_BIBLIOMETRIC_5 + getType());
+                }
+                if (clustering)
+                {
+                    changed |= setMetadata(df.format(metrics.getClustering(node)), anagraficaObject,
+                            ConstantNetwork.PREFIX_METADATA_BIBLIOMETRIC_6 + getType());
+                }
+                if (betweenness)
+                {
+                    changed |= setMetadata(String.valueOf((float) metrics.getBetweenness(node)), anagraficaObject,
+                            ConstantNetwork.PREFIX_METADATA_BIBLIOMETRIC_7 + getType());
+                }
+                if (changed)
+                {
+                    batch.add(researcher);
+                }
+                else
+                {
+                    applicationService.evict(researcher);
                 }
-                quadraticVariance = Math.sqrt(quadraticVariance/n);
-                setMetadata(String.valueOf(df.format(quadraticVariance)), anagraficaObject, ConstantNetwork.PREFIX_METADATA_BIBLIOMETRIC_4
-                        + getType());
-                                                
-                
-                result.add(researcher);
             }
             catch (Exception e)
             {
-                log.error("Error try to build object to index with ID:" + researcher.getId());
+                log.error("Error try to build object to index with ID:" + authority);
                 log.error(e.getMessage(), e);
                 otherError = true;
                 continue;
             }
-            
-        }
-        
-        committnode: for (ResearcherPage node : result)
-        {
-//            try
-//            {
-                applicationService.saveOrUpdate(ResearcherPage.class, node);
-                boolean rr = ((CrisSearchService) getIndexer().getIndexer()).indexCrisObject(node,
-                        true); // index node
-                if(rr) {
-                	importedNodes++;
-                }
-                else {
-                	 discardedNode.add(new String[] { getConnectionName() + " - " + node.getId()});
-                }
-//            }
-//            catch (SolrServerException e)
-//            {
-//                log.error(e.getMessage(), e);
-//                discardedNode.add(new String[] { getConnectionName() + " - " + node.getId()});
-//                continue committnode;
-//            }
-//            catch (IOException e)
-//            {
-//                log.error(e.getMessage(), e);
-//                discardedNode.add(new String[] { getConnectionName() + " - " + node.getId()});
-//                continue committnode;
-//            }
+            if (batch.size() >= batchSize)
+            {
+                importedNodes += saveMetrics(batch, discardedNode);
+                result.addAll(batch);
+                batch.clear();
+            }
         }
+        importedNodes += saveMetrics(batch, discardedNode);
+        result.addAll(batch);
 
         log.debug("commit " + getType());
         getIndexer().getIndexer().commit();
@@ -557,7 +551,70 @@ public abstract class AVisualizationGraph implements NetworkPlugin
 
     }
 
-    private void setMetadata(String value,
+    private boolean isDefined(String shortName)
+    {
+        return applicationService.findPropertiesDefinitionByShortName(
+                RPPropertiesDefinition.class, shortName) != null;
+    }
+
+    /**
+     * Save a batch of researchers in one transaction, then index them and
+     * release them from the session.
+     *
+     * @return the number of researchers indexed
+     */
+    private int saveMetrics(List<ResearcherPage> batch,
+            List<String[]> discardedNode)
+    {
+        if (batch.isEmpty())
+        {
+            return 0;
+        }
+        // the saves join the transaction of the batch
+        TransactionStatus status = transactionManager
+                .getTransaction(new DefaultTransactionAttribute(
+                        TransactionDefinition.PROPAGATION_REQUIRED));
+        try
+        {
+            for (ResearcherPage node : batch)
+            {
+                applicationService.saveOrUpdate(ResearcherPage.class, node);
+            }
+            transactionManager.commit(status);
+        }
+        catch (RuntimeException e)
+        {
+            if (!status.isCompleted())
+            {
+                transactionManager.rollback(status);
+            }
+            throw e;
+        }
+
+        int saved = 0;
+        for (ResearcherPage node : batch)
+        {
+            boolean rr = ((CrisSearchService) getIndexer().getIndexer()).indexCrisObject(node,
+                    true); // index node
+            if (rr)
+            {
+                saved++;
+            }
+            else
+            {
+                discardedNode.add(new String[] { getConnectionName() + " - " + node.getId()});
+            }
+            applicationService.evict(node);
+        }
+        return saved;
+    }
+
+    /**
+     * Replace the value of a property of the researcher.
+     *
+     * @return false if the property already had the value
+     */
+    private boolean setMetadata(String value,
             RPAdditionalFieldStorage anagraficaObject, String shortName)
     {
         List<RPProperty> nListConnectionRPP = anagraficaObject
@@ -567,6 +624,13 @@ public abstract class AVisualizationGraph implements NetworkPlugin
         RPProperty nConnectionRPP = null;
         if (nListConnectionRPP != null && nListConnectionRPP.size() > 0)
         {
+            if (nListConnectionRPP.size() == 1
+                    && nListConnectionRPP.get(0).getValue() != null
+                    && value.equals(String.valueOf(nListConnectionRPP.get(0)
+                            .getValue().getObject())))
+            {
+                return false;
+            }
             List<RPProperty> toRemove = new LinkedList<RPProperty>(); 
             for (RPProperty p : nListConnectionRPP)
             {
@@ -591,6 +655,7 @@ public abstract class AVisualizationGraph implements NetworkPlugin
         nConnectionValue.setOggetto(value);
         nConnectionRPP.setValue(nConnectionValue);
         nConnectionRPP.setVisibility(VisibilityConstants.PUBLIC);
+        return true;
     }
     
     protected String getDepartmentFromSOLR(String a_authority) throws SearchServiceException
@@ -0,0 +1,716 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/CILEA/dspace-cris/wiki/License
+ */
+package org.dspace.app.cris.network;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.log4j.Logger;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.response.FacetField;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+import org.dspace.core.ConfigurationManager;
+import org.dspace.discovery.SearchServiceException;
+
+/**
+ * Collaboration graph of a connection (coauthors, interests...) and an
+ * entity, in compressed sparse row form: the nodes are the values of the
+ * <code>focus</code> field of the network core, numbered in their index
+ * order, and the neighbours of node <code>i</code> are
+ * <code>targets[offsets[i] .. offsets[i+1]-1]</code>, with the number of
+ * documents linking them in <code>weights</code>.
+ * <p>
+ * The graphs are built by ScriptIndexNetwork from the network core and
+ * written to <code>network.graph.dir</code>; they are read as memory mapped
+ * files, so that the expansion of the networks of the researchers doesn't
+ * query Solr. {@link #facet} computes the facet the search of
+ * {@link AVisualizationGraph} asks Solr for.
+ */
+public class CollaborationGraph
+{
+    private static final Logger log = Logger.getLogger(CollaborationGraph.class);
+
+    private static final int MAGIC = 0x43524953;
+
+    private static final int VERSION = 1;
+
+    private static final String UTF8 = "UTF-8";
+
+    /** documents read at once to build the graphs */
+    private static final int ROWS = 10000;
+
+    /** facet limit of Solr when none is given */
+    public static final int DEFAULT_LIMIT = 100;
+
+    private static final ConcurrentMap<File, CollaborationGraph> graphs = new ConcurrentHashMap<File, CollaborationGraph>();
+
+    private final String[] labels;
+    private final String[] authorities;
+    private final String[] values;
+    private final String[] departments;
+
+    private final IntBuffer offsets;
+    private final IntBuffer targets;
+    private final IntBuffer weights;
+
+    private final Map<String, int[]> byAuthority;
+    private final Map<String, int[]> byValue;
+
+    /** last modification of the file read, 0 if built */
+    private long lastModified;
+
+    CollaborationGraph(String[] labels, String[] authorities, String[] values, String[] departments,
+            IntBuffer offsets, IntBuffer targets, IntBuffer weights)
+    {
+        this.labels = labels;
+        this.authorities = authorities;
+        this.values = values;
+        this.departments = departments;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.weights = weights;
+        this.byAuthority = index(authorities);
+        this.byValue = index(values);
+    }
+
+    private static Map<String, int[]> index(String[] keys)
+    {
+        Map<String, List<Integer>> lists = new HashMap<String, List<Integer>>();
+        for (int i = 0; i < keys.length; i++)
+        {
+            if (keys[i] != null)
+            {
+                List<Integer> nodes = lists.get(keys[i]);
+                if (nodes == null)
+                {
+                    nodes = new ArrayList<Integer>(1);
+                    lists.put(keys[i], nodes);
+                }
+                nodes.add(i);
+            }
+        }
+        Map<String, int[]> index = new HashMap<String, int[]>(lists.size() * 2);
+        for (Map.Entry<String, List<Integer>> entry : lists.entrySet())
+        {
+            int[] nodes = new int[entry.getValue().size()];
+            for (int i = 0; i < nodes.length; i++)
+            {
+                nodes[i] = entry.getValue().get(i);
+            }
+            index.put(entry.getKey(), nodes);
+        }
+        return index;
+    }
+
+    /**
+     * @return true if the searches are served from the graphs
+     */
+    public static boolean isEnabled()
+    {
+        return ConfigurationManager.getBooleanProperty(NetworkPlugin.CFG_MODULE, "network.graph.enabled", false);
+    }
+
+    /**
+     * @return the file of the graph of a connection and entity
+     */
+    public static File getFile(String connection, int entity)
+    {
+        String dir = ConfigurationManager.getProperty(NetworkPlugin.CFG_MODULE, "network.graph.dir");
+        if (dir == null)
+        {
+            dir = ConfigurationManager.getProperty("dspace.dir") + File.separator + "var" + File.separator + "network";
+        }
+        return new File(dir, connection + "-" + entity + ".graph");
+    }
+
+    /**
+     * @return the graph of a connection and entity, read again when its file
+     *         changes, or null if the graphs are disabled or it was not built
+     *         (the searches then query Solr)
+     */
+    public static CollaborationGraph getGraph(String connection, int entity)
+    {
+        if (!isEnabled())
+        {
+            return null;
+        }
+        File file = getFile(connection, entity);
+        long lastModified = file.lastModified();
+        if (lastModified == 0)
+        {
+            graphs.remove(file);
+            return null;
+        }
+        CollaborationGraph graph = graphs.get(file);
+        if (graph == null || graph.lastModified != lastModified)
+        {
+            synchronized (graphs)
+            {
+                graph = graphs.get(file);
+                if (graph == null || graph.lastModified != lastModified)
+                {
+                    try
+                    {
+                        graph = read(file);
+                        graphs.put(file, graph);
+                        log.info("Read the graph " + file + ": " + graph.size() + " nodes, "
+                                + graph.getEdgeCount() + " edges");
+                    }
+                    catch (IOException e)
+                    {
+                        log.error("Unable to read the graph " + file + ", searching Solr", e);
+                        return null;
+                    }
+                }
+            }
+        }
+        return graph;
+    }
+
+    /**
+     * Build the graphs of a connection, one for each entity, from the
+     * documents of the network core.
+     */
+    public static Map<Integer, CollaborationGraph> fromIndex(VisualizationGraphSolrService service, String connection)
+            throws SearchServiceException
+    {
+        Map<Integer, Builder> builders = new HashMap<Integer, Builder>();
+        SolrQuery solrQuery = new SolrQuery();
+        solrQuery.setQuery("type:\"" + connection + "\"");
+        solrQuery.setFields("a", "a_auth", "a_val", "a_dept", "b", "b_auth", "b_val", "b_dept", "entity");
+        solrQuery.setRows(ROWS);
+        int start = 0;
+        long found;
+        do
+        {
+            solrQuery.setStart(start);
+            SolrDocumentList docs = service.search(solrQuery).getResults();
+            found = docs.getNumFound();
+            for (SolrDocument doc : docs)
+            {
+                Object entity = doc.getFirstValue("entity");
+                if (entity == null || ((Number) entity).intValue() == ConstantNetwork.ENTITY_PLACEHOLDER_RP)
+                {
+                    continue;
+                }
+                Builder builder = builders.get(((Number) entity).intValue());
+                if (builder == null)
+                {
+                    builder = new Builder();
+                    builders.put(((Number) entity).intValue(), builder);
+                }
+                builder.add((String) doc.getFirstValue("a"), (String) doc.getFirstValue("a_auth"),
+                        (String) doc.getFirstValue("a_val"), (String) doc.getFirstValue("a_dept"),
+                        (String) doc.getFirstValue("b"), (String) doc.getFirstValue("b_auth"),
+                        (String) doc.getFirstValue("b_val"), (String) doc.getFirstValue("b_dept"));
+            }
+            if (docs.isEmpty())
+            {
+                break;
+            }
+            start += docs.size();
+        }
+        while (start < found);
+
+        Map<Integer, CollaborationGraph> graphs = new HashMap<Integer, CollaborationGraph>();
+        for (Map.Entry<Integer, Builder> entry : builders.entrySet())
+        {
+            graphs.put(entry.getKey(), entry.getValue().build());
+        }
+        return graphs;
+    }
+
+    /**
+     * @return the graph of a connection and entity: the one served to the
+     *         searches if enabled, otherwise built from the network core
+     */
+    public static CollaborationGraph load(VisualizationGraphSolrService service, String connection, int entity)
+            throws SearchServiceException
+    {
+        CollaborationGraph graph = getGraph(connection, entity);
+        if (graph == null)
+        {
+            graph = fromIndex(service, connection).get(entity);
+        }
+        return graph != null ? graph : new Builder().build();
+    }
+
+    /**
+     * @return the number of nodes
+     */
+    public int size()
+    {
+        return labels.length;
+    }
+
+    /**
+     * @return the number of (directed) edges, each link counting in both
+     *         directions and a self link once
+     */
+    public int getEdgeCount()
+    {
+        return targets.limit();
+    }
+
+    /**
+     * @return the value of the focus field of the node
+     */
+    public String getLabel(int node)
+    {
+        return labels[node];
+    }
+
+    public String getAuthority(int node)
+    {
+        return authorities[node];
+    }
+
+    public String getValue(int node)
+    {
+        return values[node];
+    }
+
+    public String getDepartment(int node)
+    {
+        return departments[node];
+    }
+
+    public int getDegree(int node)
+    {
+        return offsets.get(node + 1) - offsets.get(node);
+    }
+
+    /**
+     * @return the i-th neighbour of the node, in index order
+     */
+    public int getNeighbour(int node, int i)
+    {
+        return targets.get(offsets.get(node) + i);
+    }
+
+    /**
+     * @return the number of documents linking the node to its i-th neighbour
+     */
+    public int getWeight(int node, int i)
+    {
+        return weights.get(offsets.get(node) + i);
+    }
+
+    /**
+     * @return the nodes with the authority, none if unknown
+     */
+    public int[] findByAuthority(String authority)
+    {
+        int[] nodes = byAuthority.get(authority);
+        return nodes == null ? new int[0] : nodes;
+    }
+
+    /**
+     * @return the nodes with the display value, none if unknown
+     */
+    public int[] findByValue(String value)
+    {
+        int[] nodes = byValue.get(value);
+        return nodes == null ? new int[0] : nodes;
+    }
+
+    private boolean isResearcher(int node)
+    {
+        return authorities[node] != null && authorities[node].startsWith("rp");
+    }
+
+    private boolean isInDepartment(int node, String dept)
+    {
+        return dept != null && dept.equals(departments[node]);
+    }
+
+    /**
+     * Compute the facet on the focus field of the documents linking a
+     * researcher (or a name), as the search of {@link AVisualizationGraph}:
+     * the number of documents each node shares with it, including the nodes
+     * of the researcher itself, by decreasing count then index order.
+     *
+     * @param authority
+     *            the authority of the researcher, or null
+     * @param name
+     *            the display value searched when there is no authority
+     * @param researchersOnly
+     *            only the documents linking two researchers
+     * @param dept
+     *            only the documents linking two members of this department,
+     *            null for all
+     * @param limit
+     *            maximum number of values, negative for all
+     */
+    public FacetField facet(String authority, String name, boolean researchersOnly, String dept, int limit)
+    {
+        int[] focus = authority != null && !authority.isEmpty() ? findByAuthority(authority) : findByValue(name);
+        final Map<Integer, int[]> counts = new HashMap<Integer, int[]>();
+        for (int f : focus)
+        {
+            if ((researchersOnly && !isResearcher(f)) || (dept != null && !isInDepartment(f, dept)))
+            {
+                continue;
+            }
+            int start = offsets.get(f);
+            int end = offsets.get(f + 1);
+            for (int e = start; e < end; e++)
+            {
+                int x = targets.get(e);
+                int w = weights.get(e);
+                if ((researchersOnly && !isResearcher(x)) || (dept != null && !isInDepartment(x, dept)))
+                {
+                    continue;
+                }
+                if (x == f)
+                {
+                    add(counts, f, w);
+                    continue;
+                }
+                // a document linking two nodes of the focus is counted once
+                if (x < f && Arrays.binarySearch(focus, x) >= 0)
+                {
+                    continue;
+                }
+                add(counts, f, w);
+                add(counts, x, w);
+            }
+        }
+
+        List<Integer> nodes = new ArrayList<Integer>(counts.keySet());
+        Collections.sort(nodes, new Comparator<Integer>()
+        {
+            public int compare(Integer a, Integer b)
+            {
+                int ca = counts.get(a)[0];
+                int cb = counts.get(b)[0];
+                if (ca != cb)
+                {
+                    return ca > cb ? -1 : 1;
+                }
+                return a.compareTo(b);
+            }
+        });
+        FacetField facet = new FacetField("focus");
+        int n = limit < 0 ? nodes.size() : Math.min(limit, nodes.size());
+        for (int i = 0; i < n; i++)
+        {
+            int node = nodes.get(i);
+            facet.add(labels[node], counts.get(node)[0]);
+        }
+        return facet;
+    }
+
+    private static void add(Map<Integer, int[]> counts, int node, int w)
+    {
+        int[] count = counts.get(node);
+        if (count == null)
+        {
+            counts.put(node, new int[] { w });
+        }
+        else
+        {
+            count[0] += w;
+        }
+    }
+
+    /**
+     * Write the graph, replacing the file at once.
+     */
+    public void write(File file) throws IOException
+    {
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (!dir.exists() && !dir.mkdirs())
+        {
+            throw new IOException("Unable to create " + dir);
+        }
+        File tmp = new File(dir, file.getName() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16));
+        try
+        {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(labels.length);
+            out.writeInt(targets.limit());
+            for (int i = 0; i < labels.length; i++)
+            {
+                writeString(out, labels[i]);
+                writeString(out, authorities[i]);
+                writeString(out, values[i]);
+                writeString(out, departments[i]);
+            }
+            writeInts(out, offsets);
+            writeInts(out, targets);
+            writeInts(out, weights);
+        }
+        finally
+        {
+            out.close();
+        }
+        if (!tmp.renameTo(file))
+        {
+            file.delete();
+            if (!tmp.renameTo(file))
+            {
+                throw new IOException("Unable to replace " + file);
+            }
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException
+    {
+        if (s == null)
+        {
+            out.writeInt(-1);
+        }
+        else
+        {
+            byte[] bytes = s.getBytes(UTF8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static void writeInts(DataOutputStream out, IntBuffer ints) throws IOException
+    {
+        for (int i = 0; i < ints.limit(); i++)
+        {
+            out.writeInt(ints.get(i));
+        }
+    }
+
+    /**
+     * Read a graph: the strings are read in memory, the arrays stay in the
+     * mapped file.
+     */
+    public static CollaborationGraph read(File file) throws IOException
+    {
+        long lastModified = file.lastModified();
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        MappedByteBuffer buffer;
+        try
+        {
+            // the mapping stays valid once the file is closed
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+        }
+        finally
+        {
+            raf.close();
+        }
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+        {
+            throw new IOException(file + " is not a collaboration graph of this version");
+        }
+        int n = buffer.getInt();
+        int m = buffer.getInt();
+        String[] labels = new String[n];
+        String[] authorities = new String[n];
+        String[] values = new String[n];
+        String[] departments = new String[n];
+        for (int i = 0; i < n; i++)
+        {
+            labels[i] = readString(buffer);
+            authorities[i] = readString(buffer);
+            values[i] = readString(buffer);
+            departments[i] = readString(buffer);
+        }
+        IntBuffer offsets = slice(buffer, n + 1);
+        IntBuffer targets = slice(buffer, m);
+        IntBuffer weights = slice(buffer, m);
+        CollaborationGraph graph = new CollaborationGraph(labels, authorities, values, departments, offsets, targets,
+                weights);
+        graph.lastModified = lastModified;
+        return graph;
+    }
+
+    private static String readString(ByteBuffer buffer) throws IOException
+    {
+        int length = buffer.getInt();
+        if (length < 0)
+        {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    private static IntBuffer slice(ByteBuffer buffer, int length)
+    {
+        IntBuffer ints = buffer.slice().asIntBuffer();
+        ints.limit(length);
+        buffer.position(buffer.position() + length * 4);
+        return ints;
+    }
+
+    /**
+     * Collects the links of the documents of the network core and builds
+     * the graph.
+     */
+    public static class Builder
+    {
+        private final Map<String, Integer> ids = new HashMap<String, Integer>();
+
+        private final List<String> labels = new ArrayList<String>();
+        private final List<String> authorities = new ArrayList<String>();
+        private final List<String> values = new ArrayList<String>();
+        private final List<String> departments = new ArrayList<String>();
+
+        /** weight of the links, by (smallest id, largest id) */
+        private final Map<Long, int[]> links = new HashMap<Long, int[]>();
+
+        private int node(String label, String authority, String value, String dept)
+        {
+            Integer id = ids.get(label);
+            if (id == null)
+            {
+                id = labels.size();
+                ids.put(label, id);
+                labels.add(label);
+                authorities.add(authority);
+                values.add(value);
+                departments.add(dept);
+            }
+            return id;
+        }
+
+        /**
+         * Add a document of the network core, linking a to b. A document
+         * without b only counts for a.
+         */
+        public void add(String a, String aAuthority, String aValue, String aDept, String b, String bAuthority,
+                String bValue, String bDept)
+        {
+            if (a == null)
+            {
+                return;
+            }
+            int ia = node(a, aAuthority, aValue, aDept);
+            int ib = b == null ? ia : node(b, bAuthority, bValue, bDept);
+            long key = ia < ib ? ((long) ia << 32) | ib : ((long) ib << 32) | ia;
+            int[] weight = links.get(key);
+            if (weight == null)
+            {
+                links.put(key, new int[] { 1 });
+            }
+            else
+            {
+                weight[0]++;
+            }
+        }
+
+        public CollaborationGraph build()
+        {
+            int n = labels.size();
+            // number the nodes in the index order of their labels
+            Integer[] order = new Integer[n];
+            for (int i = 0; i < n; i++)
+            {
+                order[i] = i;
+            }
+            Arrays.sort(order, new Comparator<Integer>()
+            {
+                public int compare(Integer a, Integer b)
+                {
+                    return labels.get(a).compareTo(labels.get(b));
+                }
+            });
+            int[] rank = new int[n];
+            String[] sortedLabels = new String[n];
+            String[] sortedAuthorities = new String[n];
+            String[] sortedValues = new String[n];
+            String[] sortedDepartments = new String[n];
+            for (int i = 0; i < n; i++)
+            {
+                rank[order[i]] = i;
+                sortedLabels[i] = labels.get(order[i]);
+                sortedAuthorities[i] = authorities.get(order[i]);
+                sortedValues[i] = values.get(order[i]);
+                sortedDepartments[i] = departments.get(order[i]);
+            }
+
+            int[] offsets = new int[n + 1];
+            for (Long key : links.keySet())
+            {
+                int a = rank[(int) (key >>> 32)];
+                int b = rank[(int) (long) key];
+                offsets[a + 1]++;
+                if (a != b)
+                {
+                    offsets[b + 1]++;
+                }
+            }
+            for (int i = 0; i < n; i++)
+            {
+                offsets[i + 1] += offsets[i];
+            }
+            int m = offsets[n];
+            int[] targets = new int[m];
+            int[] weights = new int[m];
+            int[] next = Arrays.copyOf(offsets, n);
+            for (Map.Entry<Long, int[]> link : links.entrySet())
+            {
+                long key = link.getKey();
+                int a = rank[(int) (key >>> 32)];
+                int b = rank[(int) key];
+                int w = link.getValue()[0];
+                targets[next[a]] = b;
+                weights[next[a]++] = w;
+                if (a != b)
+                {
+                    targets[next[b]] = a;
+                    weights[next[b]++] = w;
+                }
+            }
+            // neighbours in index order
+            for (int i = 0; i < n; i++)
+            {
+                sortRow(targets, weights, offsets[i], offsets[i + 1]);
+            }
+            return new CollaborationGraph(sortedLabels, sortedAuthorities, sortedValues, sortedDepartments,
+                    IntBuffer.wrap(offsets), IntBuffer.wrap(targets), IntBuffer.wrap(weights));
+        }
+
+        private static void sortRow(int[] targets, int[] weights, int from, int to)
+        {
+            if (to - from < 2)
+            {
+                return;
+            }
+            long[] row = new long[to - from];
+            for (int i = from; i < to; i++)
+            {
+                row[i - from] = ((long) targets[i] << 32) | (weights[i] & 0xFFFFFFFFL);
+            }
+            Arrays.sort(row);
+            for (int i = from; i < to; i++)
+            {
+                targets[i] = (int) (row[i - from] >>> 32);
+                weights[i] = (int) row[i - from];
+            }
+        }
+    }
+}
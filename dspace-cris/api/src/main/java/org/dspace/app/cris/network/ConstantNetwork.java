@@ -19,6 +19,10 @@ public class ConstantNetwork {
     public static String PREFIX_METADATA_BIBLIOMETRIC_2 = "maxstrengthcollaboration_network_";
     public static String PREFIX_METADATA_BIBLIOMETRIC_3 = "averagestrengthcollaboration_network_";
     public static String PREFIX_METADATA_BIBLIOMETRIC_4 = "quadraticvariancecollaboration_network_";
+    // optional, stored only if defined
+    public static String PREFIX_METADATA_BIBLIOMETRIC_5 = "weightedcollaboration_network_";
+    public static String PREFIX_METADATA_BIBLIOMETRIC_6 = "clusteringcollaboration_network_";
+    public static String PREFIX_METADATA_BIBLIOMETRIC_7 = "betweennesscollaboration_network_";
     
     public static String PREFIX_METADATA_BIBLIOMETRIC_1_RETRIEVE = "rp_numberscollaboration_network_";
     public static String PREFIX_METADATA_BIBLIOMETRIC_2_RETRIEVE = "rp_maxstrengthcollaboration_network_";
@@ -0,0 +1,507 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/CILEA/dspace-cris/wiki/License
+ */
+package org.dspace.app.cris.network;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Indicators of the nodes of a collaboration graph: degree, weighted degree
+ * (number of shared documents), maximum, average and deviation of the
+ * strength of the links, local clustering coefficient and betweenness.
+ * <p>
+ * The nodes of the graph with the same authority (the variants of a
+ * researcher) are merged and the self links dropped, then the indicators are
+ * computed on primitive arrays by a fork/join pool. The betweenness is
+ * estimated with the algorithm of Brandes from a sample of the sources,
+ * chosen by a seeded generator so that two runs on the same graph give the
+ * same values; it is normalised to [0, 1].
+ */
+public class NetworkMetrics
+{
+    /** nodes computed by a task without splitting it */
+    private static final int GRAIN = 256;
+
+    private final String[] keys;
+
+    /** the authority of the node, null for a node without authority */
+    private final String[] authorities;
+
+    private final Map<String, Integer> byKey;
+
+    private final int[] offsets;
+    private final int[] targets;
+    private final int[] weights;
+
+    private final int[] degree;
+    private final long[] weightedDegree;
+    private final int[] maxWeight;
+    private final double[] deviation;
+    private final double[] clustering;
+    private double[] betweenness;
+
+    private int sources;
+
+    public NetworkMetrics(CollaborationGraph graph)
+    {
+        // merge the nodes by authority
+        int n = graph.size();
+        int[] merged = new int[n];
+        byKey = new HashMap<String, Integer>();
+        for (int i = 0; i < n; i++)
+        {
+            String authority = graph.getAuthority(i);
+            String key = authority != null && !authority.isEmpty() ? authority : graph.getLabel(i);
+            Integer id = byKey.get(key);
+            if (id == null)
+            {
+                id = byKey.size();
+                byKey.put(key, id);
+            }
+            merged[i] = id;
+        }
+        int size = byKey.size();
+        keys = new String[size];
+        authorities = new String[size];
+        for (int i = 0; i < n; i++)
+        {
+            String authority = graph.getAuthority(i);
+            keys[merged[i]] = authority != null && !authority.isEmpty() ? authority : graph.getLabel(i);
+            if (authority != null && !authority.isEmpty())
+            {
+                authorities[merged[i]] = authority;
+            }
+        }
+
+        // the nodes of each merged node
+        int[] variantOffsets = new int[size + 1];
+        for (int i = 0; i < n; i++)
+        {
+            variantOffsets[merged[i] + 1]++;
+        }
+        for (int c = 0; c < size; c++)
+        {
+            variantOffsets[c + 1] += variantOffsets[c];
+        }
+        int[] variants = new int[n];
+        int[] next = Arrays.copyOf(variantOffsets, size);
+        for (int i = 0; i < n; i++)
+        {
+            variants[next[merged[i]]++] = i;
+        }
+
+        // sum the weights of the links between merged nodes, in two passes
+        // over a dense accumulator
+        int[] accumulator = new int[size];
+        int[] touched = new int[size];
+        offsets = new int[size + 1];
+        for (int c = 0; c < size; c++)
+        {
+            int count = merge(graph, merged, variants, variantOffsets, c, accumulator, touched);
+            for (int t = 0; t < count; t++)
+            {
+                accumulator[touched[t]] = 0;
+            }
+            offsets[c + 1] = offsets[c] + count;
+        }
+        targets = new int[offsets[size]];
+        weights = new int[offsets[size]];
+        for (int c = 0; c < size; c++)
+        {
+            int count = merge(graph, merged, variants, variantOffsets, c, accumulator, touched);
+            Arrays.sort(touched, 0, count);
+            for (int t = 0; t < count; t++)
+            {
+                targets[offsets[c] + t] = touched[t];
+                weights[offsets[c] + t] = accumulator[touched[t]];
+                accumulator[touched[t]] = 0;
+            }
+        }
+
+        degree = new int[size];
+        weightedDegree = new long[size];
+        maxWeight = new int[size];
+        deviation = new double[size];
+        clustering = new double[size];
+        betweenness = new double[size];
+    }
+
+    /**
+     * Accumulate the weights of the links of a merged node; the caller
+     * clears the accumulator.
+     *
+     * @return the number of neighbours, listed at the start of touched
+     */
+    private static int merge(CollaborationGraph graph, int[] merged, int[] variants, int[] variantOffsets, int c,
+            int[] accumulator, int[] touched)
+    {
+        int count = 0;
+        for (int v = variantOffsets[c]; v < variantOffsets[c + 1]; v++)
+        {
+            int node = variants[v];
+            int degree = graph.getDegree(node);
+            for (int e = 0; e < degree; e++)
+            {
+                int x = merged[graph.getNeighbour(node, e)];
+                if (x == c)
+                {
+                    continue;
+                }
+                if (accumulator[x] == 0)
+                {
+                    touched[count++] = x;
+                }
+                accumulator[x] += graph.getWeight(node, e);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Compute the indicators.
+     *
+     * @param pool
+     *            the pool running the computation
+     * @param samples
+     *            number of sources of the estimate of the betweenness, 0 (or
+     *            more than the nodes) for the exact value
+     * @param seed
+     *            seed of the choice of the sources
+     */
+    public void compute(ForkJoinPool pool, int samples, long seed)
+    {
+        int n = size();
+        pool.invoke(new LocalTask(0, n));
+
+        int[] chosen = new int[n];
+        for (int i = 0; i < n; i++)
+        {
+            chosen[i] = i;
+        }
+        sources = n;
+        if (samples > 0 && samples < n)
+        {
+            Random random = new Random(seed);
+            for (int i = 0; i < samples; i++)
+            {
+                int j = i + random.nextInt(n - i);
+                int swap = chosen[i];
+                chosen[i] = chosen[j];
+                chosen[j] = swap;
+            }
+            sources = samples;
+        }
+        if (sources == 0)
+        {
+            return;
+        }
+        int grain = Math.max(1, sources / (pool.getParallelism() * 4));
+        double[] sum = pool.invoke(new BetweennessTask(chosen, 0, sources, grain));
+        // each path is counted from both its ends, and the sample scaled to
+        // all the sources
+        double scale = (double) n / sources / 2;
+        double pairs = n > 2 ? (double) (n - 1) * (n - 2) / 2 : 1;
+        for (int i = 0; i < n; i++)
+        {
+            sum[i] = sum[i] * scale / pairs;
+        }
+        betweenness = sum;
+    }
+
+    /** degree, strength and clustering of a range of nodes */
+    private class LocalTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+
+        private final int to;
+
+        LocalTask(int from, int to)
+        {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (to - from > GRAIN)
+            {
+                int middle = (from + to) >>> 1;
+                invokeAll(new LocalTask(from, middle), new LocalTask(middle, to));
+                return;
+            }
+            for (int v = from; v < to; v++)
+            {
+                computeLocal(v);
+            }
+        }
+    }
+
+    private void computeLocal(int v)
+    {
+        int start = offsets[v];
+        int end = offsets[v + 1];
+        int k = end - start;
+        long sum = 0;
+        int max = 0;
+        for (int e = start; e < end; e++)
+        {
+            sum += weights[e];
+            max = Math.max(max, weights[e]);
+        }
+        degree[v] = k;
+        weightedDegree[v] = sum;
+        maxWeight[v] = max;
+        if (k > 0)
+        {
+            double average = (double) sum / k;
+            double squares = 0;
+            for (int e = start; e < end; e++)
+            {
+                squares += (weights[e] - average) * (weights[e] - average);
+            }
+            deviation[v] = Math.sqrt(squares / k);
+        }
+        if (k > 1)
+        {
+            // each triangle is found from its two other nodes
+            long links = 0;
+            for (int e = start; e < end; e++)
+            {
+                links += intersection(v, targets[e]);
+            }
+            clustering[v] = (double) links / ((long) k * (k - 1));
+        }
+    }
+
+    /**
+     * @return the number of common neighbours of two nodes, merging their
+     *         sorted lists
+     */
+    private int intersection(int u, int v)
+    {
+        int i = offsets[u];
+        int iEnd = offsets[u + 1];
+        int j = offsets[v];
+        int jEnd = offsets[v + 1];
+        int count = 0;
+        while (i < iEnd && j < jEnd)
+        {
+            if (targets[i] < targets[j])
+            {
+                i++;
+            }
+            else if (targets[i] > targets[j])
+            {
+                j++;
+            }
+            else
+            {
+                count++;
+                i++;
+                j++;
+            }
+        }
+        return count;
+    }
+
+    /** dependencies accumulated from a range of the sources */
+    private class BetweennessTask extends RecursiveTask<double[]>
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] sources;
+
+        private final int from;
+
+        private final int to;
+
+        private final int grain;
+
+        BetweennessTask(int[] sources, int from, int to, int grain)
+        {
+            this.sources = sources;
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+        }
+
+        @Override
+        protected double[] compute()
+        {
+            if (to - from > grain)
+            {
+                int middle = (from + to) >>> 1;
+                BetweennessTask right = new BetweennessTask(sources, middle, to, grain);
+                right.fork();
+                double[] sum = new BetweennessTask(sources, from, middle, grain).compute();
+                double[] other = right.join();
+                for (int i = 0; i < sum.length; i++)
+                {
+                    sum[i] += other[i];
+                }
+                return sum;
+            }
+            int n = size();
+            double[] sum = new double[n];
+            int[] distance = new int[n];
+            double[] paths = new double[n];
+            double[] dependency = new double[n];
+            int[] queue = new int[n];
+            Arrays.fill(distance, -1);
+            for (int s = from; s < to; s++)
+            {
+                accumulate(sources[s], sum, distance, paths, dependency, queue);
+            }
+            return sum;
+        }
+    }
+
+    /**
+     * Add the dependencies of the nodes on the shortest paths from a source,
+     * found by a breadth first visit. The predecessors of a node are its
+     * neighbours one step closer to the source, so they are not stored.
+     */
+    private void accumulate(int source, double[] sum, int[] distance, double[] paths, double[] dependency,
+            int[] queue)
+    {
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = source;
+        distance[source] = 0;
+        paths[source] = 1;
+        while (head < tail)
+        {
+            int v = queue[head++];
+            for (int e = offsets[v]; e < offsets[v + 1]; e++)
+            {
+                int w = targets[e];
+                if (distance[w] < 0)
+                {
+                    distance[w] = distance[v] + 1;
+                    queue[tail++] = w;
+                }
+                if (distance[w] == distance[v] + 1)
+                {
+                    paths[w] += paths[v];
+                }
+            }
+        }
+        for (int q = tail - 1; q > 0; q--)
+        {
+            int w = queue[q];
+            for (int e = offsets[w]; e < offsets[w + 1]; e++)
+            {
+                int v = targets[e];
+                if (distance[v] == distance[w] - 1)
+                {
+                    dependency[v] += paths[v] / paths[w] * (1 + dependency[w]);
+                }
+            }
+            sum[w] += dependency[w];
+        }
+        // reset the visited nodes only
+        for (int q = 0; q < tail; q++)
+        {
+            int v = queue[q];
+            distance[v] = -1;
+            paths[v] = 0;
+            dependency[v] = 0;
+        }
+    }
+
+    /**
+     * @return the number of (merged) nodes
+     */
+    public int size()
+    {
+        return keys.length;
+    }
+
+    /**
+     * @return the number of sources of the last computation of the
+     *         betweenness
+     */
+    public int getSources()
+    {
+        return sources;
+    }
+
+    /**
+     * @return the node of an authority (or label), -1 if unknown
+     */
+    public int indexOf(String key)
+    {
+        Integer id = byKey.get(key);
+        return id == null ? -1 : id;
+    }
+
+    public String getKey(int node)
+    {
+        return keys[node];
+    }
+
+    /**
+     * @return the authority of the node, null if it has none
+     */
+    public String getAuthority(int node)
+    {
+        return authorities[node];
+    }
+
+    /**
+     * @return the number of distinct collaborators
+     */
+    public int getDegree(int node)
+    {
+        return degree[node];
+    }
+
+    /**
+     * @return the sum of the strength of the links
+     */
+    public long getWeightedDegree(int node)
+    {
+        return weightedDegree[node];
+    }
+
+    public int getMaxWeight(int node)
+    {
+        return maxWeight[node];
+    }
+
+    public double getAverageWeight(int node)
+    {
+        return degree[node] == 0 ? 0 : (double) weightedDegree[node] / degree[node];
+    }
+
+    /**
+     * @return the standard deviation of the strength of the links
+     */
+    public double getDeviation(int node)
+    {
+        return deviation[node];
+    }
+
+    public double getClustering(int node)
+    {
+        return clustering[node];
+    }
+
+    public double getBetweenness(int node)
+    {
+        return betweenness[node];
+    }
+}
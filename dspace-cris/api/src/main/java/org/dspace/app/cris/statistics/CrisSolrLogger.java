@@ -8,9 +8,16 @@
 package org.dspace.app.cris.statistics;
 
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
 import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrRequest;
 import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.response.FacetField;
 import org.apache.solr.client.solrj.response.QueryResponse;
 import org.apache.solr.common.SolrDocumentList;
 import org.dspace.app.cris.model.CrisConstants;
@@ -54,6 +61,45 @@ public class CrisSolrLogger extends SolrLogger
         }
 
 	}
+
+    /**
+     * Count the accesses of many objects with a single facet query, with the
+     * same filters of {@link #query(String, int)}. The values are sent in the
+     * body of the request, as they can be thousands.
+     * 
+     * @param query
+     *            the query of the accesses to count
+     * @param facetField
+     *            the field to group by (e.g. search.uniqueid)
+     * @param values
+     *            the values of the field to count
+     * @return the number of accesses by value, the values without accesses
+     *         are missing
+     */
+    public Map<String, Long> queryFacetCounts(String query, String facetField,
+            Collection<String> values) throws SolrServerException
+    {
+        Map<String, Long> counts = new HashMap<String, Long>();
+        if (values.isEmpty() || getSolr() == null)
+        {
+            return counts;
+        }
+        SolrQuery solrQuery = buildQuery(query, null, facetField, 0,
+                values.size(), null, null, null, 1, null, null, false);
+        solrQuery.addFilterQuery("{!terms f=" + facetField + "}"
+                + StringUtils.join(values, ","));
+        QueryResponse response = getSolr().query(solrQuery,
+                SolrRequest.METHOD.POST);
+        FacetField field = response.getFacetField(facetField);
+        if (field != null && field.getValues() != null)
+        {
+            for (FacetField.Count count : field.getValues())
+            {
+                counts.put(count.getName(), count.getCount());
+            }
+        }
+        return counts;
+    }
 	
     
 }
@@ -7,7 +7,9 @@
  */
 package org.dspace.app.cris.statistics.plugin;
 
+import java.sql.SQLException;
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.commons.lang3.StringUtils;
@@ -16,6 +18,7 @@ import org.dspace.app.cris.metrics.common.model.CrisMetrics;
 import org.dspace.app.cris.metrics.common.services.MetricsPersistenceService;
 import org.dspace.app.cris.service.ApplicationService;
 import org.dspace.content.generator.DateValueGenerator;
+import org.dspace.core.Context;
 
 public abstract class AStatsIndicatorsPlugin implements StatsIndicatorsPlugin
 {
@@ -29,6 +32,9 @@ public abstract class AStatsIndicatorsPlugin implements StatsIndicatorsPlugin
     private String filterDefault;
 
     private boolean renewMetricsCache = true;
+
+    /** the objects read, counted and saved together */
+    private int pageSize = 1000;
     
     @Override
     public String getName()
@@ -45,6 +51,18 @@ public abstract class AStatsIndicatorsPlugin implements StatsIndicatorsPlugin
             String uuid, Integer resourceType, Integer resourceId, Object value,
             String metricsType, Date startDate, Date endDate,
             Map<String, String> maps)
+    {
+        pService.saveOrUpdate(CrisMetrics.class,
+                newIndicator(uuid, resourceType, resourceId, value,
+                        metricsType, startDate, endDate, maps));
+    }
+
+    /**
+     * @return the indicator, not saved
+     */
+    public static CrisMetrics newIndicator(String uuid, Integer resourceType,
+            Integer resourceId, Object value, String metricsType,
+            Date startDate, Date endDate, Map<String, String> maps)
     {
         CrisMetrics indicator = new CrisMetrics();
 
@@ -73,8 +91,19 @@ public abstract class AStatsIndicatorsPlugin implements StatsIndicatorsPlugin
         indicator.setStartDate(startDate);
         indicator.setEndDate(endDate);
         indicator.setMetricType(metricsType);
+        return indicator;
+    }
 
-        pService.saveOrUpdate(CrisMetrics.class, indicator);
+    /**
+     * Save a page of indicators in a single transaction.
+     */
+    public static void saveIndicators(Context context,
+            MetricsPersistenceService pService, List<CrisMetrics> indicators)
+            throws SQLException
+    {
+        pService.saveMetrics(context, indicators);
+        context.commit();
+        indicators.clear();
     }
 
     public boolean isRenewMetricsCache()
@@ -87,6 +116,16 @@ public abstract class AStatsIndicatorsPlugin implements StatsIndicatorsPlugin
         this.renewMetricsCache = renewMetricsCache;
     }
 
+    public int getPageSize()
+    {
+        return pageSize;
+    }
+
+    public void setPageSize(int pageSize)
+    {
+        this.pageSize = pageSize;
+    }
+
     public String getQueryDefault()
     {
         return queryDefault;
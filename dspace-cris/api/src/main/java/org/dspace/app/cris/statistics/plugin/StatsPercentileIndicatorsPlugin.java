@@ -7,6 +7,8 @@
  */
 package org.dspace.app.cris.statistics.plugin;
 
+import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
@@ -17,8 +19,10 @@ import org.apache.solr.client.solrj.SolrQuery.ORDER;
 import org.apache.solr.client.solrj.response.QueryResponse;
 import org.apache.solr.common.SolrDocument;
 import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.params.CursorMarkParams;
 import org.dspace.app.cris.discovery.CrisSearchService;
 import org.dspace.app.cris.metrics.common.model.ConstantMetrics;
+import org.dspace.app.cris.metrics.common.model.CrisMetrics;
 import org.dspace.app.cris.metrics.common.services.MetricsPersistenceService;
 import org.dspace.app.cris.service.ApplicationService;
 import org.dspace.app.cris.statistics.CrisSolrLogger;
@@ -64,31 +68,53 @@ public class StatsPercentileIndicatorsPlugin extends AStatsIndicatorsPlugin
 	        }
         }
         query.setFields("search.resourceid", "search.resourcetype", "handle", "cris-uuid");
+        // the ranking is read by pages, the unique id breaks the ties
+        query.addSort("search.uniqueid", ORDER.asc);
+        query.setRows(getPageSize());
 
-        query.setRows(Integer.MAX_VALUE);
-
-        QueryResponse response = searchService.search(query);
-        SolrDocumentList results = response.getResults();
+        List<CrisMetrics> indicators = new ArrayList<CrisMetrics>();
+        String cursorMark = CursorMarkParams.CURSOR_MARK_START;
         int position = 1;
         Date endDate = new Date();
-        for (SolrDocument doc : results)
+        while (true)
         {
-            Integer resourceType = (Integer) doc
-                    .getFirstValue("search.resourcetype");
-            Integer resourceId = (Integer) doc
-                    .getFirstValue("search.resourceid");
-
-            String uuid = (String) doc
-                    .getFirstValue(resourceType == Constants.ITEM
-                            ? "handle" : "cris-uuid");
+            query.set(CursorMarkParams.CURSOR_MARK_PARAM, cursorMark);
+            QueryResponse response = searchService.search(query);
+            SolrDocumentList results = response.getResults();
             long numFound = results.getNumFound();
-			double percentile = ((double) position)/((double) numFound);
-            
-            buildIndicator(pService, applicationService, uuid, resourceType,
-                    resourceId, percentile,
-                    metrics + ConstantMetrics.SUFFIX_STATS_INDICATOR_TYPE_RANKING,
-                    null, endDate, null);
-            position++;
+            for (SolrDocument doc : results)
+            {
+                Integer resourceType = (Integer) doc
+                        .getFirstValue("search.resourcetype");
+                Integer resourceId = (Integer) doc
+                        .getFirstValue("search.resourceid");
+
+                String uuid = (String) doc
+                        .getFirstValue(resourceType == Constants.ITEM
+                                ? "handle" : "cris-uuid");
+                double percentile = ((double) position)/((double) numFound);
+
+                indicators.add(newIndicator(uuid, resourceType, resourceId,
+                        percentile,
+                        metrics + ConstantMetrics.SUFFIX_STATS_INDICATOR_TYPE_RANKING,
+                        null, endDate, null));
+                position++;
+            }
+            try
+            {
+                saveIndicators(context, pService, indicators);
+            }
+            catch (SQLException e)
+            {
+                throw new RuntimeException(e.getMessage(), e);
+            }
+
+            String nextCursorMark = response.getNextCursorMark();
+            if (results.isEmpty() || cursorMark.equals(nextCursorMark))
+            {
+                break;
+            }
+            cursorMark = nextCursorMark;
         }
 
         if(isRenewMetricsCache()) {
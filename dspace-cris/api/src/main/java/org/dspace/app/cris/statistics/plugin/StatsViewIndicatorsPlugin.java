@@ -8,25 +8,31 @@
 package org.dspace.app.cris.statistics.plugin;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
 import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrQuery.ORDER;
 import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.client.solrj.response.QueryResponse;
 import org.apache.solr.common.SolrDocument;
 import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.params.CursorMarkParams;
 import org.dspace.app.cris.discovery.CrisSearchService;
 import org.dspace.app.cris.metrics.common.model.ConstantMetrics;
+import org.dspace.app.cris.metrics.common.model.CrisMetrics;
 import org.dspace.app.cris.metrics.common.services.MetricsPersistenceService;
 import org.dspace.app.cris.model.CrisConstants;
 import org.dspace.app.cris.service.ApplicationService;
 import org.dspace.app.cris.statistics.CrisSolrLogger;
-import org.dspace.content.DSpaceObject;
 import org.dspace.core.ConfigurationManager;
 import org.dspace.core.Constants;
 import org.dspace.core.Context;
@@ -45,6 +51,9 @@ public class StatsViewIndicatorsPlugin extends AStatsIndicatorsPlugin
 
     private String resourceTypeString;
 
+    /** the unique ids of the bitstreams of the original bundle of the items */
+    private static final String FIELD_BITSTREAMS = "ORIGINAL_mvuntokenized";
+
     @Override
     public void buildIndicator(Context context,
             ApplicationService applicationService, CrisSolrLogger statsService,
@@ -68,110 +77,50 @@ public class StatsViewIndicatorsPlugin extends AStatsIndicatorsPlugin
         else if(StringUtils.isNotBlank(getFilterDefault())) {
             query.addFilterQuery(getFilterDefault());    
         }
-        query.setFields("search.resourceid", "search.resourcetype",
-                resourceTypeId == Constants.ITEM ? "handle" : "cris-uuid",resourceTypeId >= CrisConstants.CRIS_DYNAMIC_TYPE_ID_START ? "crisdo.name": "objectname","crisdo.type");
-        query.setRows(Integer.MAX_VALUE);
+        query.setFields("search.uniqueid", "search.resourceid", "search.resourcetype",
+                resourceTypeId == Constants.ITEM ? "handle" : "cris-uuid", "crisdo.type",
+                FIELD_BITSTREAMS, "withdrawn");
+        // the objects are read by pages and the accesses of each page are
+        // counted by a few facet queries on the statistics
+        query.setSort("search.uniqueid", ORDER.asc);
+        query.setRows(getPageSize());
 
         try
         {
-            QueryResponse response = searchService.search(query);
-            SolrDocumentList docList = response.getResults();
-            Iterator<SolrDocument> solrDoc = docList.iterator();
+            List<CrisMetrics> indicators = new ArrayList<CrisMetrics>();
+            Date acquisitionDate = new Date();
+            String cursorMark = CursorMarkParams.CURSOR_MARK_START;
             int count = 0;
-            
-            String dspaceURL = ConfigurationManager.getProperty("dspace.url");
-            String searchCore = ConfigurationManager.getProperty("solr-statistics",
-    				"solr.join.core");
-            String joinQuery = "{!join from=ORIGINAL_mvuntokenized to=search.uniqueid fromIndex=" +searchCore+"}";
-            String baseItemURL = dspaceURL  + "/cris/stats/item.html?handle=";
-            String baseCRISURL = dspaceURL+ "/cris/stats/";
-            while (solrDoc.hasNext())
+            while (true)
             {
-            	count++;
-            	Date start = new Date();
-            	SolrDocument doc = solrDoc.next();
-                String uuid = (String) doc
-                        .getFirstValue(resourceTypeId == Constants.ITEM
-                                ? "handle" : "cris-uuid");
-                
-                Integer resourceType = (Integer) doc
-                        .getFirstValue("search.resourcetype");
-                Integer resourceId = (Integer) doc
-                        .getFirstValue("search.resourceid");
+                Date start = new Date();
+                query.set(CursorMarkParams.CURSOR_MARK_PARAM, cursorMark);
+                QueryResponse response = searchService.search(query);
+                SolrDocumentList docList = response.getResults();
                 try
                 {
-
-                    Date acquisitionDate = new Date();
-                    String url = "";
-                    Map<String, String> remark = new HashMap<String, String>();
-                    if(resourceType == Constants.ITEM) {
-	                    QueryResponse qr = statsService.query("search.uniqueid:"+ resourceTypeId+"-"+resourceId,  Integer.MAX_VALUE);
-	                    url =  baseItemURL+ uuid;
-	                    remark.put("link", url);
-	                    buildIndicator(pService, applicationService,
-	                            uuid, resourceType, resourceId,
-	                            qr.getResults().getNumFound(),
-	                            ConstantMetrics.STATS_INDICATOR_TYPE_VIEW,
-	                            null, acquisitionDate, remark);
-	
-	                    qr = statsService.query(joinQuery+ "search.resourceid:"+resourceId+" AND -withdrawn:true",  Integer.MAX_VALUE);
-	                    remark.clear();
-	                    remark.put("link", url +"&amp;type=bitstream" );
-	                    buildIndicator(pService, applicationService,
-	                            uuid, resourceType, resourceId,
-	                            qr.getResults().getNumFound(),
-	                            ConstantMetrics.STATS_INDICATOR_TYPE_DOWNLOAD,
-	                            null, acquisitionDate, remark);
-	                    try {
-							DSpaceObject dspaceObject = DSpaceObject.find(context, resourceType, resourceId);
-							context.removeCached(dspaceObject, resourceId);
-						} catch (SQLException | NullPointerException e) {
-							log.warn(e);
-						}
-                    }else {
-                    	String publicPath ="";
-                    	switch (resourceType) {
-                    		case(CrisConstants.RP_TYPE_ID):
-                    			publicPath ="rp";
-                    			break;
-                    		case(CrisConstants.PROJECT_TYPE_ID):
-                    			publicPath ="pj";
-                    			break;
-                    		case(CrisConstants.OU_TYPE_ID):
-                    			publicPath ="ou";
-                    			break;
-                    		default:
-                    			publicPath= (String) doc.get("crisdo.type");
-                    		}
-                    	url = baseCRISURL + publicPath  + ".html?id="+ resourceId;
-	                    remark.put("link", url);
-	                    QueryResponse qr = statsService.query(resourceTypeId+"-"+resourceId,  Integer.MAX_VALUE);
-	                    buildIndicator(pService, applicationService,
-	                            uuid, resourceType, resourceId,
-	                            qr.getResults().getNumFound(),
-	                            ConstantMetrics.STATS_INDICATOR_TYPE_VIEW,
-	                            null, acquisitionDate, remark);
-	                    remark.clear();
-                        remark.put("link", url+"&amp;type=bitstream");
-                        
-                        qr = statsService.query(resourceTypeId+"-"+resourceId, "sectionid:*", null,0, Integer.MAX_VALUE, null, null, null, null, null, false);
-                        buildIndicator(pService, applicationService,
-                                uuid, resourceType, resourceId,
-                                qr.getResults().getNumFound(),
-                                ConstantMetrics.STATS_INDICATOR_TYPE_DOWNLOAD,
-                                null, acquisitionDate, remark);
-                    }
-                    if (count % 100 == 0) {
-                    	applicationService.clearCache();
-                    }
-                    Date end = new Date();
-                    long diff = end.getTime() - start.getTime();
-                    System.out.println("VIEW and DOWNLOAD METRICS done for :"+count +" in "+ diff);
+                    buildPage(statsService, docList, acquisitionDate, indicators);
+                    saveIndicators(context, pService, indicators);
                 }
                 catch (SolrServerException e)
                 {
                     log.error("Error retrieving stats", e);
+                    indicators.clear();
                 }
+                catch (SQLException e)
+                {
+                    throw new RuntimeException(e.getMessage(), e);
+                }
+                count += docList.size();
+                long diff = new Date().getTime() - start.getTime();
+                System.out.println("VIEW and DOWNLOAD METRICS done for :"+count +" of "+ docList.getNumFound() +" in "+ diff);
+
+                String nextCursorMark = response.getNextCursorMark();
+                if (docList.isEmpty() || cursorMark.equals(nextCursorMark))
+                {
+                    break;
+                }
+                cursorMark = nextCursorMark;
             }
             if(isRenewMetricsCache()) {
                 searchService.renewMetricsCache();
@@ -183,6 +132,121 @@ public class StatsViewIndicatorsPlugin extends AStatsIndicatorsPlugin
         }
     }
 
+    /**
+     * Build the view and download indicators of a page of objects: the views
+     * with one query, the downloads with another one (the accesses of the
+     * bitstreams of the items, or of the sections of the cris objects).
+     */
+    private void buildPage(CrisSolrLogger statsService,
+            SolrDocumentList docList, Date acquisitionDate,
+            List<CrisMetrics> indicators) throws SolrServerException
+    {
+        List<String> uniqueIds = new ArrayList<String>(docList.size());
+        List<String> crisIds = new ArrayList<String>();
+        Set<String> bitstreams = new HashSet<String>();
+        for (SolrDocument doc : docList)
+        {
+            String uniqueId = (String) doc.getFirstValue("search.uniqueid");
+            uniqueIds.add(uniqueId);
+            Integer resourceType = (Integer) doc
+                    .getFirstValue("search.resourcetype");
+            if (resourceType == Constants.ITEM)
+            {
+                bitstreams.addAll(getBitstreams(doc));
+            }
+            else
+            {
+                crisIds.add(uniqueId);
+            }
+        }
+        Map<String, Long> views = statsService.queryFacetCounts("*:*",
+                "search.uniqueid", uniqueIds);
+        Map<String, Long> bitstreamDownloads = statsService
+                .queryFacetCounts("*:*", "search.uniqueid", bitstreams);
+        Map<String, Long> sectionDownloads = statsService
+                .queryFacetCounts("sectionid:*", "search.uniqueid", crisIds);
+
+        String dspaceURL = ConfigurationManager.getProperty("dspace.url");
+        String baseItemURL = dspaceURL  + "/cris/stats/item.html?handle=";
+        String baseCRISURL = dspaceURL+ "/cris/stats/";
+        for (SolrDocument doc : docList)
+        {
+            String uniqueId = (String) doc.getFirstValue("search.uniqueid");
+            String uuid = (String) doc
+                    .getFirstValue(resourceTypeId == Constants.ITEM
+                            ? "handle" : "cris-uuid");
+            Integer resourceType = (Integer) doc
+                    .getFirstValue("search.resourcetype");
+            Integer resourceId = (Integer) doc
+                    .getFirstValue("search.resourceid");
+
+            String url = "";
+            long downloads = 0;
+            if(resourceType == Constants.ITEM) {
+                url =  baseItemURL+ uuid;
+                for (String bitstream : getBitstreams(doc))
+                {
+                    downloads += getCount(bitstreamDownloads, bitstream);
+                }
+            }else {
+            	String publicPath ="";
+            	switch (resourceType) {
+            		case(CrisConstants.RP_TYPE_ID):
+            			publicPath ="rp";
+            			break;
+            		case(CrisConstants.PROJECT_TYPE_ID):
+            			publicPath ="pj";
+            			break;
+            		case(CrisConstants.OU_TYPE_ID):
+            			publicPath ="ou";
+            			break;
+            		default:
+            			publicPath= (String) doc.getFirstValue("crisdo.type");
+            		}
+            	url = baseCRISURL + publicPath  + ".html?id="+ resourceId;
+                downloads = getCount(sectionDownloads, uniqueId);
+            }
+
+            Map<String, String> remark = new HashMap<String, String>();
+            remark.put("link", url);
+            indicators.add(newIndicator(uuid, resourceType, resourceId,
+                    getCount(views, uniqueId),
+                    ConstantMetrics.STATS_INDICATOR_TYPE_VIEW, null,
+                    acquisitionDate, remark));
+
+            remark = new HashMap<String, String>();
+            remark.put("link", url + "&amp;type=bitstream");
+            indicators.add(newIndicator(uuid, resourceType, resourceId,
+                    downloads, ConstantMetrics.STATS_INDICATOR_TYPE_DOWNLOAD,
+                    null, acquisitionDate, remark));
+        }
+    }
+
+    /**
+     * @return the unique ids of the bitstreams of the original bundle of an
+     *         item, none for the withdrawn items
+     */
+    private Set<String> getBitstreams(SolrDocument doc)
+    {
+        Set<String> bitstreams = new HashSet<String>();
+        Collection<Object> values = doc.getFieldValues(FIELD_BITSTREAMS);
+        if (values != null
+                && !"true".equals(String.valueOf(doc.getFirstValue("withdrawn"))))
+        {
+            for (Object value : values)
+            {
+                bitstreams.add((String) value);
+            }
+        }
+        return bitstreams;
+    }
+
+    private static long getCount(Map<String, Long> counts, String key)
+    {
+        Long count = counts.get(key);
+        return count != null ? count : 0;
+    }
+
     public Integer getResourceTypeId()
     {
         return resourceTypeId;
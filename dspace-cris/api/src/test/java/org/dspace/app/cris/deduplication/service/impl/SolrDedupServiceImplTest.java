@@ -0,0 +1,63 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/CILEA/dspace-cris/wiki/License
+ */
+package org.dspace.app.cris.deduplication.service.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Unit tests of the pairing of the batch mode of {@link SolrDedupServiceImpl}.
+ */
+public class SolrDedupServiceImplTest
+{
+    private static final List<String> KEYS = Arrays.asList("title:abc", "title:def", "similartitle:b0_1");
+
+    private static final List<int[]> BUCKETS = Arrays.asList(new int[] { 1, 5, 9 }, new int[] { 5, 9 },
+            new int[] { 2, 5, 7, 9 });
+
+    private static long pair(int first, int second)
+    {
+        return ((long) first << 32) | second;
+    }
+
+    @Test
+    public void testSignaturesSharedByEachPair()
+    {
+        Map<Long, Map<String, List<String>>> pairs = SolrDedupServiceImpl.pairs(KEYS, BUCKETS, 1, null);
+        // 1-5 1-9 5-9 2-5 2-7 2-9 5-7 7-9
+        assertEquals(8, pairs.size());
+        assertEquals(Arrays.asList("abc", "def"), pairs.get(pair(5, 9)).get("title"));
+        assertEquals(Arrays.asList("b0_1"), pairs.get(pair(5, 9)).get("similartitle"));
+        assertEquals(Arrays.asList("abc"), pairs.get(pair(1, 9)).get("title"));
+        assertEquals(null, pairs.get(pair(2, 7)).get("title"));
+    }
+
+    @Test
+    public void testChunksPartitionThePairs()
+    {
+        Map<Long, Map<String, List<String>>> all = SolrDedupServiceImpl.pairs(KEYS, BUCKETS, 1, null);
+        Map<Long, Map<String, List<String>>> chunks = new HashMap<Long, Map<String, List<String>>>();
+        int[] bounds = { 1, 3, 6, 8 };
+        for (int c = 0; c < bounds.length; c++)
+        {
+            Integer to = c + 1 < bounds.length ? bounds[c + 1] : null;
+            for (Map.Entry<Long, Map<String, List<String>>> entry : SolrDedupServiceImpl.pairs(KEYS, BUCKETS,
+                    bounds[c], to).entrySet())
+            {
+                assertEquals(null, chunks.put(entry.getKey(), entry.getValue()));
+            }
+        }
+        assertEquals(all, chunks);
+    }
+}
@@ -0,0 +1,117 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/CILEA/dspace-cris/wiki/License
+ */
+package org.dspace.app.cris.deduplication.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link MinHashSignature}.
+ */
+public class MinHashSignatureTest
+{
+    private MinHashSignature signature;
+
+    @Before
+    public void setUp()
+    {
+        signature = new MinHashSignature();
+    }
+
+    private static Set<String> shared(List<String> first, List<String> second)
+    {
+        Set<String> shared = new HashSet<String>(first);
+        shared.retainAll(second);
+        return shared;
+    }
+
+    @Test
+    public void testOneKeyByBand()
+    {
+        List<String> keys = signature.getKeys("A study of the effects of climate change");
+        assertEquals(signature.getBands(), keys.size());
+        for (int b = 0; b < keys.size(); b++)
+        {
+            assertTrue(keys.get(b), keys.get(b).startsWith("b" + b + "_"));
+        }
+    }
+
+    @Test
+    public void testCaseAndPunctuationAreIgnored()
+    {
+        assertEquals(signature.getKeys("Proceedings of the 12th conference"),
+                signature.getKeys("proceedings OF the 12th   conference!!"));
+    }
+
+    @Test
+    public void testNearIdenticalTitlesShareABand()
+    {
+        List<String> first = signature.getKeys(
+                "A study of the effects of climate change on alpine plant communities");
+        List<String> second = signature.getKeys(
+                "A Study of the Effect of Climate Change on Alpine Plant Communities.");
+        assertFalse(first.equals(second));
+        assertFalse(shared(first, second).isEmpty());
+    }
+
+    @Test
+    public void testUnrelatedTitlesShareNoBand()
+    {
+        assertTrue(shared(signature.getKeys("Quantum chromodynamics on the lattice"),
+                signature.getKeys("Medieval trade routes of the Baltic sea")).isEmpty());
+    }
+
+    @Test
+    public void testNoKeyWithoutWords()
+    {
+        assertTrue(signature.getKeys("!!! ...").isEmpty());
+    }
+
+    @Test
+    public void testKeysDependOnTheSeed()
+    {
+        String title = "A study of the effects of climate change";
+        List<String> keys = signature.getKeys(title);
+        signature.setSeed(42);
+        assertTrue(shared(keys, signature.getKeys(title)).isEmpty());
+    }
+
+    @Test
+    public void testKeysFollowTheBands()
+    {
+        signature.setBands(4);
+        signature.setRows(3);
+        assertEquals(4, signature.getKeys("A study of the effects of climate change").size());
+    }
+
+    @Test
+    public void testKeysDontDependOnTheLocale()
+    {
+        String title = "INFLUENCE OF IRRIGATION ON INDIAN RICE";
+        List<String> keys = signature.getKeys(title);
+        Locale locale = Locale.getDefault();
+        try
+        {
+            Locale.setDefault(new Locale("tr", "TR"));
+            assertEquals(keys, signature.getKeys(title));
+        }
+        finally
+        {
+            Locale.setDefault(locale);
+        }
+    }
+}
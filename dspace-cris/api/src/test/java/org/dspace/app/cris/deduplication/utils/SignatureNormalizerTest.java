@@ -0,0 +1,93 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/CILEA/dspace-cris/wiki/License
+ */
+package org.dspace.app.cris.deduplication.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Locale;
+
+import org.junit.Test;
+
+import com.ibm.icu.text.CharsetDetector;
+import com.ibm.icu.text.CharsetMatch;
+import com.ibm.icu.text.Normalizer;
+
+/**
+ * Unit tests for {@link SignatureNormalizer}: the values normalised for the
+ * title signatures must be the ones of the previous implementation, or the
+ * signatures already indexed would no longer match.
+ */
+public class SignatureNormalizerTest
+{
+    private static final String[] TITLES = {
+            "A study of the effects of climate change",
+            "Étude des écosystèmes côtiers, vol. 2",
+            "Über die Straße: Maßnahmen 2019-2020",
+            "Análise da produção científica (1990^2000)",
+            "ISTANBUL BIR GECE ICIN NOTLAR",
+            "Istanbul'da Tarih ve Iktisat",
+            "İstanbul ılık İzmir ışık",
+            "Κβαντική Πληροφορία και Ιστορία",
+            "История Института",
+            "Ⅻ chapters ½ done",
+            "",
+            "!!! ...",
+    };
+
+    /** the normalisation of the title signatures before SignatureNormalizer */
+    private static String previous(String value, boolean digits)
+    {
+        String norm = Normalizer.normalize(value, Normalizer.NFD);
+        CharsetDetector cd = new CharsetDetector();
+        cd.setText(value.getBytes());
+        CharsetMatch detect = cd.detect();
+        String regex = digits ? "[^\\p{L}^\\p{N}]" : "[^\\p{L}]";
+        if (detect != null && detect.getLanguage() != null)
+        {
+            return norm.replaceAll(regex, "").toLowerCase(new Locale(detect.getLanguage()));
+        }
+        return norm.replaceAll(regex, "").toLowerCase();
+    }
+
+    @Test
+    public void testSameAsPreviousNormalization()
+    {
+        for (String title : TITLES)
+        {
+            assertEquals(title, previous(title, false), SignatureNormalizer.normalize(title, false));
+            assertEquals(title, previous(title, true), SignatureNormalizer.normalize(title, true));
+        }
+    }
+
+    @Test
+    public void testTurkishDetectionIsKept()
+    {
+        // the dotless lower case of 'I' depends on the detected language
+        for (String title : new String[] { "ISTANBUL BIR GECE ICIN NOTLAR", "Istanbul'da Tarih ve Iktisat" })
+        {
+            assertEquals(previous(title, false), SignatureNormalizer.normalize(title, false));
+        }
+    }
+
+    @Test
+    public void testLettersAndDigits()
+    {
+        assertEquals("cafeaulait", SignatureNormalizer.normalize("Café, au lait!", false));
+        assertEquals("titlend", SignatureNormalizer.normalize("Title 2nd", false));
+        assertEquals("title2nded", SignatureNormalizer.normalize("Title 2nd ed.", true));
+        assertEquals("a^b", SignatureNormalizer.normalize("a ^ b", true));
+    }
+
+    @Test
+    public void testWords()
+    {
+        assertEquals("etude des ecosystemes cotiers vol 2",
+                SignatureNormalizer.words("Étude des écosystèmes côtiers, vol. 2"));
+        assertEquals("", SignatureNormalizer.words("!!! ..."));
+    }
+}
@@ -0,0 +1,198 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/CILEA/dspace-cris/wiki/License
+ */
+package org.dspace.app.cris.network;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+
+import org.apache.solr.client.solrj.response.FacetField;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit tests of {@link CollaborationGraph}: the facets are compared with the
+ * counts Solr returns for the documents of the network core the graph is
+ * built from.
+ */
+public class CollaborationGraphTest
+{
+    private static final String ALICE = "alice##rp1";
+
+    private static final String ALICE2 = "alice2##rp1";
+
+    private static final String BOB = "bob##rp2";
+
+    private static final String CAROL = "carol##rp3";
+
+    private static final String DAVE = "dave";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private CollaborationGraph graph;
+
+    /**
+     * Two names of the researcher rp1, two other researchers of the
+     * departments D1 and D2, and a name without authority nor department.
+     */
+    @Before
+    public void setUp()
+    {
+        CollaborationGraph.Builder builder = new CollaborationGraph.Builder();
+        // 1, 2: alice - bob
+        add(builder, ALICE, BOB);
+        add(builder, ALICE, BOB);
+        // 3: alice - carol
+        add(builder, ALICE, CAROL);
+        // 4: alice - dave
+        add(builder, ALICE, DAVE);
+        // 5: the two names of rp1
+        add(builder, ALICE2, ALICE);
+        // 6: alice alone
+        add(builder, ALICE, null);
+        // 7: alice2 - bob
+        add(builder, ALICE2, BOB);
+        // 8: not linked to rp1
+        add(builder, BOB, CAROL);
+        graph = builder.build();
+    }
+
+    private static void add(CollaborationGraph.Builder builder, String a, String b)
+    {
+        builder.add(a, authority(a), value(a), department(a), b, authority(b), value(b), department(b));
+    }
+
+    private static String authority(String label)
+    {
+        return label == null || label.indexOf("##") < 0 ? null : label.substring(label.indexOf("##") + 2);
+    }
+
+    private static String value(String label)
+    {
+        return label == null ? null : label.split("##")[0];
+    }
+
+    private static String department(String label)
+    {
+        if (label == null || DAVE.equals(label))
+        {
+            return null;
+        }
+        return CAROL.equals(label) ? "D2" : "D1";
+    }
+
+    private static String counts(FacetField facet)
+    {
+        StringBuilder sb = new StringBuilder();
+        for (FacetField.Count count : facet.getValues())
+        {
+            if (sb.length() > 0)
+            {
+                sb.append(",");
+            }
+            sb.append(count.getName()).append("=").append(count.getCount());
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void testStructure()
+    {
+        assertEquals(5, graph.size());
+        // 7 links, one of them a self link
+        assertEquals(13, graph.getEdgeCount());
+        assertEquals(ALICE, graph.getLabel(0));
+        assertEquals(DAVE, graph.getLabel(4));
+        assertEquals(5, graph.getDegree(0));
+        // alice - bob, in index order after alice - alice and alice - alice2
+        assertEquals(2, graph.getNeighbour(0, 2));
+        assertEquals(2, graph.getWeight(0, 2));
+        assertEquals(2, graph.findByAuthority("rp1").length);
+        assertEquals(0, graph.findByAuthority("rp9").length);
+    }
+
+    /**
+     * The documents of the researcher, counting once the document linking
+     * its two names.
+     */
+    @Test
+    public void testFacetOfResearcher()
+    {
+        assertEquals(ALICE + "=6," + BOB + "=3," + ALICE2 + "=2," + CAROL + "=1," + DAVE + "=1",
+                counts(graph.facet("rp1", null, false, null, -1)));
+        assertEquals(ALICE + "=6," + BOB + "=3", counts(graph.facet("rp1", null, false, null, 2)));
+    }
+
+    @Test
+    public void testFacetOfName()
+    {
+        assertEquals(ALICE + "=1," + DAVE + "=1", counts(graph.facet(null, "dave", false, null, -1)));
+        assertEquals(ALICE + "=1," + DAVE + "=1", counts(graph.facet("", "dave", false, null, -1)));
+    }
+
+    @Test
+    public void testFacetOfUnknown()
+    {
+        assertEquals("", counts(graph.facet("rp9", null, false, null, -1)));
+        assertEquals("", counts(graph.facet(null, "nobody", false, null, -1)));
+    }
+
+    @Test
+    public void testFacetOfResearchersOnly()
+    {
+        assertEquals(ALICE + "=5," + BOB + "=3," + ALICE2 + "=2," + CAROL + "=1",
+                counts(graph.facet("rp1", null, true, null, -1)));
+        assertEquals("", counts(graph.facet(null, "dave", true, null, -1)));
+    }
+
+    @Test
+    public void testFacetOfDepartment()
+    {
+        assertEquals(ALICE + "=4," + BOB + "=3," + ALICE2 + "=2", counts(graph.facet("rp1", null, false, "D1", -1)));
+        assertEquals("", counts(graph.facet("rp1", null, false, "D2", -1)));
+        assertEquals(BOB + "=3," + ALICE + "=2," + ALICE2 + "=1", counts(graph.facet("rp2", null, false, "D1", -1)));
+    }
+
+    @Test
+    public void testWriteAndRead() throws Exception
+    {
+        File file = new File(folder.getRoot(), "graphs/coauthors-9.graph");
+        graph.write(file);
+        CollaborationGraph read = CollaborationGraph.read(file);
+
+        assertEquals(graph.size(), read.size());
+        assertEquals(graph.getEdgeCount(), read.getEdgeCount());
+        for (int i = 0; i < graph.size(); i++)
+        {
+            assertEquals(graph.getLabel(i), read.getLabel(i));
+            assertEquals(graph.getAuthority(i), read.getAuthority(i));
+            assertEquals(graph.getValue(i), read.getValue(i));
+            assertEquals(graph.getDepartment(i), read.getDepartment(i));
+            assertEquals(graph.getDegree(i), read.getDegree(i));
+            for (int j = 0; j < graph.getDegree(i); j++)
+            {
+                assertEquals(graph.getNeighbour(i, j), read.getNeighbour(i, j));
+                assertEquals(graph.getWeight(i, j), read.getWeight(i, j));
+            }
+        }
+        assertNull(read.getAuthority(4));
+        assertNull(read.getDepartment(4));
+        assertEquals(counts(graph.facet("rp1", null, false, null, -1)),
+                counts(read.facet("rp1", null, false, null, -1)));
+        assertEquals(counts(graph.facet("rp1", null, true, "D1", -1)), counts(read.facet("rp1", null, true, "D1", -1)));
+
+        // written again over the mapped file
+        graph.write(file);
+        assertEquals(graph.getEdgeCount(), CollaborationGraph.read(file).getEdgeCount());
+        assertEquals(false, new File(file.getParentFile(), file.getName() + ".tmp").exists());
+    }
+}
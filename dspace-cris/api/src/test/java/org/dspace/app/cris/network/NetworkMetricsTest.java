@@ -0,0 +1,183 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/CILEA/dspace-cris/wiki/License
+ */
+package org.dspace.app.cris.network;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Known answers of {@link NetworkMetrics} on small graphs: the betweenness is
+ * normalised by the pairs of the other nodes, (n-1)(n-2)/2.
+ */
+public class NetworkMetricsTest
+{
+    private static final double DELTA = 1e-9;
+
+    private static ForkJoinPool pool;
+
+    @BeforeClass
+    public static void setUpPool()
+    {
+        pool = new ForkJoinPool(2);
+    }
+
+    @AfterClass
+    public static void shutDownPool()
+    {
+        pool.shutdown();
+    }
+
+    /**
+     * Add documents linking two researchers, the label of a node being its
+     * authority.
+     */
+    private static void link(CollaborationGraph.Builder builder, String a, String b, int documents)
+    {
+        for (int i = 0; i < documents; i++)
+        {
+            builder.add(a, a, a, null, b, b, b, null);
+        }
+    }
+
+    private static NetworkMetrics compute(CollaborationGraph.Builder builder, int samples)
+    {
+        NetworkMetrics metrics = new NetworkMetrics(builder.build());
+        metrics.compute(pool, samples, 42);
+        return metrics;
+    }
+
+    @Test
+    public void testPath()
+    {
+        CollaborationGraph.Builder builder = new CollaborationGraph.Builder();
+        link(builder, "rp1", "rp2", 1);
+        link(builder, "rp2", "rp3", 1);
+        link(builder, "rp3", "rp4", 1);
+        NetworkMetrics metrics = compute(builder, 0);
+
+        assertEquals(4, metrics.size());
+        assertEquals(4, metrics.getSources());
+        int[] degrees = { 1, 2, 2, 1 };
+        // rp2 and rp3 are each on the paths of 2 of the 3 pairs of the others
+        double[] betweenness = { 0, 2.0 / 3, 2.0 / 3, 0 };
+        for (int i = 0; i < 4; i++)
+        {
+            int node = metrics.indexOf("rp" + (i + 1));
+            assertEquals(degrees[i], metrics.getDegree(node));
+            assertEquals(0, metrics.getClustering(node), DELTA);
+            assertEquals(betweenness[i], metrics.getBetweenness(node), DELTA);
+        }
+    }
+
+    @Test
+    public void testStar()
+    {
+        CollaborationGraph.Builder builder = new CollaborationGraph.Builder();
+        for (int i = 1; i <= 4; i++)
+        {
+            link(builder, "rp0", "rp" + i, i);
+        }
+        NetworkMetrics metrics = compute(builder, 0);
+
+        int center = metrics.indexOf("rp0");
+        assertEquals(4, metrics.getDegree(center));
+        assertEquals(10, metrics.getWeightedDegree(center));
+        assertEquals(4, metrics.getMaxWeight(center));
+        assertEquals(2.5, metrics.getAverageWeight(center), DELTA);
+        // weights 1 2 3 4: variance (2.25 + 0.25 + 0.25 + 2.25) / 4
+        assertEquals(Math.sqrt(1.25), metrics.getDeviation(center), DELTA);
+        assertEquals(0, metrics.getClustering(center), DELTA);
+        assertEquals(1, metrics.getBetweenness(center), DELTA);
+        for (int i = 1; i <= 4; i++)
+        {
+            int leaf = metrics.indexOf("rp" + i);
+            assertEquals(1, metrics.getDegree(leaf));
+            assertEquals(i, metrics.getWeightedDegree(leaf));
+            assertEquals(0, metrics.getDeviation(leaf), DELTA);
+            assertEquals(0, metrics.getBetweenness(leaf), DELTA);
+        }
+    }
+
+    @Test
+    public void testTriangle()
+    {
+        CollaborationGraph.Builder builder = new CollaborationGraph.Builder();
+        link(builder, "rp1", "rp2", 2);
+        link(builder, "rp2", "rp3", 1);
+        link(builder, "rp1", "rp3", 3);
+        NetworkMetrics metrics = compute(builder, 0);
+
+        for (int i = 1; i <= 3; i++)
+        {
+            int node = metrics.indexOf("rp" + i);
+            assertEquals(2, metrics.getDegree(node));
+            assertEquals(1, metrics.getClustering(node), DELTA);
+            assertEquals(0, metrics.getBetweenness(node), DELTA);
+        }
+        int node = metrics.indexOf("rp1");
+        assertEquals(5, metrics.getWeightedDegree(node));
+        assertEquals(3, metrics.getMaxWeight(node));
+        assertEquals(0.5, metrics.getDeviation(node), DELTA);
+    }
+
+    /**
+     * The names of a researcher are one node, without the link between them.
+     */
+    @Test
+    public void testVariantsAreMerged()
+    {
+        CollaborationGraph.Builder builder = new CollaborationGraph.Builder();
+        builder.add("alice##rp1", "rp1", "alice", null, "bob##rp2", "rp2", "bob", null);
+        builder.add("alice b.##rp1", "rp1", "alice b.", null, "bob##rp2", "rp2", "bob", null);
+        builder.add("alice##rp1", "rp1", "alice", null, "alice b.##rp1", "rp1", "alice b.", null);
+        builder.add("alice##rp1", "rp1", "alice", null, "carol", null, "carol", null);
+        NetworkMetrics metrics = compute(builder, 0);
+
+        assertEquals(3, metrics.size());
+        int alice = metrics.indexOf("rp1");
+        assertEquals("rp1", metrics.getAuthority(alice));
+        assertEquals(2, metrics.getDegree(alice));
+        assertEquals(3, metrics.getWeightedDegree(alice));
+        assertEquals(2, metrics.getMaxWeight(alice));
+        assertEquals(1, metrics.getBetweenness(alice), DELTA);
+        int carol = metrics.indexOf("carol");
+        assertEquals(null, metrics.getAuthority(carol));
+        assertEquals(1, metrics.getDegree(carol));
+    }
+
+    @Test
+    public void testSampledBetweennessIsStable()
+    {
+        CollaborationGraph.Builder builder = new CollaborationGraph.Builder();
+        for (int i = 0; i < 20; i++)
+        {
+            link(builder, "rp" + i, "rp" + (i + 1), 1);
+        }
+        NetworkMetrics first = compute(builder, 5);
+        NetworkMetrics second = compute(builder, 5);
+        assertEquals(5, first.getSources());
+        for (int node = 0; node < first.size(); node++)
+        {
+            assertEquals(first.getBetweenness(node), second.getBetweenness(node), 0);
+        }
+
+        // as many samples as nodes is the exact value
+        NetworkMetrics exact = compute(builder, 0);
+        NetworkMetrics all = compute(builder, exact.size());
+        assertEquals(exact.size(), all.getSources());
+        for (int node = 0; node < exact.size(); node++)
+        {
+            assertEquals(exact.getBetweenness(node), all.getBetweenness(node), DELTA);
+        }
+    }
+}
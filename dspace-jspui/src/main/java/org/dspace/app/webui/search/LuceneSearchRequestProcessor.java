@@ -737,17 +737,24 @@ public class LuceneSearchRequestProcessor implements SearchRequestProcessor
         List<String> handles = results.getHitHandles();
         try
         {
+            List<Item> hits = new ArrayList<Item>();
             for (String handle : handles)
             {
                 DSpaceObject resultDSO = HandleManager.resolveToObject(context, handle);
     
                 if (resultDSO.getType() == Constants.ITEM)
                 {
-                    Item item = (Item) resultDSO;
-                    if (AuthorizeManager.authorizeActionBoolean(context, item, Constants.READ))
-                    {
-                        items.put(Integer.valueOf(item.getID()), item);
-                    }
+                    hits.add((Item) resultDSO);
+                }
+            }
+
+            BitSet readable = AuthorizeManager.authorizeActionBitmap(context, hits, Constants.READ);
+            for (int i = 0; i < hits.size(); i++)
+            {
+                if (readable.get(i))
+                {
+                    Item item = hits.get(i);
+                    items.put(Integer.valueOf(item.getID()), item);
                 }
             }
         }
@@ -63,6 +63,9 @@ public class BitstreamServlet extends DSpaceServlet
      * Threshold on Bitstream size before content-disposition will be set.
      */
     private int threshold;
+
+    /** Whether HTTP Range requests are answered with partial content */
+    private boolean acceptRanges;
     
     @Override
 	public void init(ServletConfig arg0) throws ServletException {
@@ -70,6 +73,8 @@ public class BitstreamServlet extends DSpaceServlet
 		super.init(arg0);
 		threshold = ConfigurationManager
 				.getIntProperty("webui.content_disposition_threshold");
+		acceptRanges = ConfigurationManager
+				.getBooleanProperty("webui.bitstream.accept-ranges", false);
 	}
 
     @Override
@@ -291,9 +296,35 @@ public class BitstreamServlet extends DSpaceServlet
         }
         
         if(is == null) {
-        	 is = bitstream.retrieve();
-             response.setHeader("Content-Length", String
-                     .valueOf(bitstream.getSize()));
+            long size = bitstream.getSize();
+            long[] range = null;
+            if (acceptRanges)
+            {
+                response.setHeader("Accept-Ranges", "bytes");
+                range = parseRange(request.getHeader("Range"), size);
+                if (range != null && range.length == 0)
+                {
+                    response.setHeader("Content-Range", "bytes */" + size);
+                    response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                    return;
+                }
+            }
+
+            if (range != null)
+            {
+                // only the requested bytes are read from the asset store
+                long length = range[1] - range[0] + 1;
+                is = bitstream.retrieve(range[0], length);
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader("Content-Range", "bytes " + range[0] + "-"
+                        + range[1] + "/" + size);
+                response.setHeader("Content-Length", String.valueOf(length));
+            }
+            else
+            {
+                is = bitstream.retrieve();
+                response.setHeader("Content-Length", String.valueOf(size));
+            }
         }
         
 		// Set the response MIME type
@@ -320,6 +351,62 @@ public class BitstreamServlet extends DSpaceServlet
         response.getOutputStream().flush();
     }
     
+    /**
+     * Parse a single byte range of an HTTP Range header; multiple ranges and
+     * malformed headers are ignored and the whole bitstream is sent.
+     *
+     * @param header
+     *            the Range header, may be null
+     * @param size
+     *            the size of the bitstream
+     * @return the first and last positions of the range, an empty array if
+     *         the range is not satisfiable or null to send everything
+     */
+    static long[] parseRange(String header, long size)
+    {
+        if (header == null || !header.startsWith("bytes=") || header.indexOf(',') >= 0)
+        {
+            return null;
+        }
+        String spec = header.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0)
+        {
+            return null;
+        }
+        try
+        {
+            long start;
+            long end;
+            if (dash == 0)
+            {
+                // suffix range: the last n bytes
+                long suffix = Long.parseLong(spec.substring(1));
+                if (suffix <= 0)
+                {
+                    return new long[0];
+                }
+                start = Math.max(0, size - suffix);
+                end = size - 1;
+            }
+            else
+            {
+                start = Long.parseLong(spec.substring(0, dash));
+                end = dash == spec.length() - 1 ? size - 1
+                        : Math.min(size - 1, Long.parseLong(spec.substring(dash + 1)));
+            }
+            if (start >= size || start > end)
+            {
+                return new long[0];
+            }
+            return new long[] { start, end };
+        }
+        catch (NumberFormatException e)
+        {
+            return null;
+        }
+    }
+
     private void preProcessBitstreamHome(Context context, HttpServletRequest request,
             HttpServletResponse response, Bitstream item)
         throws ServletException, IOException, SQLException
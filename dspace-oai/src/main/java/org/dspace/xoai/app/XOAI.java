@@ -19,9 +19,20 @@ import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.Date;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.xml.stream.XMLStreamException;
 
@@ -59,9 +70,15 @@ import org.dspace.discovery.DiscoverQuery;
 import org.dspace.discovery.DiscoverResult;
 import org.dspace.discovery.SearchServiceException;
 import org.dspace.discovery.SearchUtils;
+import org.dspace.storage.rdbms.DatabaseManager;
+import org.dspace.storage.rdbms.TableRow;
+import org.dspace.storage.rdbms.TableRowIterator;
 import org.dspace.utils.DSpace;
 import org.dspace.xoai.services.api.database.CollectionsService;
 import org.dspace.xoai.services.api.solr.SolrServerResolver;
+import org.dspace.xoai.services.impl.context.DSpaceXOAIManagerResolver;
+import org.dspace.xoai.services.impl.resources.RecordCache;
+import org.dspace.xoai.services.impl.resources.RecordPrecompiler;
 import org.dspace.xoai.solr.DSpaceSolrSearch;
 import org.dspace.xoai.solr.exceptions.DSpaceSolrException;
 import org.dspace.xoai.solr.exceptions.DSpaceSolrIndexerException;
@@ -71,6 +88,7 @@ import org.springframework.context.annotation.AnnotationConfigApplicationContext
 import com.lyncode.xoai.dataprovider.exceptions.ConfigurationException;
 import com.lyncode.xoai.dataprovider.exceptions.MetadataBindException;
 import com.lyncode.xoai.dataprovider.exceptions.WritingXmlException;
+import com.lyncode.xoai.dataprovider.services.api.ResourceResolver;
 import com.lyncode.xoai.dataprovider.xml.XmlOutputContext;
 import com.lyncode.xoai.dataprovider.xml.xoai.Metadata;
 
@@ -86,11 +104,25 @@ public class XOAI {
     private boolean optimize;
     private boolean verbose;
     private boolean clean;
+    private boolean delta;
+    private int threads = ConfigurationManager.getIntProperty("oai", "oai.import.threads", 1);
+
+    // compilation of the items, with a context per thread
+    private ExecutorService executor;
+    private final List<Context> workerContexts = Collections.synchronizedList(new ArrayList<Context>());
+    private final ThreadLocal<Context> workerContext = new ThreadLocal<Context>();
+    // "com_" identifiers of the parent communities, by collection id
+    private final ConcurrentMap<Integer, List<String>> collectionCommunities = new ConcurrentHashMap<Integer, List<String>>();
+    private List<XOAIItemCompilePlugin> compilePlugins;
+    // fills the cache of the transformed records, when enabled
+    private RecordPrecompiler precompiler;
 
     @Autowired
     private SolrServerResolver solrServerResolver;
     @Autowired
     private CollectionsService collectionsService;
+    @Autowired
+    private ResourceResolver resourceResolver;
 
 
     private static List<String> getFileFormats(Item item) {
@@ -121,18 +153,53 @@ public class XOAI {
         verbose = hasOption;
     }
 
+    /**
+     * Set the number of threads compiling the items, each with its own
+     * context. The default is <code>oai.import.threads</code>, or 1.
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * Index only the items whose <code>item.last_modified</code> is later than
+     * the last modification indexed, read from the database instead of the
+     * discovery index.
+     */
+    public void setDelta(boolean delta) {
+        this.delta = delta;
+    }
+
     private void println(String line) {
         System.out.println(line);
     }
 
     public int index(String idxType) throws DSpaceSolrIndexerException {
         int result = 0;
+        compilePlugins = new DSpace().getServiceManager().getServicesByType(XOAIItemCompilePlugin.class);
+        if (threads > 1) {
+            executor = Executors.newFixedThreadPool(threads);
+        }
+        long start = System.currentTimeMillis();
+        boolean full = false;
         try {
+            RecordCache recordCache = RecordCache.getInstance();
+            if (recordCache != null) {
+                if (clean && "all".equals(idxType)) {
+                    // the records of the items no longer indexed
+                    recordCache.clear();
+                }
+                precompiler = new RecordPrecompiler(resourceResolver, DSpaceXOAIManagerResolver.XOAI_CONFIGURATION_FILE);
+                println("Precompiling the records for " + precompiler.getPipelineCount() + " formats");
+            }
 
-            if (clean) {
+            if (delta && !clean && (ITEMTYPE_DEFAULT.equals(idxType) || "all".equals(idxType))) {
+                result = this.indexDelta(idxType);
+            } else if (clean) {
                 clearIndex(idxType);
                 System.out.println("Using full import.");
                 result = this.indexAll(idxType);
+                full = true;
             } else {
                 SolrQuery solrParams = new SolrQuery("*:*")
                         .addField("item.lastmodified")
@@ -142,10 +209,18 @@ public class XOAI {
                 if (results.getNumFound() == 0) {
                     System.out.println("There are no indexed documents, using full import.");
                     result = this.indexAll(idxType);
+                    full = true;
                 } else {
                     result = this.index(idxType, (Date) results.get(0).getFieldValue("item.lastmodified"));
                 }
             }
+            if (recordCache != null) {
+                if (full && !clean && "all".equals(idxType)) {
+                    // every record in use was read or written by the import
+                    println("Removed " + recordCache.sweep(start) + " records of previous versions of the items");
+                }
+                println("Removed " + recordCache.prune(RecordCache.getMaxSize()) + " records from the cache");
+            }
             solrServerResolver.getServer().commit();
 
 
@@ -162,9 +237,120 @@ public class XOAI {
             throw new DSpaceSolrIndexerException(ex.getMessage(), ex);
         } catch (IOException ex) {
             throw new DSpaceSolrIndexerException(ex.getMessage(), ex);
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+                executor = null;
+            }
+            synchronized (workerContexts) {
+                for (Context ctx : workerContexts) {
+                    if (ctx.isValid()) {
+                        ctx.abort();
+                    }
+                }
+                workerContexts.clear();
+            }
         }
     }
 
+    /***
+     * Index the items modified since the last indexed modification of an
+     * item, found from item.last_modified in the database, and the CRIS
+     * objects modified since the last indexed modification, found by the
+     * discovery query.
+     * <p>
+     * With the default item query the items are read from the database
+     * (archived or withdrawn, and discoverable), so that the items not yet
+     * indexed by discovery are not missed. A custom oai.discover.query.item
+     * can only be evaluated by discovery: the modified items are then
+     * filtered through it, and those not yet indexed by discovery are
+     * skipped, so the discovery index must be updated first.
+     * 
+     * @param idxType The index type (item or all)
+     * @return The number of indexed data
+     * @throws DSpaceSolrIndexerException
+     */
+    private int indexDelta(String idxType) throws DSpaceSolrIndexerException {
+        try {
+            SolrQuery solrParams = new SolrQuery("item.type:" + ITEMTYPE_DEFAULT)
+                    .addField("item.lastmodified")
+                    .addSortField("item.lastmodified", ORDER.desc).setRows(1);
+            SolrDocumentList results = DSpaceSolrSearch.query(solrServerResolver.getServer(), solrParams);
+            if (results.getNumFound() == 0) {
+                System.out.println("There are no indexed items, using full import.");
+                return this.indexAll(idxType);
+            }
+            Date since = (Date) results.get(0).getFieldValue("item.lastmodified");
+            System.out.println("Delta import. Searching for items modified after: " + since);
+
+            boolean customQuery = StringUtils.isNotBlank(ConfigurationManager.getProperty("oai", "oai.discover.query.item"));
+            List<Integer> ids = new ArrayList<Integer>();
+            // the database equivalent of the default item query
+            TableRowIterator tri = DatabaseManager.query(context,
+                    "SELECT item_id FROM item WHERE last_modified > ? AND (in_archive = ? OR withdrawn = ?) "
+                    + (customQuery ? "" : "AND discoverable = ? ") + "ORDER BY item_id",
+                    customQuery ? new Object[] { new java.sql.Timestamp(since.getTime()), true, true }
+                            : new Object[] { new java.sql.Timestamp(since.getTime()), true, true, true });
+            try {
+                while (tri.hasNext()) {
+                    TableRow row = tri.next();
+                    ids.add(row.getIntColumn("item_id"));
+                }
+            } finally {
+                tri.close();
+            }
+            System.out.println(ids.size() + " items modified");
+
+            int pageSize = getPageSize();
+            int total = 0;
+            int skipped = 0;
+            String itemQuery = buildQuery(ITEMTYPE_DEFAULT);
+            for (int start = 0; start < ids.size(); start += pageSize) {
+                List<Integer> page = ids.subList(start, Math.min(ids.size(), start + pageSize));
+                if (!customQuery) {
+                    total += indexItemPage(page, total);
+                    continue;
+                }
+                // the items must still match the custom query of the index
+                DiscoverQuery query = new DiscoverQuery();
+                query.setQuery("(" + itemQuery + ") AND search.resourceid:(" + StringUtils.join(page, " OR ") + ")");
+                query.setMaxResults(page.size());
+                DiscoverResult result = SearchUtils.getSearchService().search(context, query, true);
+                skipped += page.size() - result.getDspaceObjects().size();
+                if (!result.getDspaceObjects().isEmpty()) {
+                    total += indexResults(result, total);
+                }
+            }
+            if (skipped > 0) {
+                System.out.println(skipped + " modified items skipped: they don't match oai.discover.query.item"
+                        + " or are not indexed by discovery yet");
+            }
+
+            if ("all".equals(idxType)) {
+                // other types, by their modification date in discovery
+                TimeZone tz = TimeZone.getTimeZone("UTC");
+                DateFormat df = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+                df.setTimeZone(tz);
+                total += indexWithQuery(String.format("lastModified:{%s TO *}", df.format(since))
+                        + " AND " + buildQuery(idxType) + " AND NOT search.resourcetype:" + Constants.ITEM);
+            }
+            return total;
+        } catch (SQLException ex) {
+            throw new DSpaceSolrIndexerException(ex.getMessage(), ex);
+        } catch (SearchServiceException ex) {
+            throw new DSpaceSolrIndexerException(ex.getMessage(), ex);
+        } catch (DSpaceSolrException ex) {
+            throw new DSpaceSolrIndexerException(ex.getMessage(), ex);
+        }
+    }
+
+    private int getPageSize() {
+        String discoverPageSize = ConfigurationManager.getProperty("oai", "oai.discover.pagesize");
+        if (discoverPageSize == null || discoverPageSize.trim().length() <= 0)
+            return 100;
+        return Integer.parseInt(discoverPageSize.trim());
+    }
+
     /***
      * index all data whose modification date is greater than given start date.
      * 
@@ -349,7 +535,9 @@ public class XOAI {
     }
 
     /***
-     * Read one page of data.
+     * Read one page of data. The items are compiled in parallel when several
+     * threads are configured, and the documents of the page are sent to
+     * Solr at once; they are committed at the end of the import.
      * 
      * @param result The paged data
      * @param subtotal The number of data processed so far.
@@ -360,39 +548,28 @@ public class XOAI {
 	private int indexResults(DiscoverResult result, int subtotal)
             throws DSpaceSolrIndexerException {
         try {
-            int i = 0;
             SolrServer server = solrServerResolver.getServer();
+            List<SolrInputDocument> docs = new ArrayList<SolrInputDocument>();
+            List<Integer> itemIDs = new ArrayList<Integer>();
             for (DSpaceObject o : result.getDspaceObjects()) {
-                try {
-                	SolrInputDocument solrDoc = null;
-                	if (o instanceof Item) {
-                	    Item item = (Item)o;
-                	    solrDoc = this.indexResults(item, false);
-                	}
-                	else if (o instanceof ACrisObject) {
-                		solrDoc = this.indexResults((ACrisObject)o);
-                	}
-                	server.add(solrDoc);
-                	
-                } catch (SQLException ex) {
-                    log.error(ex.getMessage(), ex);
-                } catch (MetadataBindException e) {
-                    log.error(e.getMessage(), e);
-                } catch (ParseException e) {
-                    log.error(e.getMessage(), e);
-                } catch (XMLStreamException e) {
-                    log.error(e.getMessage(), e);
-                } catch (WritingXmlException e) {
-                    log.error(e.getMessage(), e);
+                if (o instanceof Item) {
+                    itemIDs.add(o.getID());
                 }
-                i++;
-                if ((i+subtotal) % 100 == 0) {
-                    System.out.println((i+subtotal) + " items imported so far...");
-                    context.clearCache();
+                else if (o instanceof ACrisObject) {
+                    try {
+                        docs.add(this.indexResults((ACrisObject)o));
+                    } catch (Exception e) {
+                        log.error(e.getMessage(), e);
+                    }
                 }
             }
+            docs.addAll(indexItems(itemIDs));
+            if (!docs.isEmpty()) {
+                server.add(docs);
+            }
+            int i = result.getDspaceObjects().size();
             System.out.println("Partial Total: " + (i+subtotal) + " items");
-            server.commit();
+            context.clearCache();
             return i;
         } catch (SolrServerException ex) {
             throw new DSpaceSolrIndexerException(ex.getMessage(), ex);
@@ -401,10 +578,126 @@ public class XOAI {
         }
     }
 
+    /***
+     * Index a page of items read from the database.
+     * 
+     * @param ids The ids of the items
+     * @param subtotal The number of data processed so far.
+     * @return The number of indexed data.
+     * @throws DSpaceSolrIndexerException
+     */
+    private int indexItemPage(List<Integer> ids, int subtotal) throws DSpaceSolrIndexerException {
+        try {
+            List<SolrInputDocument> docs = indexItems(ids);
+            if (!docs.isEmpty()) {
+                solrServerResolver.getServer().add(docs);
+            }
+            System.out.println("Partial Total: " + (ids.size() + subtotal) + " items");
+            context.clearCache();
+            return ids.size();
+        } catch (SolrServerException ex) {
+            throw new DSpaceSolrIndexerException(ex.getMessage(), ex);
+        } catch (IOException ex) {
+            throw new DSpaceSolrIndexerException(ex.getMessage(), ex);
+        }
+    }
+
+    /***
+     * Compile the documents of a page of items, split between the threads.
+     * 
+     * @param ids The ids of the items
+     * @return The solr documents, in the order of the ids
+     * @throws DSpaceSolrIndexerException
+     */
+    private List<SolrInputDocument> indexItems(List<Integer> ids) throws DSpaceSolrIndexerException {
+        if (ids.isEmpty()) {
+            return new ArrayList<SolrInputDocument>();
+        }
+        try {
+            if (executor == null) {
+                return indexItems(context, ids);
+            }
+
+            int chunk = (ids.size() + threads - 1) / threads;
+            List<Future<List<SolrInputDocument>>> futures = new ArrayList<Future<List<SolrInputDocument>>>();
+            for (int start = 0; start < ids.size(); start += chunk) {
+                final List<Integer> part = ids.subList(start, Math.min(ids.size(), start + chunk));
+                futures.add(executor.submit(new Callable<List<SolrInputDocument>>() {
+                    public List<SolrInputDocument> call() throws Exception {
+                        Context ctx = workerContext.get();
+                        if (ctx == null) {
+                            ctx = new Context();
+                            workerContext.set(ctx);
+                            workerContexts.add(ctx);
+                        }
+                        try {
+                            return indexItems(ctx, part);
+                        } finally {
+                            ctx.clearCache();
+                        }
+                    }
+                }));
+            }
+            List<SolrInputDocument> docs = new ArrayList<SolrInputDocument>(ids.size());
+            for (Future<List<SolrInputDocument>> future : futures) {
+                docs.addAll(future.get());
+            }
+            return docs;
+        } catch (SQLException ex) {
+            throw new DSpaceSolrIndexerException(ex.getMessage(), ex);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new DSpaceSolrIndexerException(ex.getMessage(), ex);
+        } catch (ExecutionException ex) {
+            throw new DSpaceSolrIndexerException(ex.getCause().getMessage(), ex.getCause());
+        }
+    }
+
+    private List<SolrInputDocument> indexItems(Context ctx, List<Integer> ids) throws SQLException {
+        // metadata, bundles and collections of the items are read at once
+        List<Item> items = Item.find(ctx, ids);
+        // the READ policies of all the items are checked at once
+        BitSet readable = isPublic(ctx, items);
+        List<SolrInputDocument> docs = new ArrayList<SolrInputDocument>(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            try {
+                docs.add(this.indexResults(ctx, items.get(i), false, readable.get(i)));
+            } catch (SQLException ex) {
+                log.error(ex.getMessage(), ex);
+            } catch (MetadataBindException e) {
+                log.error(e.getMessage(), e);
+            } catch (ParseException e) {
+                log.error(e.getMessage(), e);
+            } catch (XMLStreamException e) {
+                log.error(e.getMessage(), e);
+            } catch (WritingXmlException e) {
+                log.error(e.getMessage(), e);
+            }
+        }
+        return docs;
+    }
+
+    /**
+     * @return the "com_" identifiers of the parent communities of a
+     *         collection, computed once per collection
+     */
+    private List<String> getCommunityIdentifiers(Collection col) throws SQLException {
+        List<String> identifiers = collectionCommunities.get(col.getID());
+        if (identifiers == null) {
+            identifiers = new ArrayList<String>();
+            for (Community com : collectionsService.flatParentCommunities(col))
+                identifiers.add("com_" + com.getHandle().replace("/", "_"));
+            collectionCommunities.putIfAbsent(col.getID(), identifiers);
+        }
+        return identifiers;
+    }
+
     /***
      * Index one item
      * 
+     * @param ctx The context of the item
      * @param item The item
+     * @param pub Whether the item is readable by anonymous users
      * @return The sorl document
      * @throws SQLException
      * @throws MetadataBindException
@@ -412,10 +705,9 @@ public class XOAI {
      * @throws XMLStreamException
      * @throws WritingXmlException
      */
-    private SolrInputDocument indexResults(Item item, boolean specialIdentifier) throws SQLException, MetadataBindException, ParseException, XMLStreamException, WritingXmlException {
+    private SolrInputDocument indexResults(Context ctx, Item item, boolean specialIdentifier, boolean pub) throws SQLException, MetadataBindException, ParseException, XMLStreamException, WritingXmlException {
         SolrInputDocument doc = new SolrInputDocument();
         doc.addField("item.id", item.getID());
-        boolean pub = this.isPublic(item);
         doc.addField("item.public", pub);
         String handle = item.getHandle();
         if (verbose) {
@@ -431,12 +723,14 @@ public class XOAI {
             doc.addField("item.submitter", item.getSubmitter().getEmail());
         }
         doc.addField("item.deleted", item.isWithdrawn() ? "true" : "false");
-        for (Collection col : item.getCollections())
+        Set<String> communities = new LinkedHashSet<String>();
+        for (Collection col : item.getCollections()) {
             doc.addField("item.collections",
                     "col_" + col.getHandle().replace("/", "_"));
-        for (Community com : collectionsService.flatParentCommunities(item))
-            doc.addField("item.communities",
-                    "com_" + com.getHandle().replace("/", "_"));
+            communities.addAll(getCommunityIdentifiers(col));
+        }
+        for (String com : communities)
+            doc.addField("item.communities", com);
 
         Metadatum[] allData = item.getMetadata(Item.ANY, Item.ANY, Item.ANY,
                 Item.ANY);
@@ -458,19 +752,21 @@ public class XOAI {
 
         ByteArrayOutputStream out = new ByteArrayOutputStream();
         XmlOutputContext xmlContext = XmlOutputContext.emptyContext(out, Second);
-        Metadata metadata = retrieveMetadata(context, item);
+        Metadata metadata = retrieveMetadata(ctx, item);
 
         //Do any additional content on "item.compile" field, depends on the plugins
-        List<XOAIItemCompilePlugin> xOAIItemCompilePlugins = new DSpace().getServiceManager().getServicesByType(XOAIItemCompilePlugin.class);
-        for (XOAIItemCompilePlugin xOAIItemCompilePlugin : xOAIItemCompilePlugins)
+        for (XOAIItemCompilePlugin xOAIItemCompilePlugin : compilePlugins)
         {
-            metadata = xOAIItemCompilePlugin.additionalMetadata(context, metadata, item);
+            metadata = xOAIItemCompilePlugin.additionalMetadata(ctx, metadata, item);
         }
 
         metadata.write(xmlContext);
         xmlContext.getWriter().flush();
         xmlContext.getWriter().close();
         doc.addField("item.compile", out.toString());
+        if (precompiler != null) {
+            precompiler.precompile(out.toByteArray());
+        }
 
         if (verbose) {
             println(String.format("Item %d with handle %s indexed",
@@ -536,6 +832,9 @@ public class XOAI {
         xmlContext.getWriter().flush();
         xmlContext.getWriter().close();
         doc.addField("item.compile", out.toString());
+        if (precompiler != null) {
+            precompiler.precompile(out.toByteArray());
+        }
 
         if (verbose) {
             println(String.format("Cris Item %s with handle %s indexed (type: %s)",
@@ -546,15 +845,14 @@ public class XOAI {
     }
 
 
-    private boolean isPublic(Item item) {
-        boolean pub = false;
+    private BitSet isPublic(Context ctx, List<Item> items) {
         try {
-            //Check if READ access allowed on this Item
-            pub = AuthorizeManager.authorizeActionBoolean(context, item, Constants.READ);
+            //Check if READ access allowed on these Items
+            return AuthorizeManager.authorizeActionBitmap(ctx, items, Constants.READ);
         } catch (SQLException ex) {
             log.error(ex.getMessage());
         }
-        return pub;
+        return new BitSet();
     }
 
 
@@ -651,6 +949,8 @@ public class XOAI {
             options.addOption("h", "help", false, "Shows some help");
             options.addOption("n", "number", true, "FOR DEVELOPMENT MUST DELETE");
             options.addOption("t", "type", true, "Type of index (item, rp, project, ou, other, all). The default is 'all'.");
+            options.addOption("d", "delta", false, "Index only the items modified since the last import, from the database");
+            options.addOption("w", "workers", true, "Number of threads compiling the items");
             CommandLine line = parser.parse(options, argv);
 
             String[] validSolrCommands = {COMMAND_IMPORT};
@@ -676,6 +976,10 @@ public class XOAI {
                             line.hasOption('v'));
 
                     applicationContext.getAutowireCapableBeanFactory().autowireBean(indexer);
+                    indexer.setDelta(line.hasOption('d'));
+                    if (line.hasOption('w')) {
+                        indexer.setThreads(Integer.parseInt(line.getOptionValue('w')));
+                    }
                     
                     String idxType = line.getOptionValue("t");
                     if (idxType == null || idxType.trim().length() <= 0)
@@ -713,6 +1017,9 @@ public class XOAI {
         System.out.println("     -o Optimize index after indexing ("
                 + COMMAND_IMPORT + " only)");
         System.out.println("     -c Clear index (" + COMMAND_IMPORT + " only)");
+        System.out.println("     -d Index only the items modified since the last import, read from the database ("
+                + COMMAND_IMPORT + " only)");
+        System.out.println("     -w Number of threads compiling the items (" + COMMAND_IMPORT + " only)");
         System.out.println("     -v Verbose output");
         System.out.println("     -h Shows this text");
     }
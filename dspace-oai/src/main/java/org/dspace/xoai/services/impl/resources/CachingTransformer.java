@@ -0,0 +1,177 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.xoai.services.impl.resources;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Properties;
+
+import javax.xml.transform.ErrorListener;
+import javax.xml.transform.Result;
+import javax.xml.transform.Source;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.URIResolver;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Transformer serving the records already in the {@link RecordCache}
+ * instead of running the stylesheet. The records transformed are added to
+ * the cache. Only stream sources and results are cached, other ones are
+ * passed to the stylesheet; the parameters of the stylesheet are not part of
+ * the key of a record.
+ */
+public class CachingTransformer extends Transformer
+{
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final Transformer delegate;
+    private final RecordCache cache;
+    private final String namespace;
+
+    public CachingTransformer(Transformer delegate, RecordCache cache, String namespace)
+    {
+        this.delegate = delegate;
+        this.cache = cache;
+        this.namespace = namespace;
+    }
+
+    @Override
+    public void transform(Source xmlSource, Result outputTarget) throws TransformerException
+    {
+        if (!(xmlSource instanceof StreamSource) || !(outputTarget instanceof StreamResult))
+        {
+            delegate.transform(xmlSource, outputTarget);
+            return;
+        }
+        StreamSource source = (StreamSource) xmlSource;
+        StreamResult result = (StreamResult) outputTarget;
+        if ((source.getInputStream() == null && source.getReader() == null)
+                || (result.getOutputStream() == null && result.getWriter() == null))
+        {
+            delegate.transform(xmlSource, outputTarget);
+            return;
+        }
+
+        try
+        {
+            byte[] input = source.getInputStream() != null ? IOUtils.toByteArray(source.getInputStream())
+                    : IOUtils.toString(source.getReader()).getBytes(UTF8);
+            String key = RecordCache.key(input);
+            byte[] record = cache.get(namespace, key);
+            if (record == null)
+            {
+                ByteArrayOutputStream out = new ByteArrayOutputStream(input.length);
+                StreamSource copy = new StreamSource(new ByteArrayInputStream(input), source.getSystemId());
+                delegate.transform(copy, new StreamResult(out));
+                record = out.toByteArray();
+                cache.put(namespace, key, record);
+            }
+            write(record, result);
+        }
+        catch (IOException e)
+        {
+            throw new TransformerException(e);
+        }
+    }
+
+    private void write(byte[] record, StreamResult result) throws IOException
+    {
+        OutputStream out = result.getOutputStream();
+        if (out != null)
+        {
+            out.write(record);
+            out.flush();
+        }
+        else
+        {
+            Writer writer = result.getWriter();
+            writer.write(new String(record, UTF8));
+            writer.flush();
+        }
+    }
+
+    @Override
+    public void setParameter(String name, Object value)
+    {
+        delegate.setParameter(name, value);
+    }
+
+    @Override
+    public Object getParameter(String name)
+    {
+        return delegate.getParameter(name);
+    }
+
+    @Override
+    public void clearParameters()
+    {
+        delegate.clearParameters();
+    }
+
+    @Override
+    public void setURIResolver(URIResolver resolver)
+    {
+        delegate.setURIResolver(resolver);
+    }
+
+    @Override
+    public URIResolver getURIResolver()
+    {
+        return delegate.getURIResolver();
+    }
+
+    @Override
+    public void setOutputProperties(Properties oformat)
+    {
+        delegate.setOutputProperties(oformat);
+    }
+
+    @Override
+    public Properties getOutputProperties()
+    {
+        return delegate.getOutputProperties();
+    }
+
+    @Override
+    public void setOutputProperty(String name, String value) throws IllegalArgumentException
+    {
+        delegate.setOutputProperty(name, value);
+    }
+
+    @Override
+    public String getOutputProperty(String name) throws IllegalArgumentException
+    {
+        return delegate.getOutputProperty(name);
+    }
+
+    @Override
+    public void setErrorListener(ErrorListener listener) throws IllegalArgumentException
+    {
+        delegate.setErrorListener(listener);
+    }
+
+    @Override
+    public ErrorListener getErrorListener()
+    {
+        return delegate.getErrorListener();
+    }
+
+    @Override
+    public void reset()
+    {
+        delegate.reset();
+    }
+}
@@ -47,6 +47,14 @@ public class DSpaceResourceResolver implements ResourceResolver
         // XSLT-files (like <xsl:import href="utils.xsl"/>)
         String systemId = basePath + "/" + path;
         mySrc.setSystemId(systemId);
-        return transformerFactory.newTransformer(mySrc);
+        Transformer transformer = transformerFactory.newTransformer(mySrc);
+        // serve the records already transformed, see oai.cfg
+        RecordCache cache = RecordCache.getInstance();
+        if (cache != null)
+        {
+            transformer = new CachingTransformer(transformer, cache,
+                    RecordCache.namespace(new File(basePath, path)));
+        }
+        return transformer;
     }
 }
@@ -0,0 +1,366 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.xoai.services.impl.resources;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+import org.dspace.core.ConfigurationManager;
+
+/**
+ * On-disk cache of the records transformed by the XSLT of the metadata
+ * formats and of the context transformers. A record is stored under the
+ * stylesheet which produced it and the SHA-1 of its input, the compiled
+ * metadata of the item (or the output of the previous stylesheet): a change
+ * of the item changes its compiled metadata, which contains the last
+ * modification date, so the entries never need to be invalidated. The
+ * entries of a stylesheet are discarded when its file is modified.
+ * <p/>
+ * The records of the previous versions of the items and stylesheets are
+ * never read again: {@link #prune(long)} removes the namespaces of the
+ * replaced stylesheets and then the least recently used records until the
+ * cache fits its maximum size, and {@link #sweep(long)} removes the records
+ * not used since a full import.
+ * <p/>
+ * Configuration (oai.cfg):
+ *
+ * <pre>
+ * cache.records.enabled = true
+ * cache.records.dir = ${dspace.dir}/var/oai/records
+ * cache.records.max-size = 1024 (MB)
+ * </pre>
+ */
+public class RecordCache
+{
+    private static Logger log = LogManager.getLogger(RecordCache.class);
+
+    /** the access time of a record is updated at most once in this delay */
+    private static final long TOUCH_DELAY = TimeUnit.HOURS.toMillis(1);
+
+    private static RecordCache instance;
+
+    private final File dir;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public RecordCache(File dir)
+    {
+        this.dir = dir;
+    }
+
+    /**
+     * @return the record cache configured in oai.cfg, or null if it is not
+     *         enabled
+     */
+    public static synchronized RecordCache getInstance()
+    {
+        if (instance == null && ConfigurationManager.getBooleanProperty("oai", "cache.records.enabled", false))
+        {
+            String path = ConfigurationManager.getProperty("oai", "cache.records.dir");
+            if (path == null || path.trim().length() == 0)
+            {
+                path = ConfigurationManager.getProperty("dspace.dir") + File.separator + "var"
+                        + File.separator + "oai" + File.separator + "records";
+            }
+            instance = new RecordCache(new File(path.trim()));
+        }
+        return instance;
+    }
+
+    /**
+     * @param stylesheet the stylesheet file
+     * @return the namespace of the records produced by a version of a stylesheet
+     */
+    public static String namespace(File stylesheet)
+    {
+        return stylesheet.getName().replaceAll("[^A-Za-z0-9._-]", "_") + "-" + stylesheet.lastModified();
+    }
+
+    /**
+     * @param input the input of a stylesheet
+     * @return the key of the record produced from the input
+     */
+    public static String key(byte[] input)
+    {
+        try
+        {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(input);
+            StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (byte b : digest)
+            {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+                sb.append(Character.forDigit(b & 0xF, 16));
+            }
+            return sb.toString();
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private File file(String namespace, String key)
+    {
+        return new File(new File(new File(dir, namespace), key.substring(0, 2)), key + ".xml");
+    }
+
+    /**
+     * @return the record, or null if it is not in the cache
+     */
+    public byte[] get(String namespace, String key)
+    {
+        File file = file(namespace, key);
+        try
+        {
+            if (file.exists())
+            {
+                byte[] record = Files.readAllBytes(file.toPath());
+                hits.incrementAndGet();
+                // the modification date of the file is its last use
+                long now = System.currentTimeMillis();
+                if (file.lastModified() < now - TOUCH_DELAY)
+                {
+                    file.setLastModified(now);
+                }
+                return record;
+            }
+        }
+        catch (IOException e)
+        {
+            log.warn("Unable to read the cached record " + file + ": " + e.getMessage());
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Store a record. The record is written to a temporary file which is
+     * renamed, so that the readers never see a partial record.
+     */
+    public void put(String namespace, String key, byte[] record)
+    {
+        File file = file(namespace, key);
+        File tmp = null;
+        try
+        {
+            File parent = file.getParentFile();
+            if (!parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory())
+            {
+                throw new IOException("Unable to create " + parent);
+            }
+            tmp = File.createTempFile(key, ".tmp", parent);
+            OutputStream out = new FileOutputStream(tmp);
+            try
+            {
+                out.write(record);
+            }
+            finally
+            {
+                out.close();
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            tmp = null;
+        }
+        catch (IOException e)
+        {
+            log.warn("Unable to cache the record " + file + ": " + e.getMessage());
+        }
+        finally
+        {
+            if (tmp != null)
+            {
+                tmp.delete();
+            }
+        }
+    }
+
+    /**
+     * Remove all the records.
+     */
+    public void clear() throws IOException
+    {
+        if (dir.exists())
+        {
+            FileUtils.cleanDirectory(dir);
+        }
+    }
+
+    /**
+     * @return the maximum size of the cache in bytes configured in oai.cfg
+     *         (cache.records.max-size, in MB), 0 if it is unbounded
+     */
+    public static long getMaxSize()
+    {
+        return ConfigurationManager.getLongProperty("oai", "cache.records.max-size", 1024) * 1024 * 1024;
+    }
+
+    /**
+     * Remove the namespaces of the stylesheets replaced by a newer version,
+     * then the least recently used records until the cache is not larger
+     * than maxSize.
+     *
+     * @param maxSize the maximum size of the records in bytes, 0 for no limit
+     * @return the number of records removed
+     */
+    public int prune(long maxSize) throws IOException
+    {
+        int removed = 0;
+        File[] namespaces = dir.listFiles();
+        if (namespaces == null)
+        {
+            return removed;
+        }
+        // the namespace is the name of the stylesheet and its modification date
+        Map<String, File> latest = new HashMap<String, File>();
+        for (File namespace : namespaces)
+        {
+            int dash = namespace.getName().lastIndexOf('-');
+            if (!namespace.isDirectory() || dash < 0)
+            {
+                continue;
+            }
+            String stylesheet = namespace.getName().substring(0, dash);
+            File other = latest.get(stylesheet);
+            if (other == null)
+            {
+                latest.put(stylesheet, namespace);
+                continue;
+            }
+            File stale = version(other) < version(namespace) ? other : namespace;
+            if (stale == other)
+            {
+                latest.put(stylesheet, namespace);
+            }
+            removed += records(stale).size();
+            FileUtils.deleteDirectory(stale);
+        }
+
+        if (maxSize <= 0)
+        {
+            return removed;
+        }
+        List<File> records = records(dir);
+        long size = 0;
+        final Map<File, Long> used = new HashMap<File, Long>(records.size());
+        for (File record : records)
+        {
+            size += record.length();
+            used.put(record, record.lastModified());
+        }
+        if (size <= maxSize)
+        {
+            return removed;
+        }
+        Collections.sort(records, new Comparator<File>()
+        {
+            @Override
+            public int compare(File a, File b)
+            {
+                return used.get(a).compareTo(used.get(b));
+            }
+        });
+        for (File record : records)
+        {
+            if (size <= maxSize)
+            {
+                break;
+            }
+            long length = record.length();
+            if (record.delete())
+            {
+                size -= length;
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Remove the records not used since a date, e.g. the start of a full
+     * import: the records of every item indexed were used by the import, the
+     * other ones belong to replaced versions of the items.
+     *
+     * @param since the date in milliseconds
+     * @return the number of records removed
+     */
+    public int sweep(long since)
+    {
+        int removed = 0;
+        for (File record : records(dir))
+        {
+            // the touch delay lets the records used just before look older
+            if (record.lastModified() < since - TOUCH_DELAY && record.delete())
+            {
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    private static long version(File namespace)
+    {
+        try
+        {
+            return Long.parseLong(namespace.getName().substring(namespace.getName().lastIndexOf('-') + 1));
+        }
+        catch (NumberFormatException e)
+        {
+            return 0;
+        }
+    }
+
+    private static List<File> records(File dir)
+    {
+        List<File> records = new ArrayList<File>();
+        File[] files = dir.listFiles();
+        if (files != null)
+        {
+            for (File file : files)
+            {
+                if (file.isDirectory())
+                {
+                    records.addAll(records(file));
+                }
+                else if (file.getName().endsWith(".xml"))
+                {
+                    records.add(file);
+                }
+            }
+        }
+        return records;
+    }
+
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    public long getMisses()
+    {
+        return misses.get();
+    }
+}
@@ -0,0 +1,216 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.xoai.services.impl.resources;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+import org.dspace.core.ConfigurationManager;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import com.lyncode.xoai.dataprovider.services.api.ResourceResolver;
+
+/**
+ * Fills the {@link RecordCache} at index time: the compiled metadata of an
+ * item is transformed as it would be for every context and metadata format
+ * declared in xoai.xml, so that the data provider finds the records in the
+ * cache. The formats can be restricted with
+ * <code>cache.records.formats</code> (a list of metadata prefixes).
+ * <p/>
+ * The transformers are not threadsafe, each thread builds its own.
+ */
+public class RecordPrecompiler
+{
+    private static Logger log = LogManager.getLogger(RecordPrecompiler.class);
+
+    private final ResourceResolver resourceResolver;
+
+    /** the stylesheets applied for each context and format */
+    private final List<List<String>> pipelines;
+
+    private final ThreadLocal<List<List<Transformer>>> transformers = new ThreadLocal<List<List<Transformer>>>();
+
+    public RecordPrecompiler(ResourceResolver resourceResolver, String configurationFile) throws IOException
+    {
+        this.resourceResolver = resourceResolver;
+        InputStream in = resourceResolver.getResource(configurationFile);
+        try
+        {
+            this.pipelines = readPipelines(in);
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    private static List<List<String>> readPipelines(InputStream in) throws IOException
+    {
+        Element configuration;
+        try
+        {
+            configuration = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(in)
+                    .getDocumentElement();
+        }
+        catch (Exception e)
+        {
+            throw new IOException("Unable to read the OAI configuration", e);
+        }
+
+        Set<String> prefixes = new LinkedHashSet<String>();
+        String list = ConfigurationManager.getProperty("oai", "cache.records.formats");
+        if (StringUtils.isNotBlank(list))
+        {
+            prefixes.addAll(Arrays.asList(list.trim().split("\\s*,\\s*")));
+        }
+
+        // stylesheets by id
+        Map<String, String> formats = new HashMap<String, String>();
+        Map<String, String> stylesheets = new HashMap<String, String>();
+        for (Element format : children(child(configuration, "Formats"), "Format"))
+        {
+            String prefix = text(child(format, "Prefix"));
+            if (prefixes.isEmpty() || prefixes.contains(prefix))
+            {
+                formats.put(format.getAttribute("id"), text(child(format, "XSLT")));
+            }
+        }
+        for (Element transformer : children(child(configuration, "Transformers"), "Transformer"))
+        {
+            stylesheets.put(transformer.getAttribute("id"), text(child(transformer, "XSLT")));
+        }
+
+        Set<List<String>> pipelines = new LinkedHashSet<List<String>>();
+        for (Element context : children(child(configuration, "Contexts"), "Context"))
+        {
+            String transformer = null;
+            for (Element ref : children(context, "Transformer"))
+            {
+                transformer = stylesheets.get(ref.getAttribute("ref"));
+            }
+            for (Element ref : children(context, "Format"))
+            {
+                String xslt = formats.get(ref.getAttribute("ref"));
+                if (xslt != null)
+                {
+                    pipelines.add(transformer == null ? Arrays.asList(xslt) : Arrays.asList(transformer, xslt));
+                }
+            }
+        }
+        return new ArrayList<List<String>>(pipelines);
+    }
+
+    private static Element child(Element parent, String name)
+    {
+        List<Element> children = children(parent, name);
+        return children.isEmpty() ? null : children.get(0);
+    }
+
+    private static List<Element> children(Element parent, String name)
+    {
+        List<Element> children = new ArrayList<Element>();
+        if (parent != null)
+        {
+            for (Node node = parent.getFirstChild(); node != null; node = node.getNextSibling())
+            {
+                if (node instanceof Element && name.equals(node.getNodeName()))
+                {
+                    children.add((Element) node);
+                }
+            }
+        }
+        return children;
+    }
+
+    private static String text(Element element)
+    {
+        return element == null ? null : element.getTextContent().trim();
+    }
+
+    /**
+     * @return the number of stylesheet pipelines applied to each record
+     */
+    public int getPipelineCount()
+    {
+        return pipelines.size();
+    }
+
+    /**
+     * Transform the compiled metadata of an item with every pipeline, storing
+     * the records in the cache. A pipeline failing is logged and skipped.
+     *
+     * @param compiled the compiled metadata, as stored in the index
+     */
+    public void precompile(byte[] compiled)
+    {
+        List<List<Transformer>> threadTransformers = getTransformers();
+        for (int i = 0; i < threadTransformers.size(); i++)
+        {
+            try
+            {
+                byte[] record = compiled;
+                for (Transformer transformer : threadTransformers.get(i))
+                {
+                    ByteArrayOutputStream out = new ByteArrayOutputStream(record.length);
+                    transformer.transform(new StreamSource(new ByteArrayInputStream(record)), new StreamResult(out));
+                    record = out.toByteArray();
+                }
+            }
+            catch (Exception e)
+            {
+                log.warn("Unable to precompile the record with " + pipelines.get(i) + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private List<List<Transformer>> getTransformers()
+    {
+        List<List<Transformer>> threadTransformers = transformers.get();
+        if (threadTransformers == null)
+        {
+            threadTransformers = new ArrayList<List<Transformer>>();
+            for (List<String> pipeline : pipelines)
+            {
+                List<Transformer> stages = new ArrayList<Transformer>();
+                try
+                {
+                    for (String path : pipeline)
+                    {
+                        stages.add(resourceResolver.getTransformer(path));
+                    }
+                }
+                catch (Exception e)
+                {
+                    log.error("Unable to load the stylesheets " + pipeline, e);
+                    stages.clear();
+                }
+                threadTransformers.add(stages);
+            }
+            transformers.set(threadTransformers);
+        }
+        return threadTransformers;
+    }
+}
@@ -0,0 +1,100 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.xoai.tests.stylesheets;
+
+import org.apache.commons.io.FileUtils;
+import org.dspace.xoai.services.impl.resources.CachingTransformer;
+import org.dspace.xoai.services.impl.resources.RecordCache;
+
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Micro benchmark comparing the ListRecords pages per second served by
+ * transforming every record with the stylesheet of the metadata format and
+ * by reading the records precompiled in the {@link RecordCache}. It is not
+ * run by the test suite; run it with
+ *
+ * <pre>
+ * java -cp ... org.dspace.xoai.tests.stylesheets.RecordCacheBenchmark [stylesheet [item]]
+ * </pre>
+ *
+ * By default the oai_dc stylesheet and the item of the test resources are
+ * used; the item is varied to simulate distinct records.
+ */
+public class RecordCacheBenchmark {
+    private static final int RECORDS = 2000;
+
+    private static final int PAGE_SIZE = 100;
+
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws Exception {
+        File stylesheet = new File(args.length > 0 ? args[0] : "dspace/config/crosswalks/oai/metadataFormats/oai_dc.xsl");
+        File itemFile = new File(args.length > 1 ? args[1] : "dspace-oai/src/test/resources/item.xml");
+        String item = FileUtils.readFileToString(itemFile, "UTF-8");
+
+        List<byte[]> records = new ArrayList<byte[]>(RECORDS);
+        for (int i = 0; i < RECORDS; i++) {
+            records.add(item.replace("</metadata>",
+                    "<element name=\"others\"><field name=\"identifier\">" + i + "</field></element></metadata>")
+                    .getBytes("UTF-8"));
+        }
+
+        File dir = File.createTempFile("records", "");
+        dir.delete();
+        try {
+            RecordCache cache = new RecordCache(dir);
+            Transformer plain = newTransformer(stylesheet);
+            Transformer cached = new CachingTransformer(newTransformer(stylesheet), cache,
+                    RecordCache.namespace(stylesheet));
+
+            // the import fills the cache
+            long start = System.nanoTime();
+            serve(cached, records);
+            System.out.println(String.format("Precompiled %d records in %d ms", RECORDS,
+                    (System.nanoTime() - start) / 1000000));
+
+            for (int round = 0; round < ROUNDS; round++) {
+                report("XSLT ", serve(plain, records));
+                report("cache", serve(cached, records));
+            }
+            System.out.println(String.format("Cache hits %d, misses %d", cache.getHits(), cache.getMisses()));
+        } finally {
+            FileUtils.deleteQuietly(dir);
+        }
+    }
+
+    private static Transformer newTransformer(File stylesheet) throws Exception {
+        StreamSource source = new StreamSource(stylesheet);
+        source.setSystemId(stylesheet.getAbsolutePath());
+        return TransformerFactory.newInstance().newTransformer(source);
+    }
+
+    private static long serve(Transformer transformer, List<byte[]> records) throws Exception {
+        long start = System.nanoTime();
+        for (byte[] record : records) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            transformer.transform(new StreamSource(new ByteArrayInputStream(record)), new StreamResult(out));
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static void report(String name, long nanos) {
+        double pages = (double) RECORDS / PAGE_SIZE;
+        System.out.println(String.format("%s: %.1f pages/s (%d ms for %d records)", name,
+                pages * 1e9 / nanos, nanos / 1000000, RECORDS));
+    }
+}
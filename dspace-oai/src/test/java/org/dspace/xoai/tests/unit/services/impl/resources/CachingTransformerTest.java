@@ -0,0 +1,91 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.xoai.tests.unit.services.impl.resources;
+
+import org.apache.commons.io.IOUtils;
+import org.dspace.xoai.services.impl.resources.CachingTransformer;
+import org.dspace.xoai.services.impl.resources.RecordCache;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.StringWriter;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+
+public class CachingTransformerTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private RecordCache cache;
+    private Transformer transformer;
+    private byte[] item;
+
+    @Before
+    public void setUp() throws Exception {
+        cache = new RecordCache(folder.getRoot());
+        InputStream xslt = getClass().getClassLoader().getResourceAsStream("oai_dc.xsl");
+        try {
+            transformer = new CachingTransformer(TransformerFactory.newInstance()
+                    .newTransformer(new StreamSource(xslt)), cache, "oai_dc.xsl-1");
+        } finally {
+            xslt.close();
+        }
+        InputStream in = getClass().getClassLoader().getResourceAsStream("item.xml");
+        try {
+            item = IOUtils.toByteArray(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    private String transform(byte[] input) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        transformer.transform(new StreamSource(new ByteArrayInputStream(input)), new StreamResult(out));
+        return out.toString("UTF-8");
+    }
+
+    @Test
+    public void secondTransformationIsServedFromTheCache() throws Exception {
+        String first = transform(item);
+        String second = transform(item);
+
+        assertThat(second, is(first));
+        assertThat(cache.getMisses(), is(1L));
+        assertThat(cache.getHits(), is(1L));
+    }
+
+    @Test
+    public void changedInputIsTransformedAgain() throws Exception {
+        String first = transform(item);
+        String changed = transform(new String(item, "UTF-8").replace("Teste", "Changed").getBytes("UTF-8"));
+
+        assertThat(changed, is(not(first)));
+        assertThat(cache.getMisses(), is(2L));
+    }
+
+    @Test
+    public void cachedRecordIsWrittenToWriters() throws Exception {
+        String first = transform(item);
+        StringWriter writer = new StringWriter();
+        transformer.transform(new StreamSource(new ByteArrayInputStream(item)), new StreamResult(writer));
+
+        assertThat(writer.toString(), is(first));
+        assertThat(cache.getHits(), is(1L));
+    }
+}
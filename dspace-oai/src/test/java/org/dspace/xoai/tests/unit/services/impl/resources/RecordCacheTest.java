@@ -0,0 +1,90 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.xoai.tests.unit.services.impl.resources;
+
+import org.dspace.xoai.services.impl.resources.RecordCache;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class RecordCacheTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private RecordCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        cache = new RecordCache(folder.getRoot());
+    }
+
+    private File record(String namespace, String key) {
+        return new File(new File(new File(folder.getRoot(), namespace), key.substring(0, 2)), key + ".xml");
+    }
+
+    private void age(String namespace, String key, long hours) {
+        record(namespace, key).setLastModified(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(hours));
+    }
+
+    @Test
+    public void pruneRemovesTheReplacedStylesheets() throws Exception {
+        cache.put("oai_dc.xsl-1", RecordCache.key(new byte[] { 1 }), new byte[10]);
+        cache.put("oai_dc.xsl-2", RecordCache.key(new byte[] { 1 }), new byte[10]);
+        cache.put("xoai.xsl-1", RecordCache.key(new byte[] { 1 }), new byte[10]);
+
+        assertThat(cache.prune(0), is(1));
+        assertThat(new File(folder.getRoot(), "oai_dc.xsl-1").exists(), is(false));
+        assertThat(cache.get("oai_dc.xsl-2", RecordCache.key(new byte[] { 1 })), is(notNullValue()));
+        assertThat(cache.get("xoai.xsl-1", RecordCache.key(new byte[] { 1 })), is(notNullValue()));
+    }
+
+    @Test
+    public void pruneRemovesTheLeastRecentlyUsedRecords() throws Exception {
+        String old = RecordCache.key(new byte[] { 1 });
+        String used = RecordCache.key(new byte[] { 2 });
+        String recent = RecordCache.key(new byte[] { 3 });
+        cache.put("oai_dc.xsl-1", old, new byte[100]);
+        cache.put("oai_dc.xsl-1", used, new byte[100]);
+        cache.put("oai_dc.xsl-1", recent, new byte[100]);
+        age("oai_dc.xsl-1", old, 3);
+        age("oai_dc.xsl-1", used, 4);
+        age("oai_dc.xsl-1", recent, 1);
+        // a read makes the record the most recently used
+        cache.get("oai_dc.xsl-1", used);
+
+        assertThat(cache.prune(250), is(1));
+        assertThat(cache.get("oai_dc.xsl-1", old), is(nullValue()));
+        assertThat(cache.get("oai_dc.xsl-1", used), is(notNullValue()));
+        assertThat(cache.get("oai_dc.xsl-1", recent), is(notNullValue()));
+    }
+
+    @Test
+    public void sweepRemovesTheRecordsUnusedSinceTheImport() throws Exception {
+        String superseded = RecordCache.key(new byte[] { 1 });
+        String current = RecordCache.key(new byte[] { 2 });
+        cache.put("oai_dc.xsl-1", superseded, new byte[10]);
+        cache.put("oai_dc.xsl-1", current, new byte[10]);
+        age("oai_dc.xsl-1", superseded, 5);
+        age("oai_dc.xsl-1", current, 5);
+        long start = System.currentTimeMillis();
+        cache.get("oai_dc.xsl-1", current);
+
+        assertThat(cache.sweep(start), is(1));
+        assertThat(cache.get("oai_dc.xsl-1", superseded), is(nullValue()));
+        assertThat(cache.get("oai_dc.xsl-1", current), is(notNullValue()));
+    }
+}
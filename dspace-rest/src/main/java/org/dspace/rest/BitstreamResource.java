@@ -27,9 +27,12 @@ import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
 import javax.ws.rs.core.Response.Status;
 
 import org.apache.log4j.Logger;
@@ -77,8 +80,11 @@ public class BitstreamResource extends Resource
      *            If you want to access the item as the user logged into the context.
      *            The header "rest-dspace-token" with the token passed
      *            from the login method must be set.
+     * @param conditions
+     *            The request, to answer If-None-Match with NOT_MODIFIED(304)
+     *            before the bitstream is read.
      * @return If user is allowed to read bitstream, it returns instance of
-     *         bitstream. Otherwise, it throws WebApplicationException with
+     *         bitstream with its ETag. Otherwise, it throws WebApplicationException with
      *         response code UNAUTHORIZED.
      * @throws WebApplicationException
      *             It can happen on: Bad request, unauthorized, SQL exception
@@ -87,25 +93,50 @@ public class BitstreamResource extends Resource
     @GET
     @Path("/{bitstream_id}")
     @Produces({ MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML })
-    public Bitstream getBitstream(@PathParam("bitstream_id") Integer bitstreamId, @QueryParam("expand") String expand,
+    public Response getBitstream(@PathParam("bitstream_id") Integer bitstreamId, @QueryParam("expand") String expand,
             @QueryParam("userIP") String user_ip, @QueryParam("userAgent") String user_agent,
-            @QueryParam("xforwardedfor") String xforwardedfor, @Context HttpHeaders headers, @Context HttpServletRequest request)
+            @QueryParam("xforwardedfor") String xforwardedfor, @Context HttpHeaders headers, @Context HttpServletRequest request,
+            @Context Request conditions)
             throws WebApplicationException
     {
 
         log.info("Reading bitstream(id=" + bitstreamId + ") metadata.");
         org.dspace.core.Context context = null;
-        Bitstream bitstream = null;
+        Response response = null;
 
         try
         {
             context = createContext(getUser(headers));
             org.dspace.content.Bitstream dspaceBitstream = findBitstream(context, bitstreamId, org.dspace.core.Constants.READ);
 
-            writeStats(dspaceBitstream, UsageEvent.Action.VIEW, user_ip, user_agent, xforwardedfor, headers,
-                    request, context);
+            MediaType mediaType = StreamingList.getMediaType(headers);
+            Validators validators = new Validators(context, mediaType, expand).addBitstream(dspaceBitstream)
+                    .add(dspaceBitstream.getSize()).add(dspaceBitstream.getFormatDescription())
+                    .addPolicies(context, org.dspace.core.Constants.BITSTREAM, bitstreamId);
+            for (org.dspace.content.Bundle bundle : dspaceBitstream.getBundles())
+            {
+                validators.add(bundle.getName());
+            }
+            if (Validators.expands(expand, "parent"))
+            {
+                validators.addMetadata(dspaceBitstream.getParentObject());
+            }
+            EntityTag tag = validators.getEntityTag();
 
-            bitstream = new Bitstream(dspaceBitstream, expand, servletContext);
+            ResponseBuilder builder = evaluatePreconditions(conditions, tag);
+            String key = RepresentationCache.key("bitstream", bitstreamId, expand, validators.getVisibility(), mediaType);
+            if (builder == null)
+            {
+                writeStats(dspaceBitstream, UsageEvent.Action.VIEW, user_ip, user_agent, xforwardedfor, headers,
+                        request, context);
+                builder = cachedRepresentation(key, tag, mediaType);
+            }
+            if (builder == null)
+            {
+                Bitstream bitstream = new Bitstream(dspaceBitstream, expand, servletContext);
+                builder = representation(key, tag, bitstream, Bitstream.class, mediaType);
+            }
+            response = validated(builder, validators.isPublic(), tag, null);
             context.complete();
             log.trace("Bitsream(id=" + bitstreamId + ") was successfully read.");
 
@@ -115,6 +146,11 @@ public class BitstreamResource extends Resource
             processException("Someting went wrong while reading bitstream(id=" + bitstreamId + ") from database! Message: " + e,
                     context);
         }
+        catch (IOException e)
+        {
+            processException("Someting went wrong while reading bitstream(id=" + bitstreamId + "), IOException. Message: " + e,
+                    context);
+        }
         catch (ContextException e)
         {
             processException("Someting went wrong while reading bitstream(id=" + bitstreamId + "), ContextException. Message: "
@@ -125,7 +161,7 @@ public class BitstreamResource extends Resource
             processFinally(context);
         }
 
-        return bitstream;
+        return response;
     }
 
     /**
@@ -273,7 +309,11 @@ public class BitstreamResource extends Resource
      *            If you want to access the item as the user logged into the context.
      *            The header "rest-dspace-token" with the token passed
      *            from the login method must be set.
-     * @return Returns response with data with file content type. It can
+     * @param conditions
+     *            The request, to answer If-None-Match with NOT_MODIFIED(304)
+     *            before the file is opened.
+     * @return Returns response with data with file content type and the
+     *         checksum of the file as strong ETag. It can
      *         return the NOT_FOUND(404) response code in case of wrong bitstream
      *         id. Or response code UNAUTHORIZED(401) if user is not
      *         allowed to read bitstream.
@@ -285,7 +325,8 @@ public class BitstreamResource extends Resource
     @Path("/{bitstream_id}/retrieve")
     public javax.ws.rs.core.Response getBitstreamData(@PathParam("bitstream_id") Integer bitstreamId,
             @QueryParam("userIP") String user_ip, @QueryParam("userAgent") String user_agent,
-            @QueryParam("xforwardedfor") String xforwardedfor, @Context HttpHeaders headers, @Context HttpServletRequest request)
+            @QueryParam("xforwardedfor") String xforwardedfor, @Context HttpHeaders headers, @Context HttpServletRequest request,
+            @Context Request conditions)
             throws WebApplicationException
     {
 
@@ -294,19 +335,32 @@ public class BitstreamResource extends Resource
         InputStream inputStream = null;
         String type = null;
         String name = null;
+        EntityTag tag = null;
+        boolean shared = false;
+        ResponseBuilder notModified = null;
 
         try
         {
             context = createContext(getUser(headers));
             org.dspace.content.Bitstream dspaceBitstream = findBitstream(context, bitstreamId, org.dspace.core.Constants.READ);
 
-            writeStats(dspaceBitstream, UsageEvent.Action.VIEW, user_ip, user_agent, xforwardedfor, headers,
-                    request, context);
-
-            log.trace("Bitsream(id=" + bitstreamId + ") data was successfully read.");
-            inputStream = dspaceBitstream.retrieve();
-            type = dspaceBitstream.getFormat().getMIMEType();
-            name = dspaceBitstream.getName();
+            // the content of a bitstream never changes, but its name and
+            // format do and they are sent in the headers
+            tag = Validators.getDataTag(dspaceBitstream);
+            shared = Validators.isPublic(context);
+            if (tag != null)
+            {
+                notModified = evaluatePreconditions(conditions, tag);
+            }
+            if (notModified == null)
+            {
+                writeStats(dspaceBitstream, UsageEvent.Action.VIEW, user_ip, user_agent, xforwardedfor, headers,
+                        request, context);
+                log.trace("Bitsream(id=" + bitstreamId + ") data was successfully read.");
+                inputStream = dspaceBitstream.retrieve();
+                type = dspaceBitstream.getFormat().getMIMEType();
+                name = dspaceBitstream.getName();
+            }
 
             context.complete();
         }
@@ -335,9 +389,13 @@ public class BitstreamResource extends Resource
             processFinally(context);
         }
 
-        return Response.ok(inputStream).type(type)
-                .header("Content-Disposition", "attachment; filename=\"" + name + "\"")
-                .build();
+        if (notModified != null)
+        {
+            return validated(notModified, shared, tag, null);
+        }
+        ResponseBuilder builder = Response.ok(inputStream).type(type)
+                .header("Content-Disposition", "attachment; filename=\"" + name + "\"");
+        return tag == null ? builder.build() : validated(builder, shared, tag, null);
     }
 
     /**
@@ -25,9 +25,13 @@ import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
+import javax.ws.rs.core.UriInfo;
 
 import org.apache.log4j.Logger;
 import org.dspace.authorize.AuthorizeException;
@@ -44,6 +48,7 @@ import org.dspace.rest.exceptions.ContextException;
 import org.dspace.usage.UsageEvent;
 import org.dspace.workflow.WorkflowManager;
 import org.dspace.xmlworkflow.XmlWorkflowManager;
+import org.glassfish.jersey.server.CloseableService;
 
 /**
  * This class provides all CRUD operation over collections.
@@ -77,7 +82,10 @@ public class CollectionsResource extends Resource
      *            If you want to access to collection under logged user into
      *            context. In headers must be set header "rest-dspace-token"
      *            with passed token from login method.
-     * @return Return instance of collection. It can also return status code
+     * @param conditions
+     *            The request, to answer If-None-Match with NOT_MODIFIED(304)
+     *            before the collection is read.
+     * @return Return instance of collection with its ETag. It can also return status code
      *         NOT_FOUND(404) if id of collection is incorrect or status code
      *         UNATHORIZED(401) if user has no permission to read collection.
      * @throws WebApplicationException
@@ -89,26 +97,64 @@ public class CollectionsResource extends Resource
     @GET
     @Path("/{collection_id}")
     @Produces({ MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML })
-    public org.dspace.rest.common.Collection getCollection(@PathParam("collection_id") Integer collectionId,
+    public Response getCollection(@PathParam("collection_id") Integer collectionId,
             @QueryParam("expand") String expand, @QueryParam("limit") @DefaultValue("100") Integer limit,
             @QueryParam("offset") @DefaultValue("0") Integer offset, @QueryParam("userIP") String user_ip,
             @QueryParam("userAgent") String user_agent, @QueryParam("xforwardedfor") String xforwardedfor,
-            @Context HttpHeaders headers, @Context HttpServletRequest request) throws WebApplicationException
+            @Context HttpHeaders headers, @Context HttpServletRequest request, @Context Request conditions)
+            throws WebApplicationException
     {
 
         log.info("Reading collection(id=" + collectionId + ").");
         org.dspace.core.Context context = null;
-        Collection collection = null;
+        Response response = null;
 
         try
         {
             context = createContext(getUser(headers));
 
             org.dspace.content.Collection dspaceCollection = findCollection(context, collectionId, org.dspace.core.Constants.READ);
-            writeStats(dspaceCollection, UsageEvent.Action.VIEW, user_ip, user_agent, xforwardedfor,
-                    headers, request, context);
 
-            collection = new Collection(dspaceCollection, expand, context, limit, offset, servletContext);
+            MediaType mediaType = StreamingList.getMediaType(headers);
+            Validators validators = new Validators(context, mediaType, expand).add(limit).add(offset)
+                    .addCollection(context, dspaceCollection)
+                    .addPolicies(context, org.dspace.core.Constants.COLLECTION, collectionId);
+            if (Validators.expands(expand, "parentCommunityList"))
+            {
+                for (org.dspace.content.Community community : dspaceCollection.getCommunities())
+                {
+                    validators.addCommunity(community);
+                }
+            }
+            if (Validators.expands(expand, "parentCommunity"))
+            {
+                validators.addCommunity((org.dspace.content.Community) dspaceCollection.getParentObject());
+            }
+            if (Validators.expands(expand, "license"))
+            {
+                validators.add(dspaceCollection.getLicense());
+            }
+            if (Validators.expands(expand, "logo"))
+            {
+                validators.addBitstream(dspaceCollection.getLogo());
+            }
+            EntityTag tag = validators.getEntityTag();
+
+            ResponseBuilder builder = evaluatePreconditions(conditions, tag);
+            String key = RepresentationCache.key("collection", collectionId, expand + "/" + limit + "/" + offset,
+                    validators.getVisibility(), mediaType);
+            if (builder == null)
+            {
+                writeStats(dspaceCollection, UsageEvent.Action.VIEW, user_ip, user_agent, xforwardedfor,
+                        headers, request, context);
+                builder = cachedRepresentation(key, tag, mediaType);
+            }
+            if (builder == null)
+            {
+                Collection collection = new Collection(dspaceCollection, expand, context, limit, offset, servletContext);
+                builder = representation(key, tag, collection, Collection.class, mediaType);
+            }
+            response = validated(builder, validators.isPublic(), tag, null);
             context.complete();
 
         }
@@ -116,6 +162,10 @@ public class CollectionsResource extends Resource
         {
             processException("Could not read collection(id=" + collectionId + "), SQLException. Message: " + e, context);
         }
+        catch (IOException e)
+        {
+            processException("Could not read collection(id=" + collectionId + "), IOException. Message: " + e, context);
+        }
         catch (ContextException e)
         {
             processException("Could not read collection(id=" + collectionId + "), ContextException. Message: " + e.getMessage(),
@@ -127,7 +177,7 @@ public class CollectionsResource extends Resource
         }
 
         log.trace("Collection(id=" + collectionId + ") has been successfully read.");
-        return collection;
+        return response;
     }
 
     /**
@@ -212,8 +262,9 @@ public class CollectionsResource extends Resource
     }
 
     /**
-     * Return array of items in collection. You can add more properties to items
-     * with expand parameter.
+     * Return array of items in collection, sorted by id. You can add more
+     * properties to items with expand parameter. Items are written to the
+     * response as they are read.
      * 
      * @param collectionId
      *            Id of collection in DSpace.
@@ -227,6 +278,10 @@ public class CollectionsResource extends Resource
      * @param offset
      *            Offset of start index in array of items of collection. Default
      *            value is 0.
+     * @param after
+     *            Id of the last item of the previous page. The page starts
+     *            with the next item, however deep it is. The response has a
+     *            Link header to the next page, if any.
      * @param headers
      *            If you want to access to collection under logged user into
      *            context. In headers must be set header "rest-dspace-token"
@@ -244,16 +299,18 @@ public class CollectionsResource extends Resource
     @GET
     @Path("/{collection_id}/items")
     @Produces({ MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML })
-    public org.dspace.rest.common.Item[] getCollectionItems(@PathParam("collection_id") Integer collectionId,
-            @QueryParam("expand") String expand, @QueryParam("limit") @DefaultValue("100") Integer limit,
-            @QueryParam("offset") @DefaultValue("0") Integer offset, @QueryParam("userIP") String user_ip,
-            @QueryParam("userAgent") String user_agent, @QueryParam("xforwardedfor") String xforwardedfor,
-            @Context HttpHeaders headers, @Context HttpServletRequest request) throws WebApplicationException
+    public Response getCollectionItems(@PathParam("collection_id") Integer collectionId,
+            @QueryParam("expand") final String expand, @QueryParam("limit") @DefaultValue("100") Integer limit,
+            @QueryParam("offset") @DefaultValue("0") Integer offset, @QueryParam("after") Integer after,
+            @QueryParam("userIP") final String user_ip, @QueryParam("userAgent") final String user_agent,
+            @QueryParam("xforwardedfor") final String xforwardedfor, @Context final HttpHeaders headers,
+            @Context final HttpServletRequest request, @Context UriInfo uriInfo,
+            @Context CloseableService closeables) throws WebApplicationException
     {
 
         log.info("Reading collection(id=" + collectionId + ") items.");
         org.dspace.core.Context context = null;
-        List<Item> items = null;
+        Response response = null;
 
         try
         {
@@ -263,19 +320,48 @@ public class CollectionsResource extends Resource
             writeStats(dspaceCollection, UsageEvent.Action.VIEW, user_ip, user_agent, xforwardedfor,
                     headers, request, context);
 
-            items = new ArrayList<Item>();
-            org.dspace.content.ItemIterator dspaceItems = dspaceCollection.getItems(limit, offset);
+            if (!((limit != null) && (limit >= 0) && (offset != null) && (offset >= 0)))
+            {
+                log.warn("Paging was badly set, using default values.");
+                limit = 100;
+                offset = 0;
+            }
+            final List<Integer> ids = dspaceCollection.getItemIDs(after == null ? -1 : after, offset, limit);
 
-            while (dspaceItems.hasNext()) {
-                org.dspace.content.Item dspaceItem = dspaceItems.next();
-                if (ItemService.isItemListedForUser(context, dspaceItem)) {
-                    items.add(new Item(dspaceItem, expand, context, servletContext));
-                    writeStats(dspaceItem, UsageEvent.Action.VIEW, user_ip, user_agent, xforwardedfor,
-                               headers, request, context);
+            StreamingList<Item> items = new StreamingList<Item>("items", Item.class, StreamingList.getMediaType(headers),
+                    context)
+            {
+                @Override
+                protected void produce() throws Exception
+                {
+                    for (int start = 0; start < ids.size(); start += StreamingList.BATCH_SIZE)
+                    {
+                        for (org.dspace.content.Item dspaceItem : org.dspace.content.Item.find(context,
+                                ids.subList(start, Math.min(ids.size(), start + StreamingList.BATCH_SIZE))))
+                        {
+                            if (ItemService.isItemListedForUser(context, dspaceItem))
+                            {
+                                emit(new Item(dspaceItem, expand, context, servletContext));
+                                writeStats(dspaceItem, UsageEvent.Action.VIEW, user_ip, user_agent, xforwardedfor,
+                                        headers, request, context);
+                            }
+                        }
+                        context.clearCache();
+                    }
                 }
-            }
+            };
 
-            context.complete();
+            Response.ResponseBuilder builder = Response.ok(items, items.getMediaType());
+            Integer next = StreamingList.nextAfter(ids, limit);
+            if (next != null)
+            {
+                builder.link(uriInfo.getRequestUriBuilder().replaceQueryParam("after", next)
+                        .replaceQueryParam("offset").build(), "next");
+            }
+            response = builder.build();
+            // the context is closed once the items are written, or dropped
+            closeables.add(items);
+            context = null;
         }
         catch (SQLException e)
         {
@@ -290,8 +376,7 @@ public class CollectionsResource extends Resource
             processFinally(context);
         }
 
-        log.trace("All items in collection(id=" + collectionId + ") were successfully read.");
-        return items.toArray(new Item[0]);
+        return response;
     }
 
     /**
@@ -10,6 +10,7 @@ package org.dspace.rest;
 import java.io.IOException;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.List;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.Consumes;
@@ -24,9 +25,13 @@ import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
+import javax.ws.rs.core.UriInfo;
 
 import org.apache.log4j.Logger;
 import org.dspace.authorize.AuthorizeException;
@@ -35,6 +40,7 @@ import org.dspace.rest.common.Collection;
 import org.dspace.rest.common.Community;
 import org.dspace.rest.exceptions.ContextException;
 import org.dspace.usage.UsageEvent;
+import org.glassfish.jersey.server.CloseableService;
 
 /**
  * Class which provides CRUD methods over communities.
@@ -62,7 +68,10 @@ public class CommunitiesResource extends Resource
      *            If you want to access to community under logged user into
      *            context. In headers must be set header "rest-dspace-token"
      *            with passed token from login method.
-     * @return Return instance of org.dspace.rest.common.Community.
+     * @param conditions
+     *            The request, to answer If-None-Match with NOT_MODIFIED(304)
+     *            before the community is read.
+     * @return Return instance of org.dspace.rest.common.Community with its ETag.
      * @throws WebApplicationException
      *             It is throw when was problem with creating context or problem
      *             with database reading. Also if id of community is incorrect
@@ -71,25 +80,67 @@ public class CommunitiesResource extends Resource
     @GET
     @Path("/{community_id}")
     @Produces({ MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML })
-    public Community getCommunity(@PathParam("community_id") Integer communityId, @QueryParam("expand") String expand,
+    public Response getCommunity(@PathParam("community_id") Integer communityId, @QueryParam("expand") String expand,
             @QueryParam("userIP") String user_ip, @QueryParam("userAgent") String user_agent,
-            @QueryParam("xforwardedfor") String xforwardedfor, @Context HttpHeaders headers, @Context HttpServletRequest request)
+            @QueryParam("xforwardedfor") String xforwardedfor, @Context HttpHeaders headers, @Context HttpServletRequest request,
+            @Context Request conditions)
             throws WebApplicationException
     {
 
         log.info("Reading community(id=" + communityId + ").");
         org.dspace.core.Context context = null;
-        Community community = null;
+        Response response = null;
 
         try
         {
             context = createContext(getUser(headers));
 
             org.dspace.content.Community dspaceCommunity = findCommunity(context, communityId, org.dspace.core.Constants.READ);
-            writeStats(dspaceCommunity, UsageEvent.Action.VIEW, user_ip, user_agent, xforwardedfor, headers,
-                    request, context);
 
-            community = new Community(dspaceCommunity, expand, context, servletContext);
+            MediaType mediaType = StreamingList.getMediaType(headers);
+            Validators validators = new Validators(context, mediaType, expand).addCommunity(dspaceCommunity)
+                    .addPolicies(context, org.dspace.core.Constants.COMMUNITY, communityId);
+            if (Validators.expands(expand, "parentCommunity"))
+            {
+                validators.addCommunity(dspaceCommunity.getParentCommunity());
+            }
+            if (Validators.expands(expand, "collections"))
+            {
+                // the policies of the children decide which are listed
+                for (org.dspace.content.Collection collection : dspaceCommunity.getCollections())
+                {
+                    validators.addCollection(context, collection)
+                            .addPolicies(context, org.dspace.core.Constants.COLLECTION, collection.getID());
+                }
+            }
+            if (Validators.expands(expand, "subCommunities"))
+            {
+                for (org.dspace.content.Community subCommunity : dspaceCommunity.getSubcommunities())
+                {
+                    validators.addCommunity(subCommunity)
+                            .addPolicies(context, org.dspace.core.Constants.COMMUNITY, subCommunity.getID());
+                }
+            }
+            if (Validators.expands(expand, "logo"))
+            {
+                validators.addBitstream(dspaceCommunity.getLogo());
+            }
+            EntityTag tag = validators.getEntityTag();
+
+            ResponseBuilder builder = evaluatePreconditions(conditions, tag);
+            String key = RepresentationCache.key("community", communityId, expand, validators.getVisibility(), mediaType);
+            if (builder == null)
+            {
+                writeStats(dspaceCommunity, UsageEvent.Action.VIEW, user_ip, user_agent, xforwardedfor, headers,
+                        request, context);
+                builder = cachedRepresentation(key, tag, mediaType);
+            }
+            if (builder == null)
+            {
+                Community community = new Community(dspaceCommunity, expand, context, servletContext);
+                builder = representation(key, tag, community, Community.class, mediaType);
+            }
+            response = validated(builder, validators.isPublic(), tag, null);
             context.complete();
 
         }
@@ -97,6 +148,10 @@ public class CommunitiesResource extends Resource
         {
             processException("Could not read community(id=" + communityId + "), SQLException. Message:" + e, context);
         }
+        catch (IOException e)
+        {
+            processException("Could not read community(id=" + communityId + "), IOException. Message:" + e, context);
+        }
         catch (ContextException e)
         {
             processException("Could not read community(id=" + communityId + "), ContextException. Message:" + e.getMessage(),
@@ -109,11 +164,13 @@ public class CommunitiesResource extends Resource
 
 
         log.trace("Community(id=" + communityId + ") was successfully read.");
-        return community;
+        return response;
     }
 
     /**
-     * Return all communities in DSpace.
+     * Return all communities in DSpace, sorted by title, or by id when the
+     * page starts after a community. Communities are written to the response
+     * as they are read.
      * 
      * @param expand
      *            String in which is what you want to add to returned instance
@@ -124,7 +181,14 @@ public class CommunitiesResource extends Resource
      * @param limit
      *            Maximum communities in array. Default value is 100.
      * @param offset
-     *            Index from which will start array of communities.
+     *            Index from which will start array of communities. Without
+     *            after, the communities are ordered by name.
+     * @param after
+     *            Id of the last community of the previous page. The page
+     *            starts with the next community by id, and the response has a
+     *            Link header to the next page, if any. These pages are
+     *            ordered by id, not by name as the pages by offset only: a
+     *            client must not mix both.
      * @param headers
      *            If you want to access to community under logged user into
      *            context. In headers must be set header "rest-dspace-token"
@@ -136,24 +200,23 @@ public class CommunitiesResource extends Resource
      */
     @GET
     @Produces({ MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML })
-    public Community[] getCommunities(@QueryParam("expand") String expand,
+    public Response getCommunities(@QueryParam("expand") final String expand,
             @QueryParam("limit") @DefaultValue("100") Integer limit, @QueryParam("offset") @DefaultValue("0") Integer offset,
-            @QueryParam("userIP") String user_ip, @QueryParam("userAgent") String user_agent,
-            @QueryParam("xforwardedfor") String xforwardedfor, @Context HttpHeaders headers, @Context HttpServletRequest request)
+            @QueryParam("after") Integer after, @QueryParam("userIP") final String user_ip,
+            @QueryParam("userAgent") final String user_agent, @QueryParam("xforwardedfor") final String xforwardedfor,
+            @Context final HttpHeaders headers, @Context final HttpServletRequest request, @Context UriInfo uriInfo,
+            @Context CloseableService closeables)
             throws WebApplicationException
     {
 
-        log.info("Reading all communities.(offset=" + offset + " ,limit=" + limit + ").");
+        log.info("Reading all communities.(after=" + after + ",offset=" + offset + " ,limit=" + limit + ").");
         org.dspace.core.Context context = null;
-        ArrayList<Community> communities = null;
+        Response response = null;
 
         try
         {
             context = createContext(getUser(headers));
 
-            org.dspace.content.Community[] dspaceCommunities = org.dspace.content.Community.findAll(context);
-            communities = new ArrayList<Community>();
-
             if (!((limit != null) && (limit >= 0) && (offset != null) && (offset >= 0)))
             {
                 log.warn("Paging was badly set, using default values.");
@@ -161,18 +224,61 @@ public class CommunitiesResource extends Resource
                 offset = 0;
             }
 
-            for (int i = offset; (i < (offset + limit)) && i < dspaceCommunities.length; i++)
+            // the pages after an id are ordered by id, to be read without
+            // loading all the communities; the pages by offset keep the
+            // order by name of findAll
+            final List<Integer> ids;
+            if (after != null)
             {
-                if (AuthorizeManager.authorizeActionBoolean(context, dspaceCommunities[i], org.dspace.core.Constants.READ))
+                ids = org.dspace.content.Community.findAllIDs(context, after, offset, limit);
+            }
+            else
+            {
+                org.dspace.content.Community[] dspaceCommunities = org.dspace.content.Community.findAll(context);
+                ids = new ArrayList<Integer>();
+                for (int i = offset; (i < (offset + limit)) && i < dspaceCommunities.length; i++)
                 {
-                    Community community = new Community(dspaceCommunities[i], expand, context, servletContext);
-                    writeStats(dspaceCommunities[i], UsageEvent.Action.VIEW, user_ip, user_agent,
-                            xforwardedfor, headers, request, context);
-                    communities.add(community);
+                    ids.add(dspaceCommunities[i].getID());
                 }
+                context.clearCache();
             }
 
-            context.complete();
+            StreamingList<Community> communities = new StreamingList<Community>("communities", Community.class,
+                    StreamingList.getMediaType(headers), context)
+            {
+                @Override
+                protected void produce() throws Exception
+                {
+                    for (int i = 0; i < ids.size(); i++)
+                    {
+                        org.dspace.content.Community dspaceCommunity = org.dspace.content.Community.find(
+                                context, ids.get(i));
+                        if (dspaceCommunity != null && AuthorizeManager.authorizeActionBoolean(context,
+                                dspaceCommunity, org.dspace.core.Constants.READ))
+                        {
+                            emit(new Community(dspaceCommunity, expand, context, servletContext));
+                            writeStats(dspaceCommunity, UsageEvent.Action.VIEW, user_ip, user_agent,
+                                    xforwardedfor, headers, request, context);
+                        }
+                        if ((i + 1) % StreamingList.BATCH_SIZE == 0)
+                        {
+                            context.clearCache();
+                        }
+                    }
+                }
+            };
+
+            Response.ResponseBuilder builder = Response.ok(communities, communities.getMediaType());
+            Integer next = StreamingList.nextAfter(ids, limit);
+            if (after != null && next != null)
+            {
+                builder.link(uriInfo.getRequestUriBuilder().replaceQueryParam("after", next)
+                        .replaceQueryParam("offset").build(), "next");
+            }
+            response = builder.build();
+            // the context is closed once the communities are written, or dropped
+            closeables.add(communities);
+            context = null;
         }
         catch (SQLException e)
         {
@@ -187,8 +293,7 @@ public class CommunitiesResource extends Resource
             processFinally(context);
         }
 
-        log.trace("All communities successfully read.");
-        return communities.toArray(new Community[0]);
+        return response;
     }
 
     /**
@@ -12,6 +12,7 @@ import java.io.InputStream;
 import java.util.Date;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -28,10 +29,14 @@ import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
 import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.UriInfo;
 
 import org.apache.log4j.Logger;
 import org.dspace.authorize.AuthorizeException;
@@ -39,9 +44,7 @@ import org.dspace.authorize.AuthorizeManager;
 import org.dspace.content.BitstreamFormat;
 import org.dspace.content.Bundle;
 import org.dspace.content.FormatIdentifier;
-import org.dspace.content.ItemIterator;
 import org.dspace.content.Metadatum;
-import org.dspace.content.service.ItemService;
 import org.dspace.eperson.Group;
 import org.dspace.rest.common.Bitstream;
 import org.dspace.rest.common.Item;
@@ -52,6 +55,7 @@ import org.dspace.storage.rdbms.DatabaseManager;
 import org.dspace.storage.rdbms.TableRow;
 import org.dspace.storage.rdbms.TableRowIterator;
 import org.dspace.usage.UsageEvent;
+import org.glassfish.jersey.server.CloseableService;
 
 /**
  * Class which provide all CRUD methods over items.
@@ -81,7 +85,11 @@ public class ItemsResource extends Resource
      *            If you want to access to item under logged user into context.
      *            In headers must be set header "rest-dspace-token" with passed
      *            token from login method.
-     * @return If user is allowed to read item, it returns item. Otherwise is
+     * @param conditions
+     *            The request, to answer If-None-Match with NOT_MODIFIED(304)
+     *            before the item is read.
+     * @return If user is allowed to read item, it returns item with its
+     *         ETag. Otherwise is
      *         thrown WebApplicationException with response status
      *         UNAUTHORIZED(401) or NOT_FOUND(404) if was id incorrect.
      * @throws WebApplicationException
@@ -93,24 +101,67 @@ public class ItemsResource extends Resource
     @GET
     @Path("/{item_id}")
     @Produces({ MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML })
-    public Item getItem(@PathParam("item_id") Integer itemId, @QueryParam("expand") String expand,
+    public Response getItem(@PathParam("item_id") Integer itemId, @QueryParam("expand") String expand,
             @QueryParam("userIP") String user_ip, @QueryParam("userAgent") String user_agent,
-            @QueryParam("xforwardedfor") String xforwardedfor, @Context HttpHeaders headers, @Context HttpServletRequest request)
+            @QueryParam("xforwardedfor") String xforwardedfor, @Context HttpHeaders headers, @Context HttpServletRequest request,
+            @Context Request conditions)
             throws WebApplicationException
     {
 
         log.info("Reading item(id=" + itemId + ").");
         org.dspace.core.Context context = null;
-        Item item = null;
+        Response response = null;
 
         try
         {
             context = createContext(getUser(headers));
             org.dspace.content.Item dspaceItem = findItem(context, itemId, org.dspace.core.Constants.READ);
 
-            writeStats(dspaceItem, UsageEvent.Action.VIEW, user_ip, user_agent, xforwardedfor, headers, request, context);
+            // only the metadata changes update the last modification of the
+            // item: the policies, bundles, bitstreams and the embedded
+            // collections and communities are added on their own
+            MediaType mediaType = StreamingList.getMediaType(headers);
+            Date lastModified = dspaceItem.getLastModified();
+            Validators validators = new Validators(context, mediaType, expand).add(lastModified.getTime())
+                    .addItemPolicies(context, itemId);
+            if (Validators.expands(expand, "bitstreams"))
+            {
+                validators.addItemBitstreams(dspaceItem);
+            }
+            if (Validators.expands(expand, "parentCollection"))
+            {
+                validators.addCollection(context, dspaceItem.getOwningCollection());
+            }
+            if (Validators.expands(expand, "parentCollectionList"))
+            {
+                for (org.dspace.content.Collection collection : dspaceItem.getCollections())
+                {
+                    validators.addCollection(context, collection);
+                }
+            }
+            if (Validators.expands(expand, "parentCommunityList"))
+            {
+                for (org.dspace.content.Community community : dspaceItem.getCommunities())
+                {
+                    validators.addCommunity(community);
+                }
+            }
+            EntityTag tag = validators.getEntityTag();
+
+            ResponseBuilder builder = evaluatePreconditions(conditions, tag);
+            String key = RepresentationCache.key("item", itemId, expand, validators.getVisibility(), mediaType);
+            if (builder == null)
+            {
+                writeStats(dspaceItem, UsageEvent.Action.VIEW, user_ip, user_agent, xforwardedfor, headers, request, context);
+                builder = cachedRepresentation(key, tag, mediaType);
+            }
+            if (builder == null)
+            {
+                Item item = new Item(dspaceItem, expand, context, servletContext);
+                builder = representation(key, tag, item, Item.class, mediaType);
+            }
+            response = validated(builder, validators.isPublic(), tag, lastModified);
 
-            item = new Item(dspaceItem, expand, context, servletContext);
             context.complete();
             log.trace("Item(id=" + itemId + ") was successfully read.");
 
@@ -119,6 +170,10 @@ public class ItemsResource extends Resource
         {
             processException("Could not read item(id=" + itemId + "), SQLException. Message: " + e, context);
         }
+        catch (IOException e)
+        {
+            processException("Could not read item(id=" + itemId + "), IOException. Message: " + e, context);
+        }
         catch (ContextException e)
         {
             processException("Could not read item(id=" + itemId + "), ContextException. Message: " + e.getMessage(), context);
@@ -128,18 +183,23 @@ public class ItemsResource extends Resource
             processFinally(context);
         }
 
-        return item;
+        return response;
     }
 
     /**
-     * It returns an array of items in DSpace. You can define how many items in
-     * list will be and from which index will start. Items in list are sorted by
-     * handle, not by id.
+     * It returns an array of items in DSpace, sorted by id. You can define how
+     * many items in list will be and from which item or index will start.
+     * Items are written to the response as they are read.
      * 
      * @param limit
      *            How many items in array will be. Default value is 100.
      * @param offset
      *            On which index will array start. Default value is 0.
+     * @param after
+     *            Id of the last item of the previous page. The page starts
+     *            with the next item, read from the index of the database,
+     *            however deep it is. The response has a Link header to the
+     *            next page, if any.
      * @param headers
      *            If you want to access to item under logged user into context.
      *            In headers must be set header "rest-dspace-token" with passed
@@ -153,23 +213,22 @@ public class ItemsResource extends Resource
      */
     @GET
     @Produces({ MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML })
-    public Item[] getItems(@QueryParam("expand") String expand, @QueryParam("limit") @DefaultValue("100") Integer limit,
-            @QueryParam("offset") @DefaultValue("0") Integer offset, @QueryParam("userIP") String user_ip,
-            @QueryParam("userAgent") String user_agent, @QueryParam("xforwardedfor") String xforwardedfor,
-            @Context HttpHeaders headers, @Context HttpServletRequest request) throws WebApplicationException
+    public Response getItems(@QueryParam("expand") final String expand, @QueryParam("limit") @DefaultValue("100") Integer limit,
+            @QueryParam("offset") @DefaultValue("0") Integer offset, @QueryParam("after") Integer after,
+            @QueryParam("userIP") final String user_ip, @QueryParam("userAgent") final String user_agent,
+            @QueryParam("xforwardedfor") final String xforwardedfor, @Context final HttpHeaders headers,
+            @Context final HttpServletRequest request, @Context UriInfo uriInfo,
+            @Context CloseableService closeables) throws WebApplicationException
     {
 
-        log.info("Reading items.(offset=" + offset + ",limit=" + limit + ").");
+        log.info("Reading items.(after=" + after + ",offset=" + offset + ",limit=" + limit + ").");
         org.dspace.core.Context context = null;
-        List<Item> items = null;
+        Response response = null;
 
         try
         {
             context = createContext(getUser(headers));
 
-            ItemIterator dspaceItems = org.dspace.content.Item.findAllUnfiltered(context);
-            items = new ArrayList<Item>();
-
             if (!((limit != null) && (limit >= 0) && (offset != null) && (offset >= 0)))
             {
                 log.warn("Pagging was badly set, using default values.");
@@ -177,20 +236,53 @@ public class ItemsResource extends Resource
                 offset = 0;
             }
 
-            for (int i = 0; (dspaceItems.hasNext()) && (i < (limit + offset)); i++)
+            final List<Integer> ids = org.dspace.content.Item.findItemIDsUnfiltered(context,
+                    after == null ? -1 : after, offset, limit);
+
+            StreamingList<Item> items = new StreamingList<Item>("items", Item.class, StreamingList.getMediaType(headers),
+                    context)
             {
-                org.dspace.content.Item dspaceItem = dspaceItems.next();
-                if (i >= offset)
+                @Override
+                protected void produce() throws Exception
                 {
-                    if (ItemService.isItemListedForUser(context, dspaceItem))
+                    boolean admin = AuthorizeManager.isAdmin(context);
+                    for (int start = 0; start < ids.size(); start += StreamingList.BATCH_SIZE)
                     {
-                        items.add(new Item(dspaceItem, expand, context, servletContext));
-                        writeStats(dspaceItem, UsageEvent.Action.VIEW, user_ip, user_agent, xforwardedfor,
-                                headers, request, context);
+                        // load a batch at once and check its READ policies at once
+                        List<org.dspace.content.Item> batch = org.dspace.content.Item.find(context,
+                                ids.subList(start, Math.min(ids.size(), start + StreamingList.BATCH_SIZE)));
+                        BitSet readable = AuthorizeManager.authorizeActionBitmap(context, batch,
+                                org.dspace.core.Constants.READ);
+                        for (int i = 0; i < batch.size(); i++)
+                        {
+                            org.dspace.content.Item dspaceItem = batch.get(i);
+                            if (admin || (readable.get(i) && dspaceItem.isDiscoverable()))
+                            {
+                                emit(new Item(dspaceItem, expand, context, servletContext));
+                                writeStats(dspaceItem, UsageEvent.Action.VIEW, user_ip, user_agent, xforwardedfor,
+                                        headers, request, context);
+                            }
+                            else
+                            {
+                                log.debug("item(" + dspaceItem.getID() + ") " + dspaceItem.getName() + " is unlisted.");
+                            }
+                        }
+                        context.clearCache();
                     }
                 }
+            };
+
+            Response.ResponseBuilder builder = Response.ok(items, items.getMediaType());
+            Integer next = StreamingList.nextAfter(ids, limit);
+            if (next != null)
+            {
+                builder.link(uriInfo.getRequestUriBuilder().replaceQueryParam("after", next)
+                        .replaceQueryParam("offset").build(), "next");
             }
-            context.complete();
+            response = builder.build();
+            // the context is closed once the items are written, or dropped
+            closeables.add(items);
+            context = null;
         }
         catch (SQLException e)
         {
@@ -205,8 +297,7 @@ public class ItemsResource extends Resource
             processFinally(context);
         }
 
-        log.trace("Items were successfully read.");
-        return items.toArray(new Item[0]);
+        return response;
     }
 
     /**
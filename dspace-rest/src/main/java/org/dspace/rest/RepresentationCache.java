@@ -0,0 +1,101 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.rest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.MediaType;
+
+import org.apache.log4j.Logger;
+import org.dspace.core.ConfigurationManager;
+import org.dspace.core.SharedCache;
+
+/**
+ * Optional cache of the serialised representations of the objects, keyed by
+ * (type, id, expand, visibility class of the user, media type). An entry is
+ * used only while the ETag computed by the resource for the current state
+ * of the object is the one it was stored with, so a modified object is
+ * never served from the cache; the entries are kept in the
+ * <code>rest.representation</code> region of the {@link SharedCache},
+ * bounded in size and time.
+ * <p/>
+ * It is disabled unless <code>cache.representations</code> is true in
+ * rest.cfg and the shared cache is enabled.
+ */
+public class RepresentationCache
+{
+    private static final Logger log = Logger.getLogger(RepresentationCache.class);
+
+    /** A representation and the tag of the state it was built from */
+    private static class Entry
+    {
+        private final EntityTag tag;
+
+        private final byte[] representation;
+
+        Entry(EntityTag tag, byte[] representation)
+        {
+            this.tag = tag;
+            this.representation = representation;
+        }
+    }
+
+    /**
+     * @return true if the representations are cached
+     */
+    public static boolean isEnabled()
+    {
+        return SharedCache.isEnabled() && ConfigurationManager.getBooleanProperty("rest", "cache.representations", false);
+    }
+
+    private static SharedCache<String, Entry> region()
+    {
+        return SharedCache.getRegion("rest.representation");
+    }
+
+    public static String key(String type, int id, String expand, String visibility, MediaType mediaType)
+    {
+        return type + "/" + id + "/" + expand + "/" + visibility + "/" + mediaType;
+    }
+
+    /**
+     * @return the representation stored for the key with the tag, or null
+     */
+    public static byte[] get(String key, EntityTag tag)
+    {
+        Entry entry = region().get(key);
+        if (entry != null && entry.tag.equals(tag))
+        {
+            return entry.representation;
+        }
+        return null;
+    }
+
+    /**
+     * Serialise a representation and store it.
+     *
+     * @return the serialised representation
+     */
+    public static <T> byte[] put(String key, EntityTag tag, T object, Class<T> type, MediaType mediaType)
+            throws IOException
+    {
+        SharedCache<String, Entry> region = region();
+        long stamp = region.stamp();
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StreamingList.serialize(object, type, mediaType, out);
+        byte[] representation = out.toByteArray();
+        region.put(key, new Entry(tag, representation), stamp);
+        if (log.isDebugEnabled())
+        {
+            log.debug("Cached the representation " + key + " (" + representation.length + " bytes)");
+        }
+        return representation;
+    }
+}
@@ -7,15 +7,22 @@
  */
 package org.dspace.rest;
 
+import java.io.IOException;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 
 import javax.servlet.ServletContext;
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.CacheControl;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
 
 import org.apache.log4j.Logger;
 import org.dspace.content.DSpaceObject;
@@ -167,6 +174,77 @@ public class Resource
         }
     }
 
+    /**
+     * Evaluate the conditional headers of a GET request against the tag of
+     * the current state of the object. Only the tag is compared: the last
+     * modification date of an object doesn't change with its policies.
+     *
+     * @return the Not Modified response to send, or null if the
+     *         representation must be sent.
+     */
+    protected static ResponseBuilder evaluatePreconditions(Request request, EntityTag tag)
+    {
+        ResponseBuilder builder = request.evaluatePreconditions(tag);
+        if (builder != null)
+        {
+            log.debug("Representation " + tag + " not modified.");
+        }
+        return builder;
+    }
+
+    /**
+     * @return the response with the representation stored in the
+     *         {@link RepresentationCache} for the key and tag, or null.
+     */
+    protected static ResponseBuilder cachedRepresentation(String key, EntityTag tag, MediaType mediaType)
+    {
+        if (!RepresentationCache.isEnabled())
+        {
+            return null;
+        }
+        byte[] representation = RepresentationCache.get(key, tag);
+        return representation == null ? null : Response.ok(representation, mediaType);
+    }
+
+    /**
+     * @return the response with the representation, stored in the
+     *         {@link RepresentationCache} if it is enabled.
+     */
+    protected static <T> ResponseBuilder representation(String key, EntityTag tag, T entity, Class<T> type,
+            MediaType mediaType) throws IOException
+    {
+        if (RepresentationCache.isEnabled())
+        {
+            return Response.ok(RepresentationCache.put(key, tag, entity, type, mediaType), mediaType);
+        }
+        return Response.ok(entity, mediaType);
+    }
+
+    /**
+     * Add the validators to a response, and make it private unless it is
+     * the representation seen by anonymous users.
+     *
+     * @param shared
+     *            true if the response may be stored by shared caches, see
+     *            {@link Validators#isPublic()}
+     * @param lastModified
+     *            last modification date of the object, or null
+     */
+    protected static Response validated(ResponseBuilder builder, boolean shared, EntityTag tag, Date lastModified)
+    {
+        builder.tag(tag).header(HttpHeaders.VARY, HttpHeaders.ACCEPT + ", " + TokenHolder.TOKEN_HEADER);
+        if (lastModified != null)
+        {
+            builder.lastModified(lastModified);
+        }
+        CacheControl cacheControl = new CacheControl();
+        cacheControl.setNoTransform(false);
+        cacheControl.setPrivate(!shared);
+        // revalidate, a 304 costs a few queries
+        cacheControl.setMaxAge(0);
+        return builder.cacheControl(cacheControl).build();
+    }
+
     /**
      * Split string with regex ".".
      *
@@ -0,0 +1,271 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.rest;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.StreamingOutput;
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.apache.log4j.Logger;
+import org.dspace.core.Context;
+import org.glassfish.jersey.server.CloseableService;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.jaxrs.json.JacksonJaxbJsonProvider;
+
+/**
+ * List of objects written to the response as they are read, instead of
+ * being built as an array and serialised at the end, so that the memory
+ * used by a request doesn't depend on the size of the page. The JSON and
+ * XML written are the same as for an array of the objects.
+ * <p>
+ * The objects are produced by {@link #produce()}, which passes them to
+ * {@link #emit(Object)}: it runs after the resource method returned, with
+ * the context of the request, which is completed once the list is written.
+ * The resource registers the list in the {@link CloseableService} of the
+ * request, so that the context is aborted if the list is never written,
+ * e.g. when the client is gone. As the response status was already sent,
+ * an error while producing the list can only truncate it.
+ *
+ * @param <T>
+ *            the class of the objects, annotated with XmlRootElement
+ */
+public abstract class StreamingList<T> implements StreamingOutput, Closeable
+{
+    private static final Logger log = Logger.getLogger(StreamingList.class);
+
+    /** number of objects loaded at once by the resources */
+    public static final int BATCH_SIZE = 50;
+
+    private static final ConcurrentMap<Class<?>, JAXBContext> jaxbContexts = new ConcurrentHashMap<Class<?>, JAXBContext>();
+
+    private static final JacksonJaxbJsonProvider jsonProvider = new JacksonJaxbJsonProvider();
+
+    private final String listName;
+    private final Class<T> type;
+    private final MediaType mediaType;
+
+    /** the context the objects are read with */
+    protected final Context context;
+
+    private JsonGenerator json;
+    private ObjectMapper mapper;
+    private XMLStreamWriter xml;
+    private Marshaller marshaller;
+
+    /**
+     * @param listName
+     *            name of the XML element of the list, e.g. "items"
+     * @param type
+     *            the class of the objects
+     * @param mediaType
+     *            JSON or XML
+     * @param context
+     *            the context of the request, completed once the list is
+     *            written
+     */
+    public StreamingList(String listName, Class<T> type, MediaType mediaType, Context context)
+    {
+        this.listName = listName;
+        this.type = type;
+        this.mediaType = mediaType;
+        this.context = context;
+    }
+
+    /**
+     * @return the media type of the response, JSON unless the client
+     *         accepts XML and not JSON.
+     */
+    public static MediaType getMediaType(HttpHeaders headers)
+    {
+        for (MediaType accepted : headers.getAcceptableMediaTypes())
+        {
+            if (accepted.isCompatible(MediaType.APPLICATION_JSON_TYPE))
+            {
+                return MediaType.APPLICATION_JSON_TYPE;
+            }
+            if (accepted.isCompatible(MediaType.APPLICATION_XML_TYPE))
+            {
+                return MediaType.APPLICATION_XML_TYPE;
+            }
+        }
+        return MediaType.APPLICATION_JSON_TYPE;
+    }
+
+    public MediaType getMediaType()
+    {
+        return mediaType;
+    }
+
+    /**
+     * Produce the objects of the list.
+     */
+    protected abstract void produce() throws Exception;
+
+    /**
+     * Write an object of the list.
+     */
+    protected void emit(T object) throws IOException
+    {
+        try
+        {
+            if (json != null)
+            {
+                mapper.writeValue(json, object);
+            }
+            else
+            {
+                marshaller.marshal(object, xml);
+            }
+        }
+        catch (JAXBException e)
+        {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public void write(OutputStream output) throws IOException, WebApplicationException
+    {
+        try
+        {
+            start(output);
+            try
+            {
+                produce();
+                context.complete();
+            }
+            catch (Exception e)
+            {
+                log.error("Unable to write the " + listName + ", the response is truncated", e);
+                throw new WebApplicationException(e);
+            }
+            end();
+        }
+        catch (XMLStreamException e)
+        {
+            throw new IOException(e);
+        }
+        catch (JAXBException e)
+        {
+            throw new IOException(e);
+        }
+        finally
+        {
+            close();
+        }
+    }
+
+    /**
+     * Abort the context if the list was not written, or its writing failed.
+     * The {@link CloseableService} of the request calls it once the response
+     * is sent or dropped.
+     */
+    @Override
+    public synchronized void close()
+    {
+        if (context.isValid())
+        {
+            context.abort();
+        }
+    }
+
+    private void start(OutputStream output) throws IOException, XMLStreamException, JAXBException
+    {
+        if (MediaType.APPLICATION_XML_TYPE.isCompatible(mediaType))
+        {
+            marshaller = getJAXBContext(type).createMarshaller();
+            marshaller.setProperty(Marshaller.JAXB_FRAGMENT, Boolean.TRUE);
+            xml = XMLOutputFactory.newInstance().createXMLStreamWriter(output, "UTF-8");
+            xml.writeStartDocument("UTF-8", "1.0");
+            xml.writeStartElement(listName);
+        }
+        else
+        {
+            mapper = jsonProvider.locateMapper(type, MediaType.APPLICATION_JSON_TYPE);
+            json = mapper.getFactory().createGenerator(output);
+            // the container closes the response
+            json.configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+            json.writeStartArray();
+        }
+    }
+
+    private void end() throws IOException, XMLStreamException
+    {
+        if (json != null)
+        {
+            json.writeEndArray();
+            json.close();
+        }
+        else
+        {
+            xml.writeEndElement();
+            xml.writeEndDocument();
+            xml.flush();
+            xml.close();
+        }
+    }
+
+    private static JAXBContext getJAXBContext(Class<?> type) throws JAXBException
+    {
+        JAXBContext jaxbContext = jaxbContexts.get(type);
+        if (jaxbContext == null)
+        {
+            jaxbContext = JAXBContext.newInstance(type);
+            jaxbContexts.putIfAbsent(type, jaxbContext);
+        }
+        return jaxbContext;
+    }
+
+    /**
+     * Write a single object, as the resources returning it do.
+     */
+    public static <T> void serialize(T object, Class<T> type, MediaType mediaType, OutputStream output)
+            throws IOException
+    {
+        if (MediaType.APPLICATION_XML_TYPE.isCompatible(mediaType))
+        {
+            try
+            {
+                getJAXBContext(type).createMarshaller().marshal(object, output);
+            }
+            catch (JAXBException e)
+            {
+                throw new IOException(e);
+            }
+        }
+        else
+        {
+            jsonProvider.locateMapper(type, MediaType.APPLICATION_JSON_TYPE).writeValue(output, object);
+        }
+    }
+
+    /**
+     * @return the last id of a page, to start the next page after it, or
+     *         null if the page is not full and so is the last one.
+     */
+    public static Integer nextAfter(List<Integer> ids, int limit)
+    {
+        return ids.size() < limit || ids.isEmpty() ? null : ids.get(ids.size() - 1);
+    }
+}
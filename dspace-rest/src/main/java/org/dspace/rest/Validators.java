@@ -0,0 +1,304 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.rest;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.MediaType;
+
+import org.dspace.authorize.AuthorizeManager;
+import org.dspace.content.Bitstream;
+import org.dspace.content.Bundle;
+import org.dspace.content.Collection;
+import org.dspace.content.Community;
+import org.dspace.content.DSpaceObject;
+import org.dspace.content.Item;
+import org.dspace.content.Metadatum;
+import org.dspace.core.Constants;
+import org.dspace.core.Context;
+import org.dspace.storage.rdbms.DatabaseManager;
+import org.dspace.storage.rdbms.TableRow;
+import org.dspace.storage.rdbms.TableRowIterator;
+
+/**
+ * Builds the validators (ETag) of a representation from the state it is
+ * built from, so that a conditional GET can be answered with 304 Not
+ * Modified before the representation is built. The tag covers the media
+ * type, the expand parameter and the visibility class of the user, since
+ * they all change the representation, and the state added by the resource:
+ * last modification date, metadata, policies, related objects.
+ */
+public class Validators
+{
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final MessageDigest digest;
+
+    private final String visibility;
+
+    public Validators(Context context, MediaType mediaType, String expand) throws SQLException
+    {
+        this(visibility(context));
+        add(mediaType).add(expand).add(visibility);
+    }
+
+    private Validators(String visibility)
+    {
+        try
+        {
+            digest = MessageDigest.getInstance("MD5");
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException(e);
+        }
+        this.visibility = visibility;
+    }
+
+    /**
+     * @return the tag of the content of a bitstream as it is retrieved: the
+     *         checksum of the bytes and the format and name, which the
+     *         Content-Type and Content-Disposition headers are built from;
+     *         null if the checksum is unknown. The tag doesn't depend on the
+     *         user, the content is the same for everybody who can read it.
+     */
+    public static EntityTag getDataTag(Bitstream bitstream)
+    {
+        if (bitstream.getChecksum() == null)
+        {
+            return null;
+        }
+        return new Validators((String) null).add(bitstream.getChecksum())
+                .add(bitstream.getFormat().getMIMEType()).add(bitstream.getName()).getEntityTag();
+    }
+
+    /**
+     * @return the visibility class of the user of the context: the
+     *         representations may differ between anonymous users, each
+     *         authenticated user and administrators.
+     */
+    public static String visibility(Context context) throws SQLException
+    {
+        if (context.getCurrentUser() == null)
+        {
+            return "anonymous";
+        }
+        if (AuthorizeManager.isAdmin(context))
+        {
+            return "admin";
+        }
+        return "eperson-" + context.getCurrentUser().getID();
+    }
+
+    /**
+     * @return true if the user of the context is anonymous, so that the
+     *         responses may be stored by shared caches
+     */
+    public static boolean isPublic(Context context) throws SQLException
+    {
+        return context.getCurrentUser() == null;
+    }
+
+    /**
+     * @return the visibility class of the user, see {@link #visibility(Context)}
+     */
+    public String getVisibility()
+    {
+        return visibility;
+    }
+
+    /**
+     * @return true if the representation may be stored by shared caches
+     */
+    public boolean isPublic()
+    {
+        return "anonymous".equals(visibility);
+    }
+
+    /**
+     * @return true if the expand parameter asks for the field
+     */
+    public static boolean expands(String expand, String field)
+    {
+        if (expand == null)
+        {
+            return false;
+        }
+        List<String> fields = Arrays.asList(expand.split(","));
+        return fields.contains(field) || fields.contains("all");
+    }
+
+    public Validators add(Object part)
+    {
+        digest.update(String.valueOf(part).getBytes(UTF8));
+        digest.update((byte) 0);
+        return this;
+    }
+
+    /**
+     * Add the id, handle and metadata of an object.
+     */
+    public Validators addMetadata(DSpaceObject dso)
+    {
+        if (dso == null)
+        {
+            return add(null);
+        }
+        add(dso.getType()).add(dso.getID()).add(dso.getHandle());
+        for (Metadatum value : dso.getMetadata(Item.ANY, Item.ANY, Item.ANY, Item.ANY))
+        {
+            add(value.getField()).add(value.language).add(value.value).add(value.authority)
+                    .add(value.confidence);
+        }
+        return this;
+    }
+
+    /**
+     * Add a collection as it is embedded in other representations: its
+     * metadata and number of items.
+     */
+    public Validators addCollection(Context context, Collection collection) throws SQLException
+    {
+        if (collection == null)
+        {
+            return add(null);
+        }
+        return addMetadata(collection).addCollectionItems(context, collection.getID());
+    }
+
+    /**
+     * Add a community as it is embedded in other representations: its
+     * metadata and number of items.
+     */
+    public Validators addCommunity(Community community) throws SQLException
+    {
+        if (community == null)
+        {
+            return add(null);
+        }
+        return addMetadata(community).add(community.countItems());
+    }
+
+    /**
+     * Add the id and content of a bitstream, e.g. a logo.
+     */
+    public Validators addBitstream(Bitstream bitstream)
+    {
+        if (bitstream == null)
+        {
+            return add(null);
+        }
+        return add(bitstream.getID()).add(bitstream.getName()).add(bitstream.getDescription())
+                .add(bitstream.getChecksum()).add(bitstream.getSequenceID()).add(bitstream.getFormat().getID());
+    }
+
+    /**
+     * Add the bundles of an item and their bitstreams as they are embedded
+     * in the item representation. Adding a bitstream to an item doesn't
+     * always update its last modification date, and the size and format of a
+     * bitstream never do.
+     */
+    public Validators addItemBitstreams(Item item) throws SQLException
+    {
+        for (Bundle bundle : item.getBundles())
+        {
+            add(bundle.getID()).add(bundle.getName()).add(bundle.getPrimaryBitstreamID());
+            for (Bitstream bitstream : bundle.getBitstreams())
+            {
+                addBitstream(bitstream).add(bitstream.getSize()).add(bitstream.getFormat().getMIMEType())
+                        .add(bitstream.getFormat().getShortDescription());
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Add the policies of an object, and whether each of them is in force:
+     * an embargo ending changes the tag.
+     */
+    public Validators addPolicies(Context context, int type, int id) throws SQLException
+    {
+        return addPolicies(context, "SELECT policy_id, action_id, epersongroup_id, eperson_id, start_date, end_date "
+                + "FROM resourcepolicy WHERE resource_type_id = ? AND resource_id = ? ORDER BY policy_id", type, id);
+    }
+
+    /**
+     * Add the policies returned by a query, and whether each of them is in
+     * force. The query returns the columns of the resourcepolicy table.
+     */
+    public Validators addPolicies(Context context, String query, Object... parameters) throws SQLException
+    {
+        Date now = new Date();
+        TableRowIterator tri = DatabaseManager.query(context, query, parameters);
+        try
+        {
+            while (tri.hasNext())
+            {
+                TableRow row = tri.next();
+                Date start = row.getDateColumn("start_date");
+                Date end = row.getDateColumn("end_date");
+                boolean active = (start == null || !start.after(now)) && (end == null || !end.before(now));
+                add(row.getIntColumn("policy_id")).add(row.getIntColumn("action_id"))
+                        .add(row.getIntColumn("epersongroup_id")).add(row.getIntColumn("eperson_id"))
+                        .add(start == null ? null : start.getTime()).add(end == null ? null : end.getTime())
+                        .add(active);
+            }
+        }
+        finally
+        {
+            tri.close();
+        }
+        return this;
+    }
+
+    /**
+     * Add the policies of an item and of its bitstreams.
+     */
+    public Validators addItemPolicies(Context context, int itemId) throws SQLException
+    {
+        return addPolicies(context, "SELECT policy_id, action_id, epersongroup_id, eperson_id, start_date, end_date "
+                + "FROM resourcepolicy WHERE (resource_type_id = ? AND resource_id = ?) "
+                + "OR (resource_type_id = ? AND resource_id IN (SELECT b2b.bitstream_id "
+                + "FROM item2bundle i2b, bundle2bitstream b2b "
+                + "WHERE i2b.bundle_id = b2b.bundle_id AND i2b.item_id = ?)) ORDER BY policy_id",
+                Constants.ITEM, itemId, Constants.BITSTREAM, itemId);
+    }
+
+    /**
+     * Add the number and last modification of the archived items of a
+     * collection.
+     */
+    public Validators addCollectionItems(Context context, int collectionId) throws SQLException
+    {
+        TableRow row = DatabaseManager.querySingle(context,
+                "SELECT COUNT(*) AS items, MAX(item.last_modified) AS last_modified FROM item, collection2item "
+                + "WHERE item.item_id = collection2item.item_id AND collection2item.collection_id = ? "
+                + "AND item.in_archive = '1'", collectionId);
+        Date lastModified = row.getDateColumn("last_modified");
+        return add(row.getLongColumn("items")).add(lastModified == null ? null : lastModified.getTime());
+    }
+
+    public EntityTag getEntityTag()
+    {
+        byte[] hash = digest.digest();
+        StringBuilder sb = new StringBuilder(hash.length * 2);
+        for (byte b : hash)
+        {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+            sb.append(Character.forDigit(b & 0xF, 16));
+        }
+        return new EntityTag(sb.toString());
+    }
+}
@@ -15,6 +15,7 @@ import java.util.Comparator;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Map;
 import org.apache.avalon.framework.activity.Disposable;
 import org.apache.avalon.framework.service.ServiceException;
 import org.apache.avalon.framework.service.ServiceManager;
@@ -44,6 +45,7 @@ import org.dspace.authorize.AuthorizeManager;
 import org.dspace.core.ConfigurationManager;
 import org.dspace.eperson.EPerson;
 import org.dspace.harvest.HarvestedCollection;
+import org.dspace.harvest.OAIHarvester.HarvestRate;
 import org.dspace.harvest.OAIHarvester.HarvestScheduler;
 import org.dspace.storage.rdbms.DatabaseManager;
 import org.xml.sax.SAXException;
@@ -148,6 +150,7 @@ public class ControlPanel extends AbstractDSpaceTransformer implements Serviceab
     private static final Message T_harvest_label_collections 		= message("xmlui.administrative.ControlPanel.harvest_label_collections");
     private static final Message T_harvest_label_active 		= message("xmlui.administrative.ControlPanel.harvest_label_active");
     private static final Message T_harvest_label_queued 		= message("xmlui.administrative.ControlPanel.harvest_label_queued");
+    private static final Message T_harvest_label_rates 		= message("xmlui.administrative.ControlPanel.harvest_label_rates");
     private static final Message T_harvest_label_oai_errors 		= message("xmlui.administrative.ControlPanel.harvest_label_oai_errors");
     private static final Message T_harvest_label_internal_errors 	= message("xmlui.administrative.ControlPanel.harvest_label_internal_errors");
     private static final Message T_harvest_head_generator_settings 	= message("xmlui.administrative.ControlPanel.harvest_head_generator_settings");
@@ -958,6 +961,13 @@ public class ControlPanel extends AbstractDSpaceTransformer implements Serviceab
         for (Integer busyCollection : busyCollections) {
                 busyCollectionsItem.addXref(baseURL + busyCollection, busyCollection.toString());
         }
+        // the harvests run by the scheduler of this webapp
+        harvesterControls.addLabel(T_harvest_label_rates);
+        Item ratesItem = harvesterControls.addItem();
+        for (Map.Entry<String, HarvestRate> rate : HarvestScheduler.getRates().entrySet()) {
+                ratesItem.addContent(rate.getKey() + ": " + rate.getValue() + ", " + rate.getValue().getRecords()
+                        + " records" + (rate.getValue().isRunning() ? " (running)" : "") + ". ");
+        }
         harvesterControls.addLabel(T_harvest_label_queued);
         Item queuedCollectionsItem = harvesterControls.addItem();
         java.util.List<Integer> queuedCollections =  HarvestedCollection.findByStatus(context, HarvestedCollection.STATUS_QUEUED);